@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu;
+
+/**
+ * Implemented by objects that must be started before they are used and stopped
+ * when they are no longer needed, such as caches and connection pools.
+ * Components embedding such objects are started in dependency order by their cluster.
+ *
+ * @see org.ijsberg.iglu.configuration.Cluster#start()
+ */
+public interface Startable {
+
+	/**
+	 * Starts the object. References and properties have been injected at this point.
+	 */
+	void start();
+
+	/**
+	 * @return true if the object has been started and not stopped since
+	 */
+	boolean isStarted();
+
+	/**
+	 * Stops the object. Invocations through proxies have been drained at this point.
+	 */
+	void stop();
+}
@@ -19,7 +19,13 @@
 
 package org.ijsberg.iglu.configuration;
 
+import org.ijsberg.iglu.util.metrics.InvocationMetrics;
+import org.ijsberg.iglu.util.tracing.Tracer;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 /**
@@ -34,6 +40,10 @@ import java.util.Set;
  * Proxies for these interfaces will be injected upon connection of an external component.
  * An external component is considered as an anonymous, untrusted consumer of the cluster's services.
  * Proxies for external component interfaces are not injected in internal components.
+ * <p/>
+ * Methods that were added to this interface over time have default implementations,
+ * so that existing implementations keep compiling. By default, operations that manage
+ * components throw UnsupportedOperationException, while metrics and tracing are not available.
  *
  * @author jmeetsma
  */
@@ -66,6 +76,85 @@ public interface Cluster extends Connector {
 	 */
 	void expose(String internalComponentId, Class<?>... interfaces);
 
+	/**
+	 * Updates the properties of internal components.
+	 * A key consists of the ID of a component, a dot and the key of a property of that component.
+	 * Every internal component is updated once, with the keys given under any of its IDs,
+	 * so components for which the given properties contain no keys lose their properties.
+	 *
+	 * @param properties
+	 * @return keys of added, changed or removed properties by ID of the component
+	 * @throws UnsupportedOperationException by default
+	 * @see Component#updateProperties(Properties)
+	 */
+	default Map<String, Set<String>> updateProperties(Properties properties) {
+		throw new UnsupportedOperationException("properties can not be updated in " + getClass().getName());
+	}
+
+	/**
+	 * Starts internal components, each after the components it depends on.
+	 *
+	 * @throws UnsupportedOperationException by default
+	 * @see Component#start()
+	 */
+	default void start() {
+		throw new UnsupportedOperationException("components can not be started by " + getClass().getName());
+	}
+
+	/**
+	 * Stops internal components, each after the components that depend on it.
+	 *
+	 * @throws UnsupportedOperationException by default
+	 * @see Component#stop()
+	 */
+	default void stop() {
+		throw new UnsupportedOperationException("components can not be stopped by " + getClass().getName());
+	}
+
+	/**
+	 * Replaces the object embedded in an internal component without rewiring the cluster.
+	 *
+	 * @param componentId
+	 * @param newImplementation
+	 * @return the replaced object
+	 * @throws UnsupportedOperationException by default
+	 * @see Component#replaceImplementation(Object)
+	 */
+	default Object replaceImplementation(String componentId, Object newImplementation) {
+		throw new UnsupportedOperationException("implementations can not be replaced in " + getClass().getName());
+	}
+
+	/**
+	 * Turns recording of invocation metrics on or off for all connected components.
+	 * Components connected later are not affected.
+	 * Does nothing by default.
+	 *
+	 * @param metricsEnabled
+	 * @see Component#setMetricsEnabled(boolean)
+	 */
+	default void setMetricsEnabled(boolean metricsEnabled) {
+	}
+
+	/**
+	 * @return metrics of internal and external components that have any, by component and interface method,
+	 * by default none
+	 * @see Component#getMetrics()
+	 */
+	default Map<Component, Map<Method, InvocationMetrics.Snapshot>> getMetrics() {
+		return new HashMap<Component, Map<Method, InvocationMetrics.Snapshot>>();
+	}
+
+	/**
+	 * Lets a tracer trace invocations of all connected components, under their component IDs.
+	 * Components connected later are not affected.
+	 * Does nothing by default.
+	 *
+	 * @param tracer tracer, or null to stop tracing
+	 * @see Component#setTracer(Tracer, String)
+	 */
+	default void setTracer(Tracer tracer) {
+	}
+
 	/**
 	 * @return a facade that represents the cluster
 	 */
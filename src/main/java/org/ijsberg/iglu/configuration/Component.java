@@ -19,15 +19,29 @@
 
 package org.ijsberg.iglu.configuration;
 
+import org.ijsberg.iglu.util.metrics.InvocationMetrics;
+import org.ijsberg.iglu.util.tracing.Tracer;
+
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Components are elementary building blocks of an application's structure.
  * An object that represents a structural part (component) of an application may be embedded in a component.
  * A component facilitates setting of properties as well as references to other components.
+ * <p/>
+ * Methods that were added to this interface over time have default implementations,
+ * so that existing implementations keep compiling. These defaults either do nothing,
+ * behave like a simpler method, or throw UnsupportedOperationException, as documented per method.
  */
 public interface Component {
 
@@ -43,6 +57,27 @@ public interface Component {
 	 */
 	Properties getProperties();
 
+	/**
+	 * Replaces the current properties, but only injects properties of which the value is new or changed.
+	 * Properties that are absent from the given properties are no longer returned by getProperties,
+	 * but their values are not reset in the embedded object.
+	 *
+	 * By default, sets the properties and reports all current and new keys as changed.
+	 *
+	 * @param properties
+	 * @return keys of properties that were added, changed or removed
+	 */
+	default Set<String> updateProperties(Properties properties) {
+		Set<String> changedKeys = new HashSet<String>();
+		Properties currentProperties = getProperties();
+		if (currentProperties != null) {
+			changedKeys.addAll(currentProperties.stringPropertyNames());
+		}
+		changedKeys.addAll(properties.stringPropertyNames());
+		setProperties(properties);
+		return changedKeys;
+	}
+
 	/**
 	 * @return classes of interfaces implemented by the wrapped object
 	 */
@@ -60,6 +95,27 @@ public interface Component {
 	 */
 	<T> T getProxy(Class<T> interfaceClass);
 
+	/**
+	 * Creates a proxy that invokes the wrapped object directly, without further invocation handling,
+	 * for as long as invocations of the interface are not intercepted and direct proxies are not revoked.
+	 * Otherwise the proxy behaves like one created by createProxy.
+	 * By default, creates a regular proxy.
+	 *
+	 * @param interfaceClass
+	 * @return a proxy for the wrapped object implementing the given interface
+	 */
+	default <T> T createDirectProxy(Class<T> interfaceClass) {
+		return createProxy(interfaceClass);
+	}
+
+	/**
+	 * Routes invocations of all direct proxies through regular invocation handling,
+	 * until a new direct proxy is created.
+	 * Does nothing by default, since direct proxies are regular proxies by default.
+	 */
+	default void revokeDirectProxies() {
+	}
+
 	/**
 	 * Sets a reference to a component if the embedded class contains an appropriate setter.
 	 * (Also known as dependency injection.)
@@ -72,6 +128,29 @@ public interface Component {
 	 */
 	void setReference(Facade facade, String componentId, Class<?> ... interfaces);
 
+	/**
+	 * A reference to another component can only be injected if the component ID,
+	 * with its first character in upper case, is one of these keys.
+	 *
+	 * By default, the keys are unknown, which lets a cluster offer the component references to all other components.
+	 *
+	 * @return keys of references the embedded object accepts, derived from the names of its setters,
+	 * or null if unknown
+	 */
+	default Set<String> getReferenceKeys() {
+		return null;
+	}
+
+	/**
+	 * By default, components are assumed to accept listeners.
+	 *
+	 * @return true if other components may be registered as listener
+	 * @see #register(Component)
+	 */
+	default boolean acceptsListeners() {
+		return true;
+	}
+
 	/**
 	 * Removes previously injected proxies for a certain component.
 	 *
@@ -110,6 +189,21 @@ public interface Component {
 	 */
 	void setInvocationIntercepter(Class<?> interfaceClass, InvocationHandler interceptor);
 
+	/**
+	 * Adds an intercepter to the chain of intercepters for invocations of a particular interface.
+	 * The intercepter only applies to methods selected by the given selector.
+	 * Intercepters are invoked in the order in which they were added; the proxy passed
+	 * to an intercepter continues the chain.
+	 *
+	 * @param interfaceClass interface of which invocations must be intercepted
+	 * @param methodSelector selects the methods to intercept
+	 * @param interceptor
+	 * @throws UnsupportedOperationException by default
+	 */
+	default void addInvocationIntercepter(Class<?> interfaceClass, MethodSelector methodSelector, InvocationHandler interceptor) {
+		throw new UnsupportedOperationException("chains of intercepters are not supported by " + getClass().getName());
+	}
+
 	/**
 	 * @param methodName name of a method declared by a component's interface
 	 * @param parameters
@@ -120,5 +214,135 @@ public interface Component {
 	 */
 	Object invoke(String methodName, Object... parameters) throws InvocationTargetException, NoSuchMethodException, IllegalArgumentException;
 
+	/**
+	 * Invokes a method on the component's executor.
+	 * By default, invokes the method by invoke(String, Object...).
+	 *
+	 * @param methodName name of a method declared by a component's interface
+	 * @param parameters
+	 * @return a future that completes with the result of the invocation, or exceptionally
+	 * with the exception thrown by the invoked method or raised while looking it up
+	 * @see #invoke(String, Object...)
+	 */
+	default CompletableFuture<Object> invokeAsync(final String methodName, final Object... parameters) {
+		final CompletableFuture<Object> result = new CompletableFuture<Object>();
+		getExecutor().execute(new Runnable() {
+			public void run() {
+				try {
+					result.complete(invoke(methodName, parameters));
+				} catch (InvocationTargetException e) {
+					result.completeExceptionally(e.getCause());
+				} catch (Throwable t) {
+					result.completeExceptionally(t);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Creates a proxy of which the methods return immediately, while the corresponding
+	 * methods of the wrapped object are invoked on the component's executor.
+	 * Every method of the asynchronous interface must have the same name and parameter types
+	 * as a method of an interface implemented by the wrapped object,
+	 * and must return CompletableFuture or one of its supertypes.
+	 * Invocations are intercepted like invocations of regular proxies.
+	 *
+	 * @param asyncInterfaceClass
+	 * @return a proxy implementing the given asynchronous interface
+	 * @throws IllegalArgumentException if the interface does not match the wrapped object
+	 * @throws UnsupportedOperationException by default
+	 */
+	default <T> T createAsyncProxy(Class<T> asyncInterfaceClass) {
+		throw new UnsupportedOperationException("asynchronous proxies are not supported by " + getClass().getName());
+	}
+
+	/**
+	 * @param executor executor that runs asynchronous invocations
+	 * @throws UnsupportedOperationException by default
+	 */
+	default void setExecutor(Executor executor) {
+		throw new UnsupportedOperationException("executors can not be set on " + getClass().getName());
+	}
+
+	/**
+	 * @return executor that runs asynchronous invocations, by default the common fork-join pool
+	 */
+	default Executor getExecutor() {
+		return ForkJoinPool.commonPool();
+	}
+
 	boolean implementsInterface(Class<?> interfaceClass);
+
+	/**
+	 * Starts the embedded object in case it implements Startable.
+	 * Does nothing by default.
+	 *
+	 * @see org.ijsberg.iglu.Startable
+	 */
+	default void start() {
+	}
+
+	/**
+	 * Waits until invocations through proxies are finished and stops the embedded object
+	 * in case it implements Startable.
+	 * Does nothing by default.
+	 */
+	default void stop() {
+	}
+
+	/**
+	 * @return true if the component has been started and not stopped since, by default false
+	 */
+	default boolean isStarted() {
+		return false;
+	}
+
+	/**
+	 * Retargets all proxies for this component to another object, after which invocations
+	 * in progress on the current object are drained.
+	 * Properties, references and registered listeners carry over to the new object.
+	 *
+	 * @param newImplementation object that implements the interfaces of the component
+	 * @return the replaced object
+	 * @throws UnsupportedOperationException by default
+	 */
+	default Object replaceImplementation(Object newImplementation) {
+		throw new UnsupportedOperationException("implementations can not be replaced in " + getClass().getName());
+	}
+
+	/**
+	 * Turns recording of invocation metrics on or off.
+	 * Does nothing by default.
+	 *
+	 * @param metricsEnabled
+	 */
+	default void setMetricsEnabled(boolean metricsEnabled) {
+	}
+
+	/**
+	 * @return true if invocation metrics are recorded, by default false
+	 */
+	default boolean isMetricsEnabled() {
+		return false;
+	}
+
+	/**
+	 * Metrics of a method are available from the moment a proxy for its interface is used while metrics are enabled.
+	 *
+	 * @return metrics recorded for invocations through proxies, by interface method, by default none
+	 */
+	default Map<Method, InvocationMetrics.Snapshot> getMetrics() {
+		return new HashMap<Method, InvocationMetrics.Snapshot>();
+	}
+
+	/**
+	 * Lets a tracer trace invocations through proxies for this component.
+	 * Does nothing by default.
+	 *
+	 * @param tracer tracer, or null to stop tracing
+	 * @param componentId ID under which invocations of this component are traced
+	 */
+	default void setTracer(Tracer tracer, String componentId) {
+	}
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Selects the methods of an interface that an intercepter applies to.
+ * Selection takes place when intercepters are configured, not upon invocation.
+ */
+public abstract class MethodSelector {
+
+	/**
+	 * Selects every method.
+	 */
+	public static final MethodSelector ALL_METHODS = new MethodSelector() {
+		@Override
+		public boolean selects(Method method) {
+			return true;
+		}
+
+		public String toString() {
+			return "all methods";
+		}
+	};
+
+	/**
+	 * @param method
+	 * @return true if the method is selected
+	 */
+	public abstract boolean selects(Method method);
+
+	/**
+	 * @param methodNames
+	 * @return a selector for methods with one of the given names
+	 */
+	public static MethodSelector byName(String... methodNames) {
+		final Set<String> names = new HashSet<String>(Arrays.asList(methodNames));
+		return new MethodSelector() {
+			@Override
+			public boolean selects(Method method) {
+				return names.contains(method.getName());
+			}
+
+			public String toString() {
+				return "methods named " + names;
+			}
+		};
+	}
+
+	/**
+	 * @param prefix
+	 * @return a selector for methods of which the name starts with the given prefix
+	 */
+	public static MethodSelector byPrefix(final String prefix) {
+		return new MethodSelector() {
+			@Override
+			public boolean selects(Method method) {
+				return method.getName().startsWith(prefix);
+			}
+
+			public String toString() {
+				return "methods starting with '" + prefix + "'";
+			}
+		};
+	}
+
+	/**
+	 * @param methods
+	 * @return a selector for exactly the given methods
+	 */
+	public static MethodSelector byMethod(Method... methods) {
+		final Set<Method> selectedMethods = new HashSet<Method>(Arrays.asList(methods));
+		return new MethodSelector() {
+			@Override
+			public boolean selects(Method method) {
+				return selectedMethods.contains(method);
+			}
+
+			public String toString() {
+				return "methods " + selectedMethods;
+			}
+		};
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+import java.lang.reflect.Method;
+
+/**
+ * Flight Recorder event concerning a method of a component's interface.
+ * Fields are protected, since Flight Recorder ignores private fields of superclasses.
+ */
+@Category("Iglu")
+public abstract class ComponentEvent extends Event {
+
+	@Label("Component ID")
+	protected String componentId;
+
+	@Label("Interface")
+	protected String interfaceName;
+
+	@Label("Method")
+	protected String methodName;
+
+	/**
+	 * @param componentId ID of the invoked component
+	 * @param method interface method
+	 */
+	public void setInvocation(String componentId, Method method) {
+		this.componentId = componentId;
+		this.interfaceName = method.getDeclaringClass().getName();
+		this.methodName = method.getName();
+	}
+
+	public String getComponentId() {
+		return componentId;
+	}
+
+	public String getInterfaceName() {
+		return interfaceName;
+	}
+
+	public String getMethodName() {
+		return methodName;
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Execution of an intercepter, including the rest of the intercepter chain and the intercepted method.
+ * Like invocations, only executions that take longer than the threshold are recorded.
+ *
+ * @see InvocationEvent
+ */
+@Name(InterceptionEvent.NAME)
+@Label("Component Interception")
+@Description("Execution of an intercepter of a component's invocations")
+@Threshold("20 ms")
+public class InterceptionEvent extends ComponentEvent {
+
+	public static final String NAME = "org.ijsberg.iglu.Interception";
+
+	@Label("Intercepter Class")
+	private String intercepterClass;
+
+	public void setIntercepter(Object intercepter) {
+		this.intercepterClass = intercepter.getClass().getName();
+	}
+
+	public String getIntercepterClass() {
+		return intercepterClass;
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Invocation of a component's interface method through a proxy, including the intercepters it passes.
+ * Only invocations that take longer than the threshold are recorded.
+ * The default threshold of 20 ms can be changed per recording, for instance in a .jfc settings file
+ * or by Recording.enable(InvocationEvent.class).withThreshold(...).
+ * <p>
+ * The event is disabled by default and must be enabled explicitly, since recording it has a cost
+ * for all invocations: while a recording enables it, generated proxies no longer invoke
+ * embedded objects directly, but pass every invocation, also those below the threshold,
+ * through invocation handling, which boxes primitive arguments and allocates argument arrays.
+ */
+@Name(InvocationEvent.NAME)
+@Label("Component Invocation")
+@Description("Invocation of a component through a proxy")
+@Threshold("20 ms")
+@Enabled(false)
+public class InvocationEvent extends ComponentEvent {
+
+	public static final String NAME = "org.ijsberg.iglu.Invocation";
+}
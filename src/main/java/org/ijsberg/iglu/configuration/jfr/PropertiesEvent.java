@@ -0,0 +1,70 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Injection of properties into a component.
+ */
+@Name(PropertiesEvent.NAME)
+@Label("Component Properties")
+@Description("Injection of properties into a component")
+@Category("Iglu")
+public class PropertiesEvent extends Event {
+
+	public static final String NAME = "org.ijsberg.iglu.Properties";
+
+	@Label("Component ID")
+	private String componentId;
+
+	@Label("Method")
+	private String methodName;
+
+	@Label("Injected Properties")
+	private int nrofInjectedProperties;
+
+	/**
+	 * @param componentId ID of the component
+	 * @param methodName setProperties or updateProperties
+	 * @param nrofInjectedProperties number of properties passed to setters
+	 */
+	public void setInjection(String componentId, String methodName, int nrofInjectedProperties) {
+		this.componentId = componentId;
+		this.methodName = methodName;
+		this.nrofInjectedProperties = nrofInjectedProperties;
+	}
+
+	public String getComponentId() {
+		return componentId;
+	}
+
+	public String getMethodName() {
+		return methodName;
+	}
+
+	public int getNrofInjectedProperties() {
+		return nrofInjectedProperties;
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Change of the components connected to a cluster or of the interfaces they expose.
+ */
+@Name(TopologyEvent.NAME)
+@Label("Cluster Topology Change")
+@Description("Connection, disconnection or exposure of a component in a cluster")
+@Category("Iglu")
+public class TopologyEvent extends Event {
+
+	public static final String NAME = "org.ijsberg.iglu.TopologyChange";
+
+	@Label("Operation")
+	private String operation;
+
+	@Label("Component ID")
+	private String componentId;
+
+	@Label("Interfaces")
+	private String interfaceNames;
+
+	/**
+	 * @param operation connect, disconnect, expose or commit
+	 * @param componentId IDs of the affected components, separated by commas
+	 * @param interfaces exposed interfaces
+	 */
+	public void setChange(String operation, String componentId, Class<?>... interfaces) {
+		this.operation = operation;
+		this.componentId = componentId;
+		StringBuilder interfaceNames = new StringBuilder();
+		for (Class<?> interfaceClass : interfaces) {
+			interfaceNames.append(interfaceNames.length() > 0 ? "," : "").append(interfaceClass.getName());
+		}
+		this.interfaceNames = interfaceNames.toString();
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public String getComponentId() {
+		return componentId;
+	}
+
+	public String getInterfaceNames() {
+		return interfaceNames;
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Invocation handler for asynchronous proxies of a component.
+ * Every method of the asynchronous interface is mapped to a method of
+ * an interface of the component when the proxy is created.
+ */
+class AsyncInvocationHandler implements InvocationHandler {
+
+	private final ProxyTarget component;
+	private final Map<Method, Method> targetMethodsByAsyncMethod = new HashMap<Method, Method>();
+	private final Map<Method, Class<?>> targetInterfacesByAsyncMethod = new HashMap<Method, Class<?>>();
+
+	/**
+	 * @param component
+	 * @param asyncInterfaceClass
+	 * @throws IllegalArgumentException if a method can not be mapped
+	 */
+	AsyncInvocationHandler(ProxyTarget component, Class<?> asyncInterfaceClass) {
+		this.component = component;
+		for (Method asyncMethod : asyncInterfaceClass.getMethods()) {
+			if (!asyncMethod.getReturnType().isAssignableFrom(CompletableFuture.class)) {
+				throw new IllegalArgumentException("method " + asyncMethod.getName() + " of " + asyncInterfaceClass.getName() +
+						" does not return " + CompletableFuture.class.getSimpleName());
+			}
+			mapTargetMethod(asyncMethod);
+		}
+	}
+
+	private void mapTargetMethod(Method asyncMethod) {
+		for (Class<?> interfaceClass : component.getInterfaces()) {
+			try {
+				targetMethodsByAsyncMethod.put(asyncMethod, interfaceClass.getMethod(asyncMethod.getName(), asyncMethod.getParameterTypes()));
+				targetInterfacesByAsyncMethod.put(asyncMethod, interfaceClass);
+				return;
+			} catch (NoSuchMethodException ignore) {
+			}
+		}
+		throw new IllegalArgumentException("method " + asyncMethod.getName() + " of " + asyncMethod.getDeclaringClass().getName() +
+				" is not declared by an interface of " + component);
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] parameters) throws Throwable {
+		Method targetMethod = targetMethodsByAsyncMethod.get(method);
+		if (targetMethod == null) {
+			return invokeObjectMethod(proxy, method, parameters);
+		}
+		return component.invokeAsync(targetInterfacesByAsyncMethod.get(method), targetMethod, parameters);
+	}
+
+	private Object invokeObjectMethod(Object proxy, Method method, Object[] parameters) {
+		if ("equals".equals(method.getName())) {
+			return proxy == parameters[0];
+		}
+		if ("hashCode".equals(method.getName())) {
+			return System.identityHashCode(proxy);
+		}
+		return "async proxy for " + component;
+	}
+}
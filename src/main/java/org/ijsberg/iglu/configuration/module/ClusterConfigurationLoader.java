@@ -0,0 +1,239 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import org.ijsberg.iglu.configuration.Cluster;
+import org.ijsberg.iglu.configuration.Component;
+import org.ijsberg.iglu.configuration.ConfigurationException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Configures the internal components of a cluster from a single properties file.
+ * A key consists of the ID of a component, a dot and the key of a property of that component.
+ * Keys are routed to components while the file is read, so the file is read once
+ * and its properties are never held in one map.
+ * Components are configured in parallel; a component registered under more than one ID
+ * is configured by one task.
+ */
+public class ClusterConfigurationLoader {
+
+	private final Cluster cluster;
+	private final Executor executor;
+
+	/**
+	 * Configures components on the common fork-join pool.
+	 *
+	 * @param cluster
+	 */
+	public ClusterConfigurationLoader(Cluster cluster) {
+		this(cluster, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param cluster
+	 * @param executor executor on which components are configured
+	 */
+	public ClusterConfigurationLoader(Cluster cluster, Executor executor) {
+		this.cluster = cluster;
+		this.executor = executor;
+	}
+
+	/**
+	 * Reads the file and sets the properties of every component for which it contains keys.
+	 *
+	 * @param file
+	 * @return properties by ID of the configured component
+	 * @throws IOException if the file can not be read
+	 * @throws ConfigurationException if one or more components can not be configured
+	 */
+	public Map<String, Properties> configure(Path file) throws IOException {
+		InputStream input = Files.newInputStream(file);
+		try {
+			Map<String, Properties> propertiesByComponentId = read(input);
+			configure(propertiesByComponentId);
+			return propertiesByComponentId;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Reads properties and routes them to the internal components of the cluster.
+	 * Keys that do not start with the ID of an internal component are skipped.
+	 *
+	 * @param input
+	 * @return properties by component ID
+	 * @throws IOException
+	 */
+	public Map<String, Properties> read(InputStream input) throws IOException {
+		RoutingProperties routingProperties = new RoutingProperties(cluster.getInternalComponents().keySet());
+		routingProperties.load(input);
+		return routingProperties.propertiesByComponentId;
+	}
+
+	/**
+	 * @param reader
+	 * @return properties by component ID
+	 * @throws IOException
+	 * @see #read(InputStream)
+	 */
+	public Map<String, Properties> read(Reader reader) throws IOException {
+		RoutingProperties routingProperties = new RoutingProperties(cluster.getInternalComponents().keySet());
+		routingProperties.load(reader);
+		return routingProperties.propertiesByComponentId;
+	}
+
+	/**
+	 * Sets the properties of components in parallel and waits until all are configured.
+	 * A component registered under more than one ID is given the properties for all its IDs at once.
+	 *
+	 * @param propertiesByComponentId
+	 * @throws ConfigurationException if one or more components can not be configured
+	 */
+	public void configure(Map<String, Properties> propertiesByComponentId) {
+		Map<String, Component> internalComponents = cluster.getInternalComponents();
+		Map<Component, Map<String, Properties>> propertiesByComponent = new IdentityHashMap<Component, Map<String, Properties>>();
+		for (Map.Entry<String, Properties> entry : propertiesByComponentId.entrySet()) {
+			Component component = internalComponents.get(entry.getKey());
+			if (component == null) {
+				throw new ConfigurationException("cluster does not contain component '" + entry.getKey() + "'");
+			}
+			Map<String, Properties> componentProperties = propertiesByComponent.get(component);
+			if (componentProperties == null) {
+				componentProperties = new TreeMap<String, Properties>();
+				propertiesByComponent.put(component, componentProperties);
+			}
+			componentProperties.put(entry.getKey(), entry.getValue());
+		}
+		List<CompletableFuture<Void>> tasks = new ArrayList<CompletableFuture<Void>>();
+		for (final Map.Entry<Component, Map<String, Properties>> entry : propertiesByComponent.entrySet()) {
+			tasks.add(CompletableFuture.runAsync(new Runnable() {
+				public void run() {
+					String componentIds = String.join(", ", entry.getValue().keySet());
+					try {
+						entry.getKey().setProperties(mergeProperties(entry.getValue()));
+					} catch (RuntimeException e) {
+						throw new ConfigurationException("can not configure component '" + componentIds + "'", e);
+					}
+				}
+			}, executor));
+		}
+		awaitAll(tasks);
+	}
+
+	private static void awaitAll(List<CompletableFuture<Void>> tasks) {
+		ConfigurationException failure = null;
+		for (CompletableFuture<Void> task : tasks) {
+			try {
+				task.join();
+			} catch (CompletionException e) {
+				ConfigurationException cause = e.getCause() instanceof ConfigurationException ?
+						(ConfigurationException) e.getCause() : new ConfigurationException(e.getCause());
+				if (failure == null) {
+					failure = cause;
+				} else {
+					failure.addSuppressed(cause);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Merges the properties a component is given under each of its IDs.
+	 *
+	 * @param propertiesByComponentId properties by ID of one component
+	 * @return properties of the component
+	 * @throws ConfigurationException if a key is given different values under different IDs
+	 */
+	static Properties mergeProperties(Map<String, Properties> propertiesByComponentId) {
+		if (propertiesByComponentId.size() == 1) {
+			return propertiesByComponentId.values().iterator().next();
+		}
+		Properties mergedProperties = new Properties();
+		for (Map.Entry<String, Properties> entry : propertiesByComponentId.entrySet()) {
+			for (Map.Entry<Object, Object> property : entry.getValue().entrySet()) {
+				Object value = mergedProperties.put(property.getKey(), property.getValue());
+				if (value != null && !value.equals(property.getValue())) {
+					throw new ConfigurationException("property '" + property.getKey() + "' of component '" + entry.getKey() +
+							"' conflicts with the same property given under another ID of the component");
+				}
+			}
+		}
+		return mergedProperties;
+	}
+
+	/**
+	 * @param key
+	 * @param componentIds
+	 * @return position of the dot that ends the shortest prefix of the key that is a component ID, or -1
+	 */
+	static int getComponentIdEnd(String key, Set<String> componentIds) {
+		for (int end = key.indexOf('.'); end > 0; end = key.indexOf('.', end + 1)) {
+			if (componentIds.contains(key.substring(0, end))) {
+				return end;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Routes every property to the properties of a component as soon as it is loaded.
+	 */
+	private static class RoutingProperties extends Properties {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Set<String> componentIds;
+		private final Map<String, Properties> propertiesByComponentId = new HashMap<String, Properties>();
+
+		RoutingProperties(Set<String> componentIds) {
+			this.componentIds = componentIds;
+		}
+
+		@Override
+		public synchronized Object put(Object key, Object value) {
+			String keyString = (String) key;
+			int end = getComponentIdEnd(keyString, componentIds);
+			if (end < 0) {
+				return null;
+			}
+			String componentId = keyString.substring(0, end);
+			Properties properties = propertiesByComponentId.get(componentId);
+			if (properties == null) {
+				properties = new Properties();
+				propertiesByComponentId.put(componentId, properties);
+			}
+			return properties.put(keyString.substring(end + 1), value);
+		}
+	}
+}
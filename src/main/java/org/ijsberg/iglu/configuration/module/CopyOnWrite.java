@@ -0,0 +1,114 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import java.util.*;
+
+/**
+ * Helper methods that derive immutable snapshots from immutable snapshots.
+ * Fields holding snapshots are volatile and only replaced by a writer holding a lock,
+ * so readers never lock and never see a collection that is being modified.
+ */
+final class CopyOnWrite {
+
+	private CopyOnWrite() {
+	}
+
+	/**
+	 * @return an empty, immutable map
+	 */
+	static <K, V> Map<K, V> emptyMap() {
+		return Collections.emptyMap();
+	}
+
+	/**
+	 * @return an empty, immutable set
+	 */
+	static <E> Set<E> emptySet() {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * @param map
+	 * @param key
+	 * @param value
+	 * @return an immutable copy of the map with the key mapped to the value
+	 */
+	static <K, V> Map<K, V> put(Map<K, V> map, K key, V value) {
+		Map<K, V> copy = new HashMap<K, V>(map);
+		copy.put(key, value);
+		return Collections.unmodifiableMap(copy);
+	}
+
+	/**
+	 * @param map
+	 * @param key
+	 * @return an immutable copy of the map without the key, or the map itself if it does not contain the key
+	 */
+	static <K, V> Map<K, V> remove(Map<K, V> map, K key) {
+		if (!map.containsKey(key)) {
+			return map;
+		}
+		Map<K, V> copy = new HashMap<K, V>(map);
+		copy.remove(key);
+		return Collections.unmodifiableMap(copy);
+	}
+
+	/**
+	 * @param collection
+	 * @return an immutable copy of the collection
+	 */
+	static <E> Set<E> copyOf(Collection<E> collection) {
+		return Collections.unmodifiableSet(new HashSet<E>(collection));
+	}
+
+	/**
+	 * @param set
+	 * @param element
+	 * @return an immutable copy of the set with the element
+	 */
+	static <E> Set<E> add(Set<E> set, E element) {
+		Set<E> copy = new HashSet<E>(set);
+		copy.add(element);
+		return Collections.unmodifiableSet(copy);
+	}
+
+	/**
+	 * @param set
+	 * @param element
+	 * @return an immutable copy of the set without the element
+	 */
+	static <E> Set<E> remove(Set<E> set, E element) {
+		Set<E> copy = new HashSet<E>(set);
+		copy.remove(element);
+		return Collections.unmodifiableSet(copy);
+	}
+
+	/**
+	 * @param list
+	 * @param element
+	 * @return an immutable copy of the list with the element appended
+	 */
+	static <E> List<E> add(List<E> list, E element) {
+		List<E> copy = new ArrayList<E>(list);
+		copy.add(element);
+		return Collections.unmodifiableList(copy);
+	}
+}
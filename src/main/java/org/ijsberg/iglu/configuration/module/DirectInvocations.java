@@ -0,0 +1,100 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ijsberg.iglu.configuration.module;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Finds invocations that generated proxies pass directly to an object.
+ * Such invocations are not counted, so that they cost no more than a virtual call.
+ * Instead, threads are inspected for a frame of one of the proxy classes that
+ * is directly followed by a frame of the object's class or one of its supertypes.
+ * Invocations that pass invocation handling first are not found, since they are counted
+ * by InFlightInvocations.
+ * <p/>
+ * Obtaining stack traces brings all threads to a safepoint, so this is only suitable
+ * for occasional use, such as draining invocations when an object is replaced or stopped.
+ * Invocations by virtual threads are not found, since their stack traces can not be obtained
+ * without a reference to the thread. Invocations by another object of the same class
+ * through the same proxy class may be found as well, which can only prolong waiting.
+ */
+class DirectInvocations {
+
+	private final Set<String> proxyClassNames;
+	private final Set<String> targetClassNames = new HashSet<String>();
+
+	/**
+	 * @param proxyClasses generated proxy classes that may have passed invocations to the target
+	 * @param target
+	 */
+	DirectInvocations(Set<Class<?>> proxyClasses, Object target) {
+		proxyClassNames = new HashSet<String>();
+		for (Class<?> proxyClass : proxyClasses) {
+			proxyClassNames.add(proxyClass.getName());
+		}
+		addTypeNames(target.getClass());
+	}
+
+	private void addTypeNames(Class<?> type) {
+		if (type != null && targetClassNames.add(type.getName())) {
+			addTypeNames(type.getSuperclass());
+			for (Class<?> interfaceClass : type.getInterfaces()) {
+				addTypeNames(interfaceClass);
+			}
+		}
+	}
+
+	/**
+	 * @return number of platform threads that are invoking the target through one of the proxy classes
+	 */
+	long getCount() {
+		if (proxyClassNames.isEmpty()) {
+			return 0;
+		}
+		long count = 0;
+		for (StackTraceElement[] stackTrace : Thread.getAllStackTraces().values()) {
+			for (int i = 1; i < stackTrace.length; i++) {
+				if (proxyClassNames.contains(stackTrace[i].getClassName())
+						&& targetClassNames.contains(stackTrace[i - 1].getClassName())) {
+					count++;
+					break;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Waits until there has been a moment at which no invocations were found.
+	 *
+	 * @param timeout
+	 * @param unit
+	 * @return false if the timeout passed first
+	 */
+	boolean awaitNone(long timeout, TimeUnit unit) {
+		return InFlightInvocations.awaitNone(new LongSupplier() {
+			public long getAsLong() {
+				return getCount();
+			}
+		}, timeout, unit);
+	}
+}
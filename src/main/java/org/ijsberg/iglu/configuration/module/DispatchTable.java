@@ -0,0 +1,396 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import org.ijsberg.iglu.configuration.MethodSelector;
+import org.ijsberg.iglu.configuration.jfr.InterceptionEvent;
+import org.ijsberg.iglu.configuration.jfr.InvocationEvent;
+import org.ijsberg.iglu.util.metrics.InvocationMetrics;
+import org.ijsberg.iglu.util.tracing.Span;
+import org.ijsberg.iglu.util.tracing.Tracer;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Invocation handler for proxies of one interface of a component.
+ * The target method handle and interceptor chain of every method are resolved
+ * when the table is built, so an invocation takes a single lookup.
+ * Methods that are not intercepted are invoked directly.
+ * The table must be rebuilt if the interceptors of the component change;
+ * a rebuilt table is published at once, so an invocation uses either the old or the new table.
+ */
+class DispatchTable implements InvocationHandler {
+
+	private static final MethodType GENERIC_INVOCATION_TYPE = MethodType.methodType(Object.class, Object[].class);
+	private static final Method[] OBJECT_METHODS = getObjectMethods();
+
+	private final Class<?> interfaceClass;
+	private volatile Table table;
+
+	/**
+	 * @param interfaceClass
+	 * @param implementation
+	 * @param interceptions interceptor chains by intercepted interface
+	 * @param inFlightInvocations counts invocations made through the table
+	 * @param metricsByMethod metrics to record invocations of interface methods in, or null
+	 * @param instrumentation identifies and traces invocations of interface methods
+	 */
+	DispatchTable(Class<?> interfaceClass, Object implementation, Map<Class<?>, List<Interception>> interceptions,
+				  InFlightInvocations inFlightInvocations, ConcurrentMap<Method, InvocationMetrics> metricsByMethod, Instrumentation instrumentation) {
+		this.interfaceClass = interfaceClass;
+		build(implementation, interceptions, inFlightInvocations, metricsByMethod, instrumentation);
+	}
+
+	/**
+	 * Resolves targets and compiles interceptor chains for all methods of the interface.
+	 * Invocations that started before the table was rebuilt keep using, and are counted by, the previous table.
+	 *
+	 * @param implementation
+	 * @param interceptions interceptor chains by intercepted interface
+	 * @param inFlightInvocations counts invocations made through the table
+	 * @param metricsByMethod metrics to record invocations of interface methods in, or null
+	 * @param instrumentation identifies and traces invocations of interface methods
+	 */
+	void build(Object implementation, Map<Class<?>, List<Interception>> interceptions, InFlightInvocations inFlightInvocations,
+			   ConcurrentMap<Method, InvocationMetrics> metricsByMethod, Instrumentation instrumentation) {
+		Map<Class<?>, List<Interception>> interceptionsCopy = new HashMap<Class<?>, List<Interception>>();
+		for (Map.Entry<Class<?>, List<Interception>> entry : interceptions.entrySet()) {
+			interceptionsCopy.put(entry.getKey(), new ArrayList<Interception>(entry.getValue()));
+		}
+		Map<Method, MethodDispatch> dispatchByMethod = new HashMap<Method, MethodDispatch>();
+		boolean intercepted = false;
+		for (Method method : interfaceClass.getMethods()) {
+			MethodDispatch dispatch = createDispatch(method, implementation, interceptionsCopy, getMetrics(metricsByMethod, method), instrumentation);
+			intercepted |= dispatch.isIntercepted();
+			dispatchByMethod.put(method, dispatch);
+		}
+		//methods of Object passed by java.lang.reflect.Proxy
+		for (Method method : OBJECT_METHODS) {
+			dispatchByMethod.put(method, createDispatch(method, implementation, interceptionsCopy, null, null));
+		}
+		this.table = new Table(dispatchByMethod, implementation, interceptionsCopy, intercepted, inFlightInvocations);
+	}
+
+	/**
+	 * @return true if any method of the interface is intercepted
+	 */
+	boolean isIntercepted() {
+		return table.intercepted;
+	}
+
+	/**
+	 * @param method
+	 * @return true if invocations of the method are intercepted
+	 */
+	boolean isIntercepted(Method method) {
+		MethodDispatch dispatch = table.dispatchByMethod.get(method);
+		return dispatch != null && dispatch.isIntercepted();
+	}
+
+	private static InvocationMetrics getMetrics(ConcurrentMap<Method, InvocationMetrics> metricsByMethod, Method method) {
+		if (metricsByMethod == null) {
+			return null;
+		}
+		InvocationMetrics metrics = metricsByMethod.get(method);
+		if (metrics == null) {
+			metrics = new InvocationMetrics(method);
+			InvocationMetrics existingMetrics = metricsByMethod.putIfAbsent(method, metrics);
+			if (existingMetrics != null) {
+				metrics = existingMetrics;
+			}
+		}
+		return metrics;
+	}
+
+	private static Method[] getObjectMethods() {
+		try {
+			return new Method[]{
+					Object.class.getMethod("equals", Object.class),
+					Object.class.getMethod("hashCode"),
+					Object.class.getMethod("toString")};
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Interceptors registered for the proxied interface take precedence over
+	 * interceptors registered for the interface that declares the method.
+	 */
+	private MethodDispatch createDispatch(Method method, Object implementation, Map<Class<?>, List<Interception>> interceptions,
+										  InvocationMetrics metrics, Instrumentation instrumentation) {
+		List<InvocationHandler> chain = selectInterceptors(interceptions.get(interfaceClass), method);
+		if (chain.isEmpty()) {
+			chain = selectInterceptors(interceptions.get(method.getDeclaringClass()), method);
+		}
+		MethodHandle methodHandle = createMethodHandle(method, implementation);
+		if (chain.isEmpty()) {
+			return new MethodDispatch(method, implementation, methodHandle, null, null, metrics, instrumentation);
+		}
+		//every interceptor but the last one invokes the next through a proxy
+		Class<?> chainInterface = method.getDeclaringClass().isInterface() ? method.getDeclaringClass() : interfaceClass;
+		Object target = implementation;
+		for (int i = chain.size() - 1; i > 0; i--) {
+			target = Proxy.newProxyInstance(chainInterface.getClassLoader(), new Class<?>[]{chainInterface},
+					new ChainLink(chain.get(i), target, instrumentation));
+		}
+		return new MethodDispatch(method, implementation, methodHandle, chain.get(0), target, metrics, instrumentation);
+	}
+
+	private static List<InvocationHandler> selectInterceptors(List<Interception> interceptions, Method method) {
+		if (interceptions == null) {
+			return Collections.emptyList();
+		}
+		List<InvocationHandler> chain = new ArrayList<InvocationHandler>();
+		for (Interception interception : interceptions) {
+			if (interception.methodSelector.selects(method)) {
+				chain.add(interception.interceptor);
+			}
+		}
+		return chain;
+	}
+
+	private static MethodHandle createMethodHandle(Method method, Object implementation) {
+		try {
+			return MethodHandles.publicLookup().unreflect(method).bindTo(implementation)
+					.asSpreader(Object[].class, method.getParameterTypes().length)
+					.asType(GENERIC_INVOCATION_TYPE);
+		} catch (IllegalAccessException e) {
+			//method will be invoked by reflection
+			return null;
+		}
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] parameters) throws Throwable {
+		Table table = this.table;
+		MethodDispatch dispatch = table.dispatchByMethod.get(method);
+		if (dispatch == null) {
+			//method not declared by interface, but still implemented
+			dispatch = createDispatch(method, table.implementation, table.interceptions, null, null);
+		}
+		table.inFlightInvocations.enter();
+		try {
+			return dispatch.invoke(parameters);
+		} finally {
+			table.inFlightInvocations.exit();
+		}
+	}
+
+	/**
+	 * Immutable state of a built table.
+	 */
+	private static class Table {
+
+		private final Map<Method, MethodDispatch> dispatchByMethod;
+		private final Object implementation;
+		private final Map<Class<?>, List<Interception>> interceptions;
+		private final boolean intercepted;
+		private final InFlightInvocations inFlightInvocations;
+
+		Table(Map<Method, MethodDispatch> dispatchByMethod, Object implementation,
+			  Map<Class<?>, List<Interception>> interceptions, boolean intercepted, InFlightInvocations inFlightInvocations) {
+			this.dispatchByMethod = dispatchByMethod;
+			this.implementation = implementation;
+			this.interceptions = interceptions;
+			this.intercepted = intercepted;
+			this.inFlightInvocations = inFlightInvocations;
+		}
+	}
+
+	/**
+	 * ID under which invocations of the component are recorded and traced, and the tracer if it is traced.
+	 */
+	static class Instrumentation {
+
+		private final String componentId;
+		private final Tracer tracer;
+
+		Instrumentation(String componentId, Tracer tracer) {
+			this.componentId = componentId;
+			this.tracer = tracer;
+		}
+
+		String getComponentId() {
+			return componentId;
+		}
+
+		Tracer getTracer() {
+			return tracer;
+		}
+	}
+
+	/**
+	 * Interceptor that applies to selected methods.
+	 */
+	static class Interception {
+
+		private final MethodSelector methodSelector;
+		private final InvocationHandler interceptor;
+
+		Interception(MethodSelector methodSelector, InvocationHandler interceptor) {
+			this.methodSelector = methodSelector;
+			this.interceptor = interceptor;
+		}
+	}
+
+	/**
+	 * Passes an invocation to an interceptor further down a chain.
+	 */
+	private static class ChainLink implements InvocationHandler {
+
+		private final InvocationHandler interceptor;
+		private final Object target;
+		private final Instrumentation instrumentation;
+
+		ChainLink(InvocationHandler interceptor, Object target, Instrumentation instrumentation) {
+			this.interceptor = interceptor;
+			this.target = target;
+			this.instrumentation = instrumentation;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] parameters) throws Throwable {
+			return intercept(interceptor, target, method, parameters, instrumentation);
+		}
+	}
+
+	/**
+	 * Emits an interception event if the execution of the interceptor exceeds the recording's threshold.
+	 */
+	private static Object intercept(InvocationHandler interceptor, Object target, Method method, Object[] parameters,
+									Instrumentation instrumentation) throws Throwable {
+		InterceptionEvent event = new InterceptionEvent();
+		event.begin();
+		try {
+			return interceptor.invoke(target, method, parameters);
+		} finally {
+			event.end();
+			if (event.shouldCommit() && instrumentation != null) {
+				event.setInvocation(instrumentation.getComponentId(), method);
+				event.setIntercepter(interceptor);
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Pre-resolved invocation of a single method.
+	 */
+	static class MethodDispatch {
+
+		private final Method method;
+		private final Object implementation;
+		private final MethodHandle methodHandle;
+		private final InvocationHandler interceptor;
+		private final Object interceptorTarget;
+		private final InvocationMetrics metrics;
+		private final Instrumentation instrumentation;
+
+		MethodDispatch(Method method, Object implementation, MethodHandle methodHandle,
+					   InvocationHandler interceptor, Object interceptorTarget, InvocationMetrics metrics, Instrumentation instrumentation) {
+			this.method = method;
+			this.implementation = implementation;
+			this.methodHandle = methodHandle;
+			this.interceptor = interceptor;
+			this.interceptorTarget = interceptorTarget;
+			this.metrics = metrics;
+			this.instrumentation = instrumentation;
+		}
+
+		boolean isIntercepted() {
+			return interceptor != null;
+		}
+
+		/**
+		 * Invocations are recorded, traced and emitted as Flight Recorder events including the interceptors they pass.
+		 * An invocation event is only emitted if the invocation exceeds the recording's threshold.
+		 */
+		Object invoke(Object[] parameters) throws Throwable {
+			if (instrumentation == null) {
+				return invokeMeasured(parameters);
+			}
+			InvocationEvent event = new InvocationEvent();
+			event.begin();
+			try {
+				return invokeTraced(parameters);
+			} finally {
+				event.end();
+				if (event.shouldCommit()) {
+					event.setInvocation(instrumentation.componentId, method);
+					event.commit();
+				}
+			}
+		}
+
+		private Object invokeTraced(Object[] parameters) throws Throwable {
+			if (instrumentation.tracer == null) {
+				return invokeMeasured(parameters);
+			}
+			Span span = instrumentation.tracer.start(instrumentation.componentId, method);
+			try {
+				return invokeMeasured(parameters);
+			} finally {
+				if (span != null) {
+					instrumentation.tracer.end(span);
+				}
+			}
+		}
+
+		private Object invokeMeasured(Object[] parameters) throws Throwable {
+			if (metrics == null) {
+				return invokeTarget(parameters);
+			}
+			long startNanos = metrics.enter();
+			boolean failed = true;
+			try {
+				Object result = invokeTarget(parameters);
+				failed = false;
+				return result;
+			} finally {
+				metrics.exit(startNanos, failed);
+			}
+		}
+
+		private Object invokeTarget(Object[] parameters) throws Throwable {
+			if (interceptor == null && methodHandle != null) {
+				return (Object) methodHandle.invokeExact(parameters);
+			}
+			try {
+				if (interceptor != null) {
+					return intercept(interceptor, interceptorTarget, method, parameters, instrumentation);
+				}
+				return method.invoke(implementation, parameters);
+			} catch (Throwable t) {
+				while ((t instanceof UndeclaredThrowableException || t instanceof InvocationTargetException) && (t = t.getCause()) != null) {}
+				throw t;
+			}
+		}
+	}
+}
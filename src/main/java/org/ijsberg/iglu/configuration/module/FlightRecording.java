@@ -0,0 +1,94 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import org.ijsberg.iglu.configuration.jfr.InvocationEvent;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of whether a Flight Recorder recording records invocation events.
+ * Generated proxies invoke embedded objects directly, so components that created them
+ * are notified to route invocations through their dispatch tables, where the events are emitted,
+ * while invocation events are enabled.
+ * The state is checked whenever a recording starts or stops.
+ */
+final class FlightRecording {
+
+	//weak references are equal by identity, so components that embed the same object are kept apart
+	private static final Set<Reference<StandardComponent>> componentsWithGeneratedProxies =
+			ConcurrentHashMap.newKeySet();
+	private static final ReferenceQueue<StandardComponent> collectedComponents = new ReferenceQueue<StandardComponent>();
+	private static volatile boolean recordingInvocations;
+
+	static {
+		FlightRecorder.addListener(new FlightRecorderListener() {
+			@Override
+			public void recordingStateChanged(Recording recording) {
+				update();
+			}
+		});
+		//a recording may have been started with the JVM
+		recordingInvocations = new InvocationEvent().isEnabled();
+	}
+
+	private FlightRecording() {
+	}
+
+	/**
+	 * @return true if a recording records invocation events
+	 */
+	static boolean isRecordingInvocations() {
+		return recordingInvocations;
+	}
+
+	/**
+	 * Must be called once per component.
+	 *
+	 * @param component component that routes invocations of generated proxies depending on the recording state
+	 */
+	static void register(StandardComponent component) {
+		Reference<?> collectedComponent;
+		while ((collectedComponent = collectedComponents.poll()) != null) {
+			componentsWithGeneratedProxies.remove(collectedComponent);
+		}
+		componentsWithGeneratedProxies.add(new WeakReference<StandardComponent>(component, collectedComponents));
+	}
+
+	private static synchronized void update() {
+		boolean recordingInvocations = new InvocationEvent().isEnabled();
+		if (recordingInvocations != FlightRecording.recordingInvocations) {
+			FlightRecording.recordingInvocations = recordingInvocations;
+			for (Reference<StandardComponent> reference : componentsWithGeneratedProxies) {
+				StandardComponent component = reference.get();
+				if (component != null) {
+					component.updateRouting();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts invocations that are in progress.
+ * Started and completed invocations are counted separately by striped counters,
+ * so that counting does not make concurrent invocations contend.
+ */
+class InFlightInvocations {
+
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private final LongAdder started = new LongAdder();
+	private final LongAdder completed = new LongAdder();
+
+	void enter() {
+		started.increment();
+	}
+
+	void exit() {
+		completed.increment();
+	}
+
+	/**
+	 * @return number of invocations in progress; only exact when invocations are not started concurrently
+	 */
+	long getCount() {
+		//both counters only grow, so reading completed first never yields a negative count
+		long completedCount = completed.sum();
+		return started.sum() - completedCount;
+	}
+
+	/**
+	 * Waits until there has been a moment at which no invocations were in progress.
+	 *
+	 * @param timeout
+	 * @param unit
+	 * @return false if the timeout passed first
+	 */
+	boolean awaitNone(long timeout, TimeUnit unit) {
+		return awaitNone(new LongSupplier() {
+			public long getAsLong() {
+				return getCount();
+			}
+		}, timeout, unit);
+	}
+
+	/**
+	 * Waits until there has been a moment at which the count was zero.
+	 *
+	 * @param count
+	 * @param timeout
+	 * @param unit
+	 * @return false if the timeout passed first
+	 */
+	static boolean awaitNone(LongSupplier count, long timeout, TimeUnit unit) {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		long parkNanos = 10000;
+		while (count.getAsLong() != 0) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+				return false;
+			}
+			LockSupport.parkNanos(Math.min(parkNanos, remaining));
+			parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+		}
+		return true;
+	}
+}
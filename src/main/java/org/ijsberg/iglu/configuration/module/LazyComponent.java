@@ -0,0 +1,930 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import org.ijsberg.iglu.configuration.Component;
+import org.ijsberg.iglu.configuration.ConfigurationException;
+import org.ijsberg.iglu.configuration.Facade;
+import org.ijsberg.iglu.configuration.MethodSelector;
+import org.ijsberg.iglu.util.metrics.InvocationMetrics;
+import org.ijsberg.iglu.util.tracing.Tracer;
+import org.ijsberg.iglu.util.reflection.DelegateReference;
+import org.ijsberg.iglu.util.reflection.ProxyClassGenerator;
+import org.ijsberg.iglu.util.reflection.ReflectionSupport;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Component of which the embedded object is only created when one of its methods is first invoked.
+ * Until then, proxies handed out by the component pass invocations to the component itself,
+ * while properties, references, listeners and intercepters are recorded.
+ * Only the latest configuration is recorded per property, reference, listener and setting.
+ * Upon the first invocation the object is created, embedded in a StandardComponent,
+ * and the recorded configuration is applied to that component in the original order.
+ * This happens outside of the component's monitor, so that other threads are not blocked
+ * by it unless they need the object as well, in which case they wait for its creation to finish.
+ * From then on, the component delegates everything to the standard component,
+ * and generated proxies handed out earlier delegate to proxies of the standard component.
+ */
+public class LazyComponent implements Component, ProxyTarget {
+
+	//lazy components that threads wait for to be instantiated by another thread
+	private static final Map<Thread, LazyComponent> awaitedComponentsByThread = new HashMap<Thread, LazyComponent>();
+
+	private final Class<?> implementationClass;
+	private final Supplier<?> implementationSupplier;
+	private final Class<?>[] interfaces;
+
+	private volatile StandardComponent component;
+	private Map<Object, Operation> pendingOperations = new LinkedHashMap<Object, Operation>();
+	private CompletableFuture<StandardComponent> instantiation;
+	private volatile Thread instantiatingThread;
+	private boolean startPending;
+	private boolean directProxiesRevoked;
+	private volatile boolean metricsEnabled;
+
+	private volatile Properties properties;
+	//latest value per key of all properties set or updated before the object was created
+	private Properties injectedProperties;
+	//references of generated proxies handed out before the object was created
+	private Set<LazyReference> lazyReferences = Collections.newSetFromMap(new WeakHashMap<LazyReference, Boolean>());
+	private volatile Executor executor = ForkJoinPool.commonPool();
+	private volatile Map<Class<?>, Object> proxiesByInterface = CopyOnWrite.emptyMap();
+
+	/**
+	 * The class is loaded, but not initialized, right away.
+	 *
+	 * @param className class of the object to create
+	 * @param initArgs  arguments for the constructor of the class
+	 * @throws ConfigurationException if the class can not be found
+	 * @see ReflectionSupport#instantiateClass(Class, Object...)
+	 */
+	public LazyComponent(String className, Object... initArgs) {
+		this(loadClass(className), initArgs);
+	}
+
+	/**
+	 * @param implementationClass class of the object to create
+	 * @param initArgs            arguments for the constructor of the class
+	 * @see ReflectionSupport#instantiateClass(Class, Object...)
+	 */
+	public LazyComponent(final Class<?> implementationClass, final Object... initArgs) {
+		this(new Supplier<Object>() {
+			public Object get() {
+				try {
+					return ReflectionSupport.instantiateClass(implementationClass, initArgs);
+				} catch (InstantiationException e) {
+					throw new ConfigurationException("can not instantiate " + implementationClass.getName(), e);
+				}
+			}
+		}, implementationClass);
+	}
+
+	/**
+	 * @param implementationClass class of the object the supplier creates
+	 * @param supplier            creates the object to embed
+	 */
+	public <T> LazyComponent(Class<T> implementationClass, Supplier<? extends T> supplier) {
+		this(supplier, implementationClass);
+	}
+
+	private LazyComponent(Supplier<?> supplier, Class<?> implementationClass) {
+		if (implementationClass == null || supplier == null) {
+			throw new NullPointerException("implementation class and supplier can not be null");
+		}
+		this.implementationClass = implementationClass;
+		this.implementationSupplier = supplier;
+		this.interfaces = ReflectionSupport.getInterfacesForClass(implementationClass).toArray(new Class<?>[0]);
+	}
+
+	private static Class<?> loadClass(String className) {
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		try {
+			return Class.forName(className, false, classLoader != null ? classLoader : LazyComponent.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new ConfigurationException("class " + className + " can not be found", e);
+		}
+	}
+
+	/**
+	 * @return true if the embedded object has been created
+	 */
+	public boolean isInstantiated() {
+		return component != null;
+	}
+
+	/**
+	 * @return number of operations recorded to be applied once the embedded object is created
+	 */
+	synchronized int getNrofPendingOperations() {
+		return pendingOperations != null ? pendingOperations.size() : 0;
+	}
+
+	/**
+	 * Creates the embedded object, unless this has been done already.
+	 * If another thread is creating it, waits until that thread is done.
+	 *
+	 * @return the component that embeds the object
+	 * @throws ConfigurationException if the object can not be created or configured,
+	 * or if it is needed while it is being configured, directly or by waiting for another lazy component
+	 */
+	public StandardComponent instantiate() {
+		StandardComponent component = this.component;
+		if (component != null) {
+			return component;
+		}
+		CompletableFuture<StandardComponent> instantiation;
+		synchronized (this) {
+			if (this.component != null) {
+				return this.component;
+			}
+			if (this.instantiation != null) {
+				instantiation = this.instantiation;
+			} else {
+				instantiation = null;
+				this.instantiation = new CompletableFuture<StandardComponent>();
+				instantiatingThread = Thread.currentThread();
+			}
+		}
+		if (instantiation != null) {
+			return awaitInstantiation(instantiation);
+		}
+		Map<Object, Operation> appliedOperations = new LinkedHashMap<Object, Operation>();
+		try {
+			component = createComponent(appliedOperations);
+			this.instantiation.complete(component);
+			return component;
+		} catch (RuntimeException e) {
+			failInstantiation(e, appliedOperations);
+			throw e;
+		} catch (Error e) {
+			failInstantiation(e, appliedOperations);
+			throw e;
+		} finally {
+			instantiatingThread = null;
+		}
+	}
+
+	/**
+	 * Lets threads that wait for the object fail, while a later invocation may try to create it again.
+	 * Operations that were applied are recorded again, ahead of operations recorded meanwhile.
+	 */
+	private void failInstantiation(Throwable cause, Map<Object, Operation> appliedOperations) {
+		CompletableFuture<StandardComponent> instantiation;
+		synchronized (this) {
+			Map<Object, Operation> operations = new LinkedHashMap<Object, Operation>(appliedOperations);
+			for (Map.Entry<Object, Operation> entry : pendingOperations.entrySet()) {
+				Operation operation = operations.remove(entry.getKey());
+				operations.put(entry.getKey(), OperationSequence.append(operation, entry.getValue()));
+			}
+			pendingOperations = operations;
+			instantiation = this.instantiation;
+			this.instantiation = null;
+		}
+		instantiation.completeExceptionally(cause);
+	}
+
+	/**
+	 * Creates the object and applies recorded operations to it, including operations that are
+	 * recorded meanwhile, and publishes the component once no operations are pending.
+	 *
+	 * @param appliedOperations receives the operations that are applied
+	 */
+	private StandardComponent createComponent(Map<Object, Operation> appliedOperations) {
+		Object implementation = implementationSupplier.get();
+		if (!implementationClass.isInstance(implementation)) {
+			throw new ConfigurationException("supplied object " + implementation + " is not an instance of " + implementationClass.getName());
+		}
+		StandardComponent component = new StandardComponent(implementation);
+		while (true) {
+			List<Operation> operations;
+			boolean start;
+			synchronized (this) {
+				operations = new ArrayList<Operation>(pendingOperations.values());
+				for (Map.Entry<Object, Operation> entry : pendingOperations.entrySet()) {
+					Operation operation = appliedOperations.remove(entry.getKey());
+					appliedOperations.put(entry.getKey(), OperationSequence.append(operation, entry.getValue()));
+				}
+				pendingOperations.clear();
+				start = startPending;
+				if (operations.isEmpty() && start == component.isStarted()) {
+					return publish(component);
+				}
+			}
+			for (Operation operation : operations) {
+				operation.apply(component);
+			}
+			//the object is started once it is configured
+			if (operations.isEmpty()) {
+				if (start) {
+					component.start();
+				} else {
+					component.stop();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hands over to the component and directs generated proxies handed out earlier to it.
+	 */
+	private StandardComponent publish(StandardComponent component) {
+		Set<LazyReference> lazyReferences;
+		boolean directProxiesRevoked;
+		synchronized (this) {
+			lazyReferences = this.lazyReferences;
+			directProxiesRevoked = this.directProxiesRevoked;
+			pendingOperations = null;
+			injectedProperties = null;
+			this.lazyReferences = null;
+			proxiesByInterface = CopyOnWrite.emptyMap();
+			this.component = component;
+		}
+		//until retargeted, generated proxies handed out earlier pass this component, which passes the invocations on
+		retargetLazyReferences(component, lazyReferences, directProxiesRevoked);
+		return component;
+	}
+
+	/**
+	 * Waits until another thread has created the object.
+	 *
+	 * @throws ConfigurationException if that thread waits for the current thread, directly or indirectly,
+	 * or if the object could not be created
+	 */
+	private StandardComponent awaitInstantiation(CompletableFuture<StandardComponent> instantiation) {
+		Thread currentThread = Thread.currentThread();
+		synchronized (awaitedComponentsByThread) {
+			LazyComponent awaitedComponent = this;
+			while (awaitedComponent != null) {
+				Thread thread = awaitedComponent.instantiatingThread;
+				if (thread == null) {
+					break;
+				}
+				if (thread == currentThread) {
+					throw new ConfigurationException("component with impl. " + implementationClass.getName() + " needed during its own instantiation");
+				}
+				awaitedComponent = awaitedComponentsByThread.get(thread);
+			}
+			awaitedComponentsByThread.put(currentThread, this);
+		}
+		try {
+			return instantiation.join();
+		} catch (CompletionException e) {
+			throw new ConfigurationException("component with impl. " + implementationClass.getName() + " could not be instantiated", e.getCause());
+		} finally {
+			synchronized (awaitedComponentsByThread) {
+				awaitedComponentsByThread.remove(currentThread);
+			}
+		}
+	}
+
+	/**
+	 * Directs generated proxies handed out earlier to proxies of the standard component,
+	 * so that their invocations no longer pass this component.
+	 */
+	private void retargetLazyReferences(StandardComponent component, Set<LazyReference> lazyReferences, boolean directProxiesRevoked) {
+		Map<Class<?>, Object> proxiesByInterface = new HashMap<Class<?>, Object>();
+		Map<Class<?>, Object> directProxiesByInterface = new HashMap<Class<?>, Object>();
+		for (LazyReference reference : new ArrayList<LazyReference>(lazyReferences)) {
+			Map<Class<?>, Object> targets = reference.direct ? directProxiesByInterface : proxiesByInterface;
+			Object target = targets.get(reference.interfaceClass);
+			if (target == null) {
+				target = reference.direct ? component.createDirectProxy(reference.interfaceClass) : component.getProxy(reference.interfaceClass);
+				targets.put(reference.interfaceClass, target);
+			}
+			reference.retarget(target);
+		}
+		if (directProxiesRevoked) {
+			component.revokeDirectProxies();
+		}
+	}
+
+	/**
+	 * Records an operation, which replaces an operation recorded earlier under the same key.
+	 *
+	 * @param key identifies what the operation configures
+	 * @param operation operation to record, or null to only discard the operation recorded earlier
+	 * @return false if the operation must be applied to the standard component
+	 */
+	private synchronized boolean record(Object key, Operation operation) {
+		if (component != null) {
+			return false;
+		}
+		pendingOperations.remove(key);
+		if (operation != null) {
+			pendingOperations.put(key, operation);
+		}
+		return true;
+	}
+
+	/**
+	 * Discards the operation recorded under a key. While the object is being created,
+	 * that operation may have been applied already, so an operation that undoes it is recorded instead.
+	 *
+	 * @return false if the undoing operation must be applied to the standard component
+	 */
+	private synchronized boolean discard(Object key, Operation undoingOperation) {
+		return record(key, instantiation != null ? undoingOperation : null);
+	}
+
+	/**
+	 * Records an operation on the interceptors of an interface.
+	 *
+	 * @param replacing true if the operation replaces all interceptors of the interface,
+	 * which discards operations on them recorded earlier
+	 * @return false if the operation must be applied to the standard component
+	 */
+	private synchronized boolean recordInterception(Class<?> interfaceClass, boolean replacing, Operation operation) {
+		if (component != null) {
+			return false;
+		}
+		Object key = getKey("interception", interfaceClass);
+		OperationSequence operations = replacing ? null : (OperationSequence) pendingOperations.get(key);
+		if (operations == null) {
+			operations = new OperationSequence(replacing);
+		}
+		operations.operations.add(operation);
+		return record(key, operations);
+	}
+
+	private static Object getKey(String operationName, Object subject) {
+		return Arrays.asList(operationName, subject);
+	}
+
+	@Override
+	public void setProperties(final Properties properties) {
+		if (!recordProperties(properties)) {
+			component.setProperties(properties);
+		}
+	}
+
+	@Override
+	public Set<String> updateProperties(final Properties properties) {
+		synchronized (this) {
+			if (component == null) {
+				Set<String> changedKeys = StandardComponent.getChangedKeys(this.properties, properties);
+				recordProperties(properties);
+				return changedKeys;
+			}
+		}
+		return component.updateProperties(properties);
+	}
+
+	/**
+	 * Property keys removed by an update are not injected again, so their latest values are kept as well.
+	 *
+	 * @return false if the properties must be applied to the standard component
+	 */
+	private synchronized boolean recordProperties(Properties properties) {
+		if (component != null) {
+			return false;
+		}
+		if (injectedProperties == null) {
+			injectedProperties = new Properties();
+		}
+		injectedProperties.putAll(properties);
+		this.properties = properties;
+		record("properties", new Operation() {
+			public void apply(StandardComponent component) {
+				applyProperties(component);
+			}
+		});
+		return true;
+	}
+
+	private void applyProperties(StandardComponent component) {
+		if (injectedProperties.size() == properties.size()) {
+			component.setProperties(properties);
+		} else {
+			component.setProperties(injectedProperties);
+			component.updateProperties(properties);
+		}
+	}
+
+	@Override
+	public Properties getProperties() {
+		StandardComponent component = this.component;
+		return component != null ? component.getProperties() : properties;
+	}
+
+	@Override
+	public Class<?>[] getInterfaces() {
+		return interfaces;
+	}
+
+	@Override
+	public <T> T createProxy(Class<T> interfaceClass) {
+		StandardComponent component = this.component;
+		if (component != null) {
+			return component.createProxy(interfaceClass);
+		}
+		return createLazyProxy(interfaceClass, false);
+	}
+
+	/**
+	 * @return a generated proxy that is retargeted once the object is created,
+	 * or a proxy that passes this component if the interface can not be proxied by a generated class
+	 */
+	private synchronized <T> T createLazyProxy(Class<T> interfaceClass, boolean direct) {
+		if (component != null) {
+			return direct ? component.createDirectProxy(interfaceClass) : component.createProxy(interfaceClass);
+		}
+		checkInterfaceValidity(interfaceClass);
+		T lazyProxy = interfaceClass.cast(Proxy.newProxyInstance(interfaceClass.getClassLoader(), new Class<?>[]{interfaceClass},
+				new LazyInvocationHandler(interfaceClass)));
+		LazyReference reference = new LazyReference(interfaceClass, direct);
+		T proxy = ProxyClassGenerator.createProxy(interfaceClass, implementationClass, reference);
+		if (proxy == null) {
+			return lazyProxy;
+		}
+		reference.identity = new ProxyIdentity(proxy);
+		reference.retarget(lazyProxy);
+		lazyReferences.add(reference);
+		if (direct) {
+			directProxiesRevoked = false;
+		}
+		return proxy;
+	}
+
+	@Override
+	public <T> T getProxy(Class<T> interfaceClass) {
+		Object proxy = proxiesByInterface.get(interfaceClass);
+		if (proxy != null) {
+			return interfaceClass.cast(proxy);
+		}
+		StandardComponent component = this.component;
+		if (component != null) {
+			return component.getProxy(interfaceClass);
+		}
+		synchronized (this) {
+			if (this.component != null) {
+				return this.component.getProxy(interfaceClass);
+			}
+			proxy = proxiesByInterface.get(interfaceClass);
+			if (proxy == null) {
+				proxy = createProxy(interfaceClass);
+				proxiesByInterface = CopyOnWrite.put(proxiesByInterface, interfaceClass, proxy);
+			}
+			return interfaceClass.cast(proxy);
+		}
+	}
+
+	/**
+	 * Until the embedded object is created, direct proxies pass this component, like regular proxies.
+	 */
+	@Override
+	public <T> T createDirectProxy(Class<T> interfaceClass) {
+		StandardComponent component = this.component;
+		return component != null ? component.createDirectProxy(interfaceClass) : createLazyProxy(interfaceClass, true);
+	}
+
+	@Override
+	public void revokeDirectProxies() {
+		synchronized (this) {
+			if (component == null) {
+				directProxiesRevoked = true;
+				return;
+			}
+		}
+		component.revokeDirectProxies();
+	}
+
+	@Override
+	public void setReference(final Facade facade, final String componentId, final Class<?>... interfaces) {
+		if (!record(getKey("reference", componentId), new Operation() {
+			public void apply(StandardComponent component) {
+				component.setReference(facade, componentId, interfaces);
+			}
+		})) {
+			component.setReference(facade, componentId, interfaces);
+		}
+	}
+
+	@Override
+	public Set<String> getReferenceKeys() {
+		return StandardComponent.getReferenceKeys(implementationClass);
+	}
+
+	@Override
+	public boolean acceptsListeners() {
+		return StandardComponent.acceptsListeners(implementationClass);
+	}
+
+	@Override
+	public void removeDependency(final String componentId) {
+		if (!discard(getKey("reference", componentId), new Operation() {
+			public void apply(StandardComponent component) {
+				component.removeDependency(componentId);
+			}
+		})) {
+			component.removeDependency(componentId);
+		}
+	}
+
+	@Override
+	public void register(final Component listener) {
+		if (!record(getKey("listener", listener), new Operation() {
+			public void apply(StandardComponent component) {
+				component.register(listener);
+			}
+		})) {
+			component.register(listener);
+		}
+	}
+
+	@Override
+	public void unregister(final Component listener) {
+		if (!discard(getKey("listener", listener), new Operation() {
+			public void apply(StandardComponent component) {
+				component.unregister(listener);
+			}
+		})) {
+			component.unregister(listener);
+		}
+	}
+
+	/**
+	 * @param componentId
+	 * @return interfaces injected by setter, which are none until the embedded object is created
+	 */
+	@Override
+	public Set<Class<?>> getInjectedInterfaces(String componentId) {
+		StandardComponent component = this.component;
+		return component != null ? component.getInjectedInterfaces(componentId) : new HashSet<Class<?>>();
+	}
+
+	@Override
+	public void setInvocationIntercepter(final Class<?> interfaceClass, final InvocationHandler interceptor) {
+		if (!recordInterception(interfaceClass, true, new Operation() {
+			public void apply(StandardComponent component) {
+				component.setInvocationIntercepter(interfaceClass, interceptor);
+			}
+		})) {
+			component.setInvocationIntercepter(interfaceClass, interceptor);
+		}
+	}
+
+	@Override
+	public void addInvocationIntercepter(final Class<?> interfaceClass, final MethodSelector methodSelector, final InvocationHandler interceptor) {
+		if (!recordInterception(interfaceClass, false, new Operation() {
+			public void apply(StandardComponent component) {
+				component.addInvocationIntercepter(interfaceClass, methodSelector, interceptor);
+			}
+		})) {
+			component.addInvocationIntercepter(interfaceClass, methodSelector, interceptor);
+		}
+	}
+
+	@Override
+	public Object invoke(String methodName, Object... parameters) throws InvocationTargetException, NoSuchMethodException, IllegalArgumentException {
+		return instantiate().invoke(methodName, parameters);
+	}
+
+	@Override
+	public CompletableFuture<Object> invokeAsync(final String methodName, final Object... parameters) {
+		StandardComponent component = this.component;
+		if (component != null) {
+			return component.invokeAsync(methodName, parameters);
+		}
+		return instantiateAsync().thenCompose(new Function<StandardComponent, CompletableFuture<Object>>() {
+			public CompletableFuture<Object> apply(StandardComponent component) {
+				return component.invokeAsync(methodName, parameters);
+			}
+		});
+	}
+
+	@Override
+	public <T> T createAsyncProxy(Class<T> asyncInterfaceClass) {
+		if (!asyncInterfaceClass.isInterface()) {
+			throw new IllegalArgumentException("class " + asyncInterfaceClass.getName() + " is not an interface");
+		}
+		return asyncInterfaceClass.cast(Proxy.newProxyInstance(asyncInterfaceClass.getClassLoader(), new Class<?>[]{asyncInterfaceClass},
+				new AsyncInvocationHandler(this, asyncInterfaceClass)));
+	}
+
+	@Override
+	public void setExecutor(final Executor executor) {
+		if (executor == null) {
+			throw new NullPointerException("executor can not be null");
+		}
+		this.executor = executor;
+		if (!record("executor", new Operation() {
+			public void apply(StandardComponent component) {
+				component.setExecutor(executor);
+			}
+		})) {
+			component.setExecutor(executor);
+		}
+	}
+
+	@Override
+	public Executor getExecutor() {
+		StandardComponent component = this.component;
+		return component != null ? component.getExecutor() : executor;
+	}
+
+	@Override
+	public boolean implementsInterface(Class<?> interfaceClass) {
+		return interfaceClass.isAssignableFrom(implementationClass);
+	}
+
+	/**
+	 * Does not create the embedded object, but lets it be started as soon as it is created.
+	 */
+	@Override
+	public void start() {
+		synchronized (this) {
+			if (component == null) {
+				startPending = true;
+				return;
+			}
+		}
+		component.start();
+	}
+
+	@Override
+	public void stop() {
+		synchronized (this) {
+			if (component == null) {
+				startPending = false;
+				return;
+			}
+		}
+		component.stop();
+	}
+
+	/**
+	 * Applies to the embedded object as soon as it is created.
+	 */
+	@Override
+	public void setMetricsEnabled(final boolean metricsEnabled) {
+		synchronized (this) {
+			if (component == null) {
+				this.metricsEnabled = metricsEnabled;
+			}
+		}
+		if (!record("metricsEnabled", new Operation() {
+			public void apply(StandardComponent component) {
+				component.setMetricsEnabled(metricsEnabled);
+			}
+		})) {
+			component.setMetricsEnabled(metricsEnabled);
+		}
+	}
+
+	@Override
+	public boolean isMetricsEnabled() {
+		StandardComponent component = this.component;
+		return component != null ? component.isMetricsEnabled() : metricsEnabled;
+	}
+
+	/**
+	 * @return no metrics if the object has not been instantiated
+	 */
+	@Override
+	public Map<Method, InvocationMetrics.Snapshot> getMetrics() {
+		StandardComponent component = this.component;
+		return component != null ? component.getMetrics() : new HashMap<Method, InvocationMetrics.Snapshot>();
+	}
+
+	@Override
+	public void setTracer(final Tracer tracer, final String componentId) {
+		if (!record("tracer", new Operation() {
+			public void apply(StandardComponent component) {
+				component.setTracer(tracer, componentId);
+			}
+		})) {
+			component.setTracer(tracer, componentId);
+		}
+	}
+
+	/**
+	 * @param componentId ID under which Flight Recorder events of the component are emitted
+	 */
+	void setComponentId(final String componentId) {
+		if (!record("componentId", new Operation() {
+			public void apply(StandardComponent component) {
+				component.setComponentId(componentId);
+			}
+		})) {
+			component.setComponentId(componentId);
+		}
+	}
+
+	/**
+	 * Instantiates the embedded object if necessary, so that it can be replaced.
+	 */
+	@Override
+	public Object replaceImplementation(Object newImplementation) {
+		return instantiate().replaceImplementation(newImplementation);
+	}
+
+	/**
+	 * @return true if the component has been started, even if the embedded object has not been created yet
+	 */
+	@Override
+	public boolean isStarted() {
+		StandardComponent component = this.component;
+		if (component != null) {
+			return component.isStarted();
+		}
+		synchronized (this) {
+			return this.component != null ? this.component.isStarted() : startPending;
+		}
+	}
+
+	@Override
+	public Object dispatch(Class<?> interfaceClass, Method method, Object[] parameters) throws Throwable {
+		return instantiate().dispatch(interfaceClass, method, parameters);
+	}
+
+	@Override
+	public CompletableFuture<Object> invokeAsync(final Class<?> interfaceClass, final Method method, final Object[] parameters) {
+		StandardComponent component = this.component;
+		if (component != null) {
+			return component.invokeAsync(interfaceClass, method, parameters);
+		}
+		return instantiateAsync().thenCompose(new Function<StandardComponent, CompletableFuture<Object>>() {
+			public CompletableFuture<Object> apply(StandardComponent component) {
+				return component.invokeAsync(interfaceClass, method, parameters);
+			}
+		});
+	}
+
+	/**
+	 * Creates the embedded object on the executor, so that asynchronous invocations return immediately.
+	 */
+	private CompletableFuture<StandardComponent> instantiateAsync() {
+		return CompletableFuture.supplyAsync(new Supplier<StandardComponent>() {
+			public StandardComponent get() {
+				return instantiate();
+			}
+		}, executor);
+	}
+
+	private void checkInterfaceValidity(Class<?> interfaceClass) {
+		if (!interfaceClass.isInterface()) {
+			throw new IllegalArgumentException("class " + interfaceClass.getName() + " is not an interface");
+		}
+		if (!interfaceClass.isAssignableFrom(implementationClass)) {
+			throw new IllegalArgumentException("class " + implementationClass.getName() + " does not implement " + interfaceClass.getName());
+		}
+	}
+
+	public String toString() {
+		StandardComponent component = this.component;
+		return component != null ? component.toString() : "lazy component with impl. class: " + implementationClass.getName();
+	}
+
+	/**
+	 * Configuration recorded until the embedded object is created.
+	 */
+	private interface Operation {
+
+		void apply(StandardComponent component);
+	}
+
+	/**
+	 * Operations recorded under one key, applied in the original order.
+	 */
+	private static final class OperationSequence implements Operation {
+
+		private final List<Operation> operations = new ArrayList<Operation>();
+		//true if the sequence discards operations recorded earlier under its key
+		private final boolean replacing;
+
+		OperationSequence(boolean replacing) {
+			this.replacing = replacing;
+		}
+
+		/**
+		 * @param operation operation recorded earlier under a key, or null
+		 * @param laterOperation operation recorded later under the same key
+		 * @return the operation that is to be recorded under the key
+		 */
+		static Operation append(Operation operation, Operation laterOperation) {
+			if (!(operation instanceof OperationSequence) || !(laterOperation instanceof OperationSequence)
+					|| ((OperationSequence) laterOperation).replacing) {
+				return laterOperation;
+			}
+			OperationSequence sequence = new OperationSequence(((OperationSequence) operation).replacing);
+			sequence.operations.addAll(((OperationSequence) operation).operations);
+			sequence.operations.addAll(((OperationSequence) laterOperation).operations);
+			return sequence;
+		}
+
+		public void apply(StandardComponent component) {
+			for (Operation operation : operations) {
+				operation.apply(component);
+			}
+		}
+	}
+
+	/**
+	 * Reference of a generated proxy handed out before the embedded object was created.
+	 * It delegates to a proxy that passes this component until the object is created,
+	 * and to a proxy of the standard component after that.
+	 * Equals, hashCode and toString are handled by the identity of the proxy throughout.
+	 */
+	private static final class LazyReference extends DelegateReference {
+
+		private final Class<?> interfaceClass;
+		private final boolean direct;
+		private ProxyIdentity identity;
+
+		LazyReference(Class<?> interfaceClass, boolean direct) {
+			this.interfaceClass = interfaceClass;
+			this.direct = direct;
+		}
+
+		void retarget(Object delegate) {
+			Method[] methods = ProxyClassGenerator.getProxiedMethods(interfaceClass);
+			Object[] delegates = new Object[methods.length];
+			for (int i = 0; i < methods.length; i++) {
+				delegates[i] = methods[i].getDeclaringClass() == Object.class ? identity : delegate;
+			}
+			set(delegates);
+		}
+	}
+
+	/**
+	 * Handles equals, hashCode and toString of a generated proxy handed out before the embedded object was created,
+	 * so that they do not change when the proxy is retargeted.
+	 */
+	private class ProxyIdentity {
+
+		private final Object proxy;
+
+		ProxyIdentity(Object proxy) {
+			this.proxy = proxy;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			return proxy == object;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(proxy);
+		}
+
+		@Override
+		public String toString() {
+			return "proxy for " + LazyComponent.this;
+		}
+	}
+
+	/**
+	 * Passes invocations of proxies created before the embedded object existed.
+	 */
+	private class LazyInvocationHandler implements InvocationHandler {
+
+		private final Class<?> interfaceClass;
+
+		LazyInvocationHandler(Class<?> interfaceClass) {
+			this.interfaceClass = interfaceClass;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] parameters) throws Throwable {
+			if (method.getDeclaringClass() == Object.class) {
+				if ("equals".equals(method.getName())) {
+					return proxy == parameters[0];
+				}
+				if ("hashCode".equals(method.getName())) {
+					return System.identityHashCode(proxy);
+				}
+				return "proxy for " + LazyComponent.this;
+			}
+			return dispatch(interfaceClass, method, parameters);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+
+/**
+ * Invocation handler for proxies of a component in mailbox mode.
+ * Invocations of interface methods are queued in the component's mailbox.
+ */
+class MailboxInvocationHandler implements InvocationHandler {
+
+	private final StandardComponent component;
+	private final DispatchTable dispatchTable;
+
+	MailboxInvocationHandler(StandardComponent component, DispatchTable dispatchTable) {
+		this.component = component;
+		this.dispatchTable = dispatchTable;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] parameters) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			//equals and hashCode may be invoked by any collection holding the proxy
+			return dispatchTable.invoke(proxy, method, parameters);
+		}
+		return component.invokeInMailbox(dispatchTable, method, parameters);
+	}
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable map from which changed maps are derived without copying it.
+ * Entries are stored in a trie indexed by 5 bits of the key's hash code per level,
+ * so that {@link #plus} and {@link #minus} only copy the nodes on the path to the changed entry
+ * and share all other nodes with the original map.
+ * Keys are compared by equality or, for maps derived from {@link #emptyByIdentity()}, by identity.
+ * Null keys are not supported.
+ */
+final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+	private static final int BITS_PER_LEVEL = 5;
+	//nodes at this depth hold keys with equal hash codes in a flat array
+	private static final int COLLISION_SHIFT = 35;
+
+	private static final Object NOT_FOUND = new Object();
+
+	private static final PersistentMap<Object, Object> EMPTY = new PersistentMap<Object, Object>(false, null, 0);
+	private static final PersistentMap<Object, Object> EMPTY_BY_IDENTITY = new PersistentMap<Object, Object>(true, null, 0);
+
+	private final boolean identity;
+	private final Node root;
+	private final int size;
+
+	private transient Set<Map.Entry<K, V>> entrySet;
+
+	private PersistentMap(boolean identity, Node root, int size) {
+		this.identity = identity;
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * @return an empty map comparing keys by equality
+	 */
+	@SuppressWarnings("unchecked")
+	static <K, V> PersistentMap<K, V> empty() {
+		return (PersistentMap<K, V>) EMPTY;
+	}
+
+	/**
+	 * @return an empty map comparing keys by identity
+	 */
+	@SuppressWarnings("unchecked")
+	static <K, V> PersistentMap<K, V> emptyByIdentity() {
+		return (PersistentMap<K, V>) EMPTY_BY_IDENTITY;
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 * @return a map with the key mapped to the value, or this map if it already does so
+	 */
+	PersistentMap<K, V> plus(K key, V value) {
+		if (key == null) {
+			throw new NullPointerException("key must not be null");
+		}
+		Object currentValue = find(key);
+		if (currentValue == value) {
+			return this;
+		}
+		Node node = root != null ? root : Node.EMPTY;
+		return new PersistentMap<K, V>(identity, node.put(0, hash(key), key, value, identity),
+				currentValue == NOT_FOUND ? size + 1 : size);
+	}
+
+	/**
+	 * @param key
+	 * @return a map without the key, or this map if it does not contain the key
+	 */
+	PersistentMap<K, V> minus(Object key) {
+		if (find(key) == NOT_FOUND) {
+			return this;
+		}
+		return new PersistentMap<K, V>(identity, root.remove(0, hash(key), key, identity), size - 1);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return find(key) != NOT_FOUND;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		Object value = find(key);
+		return value != NOT_FOUND ? (V) value : null;
+	}
+
+	private Object find(Object key) {
+		if (root == null || key == null) {
+			return NOT_FOUND;
+		}
+		return root.find(0, hash(key), key, identity);
+	}
+
+	private int hash(Object key) {
+		return identity ? System.identityHashCode(key) : key.hashCode();
+	}
+
+	private static boolean equal(Object key, Object otherKey, boolean identity) {
+		return key == otherKey || (!identity && key.equals(otherKey));
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<K, V>>() {
+				@Override
+				public Iterator<Map.Entry<K, V>> iterator() {
+					return new EntryIterator<K, V>(root);
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	/**
+	 * Node of the trie that holds, in its array, key-value pairs and,
+	 * for pairs of which the key is null, child nodes in place of values.
+	 * The bitmap tells for which hash code fragments the node holds a pair,
+	 * except for nodes at collision depth, which hold their pairs unindexed.
+	 */
+	private static final class Node {
+
+		private static final Node EMPTY = new Node(0, new Object[0]);
+
+		private final int bitmap;
+		private final Object[] array;
+
+		private Node(int bitmap, Object[] array) {
+			this.bitmap = bitmap;
+			this.array = array;
+		}
+
+		private Object find(int shift, int hash, Object key, boolean identity) {
+			if (shift == COLLISION_SHIFT) {
+				int index = indexOfCollidingKey(key, identity);
+				return index >= 0 ? array[index + 1] : NOT_FOUND;
+			}
+			int bit = bit(shift, hash);
+			if ((bitmap & bit) == 0) {
+				return NOT_FOUND;
+			}
+			int index = index(bit);
+			Object storedKey = array[index];
+			if (storedKey == null) {
+				return ((Node) array[index + 1]).find(shift + BITS_PER_LEVEL, hash, key, identity);
+			}
+			return equal(storedKey, key, identity) ? array[index + 1] : NOT_FOUND;
+		}
+
+		private Node put(int shift, int hash, Object key, Object value, boolean identity) {
+			if (shift == COLLISION_SHIFT) {
+				int index = indexOfCollidingKey(key, identity);
+				if (index >= 0) {
+					return with(index + 1, value);
+				}
+				Object[] newArray = new Object[array.length + 2];
+				System.arraycopy(array, 0, newArray, 0, array.length);
+				newArray[array.length] = key;
+				newArray[array.length + 1] = value;
+				return new Node(bitmap, newArray);
+			}
+			int bit = bit(shift, hash);
+			int index = index(bit);
+			if ((bitmap & bit) == 0) {
+				Object[] newArray = new Object[array.length + 2];
+				System.arraycopy(array, 0, newArray, 0, index);
+				newArray[index] = key;
+				newArray[index + 1] = value;
+				System.arraycopy(array, index, newArray, index + 2, array.length - index);
+				return new Node(bitmap | bit, newArray);
+			}
+			Object storedKey = array[index];
+			if (storedKey == null) {
+				return with(index + 1, ((Node) array[index + 1]).put(shift + BITS_PER_LEVEL, hash, key, value, identity));
+			}
+			if (equal(storedKey, key, identity)) {
+				return with(index + 1, value);
+			}
+			int storedHash = identity ? System.identityHashCode(storedKey) : storedKey.hashCode();
+			Node child = EMPTY
+					.put(shift + BITS_PER_LEVEL, storedHash, storedKey, array[index + 1], identity)
+					.put(shift + BITS_PER_LEVEL, hash, key, value, identity);
+			Node node = with(index + 1, child);
+			node.array[index] = null;
+			return node;
+		}
+
+		/**
+		 * @return a node without the key, which must be present, or null if the node becomes empty
+		 */
+		private Node remove(int shift, int hash, Object key, boolean identity) {
+			if (shift == COLLISION_SHIFT) {
+				return without(0, indexOfCollidingKey(key, identity));
+			}
+			int bit = bit(shift, hash);
+			int index = index(bit);
+			if (array[index] == null) {
+				Node child = ((Node) array[index + 1]).remove(shift + BITS_PER_LEVEL, hash, key, identity);
+				return child != null ? with(index + 1, child) : without(bit, index);
+			}
+			return without(bit, index);
+		}
+
+		private Node with(int index, Object value) {
+			Object[] newArray = array.clone();
+			newArray[index] = value;
+			return new Node(bitmap, newArray);
+		}
+
+		private Node without(int bit, int index) {
+			if (array.length == 2) {
+				return null;
+			}
+			Object[] newArray = new Object[array.length - 2];
+			System.arraycopy(array, 0, newArray, 0, index);
+			System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+			return new Node(bitmap & ~bit, newArray);
+		}
+
+		private int indexOfCollidingKey(Object key, boolean identity) {
+			for (int i = 0; i < array.length; i += 2) {
+				if (equal(array[i], key, identity)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		private static int bit(int shift, int hash) {
+			return 1 << ((hash >>> shift) & 31);
+		}
+
+		private int index(int bit) {
+			return 2 * Integer.bitCount(bitmap & (bit - 1));
+		}
+	}
+
+	/**
+	 * Iterates depth-first over the pairs in a trie.
+	 */
+	private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+		private final Object[][] arrays = new Object[COLLISION_SHIFT / BITS_PER_LEVEL + 1][];
+		private final int[] indexes = new int[arrays.length];
+		private int depth;
+
+		private Map.Entry<K, V> next;
+
+		private EntryIterator(Node root) {
+			if (root != null) {
+				arrays[0] = root.array;
+				advance();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void advance() {
+			next = null;
+			while (depth >= 0 && arrays[depth] != null) {
+				Object[] array = arrays[depth];
+				int index = indexes[depth];
+				if (index >= array.length) {
+					arrays[depth] = null;
+					depth--;
+					continue;
+				}
+				indexes[depth] = index + 2;
+				if (array[index] == null) {
+					depth++;
+					arrays[depth] = ((Node) array[index + 1]).array;
+					indexes[depth] = 0;
+					continue;
+				}
+				next = new AbstractMap.SimpleImmutableEntry<K, V>((K) array[index], (V) array[index + 1]);
+				return;
+			}
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public Map.Entry<K, V> next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<K, V> entry = next;
+			advance();
+			return entry;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("map is immutable");
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+
+/**
+ * Immutable set from which changed sets are derived without copying it.
+ *
+ * @see PersistentMap
+ */
+final class PersistentSet<E> extends AbstractSet<E> {
+
+	private static final PersistentSet<Object> EMPTY = new PersistentSet<Object>(PersistentMap.<Object, Boolean>empty());
+	private static final PersistentSet<Object> EMPTY_BY_IDENTITY = new PersistentSet<Object>(PersistentMap.<Object, Boolean>emptyByIdentity());
+
+	private final PersistentMap<E, Boolean> map;
+
+	private PersistentSet(PersistentMap<E, Boolean> map) {
+		this.map = map;
+	}
+
+	/**
+	 * @return an empty set comparing elements by equality
+	 */
+	@SuppressWarnings("unchecked")
+	static <E> PersistentSet<E> empty() {
+		return (PersistentSet<E>) EMPTY;
+	}
+
+	/**
+	 * @return an empty set comparing elements by identity
+	 */
+	@SuppressWarnings("unchecked")
+	static <E> PersistentSet<E> emptyByIdentity() {
+		return (PersistentSet<E>) EMPTY_BY_IDENTITY;
+	}
+
+	/**
+	 * @param element
+	 * @return a set with the element, or this set if it already contains the element
+	 */
+	PersistentSet<E> plus(E element) {
+		PersistentMap<E, Boolean> newMap = map.plus(element, Boolean.TRUE);
+		return newMap != map ? new PersistentSet<E>(newMap) : this;
+	}
+
+	/**
+	 * @param element
+	 * @return a set without the element, or this set if it does not contain the element
+	 */
+	PersistentSet<E> minus(Object element) {
+		PersistentMap<E, Boolean> newMap = map.minus(element);
+		return newMap != map ? new PersistentSet<E>(newMap) : this;
+	}
+
+	@Override
+	public boolean contains(Object element) {
+		return map.containsKey(element);
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return map.keySet().iterator();
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+}
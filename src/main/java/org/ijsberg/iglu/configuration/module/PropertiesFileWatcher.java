@@ -0,0 +1,215 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import org.ijsberg.iglu.configuration.Cluster;
+import org.ijsberg.iglu.configuration.Component;
+import org.ijsberg.iglu.util.execution.ExecutorSupport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a properties file and updates a component or cluster when the file changes.
+ * Changes that follow each other within the debounce delay result in a single update,
+ * and only properties that actually changed are injected.
+ *
+ * @see Component#updateProperties(Properties)
+ * @see Cluster#updateProperties(Properties)
+ */
+public class PropertiesFileWatcher {
+
+	public static final long DEFAULT_DEBOUNCE_MILLIS = 200;
+
+	private final Path file;
+	private final long debounceMillis;
+	private final PropertiesUpdater updater;
+
+	private WatchService watchService;
+	private ScheduledExecutorService scheduler;
+	private ScheduledFuture<?> pendingReload;
+
+	/**
+	 * @param file      properties file
+	 * @param component component to update
+	 */
+	public PropertiesFileWatcher(Path file, Component component) {
+		this(file, DEFAULT_DEBOUNCE_MILLIS, component);
+	}
+
+	/**
+	 * @param file           properties file
+	 * @param debounceMillis delay between the last detected change and the update
+	 * @param component      component to update
+	 */
+	public PropertiesFileWatcher(Path file, long debounceMillis, final Component component) {
+		this(file, debounceMillis, new PropertiesUpdater() {
+			public void update(Properties properties) {
+				component.updateProperties(properties);
+			}
+		});
+	}
+
+	/**
+	 * @param file    properties file with keys prefixed by component ID
+	 * @param cluster cluster to update
+	 */
+	public PropertiesFileWatcher(Path file, Cluster cluster) {
+		this(file, DEFAULT_DEBOUNCE_MILLIS, cluster);
+	}
+
+	/**
+	 * @param file           properties file with keys prefixed by component ID
+	 * @param debounceMillis delay between the last detected change and the update
+	 * @param cluster        cluster to update
+	 */
+	public PropertiesFileWatcher(Path file, long debounceMillis, final Cluster cluster) {
+		this(file, debounceMillis, new PropertiesUpdater() {
+			public void update(Properties properties) {
+				cluster.updateProperties(properties);
+			}
+		});
+	}
+
+	private PropertiesFileWatcher(Path file, long debounceMillis, PropertiesUpdater updater) {
+		this.file = file.toAbsolutePath();
+		this.debounceMillis = debounceMillis;
+		this.updater = updater;
+	}
+
+	/**
+	 * Loads the file and starts watching it.
+	 *
+	 * @throws IOException if the file can not be loaded or watched
+	 */
+	public synchronized void start() throws IOException {
+		if (watchService != null) {
+			throw new IllegalStateException("watcher for " + file + " already started");
+		}
+		reload();
+		watchService = file.getFileSystem().newWatchService();
+		file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		scheduler = Executors.newSingleThreadScheduledExecutor(ExecutorSupport.createDaemonThreadFactory("properties-reload"));
+		final WatchService watchService = this.watchService;
+		Thread watchThread = ExecutorSupport.createDaemonThreadFactory("properties-watch").newThread(new Runnable() {
+			public void run() {
+				watch(watchService);
+			}
+		});
+		watchThread.start();
+	}
+
+	/**
+	 * Stops watching the file. Pending updates are discarded.
+	 */
+	public synchronized void stop() {
+		if (watchService == null) {
+			return;
+		}
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			//watch thread stops anyway
+		}
+		scheduler.shutdownNow();
+		watchService = null;
+		scheduler = null;
+		pendingReload = null;
+	}
+
+	/**
+	 * @return true if the file is being watched
+	 */
+	public synchronized boolean isWatching() {
+		return watchService != null;
+	}
+
+	/**
+	 * Loads the file and updates the component or cluster.
+	 *
+	 * @throws IOException if the file can not be loaded
+	 */
+	public void reload() throws IOException {
+		Properties properties = new Properties();
+		InputStream input = Files.newInputStream(file);
+		try {
+			properties.load(input);
+		} finally {
+			input.close();
+		}
+		updater.update(properties);
+	}
+
+	private void watch(WatchService watchService) {
+		while (true) {
+			WatchKey key;
+			try {
+				key = watchService.take();
+			} catch (InterruptedException e) {
+				return;
+			} catch (ClosedWatchServiceException e) {
+				return;
+			}
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+					scheduleReload();
+				}
+			}
+			if (!key.reset()) {
+				return;
+			}
+		}
+	}
+
+	private synchronized void scheduleReload() {
+		if (scheduler == null) {
+			return;
+		}
+		if (pendingReload != null) {
+			pendingReload.cancel(false);
+		}
+		pendingReload = scheduler.schedule(new Runnable() {
+			public void run() {
+				try {
+					if (Files.exists(file)) {
+						reload();
+					}
+				} catch (Throwable t) {
+					Thread currentThread = Thread.currentThread();
+					currentThread.getUncaughtExceptionHandler().uncaughtException(currentThread, t);
+				}
+			}
+		}, debounceMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Receives properties loaded from the file.
+	 */
+	private interface PropertiesUpdater {
+
+		void update(Properties properties);
+	}
+}
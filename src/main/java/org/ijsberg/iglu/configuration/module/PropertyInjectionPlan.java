@@ -0,0 +1,183 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import org.ijsberg.iglu.configuration.ConfigurationException;
+import org.ijsberg.iglu.util.reflection.ReflectionSupport;
+import org.ijsberg.iglu.util.types.Converter;
+import org.ijsberg.iglu.util.types.ConverterRegistry;
+import org.ijsberg.iglu.util.types.TypeConverter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Setters of a class by property key, shared by all components that embed an instance of the class.
+ * The setter of a key is looked up once, along with a method handle that invokes it
+ * and the converter for string values.
+ * A plan is replaced if converters are registered or unregistered.
+ */
+class PropertyInjectionPlan {
+
+	private static final MethodType SETTER_INVOCATION_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private static final PropertySetter NO_SETTER = new PropertySetter(null, null);
+
+	private static final ClassValue<PropertyInjectionPlan> PLANS_BY_CLASS = new ClassValue<PropertyInjectionPlan>() {
+		@Override
+		protected PropertyInjectionPlan computeValue(Class<?> implementationClass) {
+			return new PropertyInjectionPlan(implementationClass);
+		}
+	};
+
+	private final Class<?> implementationClass;
+	private final long converterVersion = ConverterRegistry.getVersion();
+	private final ConcurrentMap<String, PropertySetter> settersByPropertyKey = new ConcurrentHashMap<String, PropertySetter>();
+
+	private PropertyInjectionPlan(Class<?> implementationClass) {
+		this.implementationClass = implementationClass;
+	}
+
+	/**
+	 * @param implementationClass
+	 * @return the plan for the class
+	 */
+	static PropertyInjectionPlan getPlan(Class<?> implementationClass) {
+		PropertyInjectionPlan plan = PLANS_BY_CLASS.get(implementationClass);
+		if (plan.converterVersion != ConverterRegistry.getVersion()) {
+			PLANS_BY_CLASS.remove(implementationClass);
+			plan = PLANS_BY_CLASS.get(implementationClass);
+		}
+		return plan;
+	}
+
+	/**
+	 * @param propertyKey
+	 * @return the setter for the property, or null if the class has none
+	 * @throws ConfigurationException if the class has more than one setter for the property
+	 */
+	PropertySetter getSetter(String propertyKey) {
+		PropertySetter setter = settersByPropertyKey.get(propertyKey);
+		if (setter == null) {
+			PropertySetter existingSetter = settersByPropertyKey.putIfAbsent(propertyKey, setter = createSetter(propertyKey));
+			if (existingSetter != null) {
+				setter = existingSetter;
+			}
+		}
+		if (setter.ambiguity != null) {
+			throw new ConfigurationException(setter.ambiguity);
+		}
+		return setter != NO_SETTER ? setter : null;
+	}
+
+	private PropertySetter createSetter(String propertyKey) {
+		Set<Method> setters = ReflectionSupport.getClassMetadata(implementationClass).getSettersByPropertyKey(propertyKey);
+		if (setters.size() > 1) {
+			return new PropertySetter("more than 1 (" + setters.size() +
+					") setter found for property '" + propertyKey + "'");
+		}
+		if (setters.size() == 1) {
+			Method method = setters.iterator().next();
+			return new PropertySetter(method, createMethodHandle(method));
+		}
+		return NO_SETTER;
+	}
+
+	private static MethodHandle createMethodHandle(Method method) {
+		try {
+			return MethodHandles.publicLookup().unreflect(method).asType(SETTER_INVOCATION_TYPE);
+		} catch (IllegalAccessException e) {
+			//setter will be invoked by reflection
+			return null;
+		}
+	}
+
+	/**
+	 * Pre-resolved injection of a single property.
+	 */
+	static class PropertySetter {
+
+		private final Method method;
+		private final MethodHandle methodHandle;
+		private final Class<?> parameterType;
+		private final TypeConverter<Object, Object> stringConverter;
+		//message of the exception thrown for each lookup of an ambiguous property
+		private final String ambiguity;
+
+		PropertySetter(Method method, MethodHandle methodHandle) {
+			this.method = method;
+			this.methodHandle = methodHandle;
+			this.parameterType = method != null ? method.getParameterTypes()[0] : null;
+			this.stringConverter = method != null ? ConverterRegistry.getConverter(String.class, parameterType) : null;
+			this.ambiguity = null;
+		}
+
+		PropertySetter(String ambiguity) {
+			this.method = null;
+			this.methodHandle = null;
+			this.parameterType = null;
+			this.stringConverter = null;
+			this.ambiguity = ambiguity;
+		}
+
+		/**
+		 * Converts the value to the type of the setter and invokes the setter.
+		 *
+		 * @param implementation
+		 * @param value
+		 */
+		void inject(Object implementation, Object value) {
+			Object injectingObject = value instanceof String ? stringConverter.convert(value) :
+					Converter.convertToObject(value, parameterType);
+			try {
+				if (methodHandle != null) {
+					methodHandle.invokeExact(implementation, injectingObject);
+				} else {
+					method.invoke(implementation, injectingObject);
+				}
+			} catch (InvocationTargetException ite) {
+				throw createInjectionException(ite.getCause(), injectingObject);
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw createInjectionException(t, injectingObject);
+			}
+		}
+
+		/**
+		 * @throws Error if the cause is an error, which is passed unchanged
+		 */
+		private RuntimeException createInjectionException(Throwable cause, Object injectingObject) {
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				return (RuntimeException) cause;
+			}
+			return new RuntimeException("can't invoke method '" + method.getName() + "'" + " with argument " + injectingObject, cause);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Component to which proxies pass invocations of methods of its interfaces.
+ */
+interface ProxyTarget {
+
+	/**
+	 * @return classes of interfaces implemented by the wrapped object
+	 */
+	Class<?>[] getInterfaces();
+
+	/**
+	 * Invokes a method of an interface through the component's invocation handling.
+	 *
+	 * @param interfaceClass
+	 * @param method
+	 * @param parameters
+	 * @return result of the invocation
+	 * @throws Throwable exception thrown by the invoked method
+	 */
+	Object dispatch(Class<?> interfaceClass, Method method, Object[] parameters) throws Throwable;
+
+	/**
+	 * Invokes a method of an interface on the component's executor.
+	 *
+	 * @param interfaceClass
+	 * @param method
+	 * @param parameters
+	 * @return a future that completes with the result of the invocation
+	 */
+	CompletableFuture<Object> invokeAsync(Class<?> interfaceClass, Method method, Object[] parameters);
+}
@@ -23,33 +23,84 @@ import org.ijsberg.iglu.configuration.Cluster;
 import org.ijsberg.iglu.configuration.Component;
 import org.ijsberg.iglu.configuration.ConfigurationException;
 import org.ijsberg.iglu.configuration.Facade;
+import org.ijsberg.iglu.configuration.jfr.TopologyEvent;
+import org.ijsberg.iglu.util.metrics.InvocationMetrics;
+import org.ijsberg.iglu.util.tracing.Tracer;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
 
-public class StandardCluster implements Cluster, Facade, InvocationHandler {
+/**
+ * Standard implementation of Cluster.
+ * The registered components and exposed interfaces are kept in an immutable snapshot.
+ * Changes are serialized and publish a new snapshot, so lookups, such as those made by
+ * the facade while components are invoked, never block and never see a partial update.
+ */
+public class StandardCluster implements Cluster, Facade {
+
+	/**
+	 * ID under which external components are traced and recorded.
+	 */
+	public static final String EXTERNAL_COMPONENT_ID = "external";
+
+	private volatile Topology topology = new Topology();
+
+	private volatile boolean directWiring;
 
-	private HashMap<String, Set<Class<?>>> exposedInterfacesByComponentId = new HashMap<String, Set<Class<?>>>();
-	private Set<Component> externalComponents = new HashSet<Component>();
-	private HashMap<String, Component> internalComponentsById = new HashMap<String, Component>();
+	private final Object lifecycleLock = new Object();
+	private volatile ForkJoinPool lifecyclePool = ForkJoinPool.commonPool();
+
+	private final Facade facade = new ClusterFacade();
+	private ConcurrentMap<String, ConcurrentMap<Class<?>, Object>> proxiesByComponentId = new ConcurrentHashMap<String, ConcurrentMap<Class<?>, Object>>();
+
+	/**
+	 * In direct wiring mode, components are injected with direct proxies that invoke
+	 * the embedded objects without invocation handling as long as no interceptors are set.
+	 * Direct proxies fall back to regular invocation handling once an interceptor is set
+	 * or the component they refer to is disconnected.
+	 * Only affects references injected after the mode is changed.
+	 *
+	 * @param directWiring
+	 */
+	public synchronized void setDirectWiring(boolean directWiring) {
+		this.directWiring = directWiring;
+		proxiesByComponentId.clear();
+	}
+
+	/**
+	 * @return true if the cluster injects direct proxies
+	 */
+	public boolean isDirectWiring() {
+		return directWiring;
+	}
 
 	public boolean isConnected(Component component) {
 		return isConnectedInternally(component) || isConnectedExternally(component);
 	}
 
+	/**
+	 * @param component
+	 * @return true if the component, or a component that embeds the same object, is connected as internal component
+	 */
 	public boolean isConnectedInternally(Component component) {
-		return internalComponentsById.values().contains(component);
+		return topology.isConnectedInternally(component);
 	}
 
+	/**
+	 * @param component
+	 * @return true if the component, or a component that embeds the same object, is connected as external component
+	 */
 	public boolean isConnectedExternally(Component component) {
-		return externalComponents.contains(component);
+		return topology.isConnectedExternally(component);
 	}
 
 	public boolean isExposed(String componentId) {
-		return exposedInterfacesByComponentId.containsKey(componentId);
+		return topology.exposedInterfacesByComponentId.containsKey(componentId);
 	}
 
 	/**
@@ -59,13 +110,23 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @param component
 	 * @throws ConfigurationException if the component is already registered
 	 */
-	public void connect(String componentId, Component component) throws ConfigurationException {
+	public synchronized void connect(String componentId, Component component) throws ConfigurationException {
+		TopologyEvent event = new TopologyEvent();
+		event.begin();
+		connectInternalComponent(componentId, component);
+		commit(event, "connect", componentId);
+	}
+
+	private void connectInternalComponent(String componentId, Component component) throws ConfigurationException {
 		if (isConnectedExternally(component)) {
 			throw new ConfigurationException("component " + component + " is already connected as external component");
 		}
 		ensureIdNotRegisteredByOther(componentId);
-		internalComponentsById.put(componentId, component);
-		setDependenciesForNewInternalComponent(componentId, component);
+		proxiesByComponentId.remove(componentId);
+		Topology previousTopology = topology;
+		topology = previousTopology.withInternalComponent(componentId, component);
+		identify(component);
+		setDependenciesForNewInternalComponent(previousTopology, componentId, component);
 		registerExternalComponentAsListener(componentId, component);
 	}
 
@@ -77,13 +138,16 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @param exposedInterfaces interfaces accessible for external components
 	 * @throws ConfigurationException if the component is already registered
 	 */
-	public void connect(String componentId, Component component, Class<?>... exposedInterfaces) throws ConfigurationException {
+	public synchronized void connect(String componentId, Component component, Class<?>... exposedInterfaces) throws ConfigurationException {
+		TopologyEvent event = new TopologyEvent();
+		event.begin();
 
 		ensureComponentExposesInterfaces(component, Arrays.<Class<?>>asList(exposedInterfaces));
-		connect(componentId, component);
+		connectInternalComponent(componentId, component);
 		setExposedInterfaces(componentId, component, exposedInterfaces);
 
 		registerExternalComponentAsListener(componentId, component);
+		commit(event, "connect", componentId, exposedInterfaces);
 	}
 
 	/**
@@ -93,7 +157,7 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 */
 	private void setExposedInterfaces(String componentId, Component component,
 									  Class<?>... exposedInterfaces) {
-		exposedInterfacesByComponentId.put(componentId, new HashSet<Class<?>>(Arrays.asList(exposedInterfaces)));
+		topology = topology.withExposedInterfaces(componentId, exposedInterfaces);
 		setInterfacesInExternalComponents(componentId, component);
 	}
 
@@ -103,21 +167,31 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @param externalComponent
 	 * @throws ConfigurationException if the component is already registered
 	 */
-	public void connect(Component externalComponent) throws ConfigurationException {
+	public synchronized void connect(Component externalComponent) throws ConfigurationException {
+		TopologyEvent event = new TopologyEvent();
+		event.begin();
 
 		if (isConnected(externalComponent)) {
 			throw new ConfigurationException("component " + externalComponent + " is already connected");
 		}
 
-		externalComponents.add(externalComponent);
+		topology = topology.withExternalComponent(externalComponent);
+		identify(externalComponent, EXTERNAL_COMPONENT_ID);
 		setInterfacesForNewExternalComponent(externalComponent);
 		this.registerNewExternalComponent(externalComponent);
+		commit(event, "connect", EXTERNAL_COMPONENT_ID);
 	}
 
 	/**
 	 * @param component
 	 */
-	public void disconnect(Component component) {
+	public synchronized void disconnect(Component component) {
+		TopologyEvent event = new TopologyEvent();
+		event.begin();
+		Component connectedComponent = topology.getConnectedComponent(component);
+		if (connectedComponent != null) {
+			component = connectedComponent;
+		}
 		if (isConnectedInternally(component)) {
 			Set<String> componentIds = lookUpComponentIds(component);
 			for (String componentId : componentIds) {
@@ -125,13 +199,19 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 					removeInterfacesForExternalComponents(componentId, component);
 				}
 				this.unregisterExternalListeners(componentId, component);
-				exposedInterfacesByComponentId.remove(componentId);
+				topology = topology.withoutExposedInterfaces(componentId);
 				removeDependenciesForInternalComponent(componentId, component);
-				internalComponentsById.remove(componentId);
+				topology = topology.withoutInternalComponent(componentId);
+				proxiesByComponentId.remove(componentId);
+			}
+			if (directWiring) {
+				component.revokeDirectProxies();
 			}
+			commit(event, "disconnect", joinComponentIds(componentIds));
 		} else if (isConnectedExternally(component)) {
 			removeDependenciesForExternalComponent(component);
-			externalComponents.remove(component);
+			topology = topology.withoutExternalComponent(component);
+			commit(event, "disconnect", EXTERNAL_COMPONENT_ID);
 		}
 	}
 
@@ -148,7 +228,7 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @param exposedInterfaces
 	 */
 	private void setInterfacesInExternalComponents(String exposedComponentId, Class<?>[] exposedInterfaces) {
-		for (Component externalComponent : externalComponents) {
+		for (Component externalComponent : topology.externalComponents) {
 			externalComponent.setReference(this.getFacade(), exposedComponentId, exposedInterfaces);
 		}
 	}
@@ -158,7 +238,7 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @param newExposedComponent
 	 */
 	private void registerExternalComponentAsListener(String newExposedComponentId, Component newExposedComponent) {
-		for (Component externalComponent : externalComponents) {
+		for (Component externalComponent : topology.externalComponents) {
 			newExposedComponent.register(externalComponent);
 		}
 	}
@@ -168,7 +248,7 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @param exposedComponent
 	 */
 	private void removeInterfacesForExternalComponents(String exposedComponentId, Component exposedComponent) {
-		for (Component externalComponent : externalComponents) {
+		for (Component externalComponent : topology.externalComponents) {
 			externalComponent.removeDependency(exposedComponentId);
 		}
 	}
@@ -178,24 +258,37 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @param exposedComponent
 	 */
 	private void unregisterExternalListeners(String exposedComponentId, Component exposedComponent) {
-		for (Component externalComponent : externalComponents) {
+		for (Component externalComponent : topology.externalComponents) {
 			exposedComponent.unregister(externalComponent);
 		}
 	}
 
 	/**
+	 * @param previousTopology topology before the component was connected
 	 * @param componentId
 	 * @param component
 	 */
-	private void setDependenciesForNewInternalComponent(String componentId, Component component) {
-		for (String internalComponentId : new HashSet<String>(internalComponentsById.keySet())) {
-			if (!internalComponentId.equals(componentId)) {
-				Component internalComponent = internalComponentsById.get(internalComponentId);
-				internalComponent.setReference(this, componentId, component.getInterfaces());
-				internalComponent.register(component);
-				component.setReference(this, internalComponentId, internalComponent.getInterfaces());
-				component.register(internalComponent);
-			}
+	private void setDependenciesForNewInternalComponent(Topology previousTopology, String componentId, Component component) {
+		for (String internalComponentId : previousTopology.getRelatedComponentIds(componentId, component)) {
+			wire(componentId, component, internalComponentId, previousTopology.internalComponentsById.get(internalComponentId));
+		}
+	}
+
+	/**
+	 * Injects references and registers listeners between two internal components, as far as they accept them.
+	 */
+	private void wire(String componentId, Component component, String internalComponentId, Component internalComponent) {
+		if (acceptsReference(internalComponent, componentId)) {
+			internalComponent.setReference(this, componentId, component.getInterfaces());
+		}
+		if (internalComponent.acceptsListeners()) {
+			internalComponent.register(component);
+		}
+		if (acceptsReference(component, internalComponentId)) {
+			component.setReference(this, internalComponentId, internalComponent.getInterfaces());
+		}
+		if (component.acceptsListeners()) {
+			component.register(internalComponent);
 		}
 	}
 
@@ -204,22 +297,39 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @param component
 	 */
 	private void removeDependenciesForInternalComponent(String componentId, Component component) {
-		for (String internalComponentId : internalComponentsById.keySet()) {
-			if (!internalComponentId.equals(componentId)) {
-				Component internalComponent = internalComponentsById.get(internalComponentId);
-				internalComponent.removeDependency(componentId);
-				internalComponent.unregister(component);
-				component.removeDependency(internalComponentId);
-				component.unregister(internalComponent);
-			}
+		for (String internalComponentId : topology.getRelatedComponentIds(componentId, component)) {
+			unwire(componentId, component, internalComponentId, topology.internalComponentsById.get(internalComponentId));
+		}
+	}
+
+	private void unwire(String componentId, Component component, String internalComponentId, Component internalComponent) {
+		if (acceptsReference(internalComponent, componentId)) {
+			internalComponent.removeDependency(componentId);
+		}
+		if (internalComponent.acceptsListeners()) {
+			internalComponent.unregister(component);
+		}
+		if (acceptsReference(component, internalComponentId)) {
+			component.removeDependency(internalComponentId);
 		}
+		if (component.acceptsListeners()) {
+			component.unregister(internalComponent);
+		}
+	}
+
+	/**
+	 * @return true if the component accepts the reference, or does not tell which references it accepts
+	 */
+	private static boolean acceptsReference(Component component, String componentId) {
+		Set<String> referenceKeys = component.getReferenceKeys();
+		return referenceKeys == null || referenceKeys.contains(StandardComponent.getReferenceKey(componentId));
 	}
 
 	/**
 	 * @param externalComponent
 	 */
 	private void setInterfacesForNewExternalComponent(Component externalComponent) {
-		for (String internalComponentId : internalComponentsById.keySet()) {
+		for (String internalComponentId : topology.internalComponentsById.keySet()) {
 			if (isExposed(internalComponentId)) {
 				externalComponent.setReference(this.getFacade(), internalComponentId, getExposedInterfaces(internalComponentId));
 			}
@@ -230,8 +340,7 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @param externalComponent
 	 */
 	private void registerNewExternalComponent(Component externalComponent) {
-		for (String internalComponentId : internalComponentsById.keySet()) {
-			Component internalComponent = internalComponentsById.get(internalComponentId);
+		for (Component internalComponent : topology.internalComponentsById.values()) {
 			internalComponent.register(externalComponent);
 		}
 	}
@@ -240,11 +349,12 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @param externalComponent
 	 */
 	private void removeDependenciesForExternalComponent(Component externalComponent) {
-		for (String internalComponentId : internalComponentsById.keySet()) {
+		for (Map.Entry<String, Component> entry : topology.internalComponentsById.entrySet()) {
+			String internalComponentId = entry.getKey();
 			if (isExposed(internalComponentId)) {
 				externalComponent.removeDependency(internalComponentId);
 			}
-			Component internalComponent = internalComponentsById.get(internalComponentId);
+			Component internalComponent = entry.getValue();
 			internalComponent.unregister(externalComponent);
 		}
 	}
@@ -253,7 +363,7 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @param componentId
 	 */
 	private void ensureIdNotRegisteredByOther(String componentId) {
-		if (internalComponentsById.containsKey(componentId)) {
+		if (topology.internalComponentsById.containsKey(componentId)) {
 			throw new ConfigurationException("component already registered under id '" + componentId + "'");
 		}
 	}
@@ -275,7 +385,7 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @return
 	 */
 	public Set<String> getExposedComponentIds() {
-		return exposedInterfacesByComponentId.keySet();
+		return topology.exposedInterfacesByComponentId.keySet();
 	}
 
 	/**
@@ -283,21 +393,40 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @return
 	 */
 	public Class<?>[] getExposedInterfaces(String componentId) {
-		if (!isExposed(componentId)) {
+		Set<Class<?>> exposedInterfaces = topology.exposedInterfacesByComponentId.get(componentId);
+		if (exposedInterfaces == null) {
 			throw new ConfigurationException("component with id '" + componentId + "' is not exposed");
 		}
-		return (Class<?>[]) this.exposedInterfacesByComponentId.get(componentId).toArray(new Class<?>[0]);
+		return exposedInterfaces.toArray(new Class<?>[0]);
 	}
 
 	/**
+	 * Proxies are cached per component ID and interface.
+	 *
 	 * @param componentId
 	 * @param exposedInterface
 	 * @return
 	 */
 	public Object getProxy(String componentId, Class<?> exposedInterface) {
 
+		ConcurrentMap<Class<?>, Object> proxiesByInterface = proxiesByComponentId.get(componentId);
+		if (proxiesByInterface != null) {
+			Object proxy = proxiesByInterface.get(exposedInterface);
+			if (proxy != null) {
+				return proxy;
+			}
+		}
 		Component component = getInternalComponent(componentId);
-		return component.createProxy(exposedInterface);
+		Object proxy = directWiring ? component.createDirectProxy(exposedInterface) : component.getProxy(exposedInterface);
+		if (proxiesByInterface == null) {
+			proxiesByInterface = new ConcurrentHashMap<Class<?>, Object>();
+			ConcurrentMap<Class<?>, Object> existingProxies = proxiesByComponentId.putIfAbsent(componentId, proxiesByInterface);
+			if (existingProxies != null) {
+				proxiesByInterface = existingProxies;
+			}
+		}
+		Object existingProxy = proxiesByInterface.putIfAbsent(exposedInterface, proxy);
+		return existingProxy != null ? existingProxy : proxy;
 	}
 
 	/**
@@ -305,7 +434,7 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @return
 	 */
 	private Component getInternalComponent(String componentId) {
-		return internalComponentsById.get(componentId);
+		return topology.internalComponentsById.get(componentId);
 	}
 
 	/**
@@ -313,13 +442,7 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @return
 	 */
 	private Set<String> lookUpComponentIds(Component component) {
-		Set<String> retval = new HashSet<String>();
-		for (String componentId : internalComponentsById.keySet()) {
-			if (internalComponentsById.get(componentId) == component) {
-				retval.add(componentId);
-			}
-		}
-		return retval;
+		return topology.getComponentIds(component);
 	}
 
 	/**
@@ -328,76 +451,1056 @@ public class StandardCluster implements Cluster, Facade, InvocationHandler {
 	 * @return
 	 */
 	private boolean isExposed(String componentId, Class<?> interfaceClass) {
-		Set<Class<?>> exposedInterfaces = exposedInterfacesByComponentId.get(componentId);
+		Set<Class<?>> exposedInterfaces = topology.exposedInterfacesByComponentId.get(componentId);
 		return exposedInterfaces != null && exposedInterfaces.contains(interfaceClass);
 	}
 
 
 	/**
-	 * Invoked through proxy instance for facade.
-	 *
-	 * @param proxy
-	 * @param method
-	 * @param arguments
+	 * @return the facade that represents the cluster, which only provides exposed interfaces
+	 */
+	public Facade getFacade() {
+		return facade;
+	}
+
+	/**
 	 * @return
-	 * @throws Throwable
 	 */
-	public Object invoke(Object proxy, Method method, Object[] arguments)
-			throws Throwable {
+	public Map<String, Component> getInternalComponents() {
+		return new HashMap<String, Component>(topology.internalComponentsById);
+	}
 
-		Object retval;
-		if (method.getName().equals("getProxy")) {
-			if (!isExposed((String) arguments[0], (Class<?>) arguments[1])) {
-				throw new ConfigurationException((String) arguments[0] + " does not expose " + arguments[1]);
-			}
+	/**
+	 * @return
+	 */
+	public Set<Component> getExternalComponents() {
+		return new HashSet<Component>(topology.externalComponents);
+	}
+
+	/**
+	 * Since references and listeners are not rewired, the new object must accept the same
+	 * references as the current one, and accept listeners if the current one does.
+	 *
+	 * @throws ConfigurationException if the component is not connected, or the new object would need rewiring
+	 */
+	@Override
+	public Object replaceImplementation(String componentId, Object newImplementation) {
+		Component component = topology.internalComponentsById.get(componentId);
+		if (component == null) {
+			throw new ConfigurationException("component '" + componentId + "' is not connected");
+		}
+		if (!StandardComponent.getReferenceKeys(newImplementation.getClass()).equals(component.getReferenceKeys()) ||
+				StandardComponent.acceptsListeners(newImplementation.getClass()) != component.acceptsListeners()) {
+			throw new ConfigurationException("replacement of component '" + componentId + "' by " +
+					newImplementation.getClass().getName() + " requires rewiring: disconnect and connect it instead");
 		}
+		Object previousImplementation;
 		try {
-			retval = method.invoke(this, arguments);
-		} catch (InvocationTargetException ite) {
-			throw ite.getCause();
+			previousImplementation = component.replaceImplementation(newImplementation);
+		} catch (IllegalArgumentException e) {
+			throw new ConfigurationException("can not replace implementation of component '" + componentId + "'", e);
+		}
+		synchronized (this) {
+			topology = topology.withReplacedImplementation(component, previousImplementation);
+		}
+		return previousImplementation;
+	}
+
+	@Override
+	public Map<String, Set<String>> updateProperties(Properties properties) {
+		Topology topology = this.topology;
+		Map<String, Properties> propertiesByComponentId = new HashMap<String, Properties>();
+		for (Object key : properties.keySet()) {
+			String keyString = (String) key;
+			int end = ClusterConfigurationLoader.getComponentIdEnd(keyString, topology.internalComponentsById.keySet());
+			if (end > 0) {
+				String componentId = keyString.substring(0, end);
+				Properties componentProperties = propertiesByComponentId.get(componentId);
+				if (componentProperties == null) {
+					componentProperties = new Properties();
+					propertiesByComponentId.put(componentId, componentProperties);
+				}
+				componentProperties.put(keyString.substring(end + 1), properties.get(key));
+			}
+		}
+		Map<String, Set<String>> changedKeysByComponentId = new HashMap<String, Set<String>>();
+		for (Map.Entry<Component, PersistentSet<String>> entry : topology.componentIdsByComponent.entrySet()) {
+			Map<String, Properties> componentProperties = new TreeMap<String, Properties>();
+			for (String componentId : entry.getValue()) {
+				Properties idProperties = propertiesByComponentId.get(componentId);
+				componentProperties.put(componentId, idProperties != null ? idProperties : new Properties());
+			}
+			Set<String> changedKeys = entry.getKey().updateProperties(ClusterConfigurationLoader.mergeProperties(componentProperties));
+			if (!changedKeys.isEmpty()) {
+				for (String componentId : entry.getValue()) {
+					changedKeysByComponentId.put(componentId, changedKeys);
+				}
+			}
+		}
+		return changedKeysByComponentId;
+	}
+
+	@Override
+	public void setMetricsEnabled(boolean metricsEnabled) {
+		Topology topology = this.topology;
+		for (Component component : topology.componentIdsByComponent.keySet()) {
+			component.setMetricsEnabled(metricsEnabled);
+		}
+		for (Component component : topology.externalComponents) {
+			component.setMetricsEnabled(metricsEnabled);
 		}
-		return retval;
 	}
 
 	/**
-	 * @return
+	 * Components connected under several IDs are traced under those IDs, separated by commas.
+	 * External components are traced under ID 'external'.
 	 */
-	public Facade getFacade() {
-		return (Facade) Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class[]{Facade.class}, this);
+	@Override
+	public void setTracer(Tracer tracer) {
+		Topology topology = this.topology;
+		for (Map.Entry<Component, PersistentSet<String>> entry : topology.componentIdsByComponent.entrySet()) {
+			entry.getKey().setTracer(tracer, joinComponentIds(entry.getValue()));
+		}
+		for (Component component : topology.externalComponents) {
+			component.setTracer(tracer, EXTERNAL_COMPONENT_ID);
+		}
+	}
+
+	private static String joinComponentIds(Set<String> componentIds) {
+		StringBuilder joinedComponentIds = new StringBuilder();
+		for (String componentId : new TreeSet<String>(componentIds)) {
+			joinedComponentIds.append(joinedComponentIds.length() > 0 ? "," : "").append(componentId);
+		}
+		return joinedComponentIds.toString();
 	}
 
 	/**
-	 * @return
+	 * Lets an internal component emit Flight Recorder events under the IDs it is connected under.
 	 */
-	public Map<String, Component> getInternalComponents() {
-		return new HashMap<String, Component>(internalComponentsById);
+	private void identify(Component component) {
+		identify(component, joinComponentIds(topology.getComponentIds(component)));
+	}
+
+	private static void identify(Component component, String componentId) {
+		if (component instanceof StandardComponent) {
+			((StandardComponent) component).setComponentId(componentId);
+		} else if (component instanceof LazyComponent) {
+			((LazyComponent) component).setComponentId(componentId);
+		}
 	}
 
 	/**
-	 * @return
+	 * Components connected under several IDs are included once.
 	 */
-	public Set<Component> getExternalComponents() {
-		return new HashSet<Component>(externalComponents);
+	@Override
+	public Map<Component, Map<Method, InvocationMetrics.Snapshot>> getMetrics() {
+		Topology topology = this.topology;
+		Map<Component, Map<Method, InvocationMetrics.Snapshot>> metricsByComponent = new IdentityHashMap<Component, Map<Method, InvocationMetrics.Snapshot>>();
+		for (Component component : topology.componentIdsByComponent.keySet()) {
+			addMetrics(metricsByComponent, component);
+		}
+		for (Component component : topology.externalComponents) {
+			addMetrics(metricsByComponent, component);
+		}
+		return metricsByComponent;
+	}
+
+	private static void addMetrics(Map<Component, Map<Method, InvocationMetrics.Snapshot>> metricsByComponent, Component component) {
+		Map<Method, InvocationMetrics.Snapshot> metrics = component.getMetrics();
+		if (!metrics.isEmpty()) {
+			metricsByComponent.put(component, metrics);
+		}
+	}
+
+	/**
+	 * @param lifecyclePool pool on which components are started and stopped, which is the common pool by default
+	 * @see org.ijsberg.iglu.util.execution.ExecutorSupport#createBoundedForkJoinPool(int, int)
+	 */
+	public void setLifecyclePool(ForkJoinPool lifecyclePool) {
+		if (lifecyclePool == null) {
+			throw new NullPointerException("lifecycle pool can not be null");
+		}
+		this.lifecyclePool = lifecyclePool;
+	}
+
+	/**
+	 * Starts internal components in dependency order: a component is started after the components
+	 * it accepts a reference to. Components of which all dependencies have been started
+	 * are started in parallel. Components in a dependency cycle are started without waiting for each other.
+	 * If components fail to start, the components that were started are stopped again.
+	 *
+	 * @throws ConfigurationException if one or more components fail to start
+	 */
+	@Override
+	public void start() {
+		synchronized (lifecycleLock) {
+			Topology topology = this.topology;
+			Map<String, Set<String>> dependencyIdsByComponentId = getDependencyIdsByComponentId(topology);
+			final Map<String, Component> startedComponents = new ConcurrentHashMap<String, Component>();
+			try {
+				runInDependencyOrder(topology.internalComponentsById, dependencyIdsByComponentId, "start", new LifecycleAction() {
+					public void run(String componentId, Component component) {
+						component.start();
+						startedComponents.put(componentId, component);
+					}
+				});
+			} catch (ConfigurationException e) {
+				try {
+					runInDependencyOrder(startedComponents, getDependentIdsByComponentId(dependencyIdsByComponentId), "stop", STOP);
+				} catch (ConfigurationException stopFailure) {
+					e.addSuppressed(stopFailure);
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Stops internal components in reverse dependency order: a component is stopped after
+	 * the components that accept a reference to it. Components are stopped in parallel where possible.
+	 *
+	 * @throws ConfigurationException if one or more components fail to stop
+	 */
+	@Override
+	public void stop() {
+		synchronized (lifecycleLock) {
+			Topology topology = this.topology;
+			runInDependencyOrder(topology.internalComponentsById,
+					getDependentIdsByComponentId(getDependencyIdsByComponentId(topology)), "stop", STOP);
+		}
+	}
+
+	private static final LifecycleAction STOP = new LifecycleAction() {
+		public void run(String componentId, Component component) {
+			component.stop();
+		}
+	};
+
+	private static Map<String, Set<String>> getDependencyIdsByComponentId(Topology topology) {
+		Map<String, Set<String>> dependencyIdsByComponentId = new HashMap<String, Set<String>>();
+		for (String componentId : topology.internalComponentsById.keySet()) {
+			dependencyIdsByComponentId.put(componentId, topology.getDependencyIds(componentId));
+		}
+		return dependencyIdsByComponentId;
+	}
+
+	private static Map<String, Set<String>> getDependentIdsByComponentId(Map<String, Set<String>> dependencyIdsByComponentId) {
+		Map<String, Set<String>> dependentIdsByComponentId = new HashMap<String, Set<String>>();
+		for (String componentId : dependencyIdsByComponentId.keySet()) {
+			dependentIdsByComponentId.put(componentId, new HashSet<String>());
+		}
+		for (Map.Entry<String, Set<String>> entry : dependencyIdsByComponentId.entrySet()) {
+			for (String dependencyId : entry.getValue()) {
+				dependentIdsByComponentId.get(dependencyId).add(entry.getKey());
+			}
+		}
+		return dependentIdsByComponentId;
+	}
+
+	/**
+	 * Runs an action for every component on the lifecycle pool, as soon as it has run for
+	 * the components that must precede it, and waits until it has run for all components.
+	 */
+	private void runInDependencyOrder(Map<String, Component> components, Map<String, Set<String>> predecessorIdsByComponentId,
+									  String actionName, LifecycleAction action) {
+		Map<String, CompletableFuture<Void>> tasksByComponentId = new HashMap<String, CompletableFuture<Void>>();
+		for (String componentId : components.keySet()) {
+			schedule(componentId, components, predecessorIdsByComponentId, actionName, action, tasksByComponentId, new HashSet<String>());
+		}
+		ConfigurationException failure = null;
+		Set<Throwable> causes = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+		for (CompletableFuture<Void> task : tasksByComponentId.values()) {
+			try {
+				task.join();
+			} catch (CompletionException e) {
+				//components of which a predecessor failed fail with the same cause
+				if (causes.add(e.getCause())) {
+					ConfigurationException cause = e.getCause() instanceof ConfigurationException ?
+							(ConfigurationException) e.getCause() : new ConfigurationException(e.getCause());
+					if (failure == null) {
+						failure = cause;
+					} else {
+						failure.addSuppressed(cause);
+					}
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private CompletableFuture<Void> schedule(final String componentId, final Map<String, Component> components,
+											 Map<String, Set<String>> predecessorIdsByComponentId, final String actionName,
+											 final LifecycleAction action, Map<String, CompletableFuture<Void>> tasksByComponentId,
+											 Set<String> path) {
+		CompletableFuture<Void> task = tasksByComponentId.get(componentId);
+		if (task != null) {
+			return task;
+		}
+		path.add(componentId);
+		List<CompletableFuture<Void>> predecessorTasks = new ArrayList<CompletableFuture<Void>>();
+		for (String predecessorId : predecessorIdsByComponentId.get(componentId)) {
+			//a predecessor on the path closes a cycle
+			if (components.containsKey(predecessorId) && !path.contains(predecessorId)) {
+				predecessorTasks.add(schedule(predecessorId, components, predecessorIdsByComponentId, actionName, action, tasksByComponentId, path));
+			}
+		}
+		path.remove(componentId);
+		task = CompletableFuture.allOf(predecessorTasks.toArray(new CompletableFuture<?>[0])).thenRunAsync(new Runnable() {
+			public void run() {
+				try {
+					action.run(componentId, components.get(componentId));
+				} catch (RuntimeException e) {
+					throw new ConfigurationException("can not " + actionName + " component '" + componentId + "'", e);
+				}
+			}
+		}, lifecyclePool);
+		tasksByComponentId.put(componentId, task);
+		return task;
+	}
+
+	private interface LifecycleAction {
+
+		void run(String componentId, Component component);
 	}
 
 	/**
 	 * @param internalComponentId
 	 * @param interfaces
 	 */
-	public void expose(String internalComponentId, Class<?>... interfaces) {
-		if (!internalComponentsById.containsKey(internalComponentId)) {
+	public synchronized void expose(String internalComponentId, Class<?>... interfaces) {
+		TopologyEvent event = new TopologyEvent();
+		event.begin();
+		if (!topology.internalComponentsById.containsKey(internalComponentId)) {
 			throw new ConfigurationException("component '" + internalComponentId + "' is not connected");
 		}
 		if (isExposed(internalComponentId)) {
 			if (interfaces == null || interfaces.length == 0) {
-				exposedInterfacesByComponentId.remove(internalComponentId);
+				topology = topology.withoutExposedInterfaces(internalComponentId);
 				this.removeInterfacesForExternalComponents(internalComponentId, this.getInternalComponent(internalComponentId));
 			}
 		}
 		ensureComponentExposesInterfaces(this.getInternalComponent(internalComponentId), Arrays.asList(interfaces));
-		exposedInterfacesByComponentId.put(internalComponentId, new HashSet<Class<?>>(Arrays.asList(interfaces)));
+		topology = topology.withExposedInterfaces(internalComponentId, interfaces);
 		this.setInterfacesInExternalComponents(internalComponentId, interfaces);
+		commit(event, "expose", internalComponentId, interfaces);
+	}
+
+	private static void commit(TopologyEvent event, String operation, String componentId, Class<?>... interfaces) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.setChange(operation, componentId, interfaces);
+			event.commit();
+		}
+	}
+
+	/**
+	 * Starts a transaction that connects, disconnects and exposes components in one batch.
+	 * Changes take effect when the transaction is committed.
+	 *
+	 * @return a new transaction
+	 */
+	public Transaction begin() {
+		return new Transaction(topology);
+	}
+
+	/**
+	 * Publishes the topology that results from a transaction's operations and
+	 * updates references and listener registrations for the difference with the current topology.
+	 */
+	private synchronized void commit(Transaction transaction) {
+		TopologyEvent event = new TopologyEvent();
+		event.begin();
+		Topology previousTopology = topology;
+		Topology nextTopology;
+		if (transaction.baseTopology == previousTopology) {
+			nextTopology = transaction.stagedTopology.build();
+		} else {
+			//the cluster changed after the transaction began
+			nextTopology = transaction.replay(previousTopology);
+		}
+		if (nextTopology == previousTopology) {
+			return;
+		}
+		Map<String, Component> removedComponentsById = getRemovedComponents(previousTopology, nextTopology);
+		Map<String, Component> addedComponentsById = getRemovedComponents(nextTopology, previousTopology);
+		Set<Component> removedExternalComponents = new HashSet<Component>(previousTopology.externalComponents);
+		removedExternalComponents.removeAll(nextTopology.externalComponents);
+		Set<Component> addedExternalComponents = new HashSet<Component>(nextTopology.externalComponents);
+		addedExternalComponents.removeAll(previousTopology.externalComponents);
+
+		for (String componentId : removedComponentsById.keySet()) {
+			proxiesByComponentId.remove(componentId);
+		}
+		for (String componentId : addedComponentsById.keySet()) {
+			proxiesByComponentId.remove(componentId);
+		}
+		topology = nextTopology;
+
+		for (Component component : addedComponentsById.values()) {
+			identify(component);
+		}
+		for (Component component : addedExternalComponents) {
+			identify(component, EXTERNAL_COMPONENT_ID);
+		}
+		unwireRemovedComponents(previousTopology, nextTopology, removedComponentsById, removedExternalComponents);
+		wireAddedComponents(nextTopology, addedComponentsById, addedExternalComponents);
+		updateExposure(previousTopology, nextTopology, addedExternalComponents);
+
+		Set<String> changedComponentIds = new HashSet<String>(removedComponentsById.keySet());
+		changedComponentIds.addAll(addedComponentsById.keySet());
+		commit(event, "commit", joinComponentIds(changedComponentIds));
+	}
+
+	private static Map<String, Component> getRemovedComponents(Topology previousTopology, Topology nextTopology) {
+		Map<String, Component> removedComponentsById = new HashMap<String, Component>();
+		for (Map.Entry<String, Component> entry : previousTopology.internalComponentsById.entrySet()) {
+			if (nextTopology.internalComponentsById.get(entry.getKey()) != entry.getValue()) {
+				removedComponentsById.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return removedComponentsById;
+	}
+
+	private void unwireRemovedComponents(Topology previousTopology, Topology nextTopology,
+										 Map<String, Component> removedComponentsById, Set<Component> removedExternalComponents) {
+		for (Component externalComponent : removedExternalComponents) {
+			for (Map.Entry<String, Component> entry : previousTopology.internalComponentsById.entrySet()) {
+				if (previousTopology.exposedInterfacesByComponentId.containsKey(entry.getKey())) {
+					externalComponent.removeDependency(entry.getKey());
+				}
+				entry.getValue().unregister(externalComponent);
+			}
+		}
+		Set<String> unwiredComponentIds = new HashSet<String>();
+		for (Map.Entry<String, Component> removed : removedComponentsById.entrySet()) {
+			String componentId = removed.getKey();
+			Component component = removed.getValue();
+			for (Component externalComponent : previousTopology.externalComponents) {
+				if (!removedExternalComponents.contains(externalComponent)) {
+					if (previousTopology.exposedInterfacesByComponentId.containsKey(componentId)) {
+						externalComponent.removeDependency(componentId);
+					}
+					component.unregister(externalComponent);
+				}
+			}
+			unwiredComponentIds.add(componentId);
+			for (String internalComponentId : previousTopology.getRelatedComponentIds(componentId, component)) {
+				if (!unwiredComponentIds.contains(internalComponentId)) {
+					unwire(componentId, component, internalComponentId, previousTopology.internalComponentsById.get(internalComponentId));
+				}
+			}
+			if (directWiring && nextTopology.getComponentIds(component).isEmpty()) {
+				component.revokeDirectProxies();
+			}
+		}
+	}
+
+	private void wireAddedComponents(Topology nextTopology, Map<String, Component> addedComponentsById,
+									 Set<Component> addedExternalComponents) {
+		Set<String> wiredComponentIds = new HashSet<String>();
+		for (Map.Entry<String, Component> added : addedComponentsById.entrySet()) {
+			String componentId = added.getKey();
+			Component component = added.getValue();
+			wiredComponentIds.add(componentId);
+			for (String internalComponentId : nextTopology.getRelatedComponentIds(componentId, component)) {
+				if (!wiredComponentIds.contains(internalComponentId)) {
+					wire(componentId, component, internalComponentId, nextTopology.internalComponentsById.get(internalComponentId));
+				}
+			}
+			for (Component externalComponent : nextTopology.externalComponents) {
+				if (!addedExternalComponents.contains(externalComponent)) {
+					component.register(externalComponent);
+				}
+			}
+		}
+		for (Component externalComponent : addedExternalComponents) {
+			for (Map.Entry<String, Set<Class<?>>> entry : nextTopology.exposedInterfacesByComponentId.entrySet()) {
+				externalComponent.setReference(this.getFacade(), entry.getKey(), entry.getValue().toArray(new Class<?>[0]));
+			}
+			for (Component internalComponent : nextTopology.internalComponentsById.values()) {
+				internalComponent.register(externalComponent);
+			}
+		}
+	}
+
+	private void updateExposure(Topology previousTopology, Topology nextTopology, Set<Component> addedExternalComponents) {
+		for (Component externalComponent : nextTopology.externalComponents) {
+			if (addedExternalComponents.contains(externalComponent)) {
+				continue;
+			}
+			for (Map.Entry<String, Set<Class<?>>> entry : nextTopology.exposedInterfacesByComponentId.entrySet()) {
+				if (!entry.getValue().equals(previousTopology.exposedInterfacesByComponentId.get(entry.getKey())) ||
+						previousTopology.internalComponentsById.get(entry.getKey()) != nextTopology.internalComponentsById.get(entry.getKey())) {
+					externalComponent.setReference(this.getFacade(), entry.getKey(), entry.getValue().toArray(new Class<?>[0]));
+				}
+			}
+			for (String componentId : previousTopology.exposedInterfacesByComponentId.keySet()) {
+				if (!nextTopology.exposedInterfacesByComponentId.containsKey(componentId) &&
+						nextTopology.internalComponentsById.containsKey(componentId)) {
+					externalComponent.removeDependency(componentId);
+				}
+			}
+		}
 	}
 
+	/**
+	 * Batch of changes to the components in the cluster.
+	 * Operations are validated when they are added, against the cluster as changed by preceding operations,
+	 * and throw the same exceptions as the corresponding operations of the cluster.
+	 * On commit, the resulting components and exposed interfaces become visible at once,
+	 * after which references and listener registrations are updated in a single pass,
+	 * for the net changes only. Components connected and disconnected in the same transaction
+	 * are never wired.
+	 * A transaction can be committed once and is not thread-safe.
+	 */
+	public class Transaction {
+
+		private final Topology baseTopology;
+		private final Topology.Builder stagedTopology;
+		private final List<Operation> operations = new ArrayList<Operation>();
+		private boolean committed;
+
+		private Transaction(Topology baseTopology) {
+			this.baseTopology = baseTopology;
+			this.stagedTopology = new Topology.Builder(baseTopology);
+		}
+
+		/**
+		 * @param componentId
+		 * @param component
+		 * @return this transaction
+		 * @throws ConfigurationException if the component or ID is already registered
+		 * @see StandardCluster#connect(String, Component)
+		 */
+		public Transaction connect(final String componentId, final Component component) {
+			return stage(new Operation() {
+				public void apply(Topology.Builder topology) {
+					stageConnect(topology, componentId, component);
+				}
+			});
+		}
+
+		/**
+		 * @param componentId
+		 * @param component
+		 * @param exposedInterfaces
+		 * @return this transaction
+		 * @throws ConfigurationException if the component or ID is already registered
+		 * @see StandardCluster#connect(String, Component, Class[])
+		 */
+		public Transaction connect(final String componentId, final Component component, final Class<?>... exposedInterfaces) {
+			return stage(new Operation() {
+				public void apply(Topology.Builder topology) {
+					ensureComponentExposesInterfaces(component, Arrays.<Class<?>>asList(exposedInterfaces));
+					stageConnect(topology, componentId, component).setExposedInterfaces(componentId, exposedInterfaces);
+				}
+			});
+		}
+
+		/**
+		 * @param externalComponent
+		 * @return this transaction
+		 * @throws ConfigurationException if the component is already connected
+		 * @see StandardCluster#connect(Component)
+		 */
+		public Transaction connect(final Component externalComponent) {
+			return stage(new Operation() {
+				public void apply(Topology.Builder topology) {
+					if (topology.getConnectedComponent(externalComponent) != null) {
+						throw new ConfigurationException("component " + externalComponent + " is already connected");
+					}
+					topology.addExternalComponent(externalComponent);
+				}
+			});
+		}
+
+		/**
+		 * @param component
+		 * @return this transaction
+		 * @see StandardCluster#disconnect(Component)
+		 */
+		public Transaction disconnect(final Component component) {
+			return stage(new Operation() {
+				public void apply(Topology.Builder topology) {
+					Component connectedComponent = topology.getConnectedComponent(component);
+					if (connectedComponent == null) {
+						return;
+					}
+					for (String componentId : new ArrayList<String>(topology.getComponentIds(connectedComponent))) {
+						topology.removeExposedInterfaces(componentId).removeInternalComponent(componentId);
+					}
+					topology.removeExternalComponent(connectedComponent);
+				}
+			});
+		}
+
+		/**
+		 * @param internalComponentId
+		 * @param interfaces
+		 * @return this transaction
+		 * @throws ConfigurationException if no component is connected under the ID
+		 * @see StandardCluster#expose(String, Class[])
+		 */
+		public Transaction expose(final String internalComponentId, final Class<?>... interfaces) {
+			return stage(new Operation() {
+				public void apply(Topology.Builder topology) {
+					Component component = topology.getInternalComponent(internalComponentId);
+					if (component == null) {
+						throw new ConfigurationException("component '" + internalComponentId + "' is not connected");
+					}
+					ensureComponentExposesInterfaces(component, Arrays.asList(interfaces));
+					topology.setExposedInterfaces(internalComponentId, interfaces);
+				}
+			});
+		}
+
+		/**
+		 * Applies all operations to the cluster.
+		 * Operations are validated again if the cluster changed after the transaction began,
+		 * in which case nothing is applied if one of them fails.
+		 *
+		 * @throws IllegalStateException if the transaction was committed before
+		 */
+		public void commit() {
+			ensureNotCommitted();
+			committed = true;
+			StandardCluster.this.commit(this);
+		}
+
+		private Topology.Builder stageConnect(Topology.Builder topology, String componentId, Component component) {
+			if (topology.isConnectedExternally(component)) {
+				throw new ConfigurationException("component " + component + " is already connected as external component");
+			}
+			if (topology.getInternalComponent(componentId) != null) {
+				throw new ConfigurationException("component already registered under id '" + componentId + "'");
+			}
+			return topology.addInternalComponent(componentId, component);
+		}
+
+		private Transaction stage(Operation operation) {
+			ensureNotCommitted();
+			operation.apply(stagedTopology);
+			operations.add(operation);
+			return this;
+		}
+
+		private Topology replay(Topology topology) {
+			Topology.Builder builder = new Topology.Builder(topology);
+			for (Operation operation : operations) {
+				operation.apply(builder);
+			}
+			return builder.build();
+		}
+
+		private void ensureNotCommitted() {
+			if (committed) {
+				throw new IllegalStateException("transaction already committed");
+			}
+		}
+	}
+
+	/**
+	 * Operation of a transaction.
+	 * Validates before it changes the topology, so that a failing operation leaves it unchanged.
+	 */
+	private interface Operation {
+		void apply(Topology.Builder topology);
+	}
+
+	/**
+	 * Gives access to the cluster for external components.
+	 */
+	private class ClusterFacade implements Facade {
+
+		public void connect(Component externalComponent) {
+			StandardCluster.this.connect(externalComponent);
+		}
+
+		public void disconnect(Component component) {
+			StandardCluster.this.disconnect(component);
+		}
+
+		public Set<String> getExposedComponentIds() {
+			return StandardCluster.this.getExposedComponentIds();
+		}
+
+		public Class<?>[] getExposedInterfaces(String componentId) {
+			return StandardCluster.this.getExposedInterfaces(componentId);
+		}
+
+		/**
+		 * @throws ConfigurationException if the component does not expose the interface
+		 */
+		public Object getProxy(String componentId, Class<?> exposedInterface) {
+			if (!isExposed(componentId, exposedInterface)) {
+				throw new ConfigurationException(componentId + " does not expose " + exposedInterface);
+			}
+			return StandardCluster.this.getProxy(componentId, exposedInterface);
+		}
+
+		public String toString() {
+			return "facade of " + StandardCluster.this;
+		}
+	}
+
+	/**
+	 * Immutable snapshot of the components in the cluster.
+	 * Internal components are indexed by the keys of references they accept
+	 * and by the keys of references to them, so that wiring a component only
+	 * involves the components it may actually be wired with.
+	 * Connected components are indexed by identity, and by the identity of the object they embed,
+	 * so that membership is checked without scanning and without invoking equals or hashCode.
+	 * The collections are persistent, so that a topology derived by connecting or disconnecting
+	 * a single component shares nearly all of its structure with the topology it is derived from.
+	 */
+	private static final class Topology {
+
+		private final PersistentMap<String, Component> internalComponentsById;
+		private final PersistentMap<String, Set<Class<?>>> exposedInterfacesByComponentId;
+		private final PersistentSet<Component> externalComponents;
+
+		private final PersistentMap<String, PersistentSet<String>> consumingComponentIdsByReferenceKey;
+		private final PersistentMap<String, PersistentSet<String>> componentIdsByReferenceKey;
+		private final PersistentSet<String> listenerAcceptingComponentIds;
+
+		private final PersistentMap<Component, PersistentSet<String>> componentIdsByComponent;
+		private final PersistentMap<Object, Component> componentsByImplementation;
+
+		private Topology() {
+			this(PersistentMap.<String, Component>empty(), PersistentMap.<String, Set<Class<?>>>empty(),
+					PersistentSet.<Component>emptyByIdentity(), PersistentMap.<String, PersistentSet<String>>empty(),
+					PersistentMap.<String, PersistentSet<String>>empty(), PersistentSet.<String>empty(),
+					PersistentMap.<Component, PersistentSet<String>>emptyByIdentity(), PersistentMap.<Object, Component>emptyByIdentity());
+		}
+
+		private Topology(PersistentMap<String, Component> internalComponentsById,
+						 PersistentMap<String, Set<Class<?>>> exposedInterfacesByComponentId,
+						 PersistentSet<Component> externalComponents,
+						 PersistentMap<String, PersistentSet<String>> consumingComponentIdsByReferenceKey,
+						 PersistentMap<String, PersistentSet<String>> componentIdsByReferenceKey,
+						 PersistentSet<String> listenerAcceptingComponentIds,
+						 PersistentMap<Component, PersistentSet<String>> componentIdsByComponent,
+						 PersistentMap<Object, Component> componentsByImplementation) {
+			this.internalComponentsById = internalComponentsById;
+			this.exposedInterfacesByComponentId = exposedInterfacesByComponentId;
+			this.externalComponents = externalComponents;
+			this.consumingComponentIdsByReferenceKey = consumingComponentIdsByReferenceKey;
+			this.componentIdsByReferenceKey = componentIdsByReferenceKey;
+			this.listenerAcceptingComponentIds = listenerAcceptingComponentIds;
+			this.componentIdsByComponent = componentIdsByComponent;
+			this.componentsByImplementation = componentsByImplementation;
+		}
+
+		/**
+		 * @param component
+		 * @return the connected component, which is either the given component
+		 * or a component that embeds the same object, or null
+		 */
+		private Component getConnectedComponent(Component component) {
+			return getConnectedComponent(component, componentIdsByComponent, externalComponents, componentsByImplementation);
+		}
+
+		private static Component getConnectedComponent(Component component, Map<Component, PersistentSet<String>> componentIdsByComponent,
+														Set<Component> externalComponents, Map<Object, Component> componentsByImplementation) {
+			if (componentIdsByComponent.containsKey(component) || externalComponents.contains(component)) {
+				return component;
+			}
+			Object implementation = getImplementation(component);
+			return implementation != null ? componentsByImplementation.get(implementation) : null;
+		}
+
+		private boolean isConnectedInternally(Component component) {
+			Component connectedComponent = getConnectedComponent(component);
+			return connectedComponent != null && componentIdsByComponent.containsKey(connectedComponent);
+		}
+
+		private boolean isConnectedExternally(Component component) {
+			Component connectedComponent = getConnectedComponent(component);
+			return connectedComponent != null && externalComponents.contains(connectedComponent);
+		}
+
+		/**
+		 * @param component
+		 * @return IDs under which the component is connected internally
+		 */
+		private Set<String> getComponentIds(Component component) {
+			Set<String> componentIds = componentIdsByComponent.get(component);
+			return componentIds != null ? componentIds : CopyOnWrite.<String>emptySet();
+		}
+
+		/**
+		 * @param component
+		 * @param previousImplementation object the component embedded when it was indexed
+		 * @return a topology in which the component is indexed by the object it currently embeds
+		 */
+		private Topology withReplacedImplementation(Component component, Object previousImplementation) {
+			return new Builder(this).replaceImplementation(component, previousImplementation).build();
+		}
+
+		/**
+		 * @return the object embedded by a standard component, or null
+		 */
+		private static Object getImplementation(Component component) {
+			return component instanceof StandardComponent ? ((StandardComponent) component).getImplementation() : null;
+		}
+
+		/**
+		 * @param componentId
+		 * @param component
+		 * @return IDs of other internal components that accept a reference to or from the component,
+		 * or that accept it, or are accepted by it, as listener
+		 */
+		private Set<String> getRelatedComponentIds(String componentId, Component component) {
+			Set<String> relatedComponentIds;
+			if (component.acceptsListeners() || component.getReferenceKeys() == null) {
+				relatedComponentIds = new HashSet<String>(internalComponentsById.keySet());
+			} else {
+				relatedComponentIds = new HashSet<String>(listenerAcceptingComponentIds);
+				addAll(relatedComponentIds, consumingComponentIdsByReferenceKey.get(StandardComponent.getReferenceKey(componentId)));
+				for (String referenceKey : component.getReferenceKeys()) {
+					addAll(relatedComponentIds, componentIdsByReferenceKey.get(referenceKey));
+				}
+			}
+			relatedComponentIds.remove(componentId);
+			return relatedComponentIds;
+		}
+
+		/**
+		 * @param componentId
+		 * @return IDs of other internal components the component accepts a reference to
+		 */
+		private Set<String> getDependencyIds(String componentId) {
+			Set<String> dependencyIds = new HashSet<String>();
+			Set<String> referenceKeys = internalComponentsById.get(componentId).getReferenceKeys();
+			if (referenceKeys != null) {
+				for (String referenceKey : referenceKeys) {
+					addAll(dependencyIds, componentIdsByReferenceKey.get(referenceKey));
+				}
+			}
+			dependencyIds.remove(componentId);
+			return dependencyIds;
+		}
+
+		private static void addAll(Set<String> componentIds, Set<String> componentIdsToAdd) {
+			if (componentIdsToAdd != null) {
+				componentIds.addAll(componentIdsToAdd);
+			}
+		}
+
+		private Topology withInternalComponent(String componentId, Component component) {
+			return new Builder(this).addInternalComponent(componentId, component).build();
+		}
+
+		private Topology withoutInternalComponent(String componentId) {
+			return new Builder(this).removeInternalComponent(componentId).build();
+		}
+
+		private Topology withExposedInterfaces(String componentId, Class<?>[] exposedInterfaces) {
+			return new Builder(this).setExposedInterfaces(componentId, exposedInterfaces).build();
+		}
 
+		private Topology withoutExposedInterfaces(String componentId) {
+			return new Builder(this).removeExposedInterfaces(componentId).build();
+		}
+
+		private Topology withExternalComponent(Component component) {
+			return new Builder(this).addExternalComponent(component).build();
+		}
+
+		private Topology withoutExternalComponent(Component component) {
+			return new Builder(this).removeExternalComponent(component).build();
+		}
+
+		/**
+		 * Derives a topology from another one by a series of changes.
+		 * Since the collections of a topology are persistent, a change only copies the part
+		 * of a collection that holds the changed entry, and shares the rest with the original topology.
+		 * A builder is not thread-safe.
+		 */
+		private static final class Builder {
+
+			private Topology topology;
+
+			private PersistentMap<String, Component> internalComponentsById;
+			private PersistentMap<String, Set<Class<?>>> exposedInterfacesByComponentId;
+			private PersistentSet<Component> externalComponents;
+
+			private PersistentMap<String, PersistentSet<String>> consumingComponentIdsByReferenceKey;
+			private PersistentMap<String, PersistentSet<String>> componentIdsByReferenceKey;
+			private PersistentSet<String> listenerAcceptingComponentIds;
+
+			private PersistentMap<Component, PersistentSet<String>> componentIdsByComponent;
+			private PersistentMap<Object, Component> componentsByImplementation;
+
+			private Builder(Topology topology) {
+				reset(topology);
+			}
+
+			private void reset(Topology topology) {
+				this.topology = topology;
+				internalComponentsById = topology.internalComponentsById;
+				exposedInterfacesByComponentId = topology.exposedInterfacesByComponentId;
+				externalComponents = topology.externalComponents;
+				consumingComponentIdsByReferenceKey = topology.consumingComponentIdsByReferenceKey;
+				componentIdsByReferenceKey = topology.componentIdsByReferenceKey;
+				listenerAcceptingComponentIds = topology.listenerAcceptingComponentIds;
+				componentIdsByComponent = topology.componentIdsByComponent;
+				componentsByImplementation = topology.componentsByImplementation;
+			}
+
+			private Component getInternalComponent(String componentId) {
+				return internalComponentsById.get(componentId);
+			}
+
+			private Component getConnectedComponent(Component component) {
+				return Topology.getConnectedComponent(component, componentIdsByComponent, externalComponents, componentsByImplementation);
+			}
+
+			private boolean isConnectedExternally(Component component) {
+				Component connectedComponent = getConnectedComponent(component);
+				return connectedComponent != null && externalComponents.contains(connectedComponent);
+			}
+
+			private Set<String> getComponentIds(Component component) {
+				Set<String> componentIds = componentIdsByComponent.get(component);
+				return componentIds != null ? componentIds : CopyOnWrite.<String>emptySet();
+			}
+
+			private Builder addInternalComponent(String componentId, Component component) {
+				internalComponentsById = internalComponentsById.plus(componentId, component);
+				Set<String> referenceKeys = component.getReferenceKeys();
+				if (referenceKeys != null) {
+					for (String referenceKey : referenceKeys) {
+						consumingComponentIdsByReferenceKey = addToSet(consumingComponentIdsByReferenceKey, referenceKey, componentId);
+					}
+				}
+				componentIdsByReferenceKey = addToSet(componentIdsByReferenceKey, StandardComponent.getReferenceKey(componentId), componentId);
+				//components that do not tell which references they accept are related to every component, like listener registries
+				if (component.acceptsListeners() || referenceKeys == null) {
+					listenerAcceptingComponentIds = listenerAcceptingComponentIds.plus(componentId);
+				}
+				componentIdsByComponent = addToSet(componentIdsByComponent, component, componentId);
+				addImplementationOf(component);
+				return this;
+			}
+
+			private Builder removeInternalComponent(String componentId) {
+				Component component = internalComponentsById.get(componentId);
+				if (component == null) {
+					return this;
+				}
+				internalComponentsById = internalComponentsById.minus(componentId);
+				Set<String> referenceKeys = component.getReferenceKeys();
+				if (referenceKeys != null) {
+					for (String referenceKey : referenceKeys) {
+						consumingComponentIdsByReferenceKey = removeFromSet(consumingComponentIdsByReferenceKey, referenceKey, componentId);
+					}
+				}
+				componentIdsByReferenceKey = removeFromSet(componentIdsByReferenceKey, StandardComponent.getReferenceKey(componentId), componentId);
+				listenerAcceptingComponentIds = listenerAcceptingComponentIds.minus(componentId);
+				componentIdsByComponent = removeFromSet(componentIdsByComponent, component, componentId);
+				if (!componentIdsByComponent.containsKey(component)) {
+					removeImplementationOf(component);
+				}
+				return this;
+			}
+
+			private Builder setExposedInterfaces(String componentId, Class<?>[] exposedInterfaces) {
+				exposedInterfacesByComponentId = exposedInterfacesByComponentId.plus(componentId, CopyOnWrite.copyOf(Arrays.asList(exposedInterfaces)));
+				return this;
+			}
+
+			private Builder removeExposedInterfaces(String componentId) {
+				exposedInterfacesByComponentId = exposedInterfacesByComponentId.minus(componentId);
+				return this;
+			}
+
+			private Builder addExternalComponent(Component component) {
+				externalComponents = externalComponents.plus(component);
+				addImplementationOf(component);
+				return this;
+			}
+
+			private Builder removeExternalComponent(Component component) {
+				if (externalComponents.contains(component)) {
+					externalComponents = externalComponents.minus(component);
+					removeImplementationOf(component);
+				}
+				return this;
+			}
+
+			/**
+			 * @param component
+			 * @param previousImplementation object the component embedded when it was indexed
+			 * @return this builder, in which the component is indexed by the object it currently embeds
+			 */
+			private Builder replaceImplementation(Component component, Object previousImplementation) {
+				if (componentsByImplementation.get(previousImplementation) == component) {
+					componentsByImplementation = componentsByImplementation.minus(previousImplementation);
+					addImplementationOf(component);
+				}
+				return this;
+			}
+
+			private void addImplementationOf(Component component) {
+				Object implementation = getImplementation(component);
+				if (implementation != null) {
+					componentsByImplementation = componentsByImplementation.plus(implementation, component);
+				}
+			}
+
+			private void removeImplementationOf(Component component) {
+				Object implementation = getImplementation(component);
+				if (implementation != null && componentsByImplementation.get(implementation) == component) {
+					componentsByImplementation = componentsByImplementation.minus(implementation);
+				}
+			}
+
+			/**
+			 * @return the resulting topology, or the original one if nothing changed
+			 */
+			private Topology build() {
+				if (internalComponentsById == topology.internalComponentsById &&
+						exposedInterfacesByComponentId == topology.exposedInterfacesByComponentId &&
+						externalComponents == topology.externalComponents &&
+						consumingComponentIdsByReferenceKey == topology.consumingComponentIdsByReferenceKey &&
+						componentIdsByReferenceKey == topology.componentIdsByReferenceKey &&
+						listenerAcceptingComponentIds == topology.listenerAcceptingComponentIds &&
+						componentIdsByComponent == topology.componentIdsByComponent &&
+						componentsByImplementation == topology.componentsByImplementation) {
+					return topology;
+				}
+				Topology builtTopology = new Topology(internalComponentsById, exposedInterfacesByComponentId,
+						externalComponents, consumingComponentIdsByReferenceKey, componentIdsByReferenceKey,
+						listenerAcceptingComponentIds, componentIdsByComponent, componentsByImplementation);
+				reset(builtTopology);
+				return builtTopology;
+			}
+
+			/**
+			 * @return a map in which the set for the key contains the component ID
+			 */
+			private static <K> PersistentMap<K, PersistentSet<String>> addToSet(PersistentMap<K, PersistentSet<String>> map,
+																				 K key, String componentId) {
+				PersistentSet<String> componentIds = map.get(key);
+				return map.plus(key, (componentIds != null ? componentIds : PersistentSet.<String>empty()).plus(componentId));
+			}
+
+			/**
+			 * @return a map in which the set for the key does not contain the component ID,
+			 * and which does not contain the key if the set becomes empty
+			 */
+			private static <K> PersistentMap<K, PersistentSet<String>> removeFromSet(PersistentMap<K, PersistentSet<String>> map,
+																					  K key, String componentId) {
+				PersistentSet<String> componentIds = map.get(key);
+				if (componentIds == null) {
+					return map;
+				}
+				componentIds = componentIds.minus(componentId);
+				return componentIds.isEmpty() ? map.minus(key) : map.plus(key, componentIds);
+			}
+		}
+	}
 }
@@ -19,34 +19,119 @@
 
 package org.ijsberg.iglu.configuration.module;
 
+import org.ijsberg.iglu.Startable;
 import org.ijsberg.iglu.configuration.Component;
 import org.ijsberg.iglu.configuration.ConfigurationException;
 import org.ijsberg.iglu.configuration.Facade;
+import org.ijsberg.iglu.configuration.MethodSelector;
+import org.ijsberg.iglu.configuration.jfr.PropertiesEvent;
+import org.ijsberg.iglu.util.execution.Mailbox;
+import org.ijsberg.iglu.util.metrics.InvocationMetrics;
+import org.ijsberg.iglu.util.tracing.Tracer;
+import org.ijsberg.iglu.util.reflection.CallSiteCache;
+import org.ijsberg.iglu.util.reflection.ClassMetadata;
+import org.ijsberg.iglu.util.reflection.DelegateReference;
 import org.ijsberg.iglu.util.reflection.MethodInvocation;
+import org.ijsberg.iglu.util.reflection.ProxyClassGenerator;
 import org.ijsberg.iglu.util.reflection.ReflectionSupport;
-import org.ijsberg.iglu.util.types.Converter;
 
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Standard implementation of Component.
+ * State that is read while the embedded object is invoked, such as interceptors and proxies,
+ * is kept in immutable snapshots. Changes are serialized and publish new snapshots,
+ * so invocations never block and never see a partial update.
  */
-public class StandardComponent implements Component, InvocationHandler {
+public class StandardComponent implements Component, InvocationHandler, ProxyTarget {
 
 	public static final String PROPERTIES_PROPERTY_KEY = "properties";
 	public static final String REGISTER_LISTENER_METHOD_NAME = "register";
 	public static final String UNREGISTER_LISTENER_METHOD_NAME = "unregister";
+	public static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 30000;
 
-	private Object implementation;
-	private Class<?>[] interfaces;
-	private Properties properties;
+	private static final ClassValue<Set<String>> REFERENCE_KEYS_BY_CLASS = new ClassValue<Set<String>>() {
+		@Override
+		protected Set<String> computeValue(Class<?> implementationClass) {
+			Set<String> referenceKeys = new HashSet<String>();
+			ClassMetadata metadata = ReflectionSupport.getClassMetadata(implementationClass);
+			for (String propertyKey : metadata.getSetterPropertyKeys()) {
+				for (Method setter : metadata.getSettersByPropertyKey(propertyKey)) {
+					Class<?> parameterType = setter.getParameterTypes()[0];
+					//proxies implement interfaces
+					if (parameterType.isInterface() || parameterType == Object.class) {
+						referenceKeys.add(propertyKey);
+					}
+				}
+			}
+			return Collections.unmodifiableSet(referenceKeys);
+		}
+	};
+
+	private static final ClassValue<Boolean> ACCEPTS_LISTENERS_BY_CLASS = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> implementationClass) {
+			return !ReflectionSupport.getMethodsByName(implementationClass, REGISTER_LISTENER_METHOD_NAME, 1).isEmpty();
+		}
+	};
+
+	/**
+	 * Methods invoked by name, resolved per implementation class among the methods of its interfaces.
+	 */
+	private static final CallSiteCache INTERFACE_CALL_SITES = new CallSiteCache() {
+		@Override
+		protected Method[] getCandidateMethods(Class<?> implementationClass, String methodName, int nrofParameters) {
+			Set<Method> retval = new LinkedHashSet<Method>();
+			for (Class<?> clasz : ReflectionSupport.getClassMetadata(implementationClass).getInterfaces()) {
+				retval.addAll(ReflectionSupport.getMethodsByName(clasz, methodName, nrofParameters));
+			}
+			return retval.toArray(new Method[0]);
+		}
+	};
+
+	private volatile Object implementation;
+	private final Class<?>[] interfaces;
+	private volatile Properties properties;
 	private Properties setterInjectedProperties = new Properties();
 
-	private HashMap<Class<?>, InvocationHandler> invocationHandlers = new HashMap<Class<?>, InvocationHandler>();
-	private HashMap<String, Set<Class<?>>> injectedProxyTypesByComponentId = new HashMap<String, Set<Class<?>>>();
+	private volatile Map<Class<?>, List<DispatchTable.Interception>> interceptionsByInterface = CopyOnWrite.emptyMap();
+	private volatile Map<String, Set<Class<?>>> injectedProxyTypesByComponentId = CopyOnWrite.emptyMap();
+	private volatile Map<String, Facade> referenceFacadesByComponentId = CopyOnWrite.emptyMap();
+
+	private volatile Map<Component, Map<Class<?>, Object>> registeredListenersByComponent = CopyOnWrite.emptyMap();
+
+	private volatile Map<Class<?>, DispatchTable> dispatchTablesByInterface = CopyOnWrite.emptyMap();
+
+	private volatile boolean generateProxyClasses = true;
+	private volatile Map<Class<?>, DelegateReference> delegateReferencesByInterface = CopyOnWrite.emptyMap();
+	private volatile Map<Class<?>, DelegateReference> directReferencesByInterface = CopyOnWrite.emptyMap();
+	private volatile boolean directProxiesRevoked;
+	private boolean registeredForFlightRecording;
+
+	private volatile Map<Class<?>, Object> proxiesByInterface = CopyOnWrite.emptyMap();
 
-	private Map<Component, Map<Class<?>, Object>> registeredListenersByComponent = new HashMap<Component, Map<Class<?>, Object>>();
+	private volatile Executor executor = ForkJoinPool.commonPool();
+	private volatile Mailbox mailbox;
+
+	private volatile InFlightInvocations inFlightInvocations = new InFlightInvocations();
+	private final Object lifecycleLock = new Object();
+	private volatile boolean started;
+	private volatile boolean draining;
+	private volatile long drainTimeoutMillis = DEFAULT_DRAIN_TIMEOUT_MILLIS;
+
+	private final ConcurrentMap<Method, InvocationMetrics> metricsByMethod = new ConcurrentHashMap<Method, InvocationMetrics>();
+	private volatile boolean metricsEnabled;
+	private volatile DispatchTable.Instrumentation instrumentation;
 
 	public StandardComponent(Object implementation) {
 		if (implementation == null) {
@@ -54,20 +139,24 @@ public class StandardComponent implements Component, InvocationHandler {
 		}
 		this.implementation = implementation;
 		this.interfaces = ReflectionSupport.getInterfacesForClass(implementation.getClass()).toArray(new Class<?>[0]);
+		this.instrumentation = new DispatchTable.Instrumentation(implementation.getClass().getName(), null);
 	}
 
 	@Override
 	/**
 	 * @throws NullPointerException if the cluster does not expose a component with ID componentId
 	 */
-	public void setReference(Facade facade, String componentId, Class<?>... interfaces) {
+	public synchronized void setReference(Facade facade, String componentId, Class<?>... interfaces) {
 
 		if (injectedProxyTypesByComponentId.containsKey(componentId)) {
 			resetReference(facade, componentId, interfaces);
 		} else {
-			Set<Class<?>> injectedProxyTypes = injectProxies(componentId, Arrays.asList(interfaces), facade);
-			injectedProxyTypesByComponentId.put(componentId, injectedProxyTypes);
+			Set<Class<?>> injectedProxyTypes = injectProxies(implementation, componentId, Arrays.asList(interfaces), facade);
+			injectedProxyTypesByComponentId = CopyOnWrite.put(injectedProxyTypesByComponentId, componentId, CopyOnWrite.copyOf(injectedProxyTypes));
 		}
+		referenceFacadesByComponentId = injectedProxyTypesByComponentId.containsKey(componentId) ?
+				CopyOnWrite.put(referenceFacadesByComponentId, componentId, facade) :
+				CopyOnWrite.remove(referenceFacadesByComponentId, componentId);
 	}
 
 	/**
@@ -76,7 +165,7 @@ public class StandardComponent implements Component, InvocationHandler {
 	 * @param interfaces
 	 */
 	private void resetReference(Facade facade, String componentId, Class<?>[] interfaces) {
-		Set<Class<?>> currentlyInjectedInterfaces = injectedProxyTypesByComponentId.get(componentId);
+		Set<Class<?>> currentlyInjectedInterfaces = new HashSet<Class<?>>(injectedProxyTypesByComponentId.get(componentId));
 
 		Set<Class<?>> exposedInterfaces = new HashSet<Class<?>>(Arrays.asList(interfaces));
 
@@ -88,78 +177,132 @@ public class StandardComponent implements Component, InvocationHandler {
 		Set<Class<?>> interfacesToAdd = new HashSet<Class<?>>(exposedInterfaces);
 		interfacesToAdd.removeAll(currentlyInjectedInterfaces);
 
-		Set<Class<?>> injectedProxyTypes = injectProxies(componentId, interfacesToAdd, facade);
+		Set<Class<?>> injectedProxyTypes = injectProxies(implementation, componentId, interfacesToAdd, facade);
 		currentlyInjectedInterfaces.addAll(injectedProxyTypes);
 
 		if (currentlyInjectedInterfaces.isEmpty()) {
-			injectedProxyTypesByComponentId.remove(componentId);
+			injectedProxyTypesByComponentId = CopyOnWrite.remove(injectedProxyTypesByComponentId, componentId);
+		} else {
+			injectedProxyTypesByComponentId = CopyOnWrite.put(injectedProxyTypesByComponentId, componentId, CopyOnWrite.copyOf(currentlyInjectedInterfaces));
 		}
 	}
 
 	/**
 	 * @param componentId
 	 */
-	public void removeDependency(String componentId) {
+	public synchronized void removeDependency(String componentId) {
 //		injectNulls(componentId, injectedProxyTypesByComponentId.get(componentId));
-		injectedProxyTypesByComponentId.remove(componentId);
+		injectedProxyTypesByComponentId = CopyOnWrite.remove(injectedProxyTypesByComponentId, componentId);
+		referenceFacadesByComponentId = CopyOnWrite.remove(referenceFacadesByComponentId, componentId);
+	}
+
+	@Override
+	public Set<String> getReferenceKeys() {
+		return getReferenceKeys(implementation.getClass());
+	}
+
+	/**
+	 * @param implementationClass
+	 * @return keys of references instances of the class accept
+	 */
+	static Set<String> getReferenceKeys(Class<?> implementationClass) {
+		return REFERENCE_KEYS_BY_CLASS.get(implementationClass);
+	}
+
+	/**
+	 * @param componentId
+	 * @return the key of references to the component
+	 */
+	static String getReferenceKey(String componentId) {
+		return makeFirstCharUpperCase(componentId);
+	}
+
+	@Override
+	public boolean acceptsListeners() {
+		return acceptsListeners(implementation.getClass());
+	}
+
+	/**
+	 * @param implementationClass
+	 * @return true if instances of the class accept listeners
+	 */
+	static boolean acceptsListeners(Class<?> implementationClass) {
+		return ACCEPTS_LISTENERS_BY_CLASS.get(implementationClass);
 	}
 
 	/**
 	 * @param component
 	 */
-	public void register(Component component) {
+	public synchronized void register(Component component) {
 		for (Class<?> interfaceClass : component.getInterfaces()) {
-			try {
-				Method method = implementation.getClass().getMethod(REGISTER_LISTENER_METHOD_NAME, interfaceClass);
+			Method method = getListenerMethod(implementation, REGISTER_LISTENER_METHOD_NAME, interfaceClass);
+			if (method != null) {
 				Object listenerProxy = component.createProxy(interfaceClass);
-				System.out.println("registering proxy for " + interfaceClass.getSimpleName() + " in component " + this.implementation.getClass().getSimpleName());
-				invokeMethod(method, listenerProxy);
+				System.out.println("registering proxy for " + interfaceClass.getSimpleName() + " in component " + implementation.getClass().getSimpleName());
+				invokeMethod(implementation, method, listenerProxy);
 				saveRegisteredListenerProxy(component, interfaceClass, listenerProxy);
-			} catch (NoSuchMethodException ignore) {
 			}
 		}
 	}
 
 
 	@Override
-	public void unregister(Component component) {
+	public synchronized void unregister(Component component) {
 		Map<Class<?>, Object> registeredListeners = registeredListenersByComponent.get(component);
 		if (registeredListeners != null) {
 			for (Class<?> interfaceClass : component.getInterfaces()) {
-				try {
-					Method method = implementation.getClass().getMethod(UNREGISTER_LISTENER_METHOD_NAME, interfaceClass);
-					Object listenerProxy = registeredListeners.get(interfaceClass);
-					if (listenerProxy != null) {
-						invokeMethod(method, listenerProxy);
-						registeredListeners.remove(interfaceClass);
-					}
-				} catch (NoSuchMethodException ignore) {
+				Method method = getListenerMethod(implementation, UNREGISTER_LISTENER_METHOD_NAME, interfaceClass);
+				Object listenerProxy = registeredListeners.get(interfaceClass);
+				if (method != null && listenerProxy != null) {
+					invokeMethod(implementation, method, listenerProxy);
+					removeRegisteredListenerProxy(component, interfaceClass);
 				}
 			}
 		}
 	}
 
+	/**
+	 * @param methodName
+	 * @param interfaceClass
+	 * @return the public method that takes exactly the given interface, or null
+	 */
+	private static Method getListenerMethod(Object target, String methodName, Class<?> interfaceClass) {
+		for (Method method : ReflectionSupport.getMethodsByName(target.getClass(), methodName, 1)) {
+			if (method.getParameterTypes()[0] == interfaceClass) {
+				return method;
+			}
+		}
+		return null;
+	}
+
 	private void saveRegisteredListenerProxy(Component component,
 											 Class<?> interfaceClass, Object listenerProxy) {
 
 		Map<Class<?>, Object> registeredListeners = registeredListenersByComponent.get(component);
 		if (registeredListeners == null) {
-			registeredListeners = new HashMap<Class<?>, Object>();
-			registeredListenersByComponent.put(component, registeredListeners);
+			registeredListeners = CopyOnWrite.emptyMap();
 		}
-		registeredListeners.put(interfaceClass, listenerProxy);
+		registeredListenersByComponent = CopyOnWrite.put(registeredListenersByComponent, component,
+				CopyOnWrite.put(registeredListeners, interfaceClass, listenerProxy));
+	}
+
+	private void removeRegisteredListenerProxy(Component component, Class<?> interfaceClass) {
+		Map<Class<?>, Object> registeredListeners = CopyOnWrite.remove(registeredListenersByComponent.get(component), interfaceClass);
+		registeredListenersByComponent = registeredListeners.isEmpty() ?
+				CopyOnWrite.remove(registeredListenersByComponent, component) :
+				CopyOnWrite.put(registeredListenersByComponent, component, registeredListeners);
 	}
 
 
-	private HashSet<Class<?>> injectProxies(String otherComponentId, Collection<Class<?>> interfaces, Facade facade) {
+	private HashSet<Class<?>> injectProxies(Object target, String otherComponentId, Collection<Class<?>> interfaces, Facade facade) {
 		HashSet<Class<?>> injectedProxyTypes = new HashSet<Class<?>>();
-		for (Method setter : getComponentSettersByPropertyKey(otherComponentId)) {
+		for (Method setter : getComponentSettersByPropertyKey(target, otherComponentId)) {
 
 			for (Class<?> interfaceClass : interfaces) {
 				if (setter.getParameterTypes()[0].isAssignableFrom(interfaceClass)) {
 					Object proxy = facade.getProxy(otherComponentId, interfaceClass);
-					System.out.println("injecting proxy for " + interfaceClass.getSimpleName() + " in component " + this.implementation.getClass().getSimpleName());
-					invokeMethod(setter, proxy);
+					System.out.println("injecting proxy for " + interfaceClass.getSimpleName() + " in component " + target.getClass().getSimpleName());
+					invokeMethod(target, setter, proxy);
 					injectedProxyTypes.add(interfaceClass);
 				}
 			}
@@ -184,20 +327,191 @@ public class StandardComponent implements Component, InvocationHandler {
 	@Override
 	public <T> T createProxy(Class<T> interfaceClass) {
 		this.checkInterfaceValidity(interfaceClass);
-		return (T) Proxy.newProxyInstance(interfaceClass.getClassLoader(), new Class[]{interfaceClass}, this);
+		if (generateProxyClasses) {
+			T proxy = ProxyClassGenerator.createProxy(interfaceClass, implementation.getClass(), getDelegateReference(interfaceClass));
+			if (proxy != null) {
+				return proxy;
+			}
+		}
+		return createReflectiveProxy(interfaceClass);
+	}
+
+	private <T> T createReflectiveProxy(Class<T> interfaceClass) {
+		InvocationHandler handler = getDispatchTable(interfaceClass);
+		if (mailbox != null) {
+			handler = new MailboxInvocationHandler(this, (DispatchTable) handler);
+		}
+		return interfaceClass.cast(Proxy.newProxyInstance(interfaceClass.getClassLoader(), new Class<?>[]{interfaceClass}, handler));
+	}
+
+	/**
+	 * @param interfaceClass
+	 * @return a table, shared by all proxies for the interface, that dispatches invocations
+	 */
+	private DispatchTable getDispatchTable(Class<?> interfaceClass) {
+		DispatchTable dispatchTable = dispatchTablesByInterface.get(interfaceClass);
+		if (dispatchTable == null) {
+			synchronized (this) {
+				dispatchTable = dispatchTablesByInterface.get(interfaceClass);
+				if (dispatchTable == null) {
+					dispatchTable = new DispatchTable(interfaceClass, implementation, interceptionsByInterface, inFlightInvocations,
+							getEnabledMetrics(), instrumentation);
+					dispatchTablesByInterface = CopyOnWrite.put(dispatchTablesByInterface, interfaceClass, dispatchTable);
+				}
+			}
+		}
+		return dispatchTable;
+	}
+
+	/**
+	 * Lets createProxy generate a proxy class per interface and implementation class instead of
+	 * using java.lang.reflect.Proxy, which is the default. Generated proxies invoke the implementation directly,
+	 * without boxing or allocation, and only pass methods through this component's invocation handling
+	 * if an interceptor applies to them.
+	 * Interfaces that can not be implemented by a generated class are still proxied by java.lang.reflect.Proxy.
+	 * Proxies created earlier are not affected.
+	 *
+	 * @param generateProxyClasses
+	 */
+	public synchronized void setGenerateProxyClasses(boolean generateProxyClasses) {
+		this.generateProxyClasses = generateProxyClasses;
+		proxiesByInterface = CopyOnWrite.emptyMap();
+	}
+
+	/**
+	 * @return true if createProxy generates proxy classes
+	 */
+	public boolean isGeneratingProxyClasses() {
+		return generateProxyClasses;
+	}
+
+	@Override
+	public <T> T createDirectProxy(Class<T> interfaceClass) {
+		this.checkInterfaceValidity(interfaceClass);
+		DelegateReference reference = getDirectReference(interfaceClass);
+		T proxy = ProxyClassGenerator.createProxy(interfaceClass, implementation.getClass(), reference);
+		return proxy != null ? proxy : createReflectiveProxy(interfaceClass);
 	}
 
+	private synchronized DelegateReference getDirectReference(Class<?> interfaceClass) {
+		if (directProxiesRevoked) {
+			directProxiesRevoked = false;
+			updateDelegates();
+		}
+		DelegateReference reference = directReferencesByInterface.get(interfaceClass);
+		if (reference == null) {
+			reference = new DelegateReference();
+			registerForFlightRecording();
+			updateDelegate(interfaceClass, reference, isRoutedThroughDispatch());
+			directReferencesByInterface = CopyOnWrite.put(directReferencesByInterface, interfaceClass, reference);
+		}
+		return reference;
+	}
 
-	private HashMap<Class<?>, Object> proxiesByInterface = new HashMap();
+	private void registerForFlightRecording() {
+		if (!registeredForFlightRecording) {
+			FlightRecording.register(this);
+			registeredForFlightRecording = true;
+		}
+	}
+
+	@Override
+	public synchronized void revokeDirectProxies() {
+		directProxiesRevoked = true;
+		updateDelegates();
+	}
+
+	private synchronized DelegateReference getDelegateReference(Class<?> interfaceClass) {
+		DelegateReference reference = delegateReferencesByInterface.get(interfaceClass);
+		if (reference == null) {
+			reference = new DelegateReference();
+			registerForFlightRecording();
+			updateDelegate(interfaceClass, reference, isRoutedThroughDispatch());
+			delegateReferencesByInterface = CopyOnWrite.put(delegateReferencesByInterface, interfaceClass, reference);
+		}
+		return reference;
+	}
+
+	/**
+	 * Directs generated proxies to the implementation or, for methods
+	 * that must be intercepted, to a proxy that passes this component.
+	 */
+	private void updateDelegate(Class<?> interfaceClass, DelegateReference reference, boolean revoked) {
+		DispatchTable dispatchTable = getDispatchTable(interfaceClass);
+		Method[] methods = ProxyClassGenerator.getProxiedMethods(interfaceClass);
+		if (methods == null || revoked || mailbox != null) {
+			reference.set(revoked || mailbox != null || dispatchTable.isIntercepted() ? createReflectiveProxy(interfaceClass) : implementation);
+			return;
+		}
+		Object[] delegates = new Object[methods.length];
+		Object reflectiveProxy = null;
+		for (int i = 0; i < methods.length; i++) {
+			if (dispatchTable.isIntercepted(methods[i])) {
+				if (reflectiveProxy == null) {
+					reflectiveProxy = createReflectiveProxy(interfaceClass);
+				}
+				delegates[i] = reflectiveProxy;
+			} else {
+				delegates[i] = implementation;
+			}
+		}
+		reference.set(delegates);
+	}
+
+	/**
+	 * @return true if generated proxies must pass all invocations through the dispatch tables
+	 */
+	private boolean isRoutedThroughDispatch() {
+		return draining || metricsEnabled || instrumentation.getTracer() != null || FlightRecording.isRecordingInvocations();
+	}
+
+	/**
+	 * Reconsiders whether generated proxies must pass all invocations through the dispatch tables.
+	 */
+	synchronized void updateRouting() {
+		updateDelegates();
+	}
+
+	private void updateDelegates() {
+		for (Map.Entry<Class<?>, DelegateReference> entry : delegateReferencesByInterface.entrySet()) {
+			updateDelegate(entry.getKey(), entry.getValue(), isRoutedThroughDispatch());
+		}
+		for (Map.Entry<Class<?>, DelegateReference> entry : directReferencesByInterface.entrySet()) {
+			updateDelegate(entry.getKey(), entry.getValue(), directProxiesRevoked || isRoutedThroughDispatch());
+		}
+	}
+
+	/**
+	 * @return invocations that generated and direct proxies may be passing directly to the embedded object
+	 */
+	private DirectInvocations getDirectInvocations() {
+		Set<Class<?>> proxyClasses = new HashSet<Class<?>>();
+		addDirectlyDelegatingProxyClasses(delegateReferencesByInterface, proxyClasses);
+		addDirectlyDelegatingProxyClasses(directReferencesByInterface, proxyClasses);
+		return new DirectInvocations(proxyClasses, implementation);
+	}
+
+	private void addDirectlyDelegatingProxyClasses(Map<Class<?>, DelegateReference> referencesByInterface, Set<Class<?>> proxyClasses) {
+		for (Map.Entry<Class<?>, DelegateReference> entry : referencesByInterface.entrySet()) {
+			if (entry.getValue().delegatesTo(implementation)) {
+				proxyClasses.add(ProxyClassGenerator.getProxyClass(entry.getKey(), implementation.getClass()));
+			}
+		}
+	}
 
 	@Override
 	public <T> T getProxy(Class<T> interfaceClass) {
-		if (proxiesByInterface.containsKey(interfaceClass)) {
-			return (T) proxiesByInterface.get(interfaceClass);
-		} else {
-			T proxy = createProxy(interfaceClass);
-			proxiesByInterface.put(interfaceClass, proxy);
-			return proxy;
+		Object proxy = proxiesByInterface.get(interfaceClass);
+		if (proxy != null) {
+			return interfaceClass.cast(proxy);
+		}
+		synchronized (this) {
+			proxy = proxiesByInterface.get(interfaceClass);
+			if (proxy == null) {
+				proxy = createProxy(interfaceClass);
+				proxiesByInterface = CopyOnWrite.put(proxiesByInterface, interfaceClass, proxy);
+			}
+			return interfaceClass.cast(proxy);
 		}
 	}
 
@@ -211,21 +525,86 @@ public class StandardComponent implements Component, InvocationHandler {
 		}
 	}
 
+	/**
+	 * @return the embedded object
+	 */
+	Object getImplementation() {
+		return implementation;
+	}
+
 	@Override
 	public Class<?>[] getInterfaces() {
 		return interfaces;
 	}
 
 	@Override
-	public void setProperties(Properties properties) {
+	public synchronized void setProperties(Properties properties) {
+		PropertiesEvent event = new PropertiesEvent();
+		event.begin();
+		PropertyInjectionPlan plan = PropertyInjectionPlan.getPlan(implementation.getClass());
 		for (Object key : properties.keySet()) {
 			//auto_configure_setters
 			//setters are not exposed if not part of interface
 			String value = properties.getProperty((String) key);
-			injectPropertyIfMatchingSetterFound((String) key, value);
+			injectPropertyIfMatchingSetterFound(implementation, plan, (String) key, value);
+		}
+		injectPropertyIfMatchingSetterFound(implementation, plan, PROPERTIES_PROPERTY_KEY, properties);
+		this.properties = properties;
+		commit(event, "setProperties", properties.size());
+	}
+
+	@Override
+	public synchronized Set<String> updateProperties(Properties properties) {
+		PropertiesEvent event = new PropertiesEvent();
+		event.begin();
+		Set<String> changedKeys = getChangedKeys(this.properties, properties);
+		PropertyInjectionPlan plan = PropertyInjectionPlan.getPlan(implementation.getClass());
+		for (String key : changedKeys) {
+			if (properties.containsKey(key)) {
+				injectPropertyIfMatchingSetterFound(implementation, plan, key, properties.getProperty(key));
+			} else {
+				//no longer injected, although the setter keeps its last value
+				setterInjectedProperties.remove(key);
+			}
+		}
+		if (!changedKeys.isEmpty() || this.properties == null) {
+			injectPropertyIfMatchingSetterFound(implementation, plan, PROPERTIES_PROPERTY_KEY, properties);
 		}
-		injectPropertyIfMatchingSetterFound(PROPERTIES_PROPERTY_KEY, properties);
 		this.properties = properties;
+		commit(event, "updateProperties", changedKeys.size());
+		return changedKeys;
+	}
+
+	private void commit(PropertiesEvent event, String methodName, int nrofInjectedProperties) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.setInjection(instrumentation.getComponentId(), methodName, nrofInjectedProperties);
+			event.commit();
+		}
+	}
+
+	/**
+	 * @param currentProperties current properties, or null
+	 * @param properties        new properties
+	 * @return keys of properties that were added, changed or removed
+	 */
+	static Set<String> getChangedKeys(Properties currentProperties, Properties properties) {
+		if (currentProperties == null) {
+			currentProperties = new Properties();
+		}
+		Set<String> changedKeys = new HashSet<String>();
+		for (Object key : properties.keySet()) {
+			String value = properties.getProperty((String) key);
+			if (!currentProperties.containsKey(key) || (value != null && !value.equals(currentProperties.getProperty((String) key)))) {
+				changedKeys.add((String) key);
+			}
+		}
+		for (Object key : currentProperties.keySet()) {
+			if (!properties.containsKey(key)) {
+				changedKeys.add((String) key);
+			}
+		}
+		return Collections.unmodifiableSet(changedKeys);
 	}
 
 	@Override
@@ -240,37 +619,30 @@ public class StandardComponent implements Component, InvocationHandler {
 		return setterInjectedProperties;
 	}
 
-	private Set<Method> getComponentSettersByPropertyKey(String key) {
-		String setterName = "set" + makeFirstCharUpperCase(key);
-		return ReflectionSupport.getMethodsByName(implementation.getClass(), setterName, 1);
+	private static Set<Method> getComponentSettersByPropertyKey(Object target, String key) {
+		return ReflectionSupport.getClassMetadata(target.getClass()).getSettersByPropertyKey(makeFirstCharUpperCase(key));
 	}
 
 	public static String makeFirstCharUpperCase(String varName) {
-		StringBuffer keyStrBuf = new StringBuffer(varName);
-		keyStrBuf.replace(0, 1, (String.valueOf(keyStrBuf.charAt(0))).toUpperCase());
-		return keyStrBuf.toString();
+		String firstChar = varName.substring(0, 1);
+		String upperCaseFirstChar = firstChar.toUpperCase();
+		if (firstChar.equals(upperCaseFirstChar)) {
+			return varName;
+		}
+		return upperCaseFirstChar + varName.substring(1);
 	}
 
-	private void injectPropertyIfMatchingSetterFound(String key, Object value) {
-		Set<Method> setters = getComponentSettersByPropertyKey(key);
-		if (setters.size() > 1) {
-			throw new ConfigurationException("more than 1 (" + setters.size() +
-					") setter found for property '" + key + "'");
-		}
-		if (setters.size() == 1) {
-			injectProperty(setters.iterator().next(), value);
+	private void injectPropertyIfMatchingSetterFound(Object target, PropertyInjectionPlan plan, String key, Object value) {
+		PropertyInjectionPlan.PropertySetter setter = plan.getSetter(key);
+		if (setter != null) {
+			setter.inject(target, value);
 			setterInjectedProperties.put(key, value);
 		}
 	}
 
-	private void injectProperty(Method method, Object value) {
-		Object injectingObject = Converter.convertToObject(value, method.getParameterTypes()[0]);
-		invokeMethod(method, injectingObject);
-	}
-
-	private void invokeMethod(Method method, Object injectingObject) {
+	private static void invokeMethod(Object target, Method method, Object injectingObject) {
 		try {
-			method.invoke(implementation, injectingObject);
+			method.invoke(target, injectingObject);
 		} catch (InvocationTargetException ite) {
 			if (ite.getCause() instanceof RuntimeException) {
 				throw (RuntimeException) ite.getCause();
@@ -282,49 +654,495 @@ public class StandardComponent implements Component, InvocationHandler {
 		}
 	}
 
+	/**
+	 * Replaces all intercepters for the interface by one that applies to all methods.
+	 *
+	 * @param interfaceClass interface of which invocations must be intercepted
+	 * @param handler intercepter, or null to remove intercepters
+	 */
+	@Override
+	public synchronized void setInvocationIntercepter(Class<?> interfaceClass, InvocationHandler handler) {
+		this.checkInterfaceValidity(interfaceClass);
+		if (handler == null) {
+			interceptionsByInterface = CopyOnWrite.remove(interceptionsByInterface, interfaceClass);
+		} else {
+			interceptionsByInterface = CopyOnWrite.put(interceptionsByInterface, interfaceClass,
+					Collections.singletonList(new DispatchTable.Interception(MethodSelector.ALL_METHODS, handler)));
+		}
+		compileInterceptors();
+	}
+
 	@Override
-	public void setInvocationIntercepter(Class<?> interfaceClass, InvocationHandler handler) {
+	public synchronized void addInvocationIntercepter(Class<?> interfaceClass, MethodSelector methodSelector, InvocationHandler interceptor) {
 		this.checkInterfaceValidity(interfaceClass);
-		invocationHandlers.put(interfaceClass, handler);
+		if (methodSelector == null || interceptor == null) {
+			throw new NullPointerException("method selector and interceptor can not be null");
+		}
+		List<DispatchTable.Interception> interceptions = interceptionsByInterface.get(interfaceClass);
+		if (interceptions == null) {
+			interceptions = Collections.emptyList();
+		}
+		interceptionsByInterface = CopyOnWrite.put(interceptionsByInterface, interfaceClass,
+				CopyOnWrite.add(interceptions, new DispatchTable.Interception(methodSelector, interceptor)));
+		compileInterceptors();
+	}
+
+	private void compileInterceptors() {
+		for (DispatchTable dispatchTable : dispatchTablesByInterface.values()) {
+			dispatchTable.build(implementation, interceptionsByInterface, inFlightInvocations, getEnabledMetrics(), instrumentation);
+		}
+		updateDelegates();
 	}
 
+	/**
+	 * Invokes an interface method through the dispatch table of the interface that declares it,
+	 * so that the method is intercepted like invocations through proxies for that interface.
+	 */
 	@Override
 	public Object invoke(Object proxy, Method method, Object[] parameters)
 			throws Throwable {
+		return getDispatchTable(method.getDeclaringClass()).invoke(proxy, method, parameters);
+	}
+
+	@Override
+	public Object invoke(String methodName, Object... parameters) throws InvocationTargetException, NoSuchMethodException, IllegalArgumentException {
+		InFlightInvocations inFlightInvocations = this.inFlightInvocations;
+		inFlightInvocations.enter();
+		try {
+			MethodInvocation invocation = new MethodInvocation(this, implementation, methodName, INTERFACE_CALL_SITES, parameters);
+			return invocation.invoke();
+		} finally {
+			inFlightInvocations.exit();
+		}
+	}
+
+	@Override
+	public CompletableFuture<Object> invokeAsync(final String methodName, final Object... parameters) {
+		return execute(new AsyncInvocation() {
+			public Object invoke() throws Throwable {
+				try {
+					return StandardComponent.this.invoke(methodName, parameters);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		});
+	}
 
-		//get handler for specific proxy interface
-		InvocationHandler handler = null;
-		Class<?>[] interfaces = proxy.getClass().getInterfaces();
-		if(interfaces.length > 0) {
-			handler = invocationHandlers.get(interfaces[0]);
+	@Override
+	public Object dispatch(Class<?> interfaceClass, Method method, Object[] parameters) throws Throwable {
+		DispatchTable dispatchTable = getDispatchTable(interfaceClass);
+		if (mailbox != null) {
+			return invokeInMailbox(dispatchTable, method, parameters);
 		}
+		return dispatchTable.invoke(null, method, parameters);
+	}
+
+	/**
+	 * Invokes a method of an interface on the executor, through the interface's dispatch table.
+	 *
+	 * @param interfaceClass
+	 * @param method
+	 * @param parameters
+	 * @return a future that completes with the result of the invocation
+	 */
+	@Override
+	public CompletableFuture<Object> invokeAsync(Class<?> interfaceClass, final Method method, final Object[] parameters) {
+		final DispatchTable dispatchTable = getDispatchTable(interfaceClass);
+		return execute(new AsyncInvocation() {
+			public Object invoke() throws Throwable {
+				return dispatchTable.invoke(null, method, parameters);
+			}
+		});
+	}
+
+	private CompletableFuture<Object> execute(final AsyncInvocation invocation) {
+		Mailbox mailbox = this.mailbox;
+		return execute(mailbox != null ? mailbox : executor, invocation);
+	}
+
+	/**
+	 * Asynchronous invocations are counted as in progress from the moment they are submitted.
+	 */
+	private CompletableFuture<Object> execute(Executor executor, final AsyncInvocation invocation) {
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+		final InFlightInvocations inFlightInvocations = this.inFlightInvocations;
+		inFlightInvocations.enter();
 		try {
-			if (handler == null) {
-				//get handler for interface that declares invoked method
-				handler = invocationHandlers.get(method.getDeclaringClass());
+			executor.execute(propagateSpan(new Runnable() {
+				public void run() {
+					try {
+						future.complete(invocation.invoke());
+					} catch (Throwable t) {
+						future.completeExceptionally(t);
+					} finally {
+						inFlightInvocations.exit();
+					}
+				}
+			}));
+		} catch (RejectedExecutionException e) {
+			inFlightInvocations.exit();
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * @return a runnable that runs the task in the span in progress, if this component is traced
+	 */
+	private Runnable propagateSpan(Runnable task) {
+		Tracer tracer = instrumentation.getTracer();
+		return tracer != null ? tracer.wrap(task) : task;
+	}
+
+	private interface AsyncInvocation {
+		Object invoke() throws Throwable;
+	}
+
+	/**
+	 * Queues an invocation in the mailbox, unless the component is no longer in mailbox mode
+	 * or the invocation is made by the thread that drains the mailbox.
+	 * Invocations of void methods return immediately, others wait for their result.
+	 *
+	 * @param dispatchTable
+	 * @param method
+	 * @param parameters
+	 * @return result of the invocation
+	 * @throws Throwable exception thrown by the invoked method
+	 */
+	Object invokeInMailbox(final DispatchTable dispatchTable, final Method method, final Object[] parameters) throws Throwable {
+		Mailbox mailbox = this.mailbox;
+		if (mailbox == null || mailbox.isDrainingThread()) {
+			return dispatchTable.invoke(null, method, parameters);
+		}
+		if (method.getReturnType() == void.class) {
+			mailbox.execute(propagateSpan(new Runnable() {
+				public void run() {
+					try {
+						dispatchTable.invoke(null, method, parameters);
+					} catch (RuntimeException e) {
+						throw e;
+					} catch (Error e) {
+						throw e;
+					} catch (Throwable t) {
+						throw new UndeclaredThrowableException(t);
+					}
+				}
+			}));
+			return null;
+		}
+		CompletableFuture<Object> future = execute(mailbox, new AsyncInvocation() {
+			public Object invoke() throws Throwable {
+				return dispatchTable.invoke(null, method, parameters);
 			}
-			if (handler != null) {
-				return handler.invoke(implementation, method, parameters);
-			} else return method.invoke(implementation, parameters);
-		} catch (Throwable t) {
-			while ((t instanceof UndeclaredThrowableException || t instanceof InvocationTargetException) && (t = t.getCause()) != null) {}
-			throw t;
+		});
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * In mailbox mode, invocations through proxies and asynchronous invocations are queued
+	 * and run one at a time on threads of the component's executor, so that an implementation
+	 * that is not thread-safe needs no synchronization.
+	 * Invocations of void methods return without waiting, so exceptions they throw are passed to
+	 * the uncaught exception handler of the executing thread.
+	 * Invocations of other methods wait for their result; asynchronous proxies return immediately.
+	 * Invocations made by the component itself, while handling a queued invocation, are not queued.
+	 * Callers that wait for a result should not be threads of the executor, which could starve the mailbox.
+	 * Proxies that are not generated and were created before the mode changed are not affected.
+	 *
+	 * @param mailboxMode
+	 */
+	public synchronized void setMailboxMode(boolean mailboxMode) {
+		if (mailboxMode != (mailbox != null)) {
+			mailbox = mailboxMode ? new Mailbox(executor) : null;
+			proxiesByInterface = CopyOnWrite.emptyMap();
+			updateDelegates();
 		}
 	}
 
+	/**
+	 * @return true if invocations are queued in a mailbox
+	 */
+	public boolean isInMailboxMode() {
+		return mailbox != null;
+	}
+
 	@Override
-	public Object invoke(String methodName, Object... parameters) throws InvocationTargetException, NoSuchMethodException, IllegalArgumentException {
-		MethodInvocation invocation = new MethodInvocation(this, implementation, methodName,
-				getInterfaceMethodsByName(methodName, parameters.length).toArray(new Method[0]), parameters);
-		return invocation.invoke();
+	public <T> T createAsyncProxy(Class<T> asyncInterfaceClass) {
+		if (!asyncInterfaceClass.isInterface()) {
+			throw new IllegalArgumentException("class " + asyncInterfaceClass.getName() + " is not an interface");
+		}
+		return asyncInterfaceClass.cast(Proxy.newProxyInstance(asyncInterfaceClass.getClassLoader(), new Class<?>[]{asyncInterfaceClass},
+				new AsyncInvocationHandler(this, asyncInterfaceClass)));
 	}
 
-	private Set<Method> getInterfaceMethodsByName(String methodName, int nrofParameters) {
-		Set<Method> retval = new HashSet<Method>();
-		for (Class<?> clasz : interfaces) {
-			retval.addAll(ReflectionSupport.getMethodsByName(clasz, methodName, nrofParameters));
+	/**
+	 * Sets the executor that runs asynchronous invocations, which is the common fork-join pool by default.
+	 *
+	 * @param executor
+	 * @see org.ijsberg.iglu.util.execution.ExecutorSupport
+	 */
+	@Override
+	public synchronized void setExecutor(Executor executor) {
+		if (executor == null) {
+			throw new NullPointerException("executor can not be null");
 		}
-		return retval;
+		this.executor = executor;
+		Mailbox mailbox = this.mailbox;
+		if (mailbox != null) {
+			mailbox.setExecutor(executor);
+		}
+	}
+
+	@Override
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Starts the embedded object if it implements Startable.
+	 * Has no effect if the component has been started already.
+	 */
+	@Override
+	public void start() {
+		synchronized (lifecycleLock) {
+			if (!started) {
+				if (implementation instanceof Startable) {
+					((Startable) implementation).start();
+				}
+				started = true;
+			}
+		}
+	}
+
+	/**
+	 * Routes all invocations through proxies, including those of generated and direct proxies,
+	 * through invocation handling, and waits until invocations in progress, including those
+	 * that went through generated proxies directly to the object before stopping began,
+	 * and queued invocations are finished, or until the drain timeout passes.
+	 * Then stops the embedded object if it implements Startable.
+	 * Generated proxies only pass invocation handling, and are only counted, while draining.
+	 */
+	@Override
+	public void stop() {
+		synchronized (lifecycleLock) {
+			if (!started) {
+				return;
+			}
+			DirectInvocations directInvocations;
+			synchronized (this) {
+				directInvocations = getDirectInvocations();
+				draining = true;
+				updateDelegates();
+			}
+			try {
+				awaitDrained(inFlightInvocations, directInvocations);
+				if (implementation instanceof Startable) {
+					((Startable) implementation).stop();
+				}
+			} finally {
+				started = false;
+				synchronized (this) {
+					draining = false;
+					updateDelegates();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param inFlightInvocations invocations through invocation handling
+	 * @param directInvocations invocations that generated proxies passed directly to the object before draining began
+	 * @return false if invocations were still in progress when the drain timeout passed
+	 */
+	private boolean awaitDrained(InFlightInvocations inFlightInvocations, DirectInvocations directInvocations) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+		if (!directInvocations.awaitNone(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+			return false;
+		}
+		while (inFlightInvocations.awaitNone(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+			Mailbox mailbox = this.mailbox;
+			if (mailbox == null || mailbox.isIdle()) {
+				return true;
+			}
+			if (System.nanoTime() - deadline >= 0) {
+				return false;
+			}
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		return false;
+	}
+
+	@Override
+	public boolean isStarted() {
+		return started;
+	}
+
+	/**
+	 * @param drainTimeout maximum time stop waits for invocations in progress
+	 * @param unit
+	 */
+	public void setDrainTimeout(long drainTimeout, TimeUnit unit) {
+		this.drainTimeoutMillis = unit.toMillis(drainTimeout);
+	}
+
+	/**
+	 * Replaces the embedded object by another one, without disturbing components that hold proxies for this component.
+	 * The new object receives the current properties, references and registered listeners of the current object
+	 * and is started if the component is started. Then all proxies, including generated and asynchronous ones,
+	 * are retargeted to the new object at once. Invocations in progress on the current object are drained,
+	 * as when the component is stopped, after which the current object is stopped.
+	 * The component keeps the interfaces it had when it was created, so the new object must implement them.
+	 *
+	 * @param newImplementation
+	 * @return the replaced object
+	 * @throws IllegalArgumentException if the new object does not implement the interfaces of the component
+	 */
+	@Override
+	public Object replaceImplementation(Object newImplementation) {
+		if (newImplementation == null) {
+			throw new NullPointerException("implementation can not be null");
+		}
+		for (Class<?> interfaceClass : interfaces) {
+			if (!interfaceClass.isInstance(newImplementation)) {
+				throw new IllegalArgumentException("class " + newImplementation.getClass().getName() + " does not implement " + interfaceClass.getName());
+			}
+		}
+		synchronized (lifecycleLock) {
+			Object previousImplementation;
+			InFlightInvocations previousInvocations;
+			DirectInvocations directInvocations;
+			synchronized (this) {
+				previousImplementation = implementation;
+				previousInvocations = inFlightInvocations;
+				directInvocations = getDirectInvocations();
+				transferState(newImplementation);
+				if (started && newImplementation instanceof Startable) {
+					((Startable) newImplementation).start();
+				}
+				implementation = newImplementation;
+				inFlightInvocations = new InFlightInvocations();
+				draining = true;
+				compileInterceptors();
+			}
+			try {
+				awaitDrained(previousInvocations, directInvocations);
+			} finally {
+				synchronized (this) {
+					draining = false;
+					updateDelegates();
+				}
+			}
+			if (started && previousImplementation instanceof Startable) {
+				((Startable) previousImplementation).stop();
+			}
+			return previousImplementation;
+		}
+	}
+
+	/**
+	 * Injects properties, references and listeners of the current object into a new object.
+	 */
+	private void transferState(Object newImplementation) {
+		if (properties != null) {
+			PropertyInjectionPlan plan = PropertyInjectionPlan.getPlan(newImplementation.getClass());
+			for (Object key : properties.keySet()) {
+				injectPropertyIfMatchingSetterFound(newImplementation, plan, (String) key, properties.getProperty((String) key));
+			}
+			injectPropertyIfMatchingSetterFound(newImplementation, plan, PROPERTIES_PROPERTY_KEY, properties);
+		}
+		for (Map.Entry<String, Set<Class<?>>> entry : injectedProxyTypesByComponentId.entrySet()) {
+			injectProxies(newImplementation, entry.getKey(), entry.getValue(), referenceFacadesByComponentId.get(entry.getKey()));
+		}
+		for (Map<Class<?>, Object> registeredListeners : registeredListenersByComponent.values()) {
+			for (Map.Entry<Class<?>, Object> entry : registeredListeners.entrySet()) {
+				Method method = getListenerMethod(newImplementation, REGISTER_LISTENER_METHOD_NAME, entry.getKey());
+				if (method != null) {
+					invokeMethod(newImplementation, method, entry.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * While metrics are enabled, invocations of interface methods through proxies, including generated,
+	 * direct and asynchronous proxies, are recorded per method. Generated proxies then pass all invocations
+	 * through the dispatch tables instead of invoking the embedded object directly.
+	 * Invocations by name are not recorded. Disabling metrics keeps the values recorded so far.
+	 *
+	 * @param metricsEnabled
+	 */
+	@Override
+	public synchronized void setMetricsEnabled(boolean metricsEnabled) {
+		if (metricsEnabled != this.metricsEnabled) {
+			this.metricsEnabled = metricsEnabled;
+			compileInterceptors();
+		}
+	}
+
+	@Override
+	public boolean isMetricsEnabled() {
+		return metricsEnabled;
+	}
+
+	@Override
+	public Map<Method, InvocationMetrics.Snapshot> getMetrics() {
+		Map<Method, InvocationMetrics.Snapshot> snapshotsByMethod = new HashMap<Method, InvocationMetrics.Snapshot>();
+		for (InvocationMetrics metrics : metricsByMethod.values()) {
+			snapshotsByMethod.put(metrics.getMethod(), metrics.snapshot());
+		}
+		return snapshotsByMethod;
+	}
+
+	/**
+	 * While a tracer is set, invocations of interface methods through proxies, including generated,
+	 * direct and asynchronous proxies, are traced. Generated proxies then pass all invocations
+	 * through the dispatch tables. Asynchronous invocations run in the span in which they were made.
+	 *
+	 * @param tracer tracer, or null to stop tracing
+	 * @param componentId ID under which invocations of this component are traced
+	 */
+	@Override
+	public synchronized void setTracer(Tracer tracer, String componentId) {
+		if (tracer != null || instrumentation.getTracer() != null) {
+			instrumentation = new DispatchTable.Instrumentation(tracer != null ? componentId : instrumentation.getComponentId(), tracer);
+			compileInterceptors();
+		}
+	}
+
+	/**
+	 * Sets the ID under which Flight Recorder events of this component are emitted.
+	 * Until set, the class name of the embedded object is used.
+	 *
+	 * @param componentId
+	 */
+	synchronized void setComponentId(String componentId) {
+		if (!componentId.equals(instrumentation.getComponentId())) {
+			instrumentation = new DispatchTable.Instrumentation(componentId, instrumentation.getTracer());
+			compileInterceptors();
+		}
+	}
+
+	/**
+	 * @return ID under which Flight Recorder events of this component are emitted
+	 */
+	String getComponentId() {
+		return instrumentation.getComponentId();
+	}
+
+	private ConcurrentMap<Method, InvocationMetrics> getEnabledMetrics() {
+		return metricsEnabled ? metricsByMethod : null;
+	}
+
+	/**
+	 * @return number of invocations in progress through invocation handling
+	 */
+	long getNrofInvocationsInProgress() {
+		return inFlightInvocations.getCount();
 	}
 
 	@Override
@@ -336,15 +1154,6 @@ public class StandardComponent implements Component, InvocationHandler {
 		return retval;
 	}
 
-	public boolean equals(Object other) {
-		return ((other instanceof StandardComponent) && ((StandardComponent) other).implementation == implementation) ||
-				other == implementation;
-	}
-
-	public int hashCode() {
-		return implementation.hashCode();
-	}
-
 	public String toString() {
 		return "component with impl: " + implementation;
 	}
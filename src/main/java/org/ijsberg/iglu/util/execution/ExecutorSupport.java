@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Helper class that creates executors suitable for running component invocations.
+ */
+public class ExecutorSupport {
+
+	/**
+	 * Creates an executor that starts a new virtual thread for every task.
+	 * On JVMs that do not support virtual threads, such as JDK 11 to 20 without preview features,
+	 * every task is run by a daemon platform thread, which is reused once idle.
+	 *
+	 * @param name prefix for the names of threads
+	 * @return an unbounded executor
+	 */
+	public static ExecutorService createVirtualThreadPerCallExecutor(String name) {
+		ExecutorService executor = createVirtualThreadPerTaskExecutor();
+		if (executor != null) {
+			return executor;
+		}
+		return Executors.newCachedThreadPool(createDaemonThreadFactory(name));
+	}
+
+	/**
+	 * Virtual threads are available from JDK 21, and from JDK 19 if preview features are enabled.
+	 *
+	 * @return true if the JVM can create virtual threads
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return VirtualThreadSupport.SUPPORTED;
+	}
+
+	/**
+	 * Probes the JVM once, by creating an executor for virtual threads.
+	 */
+	private static final class VirtualThreadSupport {
+
+		private static final boolean SUPPORTED = probe();
+
+		private static boolean probe() {
+			ExecutorService executor = createVirtualThreadPerTaskExecutor();
+			if (executor == null) {
+				return false;
+			}
+			executor.shutdown();
+			return true;
+		}
+	}
+
+	private static ExecutorService createVirtualThreadPerTaskExecutor() {
+		try {
+			Method factoryMethod = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factoryMethod.invoke(null);
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			//virtual threads are a preview feature that is not enabled
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a fork-join pool in asynchronous (FIFO) mode, which suits tasks that are not joined.
+	 * The number of threads, including threads that compensate for blocked ones,
+	 * never exceeds the given maximum. Only threads are bounded: submitted tasks are queued
+	 * without limit and never rejected. A task that blocks in a join or managed blocker while
+	 * no compensating thread can be added gets a RejectedExecutionException instead.
+	 *
+	 * @param parallelism targeted number of active threads
+	 * @param maximumPoolSize maximum number of threads
+	 * @return a pool with a bounded number of threads
+	 */
+	public static ForkJoinPool createBoundedForkJoinPool(int parallelism, int maximumPoolSize) {
+		if (maximumPoolSize < parallelism) {
+			throw new IllegalArgumentException("maximum pool size " + maximumPoolSize + " is smaller than parallelism " + parallelism);
+		}
+		return new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true,
+				0, maximumPoolSize, 1, null, 60, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @param name prefix for the names of threads
+	 * @return a factory for daemon threads
+	 */
+	public static ThreadFactory createDaemonThreadFactory(final String name) {
+		return new ThreadFactory() {
+			private final AtomicLong threadCounter = new AtomicLong();
+
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + "-" + threadCounter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+}
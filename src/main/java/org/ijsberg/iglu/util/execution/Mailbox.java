@@ -0,0 +1,170 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Executor that runs tasks one at a time, in order of submission, on threads of a backing executor.
+ * Tasks are queued in a lock-free multiple-producer, single-consumer queue.
+ * At most one thread drains the queue at any time, so tasks are confined to one logical thread
+ * and all effects of a task are visible to the next one.
+ * To keep threads of the backing executor available to others, a thread yields
+ * after running a batch of tasks and draining continues in a new task.
+ * Exceptions thrown by tasks are passed to the uncaught exception handler of the current thread.
+ */
+public class Mailbox implements Executor {
+
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	private final int batchSize;
+	private volatile Executor executor;
+
+	//producers append at the tail, the draining thread consumes after the head
+	private final AtomicReference<Node> tail;
+	private volatile Node head;
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private volatile Thread drainingThread;
+
+	private final Runnable drainer = new Runnable() {
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * @param executor executor that provides threads to drain the mailbox
+	 */
+	public Mailbox(Executor executor) {
+		this(executor, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param executor executor that provides threads to drain the mailbox
+	 * @param batchSize maximum number of tasks run before a thread yields
+	 */
+	public Mailbox(Executor executor, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batch size must be at least 1");
+		}
+		setExecutor(executor);
+		this.batchSize = batchSize;
+		head = new Node(null);
+		tail = new AtomicReference<Node>(head);
+	}
+
+	/**
+	 * @param executor executor that provides threads to drain the mailbox
+	 */
+	public void setExecutor(Executor executor) {
+		if (executor == null) {
+			throw new NullPointerException("executor can not be null");
+		}
+		this.executor = executor;
+	}
+
+	/**
+	 * @return executor that provides threads to drain the mailbox
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Queues a task.
+	 *
+	 * @param task
+	 * @throws RejectedExecutionException if the backing executor rejects draining;
+	 * the task remains queued and runs once draining is scheduled by a next submission
+	 */
+	@Override
+	public void execute(Runnable task) {
+		if (task == null) {
+			throw new NullPointerException("task can not be null");
+		}
+		Node node = new Node(task);
+		tail.getAndSet(node).next = node;
+		schedule();
+	}
+
+	/**
+	 * @return true if the current thread is draining the mailbox
+	 */
+	public boolean isDrainingThread() {
+		return drainingThread == Thread.currentThread();
+	}
+
+	/**
+	 * @return true if no tasks are queued or running
+	 */
+	public boolean isIdle() {
+		return tail.get() == head && !scheduled.get();
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(drainer);
+			} catch (RejectedExecutionException e) {
+				scheduled.set(false);
+				throw e;
+			}
+		}
+	}
+
+	private void drain() {
+		Thread currentThread = Thread.currentThread();
+		drainingThread = currentThread;
+		try {
+			Node next;
+			for (int i = 0; i < batchSize && (next = head.next) != null; i++) {
+				Runnable task = next.task;
+				next.task = null;
+				head = next;
+				try {
+					task.run();
+				} catch (Throwable t) {
+					currentThread.getUncaughtExceptionHandler().uncaughtException(currentThread, t);
+				}
+			}
+		} finally {
+			Node last = head;
+			drainingThread = null;
+			scheduled.set(false);
+			//a producer may have appended while scheduling was still claimed
+			if (tail.get() != last) {
+				schedule();
+			}
+		}
+	}
+
+	private static final class Node {
+
+		private volatile Node next;
+		private Runnable task;
+
+		private Node(Runnable task) {
+			this.task = task;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records invocations of a method: how many completed, how many failed, how many are in progress
+ * and how long they took. All counters are striped, so concurrent invocations do not contend.
+ */
+public class InvocationMetrics {
+
+	private final Method method;
+	private final LongAdder invocations = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder inFlight = new LongAdder();
+	private final LogLinearHistogram latencies = new LogLinearHistogram();
+
+	/**
+	 * @param method the method of which invocations are recorded
+	 */
+	public InvocationMetrics(Method method) {
+		this.method = method;
+	}
+
+	/**
+	 * @return start time to pass to exit
+	 */
+	public long enter() {
+		inFlight.increment();
+		return System.nanoTime();
+	}
+
+	/**
+	 * @param startNanos time returned by enter
+	 * @param failed true if the invocation threw
+	 */
+	public void exit(long startNanos, boolean failed) {
+		latencies.record(System.nanoTime() - startNanos);
+		inFlight.decrement();
+		invocations.increment();
+		if (failed) {
+			errors.increment();
+		}
+	}
+
+	public Method getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the current values
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(method, invocations.sum(), errors.sum(), Math.max(0, inFlight.sum()), latencies.snapshot());
+	}
+
+	/**
+	 * Immutable values of invocation metrics.
+	 */
+	public static class Snapshot {
+
+		private final Method method;
+		private final long invocationCount;
+		private final long errorCount;
+		private final long inFlightCount;
+		private final LogLinearHistogram.Snapshot latencies;
+
+		Snapshot(Method method, long invocationCount, long errorCount, long inFlightCount, LogLinearHistogram.Snapshot latencies) {
+			this.method = method;
+			this.invocationCount = invocationCount;
+			this.errorCount = errorCount;
+			this.inFlightCount = inFlightCount;
+			this.latencies = latencies;
+		}
+
+		public Method getMethod() {
+			return method;
+		}
+
+		/**
+		 * @return number of completed invocations, including failed ones
+		 */
+		public long getInvocationCount() {
+			return invocationCount;
+		}
+
+		/**
+		 * @return number of invocations that threw
+		 */
+		public long getErrorCount() {
+			return errorCount;
+		}
+
+		/**
+		 * @return number of invocations in progress
+		 */
+		public long getInFlightCount() {
+			return inFlightCount;
+		}
+
+		/**
+		 * @return durations of completed invocations in nanoseconds
+		 */
+		public LogLinearHistogram.Snapshot getLatencies() {
+			return latencies;
+		}
+
+		public String toString() {
+			return method.getDeclaringClass().getSimpleName() + "." + method.getName() + " invocations: " + invocationCount +
+					", errors: " + errorCount + ", in flight: " + inFlightCount + ", latency (ns) " + latencies;
+		}
+	}
+}
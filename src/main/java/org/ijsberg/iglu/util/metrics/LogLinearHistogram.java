@@ -0,0 +1,187 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative values, such as latencies in nanoseconds, with a fixed set of buckets.
+ * Every power of two is divided in four buckets of equal width, so a value is known within 25%
+ * over the entire range of long, at the cost of a few bit operations and one striped increment per value.
+ */
+public class LogLinearHistogram {
+
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int NROF_SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	static final int NROF_BUCKETS = getBucketIndex(Long.MAX_VALUE) + 1;
+
+	private final LongAdder[] counts = new LongAdder[NROF_BUCKETS];
+
+	public LogLinearHistogram() {
+		for (int i = 0; i < NROF_BUCKETS; i++) {
+			counts[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * @param value value to count; negative values are counted as 0
+	 */
+	public void record(long value) {
+		counts[getBucketIndex(value)].increment();
+	}
+
+	/**
+	 * @param value
+	 * @return index of the bucket that counts the value
+	 */
+	static int getBucketIndex(long value) {
+		if (value < NROF_SUB_BUCKETS) {
+			return value < 0 ? 0 : (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (NROF_SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * NROF_SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @param bucketIndex
+	 * @return lowest value counted by the bucket
+	 */
+	static long getLowerBound(int bucketIndex) {
+		if (bucketIndex < NROF_SUB_BUCKETS) {
+			return bucketIndex;
+		}
+		int shift = bucketIndex / NROF_SUB_BUCKETS - 1;
+		return (long) (NROF_SUB_BUCKETS + bucketIndex % NROF_SUB_BUCKETS) << shift;
+	}
+
+	/**
+	 * @param bucketIndex
+	 * @return highest value counted by the bucket
+	 */
+	static long getUpperBound(int bucketIndex) {
+		return bucketIndex == NROF_BUCKETS - 1 ? Long.MAX_VALUE : getLowerBound(bucketIndex + 1) - 1;
+	}
+
+	/**
+	 * Counts are read one bucket at a time, so values recorded meanwhile may be partly included.
+	 *
+	 * @return the current counts
+	 */
+	public Snapshot snapshot() {
+		long[] snapshotCounts = new long[NROF_BUCKETS];
+		for (int i = 0; i < NROF_BUCKETS; i++) {
+			snapshotCounts[i] = counts[i].sum();
+		}
+		return new Snapshot(snapshotCounts);
+	}
+
+	/**
+	 * Immutable counts of a histogram.
+	 */
+	public static class Snapshot {
+
+		private final long[] counts;
+		private final long totalCount;
+
+		Snapshot(long[] counts) {
+			this.counts = counts;
+			long totalCount = 0;
+			for (long count : counts) {
+				totalCount += count;
+			}
+			this.totalCount = totalCount;
+		}
+
+		/**
+		 * @return number of recorded values
+		 */
+		public long getCount() {
+			return totalCount;
+		}
+
+		/**
+		 * @param percentile number between 0 and 100
+		 * @return the highest value of the bucket that contains the given percentile, or 0 if nothing was recorded
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if (percentile < 0 || percentile > 100) {
+				throw new IllegalArgumentException("percentile " + percentile + " is not between 0 and 100");
+			}
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+			long cumulativeCount = 0;
+			for (int i = 0; i < counts.length; i++) {
+				cumulativeCount += counts[i];
+				if (cumulativeCount >= rank) {
+					return getUpperBound(i);
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * @return the highest value of the highest non-empty bucket, or 0 if nothing was recorded
+		 */
+		public long getMax() {
+			for (int i = counts.length - 1; i >= 0; i--) {
+				if (counts[i] > 0) {
+					return getUpperBound(i);
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * @return approximate mean, based on the middle of the buckets
+		 */
+		public double getMean() {
+			if (totalCount == 0) {
+				return 0;
+			}
+			double sum = 0;
+			for (int i = 0; i < counts.length; i++) {
+				if (counts[i] > 0) {
+					sum += counts[i] * (getLowerBound(i) / 2.0 + getUpperBound(i) / 2.0);
+				}
+			}
+			return sum / totalCount;
+		}
+
+		/**
+		 * @return number of values counted by each bucket
+		 */
+		public long[] getCounts() {
+			return counts.clone();
+		}
+
+		/**
+		 * @param bucketIndex
+		 * @return lowest value counted by the bucket
+		 */
+		public long getLowerBound(int bucketIndex) {
+			return LogLinearHistogram.getLowerBound(bucketIndex);
+		}
+
+		public String toString() {
+			return "count: " + totalCount + ", p50: " + getValueAtPercentile(50) +
+					", p99: " + getValueAtPercentile(99) + ", max: " + getMax();
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.reflection;
+
+import org.ijsberg.iglu.util.types.ConverterRegistry;
+import org.ijsberg.iglu.util.types.TypeConverter;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Method resolved for invocations with a particular name and particular runtime argument types.
+ * For every parameter it holds the converter an argument must pass,
+ * or null if the argument can be passed as is.
+ * Converters are resolved again only if converters are registered or unregistered.
+ */
+public class CallSite {
+
+	private final Method method;
+	private final Class<?>[] argumentTypes;
+	private final Class<?>[] conversionTypes;
+	private final boolean conversionNeeded;
+	private volatile ResolvedConverters resolvedConverters;
+
+	/**
+	 * @param method        resolved method
+	 * @param argumentTypes runtime types of the arguments, null for null arguments
+	 */
+	CallSite(Method method, Class<?>[] argumentTypes) {
+		this.method = method;
+		this.argumentTypes = argumentTypes;
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		this.conversionTypes = new Class<?>[parameterTypes.length];
+		boolean conversionNeeded = false;
+		for (int i = 0; i < parameterTypes.length; i++) {
+			//mirrors Converter.convertToMatchingTypes
+			if (argumentTypes[i] != null && argumentTypes[i] != parameterTypes[i]) {
+				conversionTypes[i] = parameterTypes[i];
+				conversionNeeded = true;
+			}
+		}
+		this.conversionNeeded = conversionNeeded;
+		if (conversionNeeded) {
+			this.resolvedConverters = resolveConverters();
+		}
+	}
+
+	private ResolvedConverters resolveConverters() {
+		long version = ConverterRegistry.getVersion();
+		TypeConverter<Object, Object>[] converters = newConverterArray(conversionTypes.length);
+		for (int i = 0; i < conversionTypes.length; i++) {
+			if (conversionTypes[i] != null) {
+				converters[i] = ConverterRegistry.getConverter(argumentTypes[i], conversionTypes[i]);
+			}
+		}
+		return new ResolvedConverters(version, converters);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static TypeConverter<Object, Object>[] newConverterArray(int length) {
+		return (TypeConverter<Object, Object>[]) new TypeConverter<?, ?>[length];
+	}
+
+	/**
+	 * @return resolved method
+	 */
+	public Method getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return runtime types of the arguments the method was resolved for
+	 */
+	public Class<?>[] getArgumentTypes() {
+		return argumentTypes.clone();
+	}
+
+	/**
+	 * @return true if one or more arguments must be converted
+	 */
+	public boolean isConversionNeeded() {
+		return conversionNeeded;
+	}
+
+	/**
+	 * @param arguments arguments of the runtime types the method was resolved for
+	 * @return arguments converted to the parameter types of the method
+	 * @throws IllegalArgumentException in case an argument value can not be converted
+	 */
+	public Object[] convertArguments(Object[] arguments) {
+		if (!conversionNeeded) {
+			return arguments;
+		}
+		ResolvedConverters resolvedConverters = this.resolvedConverters;
+		if (resolvedConverters.version != ConverterRegistry.getVersion()) {
+			resolvedConverters = resolveConverters();
+			this.resolvedConverters = resolvedConverters;
+		}
+		TypeConverter<Object, Object>[] converters = resolvedConverters.converters;
+		Object[] convertedArguments = new Object[arguments.length];
+		for (int i = 0; i < arguments.length; i++) {
+			convertedArguments[i] = converters[i] != null ? converters[i].convert(arguments[i]) : arguments[i];
+		}
+		return convertedArguments;
+	}
+
+	public String toString() {
+		return method + " for " + Arrays.asList(argumentTypes);
+	}
+
+	/**
+	 * Converters per parameter, resolved for a version of the converter registry.
+	 */
+	private static class ResolvedConverters {
+
+		private final long version;
+		private final TypeConverter<Object, Object>[] converters;
+
+		ResolvedConverters(long version, TypeConverter<Object, Object>[] converters) {
+			this.version = version;
+			this.converters = converters;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.reflection;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches methods resolved by MethodInvocation, by target class, method name and runtime argument types,
+ * so that overloads are resolved and conversions are determined only once.
+ * Subclasses determine which methods are candidates for invocation.
+ * Entries are dropped along with the target class.
+ */
+public abstract class CallSiteCache {
+
+	private final ClassValue<ConcurrentMap<CallSiteKey, CallSite>> callSitesByClass = new ClassValue<ConcurrentMap<CallSiteKey, CallSite>>() {
+		@Override
+		protected ConcurrentMap<CallSiteKey, CallSite> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<CallSiteKey, CallSite>();
+		}
+	};
+
+	/**
+	 * @param targetClass
+	 * @param methodName
+	 * @param nrofParameters
+	 * @return methods that may be invoked, in order of preference
+	 */
+	protected abstract Method[] getCandidateMethods(Class<?> targetClass, String methodName, int nrofParameters);
+
+	/**
+	 * @param targetClass
+	 * @param methodName
+	 * @param arguments
+	 * @return the call site resolved earlier for arguments of the same types, or null
+	 */
+	public CallSite get(Class<?> targetClass, String methodName, Object[] arguments) {
+		return callSitesByClass.get(targetClass).get(new CallSiteKey(methodName, getArgumentTypes(arguments)));
+	}
+
+	/**
+	 * @param targetClass
+	 * @param method     method that was invoked successfully
+	 * @param arguments  arguments the method was invoked with
+	 * @return the cached call site
+	 */
+	public CallSite put(Class<?> targetClass, Method method, Object[] arguments) {
+		Class<?>[] argumentTypes = getArgumentTypes(arguments);
+		CallSite callSite = new CallSite(method, argumentTypes);
+		CallSite existing = callSitesByClass.get(targetClass).putIfAbsent(new CallSiteKey(method.getName(), argumentTypes), callSite);
+		return existing != null ? existing : callSite;
+	}
+
+	/**
+	 * @param targetClass
+	 * @return number of call sites cached for the class
+	 */
+	public int size(Class<?> targetClass) {
+		return callSitesByClass.get(targetClass).size();
+	}
+
+	static Class<?>[] getArgumentTypes(Object[] arguments) {
+		Class<?>[] types = new Class<?>[arguments.length];
+		for (int i = 0; i < arguments.length; i++) {
+			types[i] = arguments[i] != null ? arguments[i].getClass() : null;
+		}
+		return types;
+	}
+
+	private static class CallSiteKey {
+
+		private final String methodName;
+		private final Class<?>[] argumentTypes;
+		private final int hashCode;
+
+		CallSiteKey(String methodName, Class<?>[] argumentTypes) {
+			this.methodName = methodName;
+			this.argumentTypes = argumentTypes;
+			this.hashCode = 31 * methodName.hashCode() + Arrays.hashCode(argumentTypes);
+		}
+
+		public boolean equals(Object other) {
+			return other instanceof CallSiteKey && methodName.equals(((CallSiteKey) other).methodName) &&
+					Arrays.equals(argumentTypes, ((CallSiteKey) other).argumentTypes);
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.reflection;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * Immutable model of the public constructors and methods, superclasses and interfaces of a class.
+ * Instances are computed once per class and shared.
+ *
+ * @see ReflectionSupport#getClassMetadata(Class)
+ */
+public class ClassMetadata {
+
+	public static final String SETTER_PREFIX = "set";
+
+	private final Class<?> type;
+	private final List<Class<?>> superClasses;
+	private final List<Class<?>> interfaces;
+	private final Set<Class<?>> interfaceClosure;
+	private final Map<String, Map<Integer, Set<Method>>> methodsByNameAndArity;
+	private final Map<String, Set<Method>> settersByPropertyKey;
+	private final Set<String> setterPropertyKeys;
+	private final List<Constructor<?>> constructors;
+
+	ClassMetadata(Class<?> type) {
+		this.type = type;
+
+		List<Class<?>> superClasses = new ArrayList<Class<?>>();
+		for (Class<?> superClass = type.getSuperclass(); superClass != null; superClass = superClass.getSuperclass()) {
+			superClasses.add(superClass);
+		}
+		this.superClasses = Collections.unmodifiableList(superClasses);
+
+		//superclasses first
+		Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+		for (Class<?> superClass : superClasses) {
+			interfaces.addAll(Arrays.asList(superClass.getInterfaces()));
+		}
+		interfaces.addAll(Arrays.asList(type.getInterfaces()));
+		this.interfaces = Collections.unmodifiableList(new ArrayList<Class<?>>(interfaces));
+
+		Set<Class<?>> interfaceClosure = new LinkedHashSet<Class<?>>();
+		if (type.isInterface()) {
+			addInterfaceClosure(type, interfaceClosure);
+		}
+		for (Class<?> interfaceClass : interfaces) {
+			addInterfaceClosure(interfaceClass, interfaceClosure);
+		}
+		this.interfaceClosure = Collections.unmodifiableSet(interfaceClosure);
+
+		Map<String, Map<Integer, Set<Method>>> methodsByNameAndArity = new HashMap<String, Map<Integer, Set<Method>>>();
+		Map<String, Set<Method>> settersByPropertyKey = new HashMap<String, Set<Method>>();
+		for (Method method : type.getMethods()) {
+			int arity = method.getParameterTypes().length;
+			Map<Integer, Set<Method>> methodsByArity = methodsByNameAndArity.get(method.getName());
+			if (methodsByArity == null) {
+				methodsByArity = new HashMap<Integer, Set<Method>>();
+				methodsByNameAndArity.put(method.getName(), methodsByArity);
+			}
+			addToSet(methodsByArity, arity, method);
+			if (arity == 1 && method.getName().length() > SETTER_PREFIX.length() && method.getName().startsWith(SETTER_PREFIX)) {
+				addToSet(settersByPropertyKey, method.getName().substring(SETTER_PREFIX.length()), method);
+			}
+		}
+		for (Map<Integer, Set<Method>> methodsByArity : methodsByNameAndArity.values()) {
+			makeValuesUnmodifiable(methodsByArity);
+		}
+		makeValuesUnmodifiable(settersByPropertyKey);
+		this.methodsByNameAndArity = methodsByNameAndArity;
+		this.settersByPropertyKey = settersByPropertyKey;
+		this.setterPropertyKeys = Collections.unmodifiableSet(settersByPropertyKey.keySet());
+		this.constructors = Collections.unmodifiableList(Arrays.<Constructor<?>>asList(type.getConstructors()));
+	}
+
+	private static void addInterfaceClosure(Class<?> interfaceClass, Set<Class<?>> interfaceClosure) {
+		if (interfaceClosure.add(interfaceClass)) {
+			for (Class<?> superInterface : interfaceClass.getInterfaces()) {
+				addInterfaceClosure(superInterface, interfaceClosure);
+			}
+		}
+	}
+
+	private static <K> void addToSet(Map<K, Set<Method>> methods, K key, Method method) {
+		Set<Method> methodSet = methods.get(key);
+		if (methodSet == null) {
+			methodSet = new HashSet<Method>();
+			methods.put(key, methodSet);
+		}
+		methodSet.add(method);
+	}
+
+	private static <K> void makeValuesUnmodifiable(Map<K, Set<Method>> methods) {
+		for (Map.Entry<K, Set<Method>> entry : methods.entrySet()) {
+			entry.setValue(Collections.unmodifiableSet(entry.getValue()));
+		}
+	}
+
+	/**
+	 * @return the class described
+	 */
+	public Class<?> getType() {
+		return type;
+	}
+
+	/**
+	 * @return all classes the class extends, nearest first
+	 */
+	public List<Class<?>> getSuperClasses() {
+		return superClasses;
+	}
+
+	/**
+	 * @return interfaces declared by the class and its superclasses
+	 */
+	public List<Class<?>> getInterfaces() {
+		return interfaces;
+	}
+
+	/**
+	 * @return interfaces declared by the class and its superclasses, including the interfaces they extend
+	 */
+	public Set<Class<?>> getInterfaceClosure() {
+		return interfaceClosure;
+	}
+
+	/**
+	 * @param methodName
+	 * @param nrofParameters
+	 * @return public methods with the given name and number of parameters
+	 */
+	public Set<Method> getMethodsByName(String methodName, int nrofParameters) {
+		Map<Integer, Set<Method>> methodsByArity = methodsByNameAndArity.get(methodName);
+		if (methodsByArity == null) {
+			return Collections.emptySet();
+		}
+		Set<Method> methods = methodsByArity.get(nrofParameters);
+		return methods != null ? methods : Collections.<Method>emptySet();
+	}
+
+	/**
+	 * @param propertyKey key of which the first character may be lower case
+	 * @return public methods with one parameter, named after the property
+	 */
+	public Set<Method> getSettersByPropertyKey(String propertyKey) {
+		if (propertyKey.length() > 0 && Character.isLowerCase(propertyKey.charAt(0))) {
+			propertyKey = Character.toUpperCase(propertyKey.charAt(0)) + propertyKey.substring(1);
+		}
+		Set<Method> setters = settersByPropertyKey.get(propertyKey);
+		return setters != null ? setters : Collections.<Method>emptySet();
+	}
+
+	/**
+	 * @return keys of properties for which setters exist, with the first character in upper case
+	 */
+	public Set<String> getSetterPropertyKeys() {
+		return setterPropertyKeys;
+	}
+
+	/**
+	 * @return public constructors
+	 */
+	public List<Constructor<?>> getConstructors() {
+		return constructors;
+	}
+
+	public String toString() {
+		return "metadata of " + type.getName();
+	}
+}
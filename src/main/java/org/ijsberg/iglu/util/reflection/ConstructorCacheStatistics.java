@@ -0,0 +1,83 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.reflection;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts lookups in the constructor cache used by ReflectionSupport.instantiateClass.
+ */
+public class ConstructorCacheStatistics {
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder fallbacks = new LongAdder();
+
+	ConstructorCacheStatistics() {
+	}
+
+	void recordHit() {
+		hits.increment();
+	}
+
+	void recordMiss() {
+		misses.increment();
+	}
+
+	void recordFallback() {
+		fallbacks.increment();
+	}
+
+	/**
+	 * @return number of instantiations by a cached constructor
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of instantiations that required a constructor to be looked up
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return number of instantiations that required arguments to be converted
+	 * because no constructor matched their types, or because a cached constructor
+	 * could not accept them
+	 */
+	public long getFallbacks() {
+		return fallbacks.sum();
+	}
+
+	/**
+	 * Resets all counters.
+	 */
+	public void reset() {
+		hits.reset();
+		misses.reset();
+		fallbacks.reset();
+	}
+
+	public String toString() {
+		return "constructor cache hits: " + getHits() + ", misses: " + getMisses() + ", fallbacks: " + getFallbacks();
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.reflection;
+
+/**
+ * Holds the objects to which generated proxies delegate their invocations.
+ * A reference may be shared by several proxies and can be retargeted at any time,
+ * for instance to route invocations of certain methods through an interceptor.
+ * Retargeting is atomic: an invocation sees either all old or all new delegates.
+ */
+public class DelegateReference {
+
+	private volatile Object[] delegates = new Object[1];
+
+	public DelegateReference() {
+	}
+
+	/**
+	 * @param delegate
+	 */
+	public DelegateReference(Object delegate) {
+		set(delegate);
+	}
+
+	/**
+	 * @return the object invocations are delegated to, or the delegate of the first method
+	 */
+	public Object get() {
+		return delegates[0];
+	}
+
+	/**
+	 * @param methodIndex index of a method as listed by ProxyClassGenerator.getProxiedMethods
+	 * @return the object invocations of the method are delegated to
+	 */
+	public Object get(int methodIndex) {
+		Object[] currentDelegates = delegates;
+		return methodIndex < currentDelegates.length ? currentDelegates[methodIndex] : currentDelegates[0];
+	}
+
+	/**
+	 * @param delegate
+	 * @return true if invocations of at least one method are delegated to the given object
+	 */
+	public boolean delegatesTo(Object delegate) {
+		for (Object currentDelegate : delegates) {
+			if (currentDelegate == delegate) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param delegate object that must implement the interfaces of the proxies using this reference
+	 */
+	public void set(Object delegate) {
+		this.delegates = new Object[]{delegate};
+	}
+
+	/**
+	 * @param delegates objects invocations are delegated to, indexed as the methods listed by
+	 * ProxyClassGenerator.getProxiedMethods
+	 */
+	public void set(Object[] delegates) {
+		if (delegates.length == 0) {
+			throw new IllegalArgumentException("at least one delegate must be specified");
+		}
+		this.delegates = delegates.clone();
+	}
+}
@@ -31,6 +31,13 @@ import java.util.Arrays;
  */
 public class MethodInvocation {
 
+	private static final CallSiteCache DECLARED_METHOD_CALL_SITES = new CallSiteCache() {
+		@Override
+		protected Method[] getCandidateMethods(Class<?> targetClass, String methodName, int nrofParameters) {
+			return targetClass.getDeclaredMethods();
+		}
+	};
+
 	private Object impl;
 	private Method[] methods;
 
@@ -40,6 +47,7 @@ public class MethodInvocation {
 	private Object retval = null;
 	private boolean invocationSucceeded;
 	private InvocationHandler invocationHandler;
+	private CallSiteCache callSiteCache;
 
 	public MethodInvocation(InvocationHandler invocationHandler, Object impl, String methodName, Method[] methodSubset, Object... arguments) {
 		this.impl = impl;
@@ -53,15 +61,18 @@ public class MethodInvocation {
 	}
 
 	/**
-	 * Arguments do not have to match exactly; they will be converted if possible.
+	 * Candidate methods are only looked up if no call site is cached for the runtime types of the arguments.
 	 *
-	 * @param impl       the object on which the method is invoked
-	 * @param methodName name of method to be invoked
-	 * @param arguments  zero or more arguments
+	 * @param invocationHandler handler that invokes the method
+	 * @param impl              the object on which the method is invoked
+	 * @param methodName        name of method to be invoked
+	 * @param callSiteCache     cache that supplies candidate methods and retains resolved ones
+	 * @param arguments         zero or more arguments
 	 */
-	public MethodInvocation(Object impl, String methodName, Object... arguments) {
+	public MethodInvocation(InvocationHandler invocationHandler, Object impl, String methodName, CallSiteCache callSiteCache, Object... arguments) {
 		this.impl = impl;
-		this.methods = impl.getClass().getDeclaredMethods();
+		this.invocationHandler = invocationHandler;
+		this.callSiteCache = callSiteCache;
 		this.methodName = methodName;
 		this.initArgs = arguments;
 		if (this.initArgs == null) {
@@ -69,6 +80,17 @@ public class MethodInvocation {
 		}
 	}
 
+	/**
+	 * Arguments do not have to match exactly; they will be converted if possible.
+	 *
+	 * @param impl       the object on which the method is invoked
+	 * @param methodName name of method to be invoked
+	 * @param arguments  zero or more arguments
+	 */
+	public MethodInvocation(Object impl, String methodName, Object... arguments) {
+		this(null, impl, methodName, DECLARED_METHOD_CALL_SITES, arguments);
+	}
+
 	/**
 	 * @return whatever the method returns
 	 * @throws InvocationTargetException if the invoked method throws
@@ -78,11 +100,21 @@ public class MethodInvocation {
 		retval = null;
 		invocationSucceeded = false;
 
+		Method failedMethod = null;
+		if (callSiteCache != null) {
+			failedMethod = tryInvokeCachedCallSite();
+			if (invocationSucceeded) {
+				return retval;
+			}
+			if (methods == null) {
+				methods = callSiteCache.getCandidateMethods(impl.getClass(), methodName, initArgs.length);
+			}
+		}
 		if (invocationHandler == null) {
 			tryInvokeExactSignature();
 		}
 		if (!invocationSucceeded) {
-			tryInvokeWithConvertedArguments();
+			tryInvokeWithConvertedArguments(failedMethod);
 		}
 		if (invocationSucceeded) {
 			return retval;
@@ -94,12 +126,35 @@ public class MethodInvocation {
 
 	}
 
-	private void tryInvokeWithConvertedArguments() throws InvocationTargetException {
+	/**
+	 * @return the cached method if it could not be invoked with the arguments
+	 */
+	private Method tryInvokeCachedCallSite() throws InvocationTargetException {
+		CallSite callSite = callSiteCache.get(impl.getClass(), methodName, initArgs);
+		if (callSite == null) {
+			return null;
+		}
+		try {
+			invokeMethod(impl, callSite.convertArguments(initArgs), callSite.getMethod());
+			invocationSucceeded = true;
+			return null;
+		} catch (IllegalArgumentException iae) {
+			if (invocationHandler == null && !callSite.isConversionNeeded()) {
+				//exact signature, no alternatives are tried
+				throw iae;
+			}
+			failedInvocation = iae;
+			return callSite.getMethod();
+		}
+	}
+
+	private void tryInvokeWithConvertedArguments(Method failedMethod) throws InvocationTargetException {
 		for (int i = 0; i < methods.length; i++) {
-			if (methods[i].getName().equals(methodName) && methods[i].getParameterTypes().length == initArgs.length) {
+			if (methods[i] != failedMethod && methods[i].getName().equals(methodName) && methods[i].getParameterTypes().length == initArgs.length) {
 				try {
 					invokePublicMethod(impl, initArgs, methods[i]);
 					invocationSucceeded = true;
+					cacheCallSite(methods[i]);
 					return;
 				} catch (IllegalArgumentException iae) {
 					failedInvocation = iae;
@@ -109,29 +164,32 @@ public class MethodInvocation {
 	}
 
 	private void tryInvokeExactSignature() throws InvocationTargetException {
-		try {
-			Method method = impl.getClass().getMethod(methodName, getInitArgTypes(initArgs));
-			//System.out.println(method);
-			invokePublicMethod(impl, initArgs, method);
-			invocationSucceeded = true;
-		} catch (NoSuchMethodException e) {
-			//there are other possibilities to explore
-//            e.printStackTrace();
+		Class<?>[] initArgTypes = CallSiteCache.getArgumentTypes(initArgs);
+		for (Method method : ReflectionSupport.getMethodsByName(impl.getClass(), methodName, initArgs.length)) {
+			if (Arrays.equals(method.getParameterTypes(), initArgTypes)) {
+				invokePublicMethod(impl, initArgs, method);
+				invocationSucceeded = true;
+				cacheCallSite(method);
+				return;
+			}
 		}
+		//there are other possibilities to explore
 	}
 
-	private static Class<?>[] getInitArgTypes(Object[] initArgs) {
-		Class<?>[] types = new Class[initArgs.length];
-		for (int i = 0; i < initArgs.length; i++) {
-			types[i] = initArgs[i] != null ? initArgs[i].getClass() : null;
+	private void cacheCallSite(Method method) {
+		if (callSiteCache != null) {
+			callSiteCache.put(impl.getClass(), method, initArgs);
 		}
-		return types;
 	}
 
 	private void invokePublicMethod(Object impl, Object[] initArgs, Method method)
 			throws InvocationTargetException {
 		Class<?>[] inputTypes = method.getParameterTypes();
-		Object[] alternativeInitArgs = Converter.convertToMatchingTypes(initArgs, inputTypes);
+		invokeMethod(impl, Converter.convertToMatchingTypes(initArgs, inputTypes), method);
+	}
+
+	private void invokeMethod(Object impl, Object[] alternativeInitArgs, Method method)
+			throws InvocationTargetException {
 		try {
 			if (invocationHandler != null) {
 				invokeInvocationHandler(impl, alternativeInitArgs, method);
@@ -0,0 +1,567 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.reflection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates concrete proxy classes that implement an interface by delegating
+ * every invocation directly to the object held by a DelegateReference.
+ * Unlike java.lang.reflect.Proxy, an invocation does not allocate an argument array,
+ * does not box primitives and can be inlined by the JIT.
+ * Each method of a generated class has its own index in the DelegateReference,
+ * following the order of getProxiedMethods, so that delegates can be chosen per method.
+ * <p/>
+ * A class is generated per combination of interface and implementation class,
+ * so that the call sites in a generated class only see a single receiver type.
+ * Generated classes are defined in their own class loader and can be unloaded
+ * together with the interface and implementation.
+ */
+public class ProxyClassGenerator {
+
+	private static final String PROXY_PACKAGE = "org.ijsberg.iglu.proxy.";
+
+	private static final String SUPER_CLASS_NAME = getInternalName(DelegatingProxy.class);
+	private static final String REFERENCE_CLASS_NAME = getInternalName(DelegateReference.class);
+	private static final String REFERENCE_DESCRIPTOR = "L" + REFERENCE_CLASS_NAME + ";";
+
+	private static final Object NOT_GENERATABLE = new Object();
+
+	private static final AtomicLong proxyClassCounter = new AtomicLong();
+
+	private static final Method[] OBJECT_METHODS = getObjectMethods();
+
+	private static final ClassValue<Object> proxiedMethodsByInterface = new ClassValue<Object>() {
+		@Override
+		protected Object computeValue(Class<?> interfaceClass) {
+			Method[] methods = findProxiedMethods(interfaceClass);
+			return methods != null ? methods : NOT_GENERATABLE;
+		}
+	};
+
+	private static final ClassValue<ConcurrentMap<Class<?>, Object>> proxyConstructorsByImplementationClass =
+			new ClassValue<ConcurrentMap<Class<?>, Object>>() {
+				@Override
+				protected ConcurrentMap<Class<?>, Object> computeValue(Class<?> implementationClass) {
+					return new ConcurrentHashMap<Class<?>, Object>();
+				}
+			};
+
+	/**
+	 * @param interfaceClass
+	 * @param implementationClass
+	 * @return true if a proxy class can be generated for the interface
+	 */
+	public static boolean canGenerateProxyClass(Class<?> interfaceClass, Class<?> implementationClass) {
+		return getProxyConstructor(interfaceClass, implementationClass) != null;
+	}
+
+	/**
+	 * @param interfaceClass
+	 * @param implementationClass class of the objects the proxy will delegate to
+	 * @return a generated proxy class, or null if the interface can not be proxied by a generated class
+	 * @throws IllegalArgumentException if the implementation class does not implement the interface
+	 */
+	public static Class<? extends DelegatingProxy> getProxyClass(Class<?> interfaceClass, Class<?> implementationClass) {
+		Constructor<?> constructor = getProxyConstructor(interfaceClass, implementationClass);
+		return constructor != null ? constructor.getDeclaringClass().asSubclass(DelegatingProxy.class) : null;
+	}
+
+	/**
+	 * @param interfaceClass
+	 * @param implementationClass class of the objects the proxy will delegate to
+	 * @param reference holds the object invocations are delegated to
+	 * @return a new instance of a generated proxy class, or null if the interface can not be proxied by a generated class
+	 * @throws IllegalArgumentException if the implementation class does not implement the interface
+	 */
+	public static <T> T createProxy(Class<T> interfaceClass, Class<?> implementationClass, DelegateReference reference) {
+		Constructor<?> constructor = getProxyConstructor(interfaceClass, implementationClass);
+		if (constructor == null) {
+			return null;
+		}
+		try {
+			return interfaceClass.cast(constructor.newInstance(reference));
+		} catch (InvocationTargetException ite) {
+			if (ite.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ite.getCause();
+			}
+			throw new RuntimeException("can not instantiate proxy for " + interfaceClass.getName(), ite.getCause());
+		} catch (InstantiationException e) {
+			throw new RuntimeException("can not instantiate proxy for " + interfaceClass.getName(), e);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException("can not instantiate proxy for " + interfaceClass.getName(), e);
+		}
+	}
+
+	private static Constructor<?> getProxyConstructor(Class<?> interfaceClass, Class<?> implementationClass) {
+		if (!interfaceClass.isInterface()) {
+			throw new IllegalArgumentException("class " + interfaceClass.getName() + " is not an interface");
+		}
+		if (!interfaceClass.isAssignableFrom(implementationClass)) {
+			throw new IllegalArgumentException("class " + implementationClass.getName() + " does not implement " + interfaceClass.getName());
+		}
+		ConcurrentMap<Class<?>, Object> constructorsByInterface = proxyConstructorsByImplementationClass.get(implementationClass);
+		Object constructor = constructorsByInterface.get(interfaceClass);
+		if (constructor == null) {
+			constructor = generateProxyConstructor(interfaceClass, implementationClass);
+			Object existingConstructor = constructorsByInterface.putIfAbsent(interfaceClass, constructor);
+			if (existingConstructor != null) {
+				constructor = existingConstructor;
+			}
+		}
+		return constructor != NOT_GENERATABLE ? (Constructor<?>) constructor : null;
+	}
+
+	private static Object generateProxyConstructor(Class<?> interfaceClass, Class<?> implementationClass) {
+		Method[] methods = getProxiedMethods(interfaceClass);
+		if (methods == null) {
+			return NOT_GENERATABLE;
+		}
+		String className = PROXY_PACKAGE + getIdentifier(interfaceClass) + "$" +
+				getIdentifier(implementationClass) + "$" + proxyClassCounter.incrementAndGet();
+		byte[] classFile = createClassFile(getInternalName(className), interfaceClass, methods);
+		try {
+			Class<?> proxyClass = new ProxyClassLoader(interfaceClass.getClassLoader()).defineProxyClass(className, classFile);
+			return proxyClass.getConstructor(DelegateReference.class);
+		} catch (LinkageError e) {
+			//types in the interface's signatures are not visible or not accessible
+			return NOT_GENERATABLE;
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException("generated proxy class " + className + " lacks constructor", e);
+		}
+	}
+
+	private static String getIdentifier(Class<?> clasz) {
+		StringBuilder identifier = new StringBuilder(clasz.getSimpleName());
+		for (int i = 0; i < identifier.length(); i++) {
+			if (!Character.isJavaIdentifierPart(identifier.charAt(i))) {
+				identifier.setCharAt(i, '_');
+			}
+		}
+		return identifier.toString();
+	}
+
+	/**
+	 * The index of a method in the returned array is its index in the DelegateReference of a proxy.
+	 * Proxied methods include equals, hashCode and toString.
+	 *
+	 * @param interfaceClass
+	 * @return methods implemented by generated proxies for the interface,
+	 * or null if the interface can not be implemented by a generated class
+	 */
+	public static Method[] getProxiedMethods(Class<?> interfaceClass) {
+		Object methods = proxiedMethodsByInterface.get(interfaceClass);
+		return methods != NOT_GENERATABLE ? ((Method[]) methods).clone() : null;
+	}
+
+	private static Method[] getObjectMethods() {
+		try {
+			return new Method[]{
+					Object.class.getMethod("equals", Object.class),
+					Object.class.getMethod("hashCode"),
+					Object.class.getMethod("toString")};
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static Method[] findProxiedMethods(Class<?> interfaceClass) {
+		if (!interfaceClass.isInterface() || !isPublic(interfaceClass)) {
+			return null;
+		}
+		Map<String, Method> methodsBySignature = new LinkedHashMap<String, Method>();
+		for (Method method : interfaceClass.getMethods()) {
+			if (Modifier.isStatic(method.getModifiers())) {
+				continue;
+			}
+			if (!isPublic(method.getReturnType())) {
+				return null;
+			}
+			for (Class<?> parameterType : method.getParameterTypes()) {
+				if (!isPublic(parameterType)) {
+					return null;
+				}
+			}
+			String signature = method.getName() + getParameterDescriptor(method.getParameterTypes());
+			Method otherMethod = methodsBySignature.get(signature);
+			if (otherMethod != null && otherMethod.getReturnType() != method.getReturnType()) {
+				//would require bridge methods
+				return null;
+			}
+			methodsBySignature.put(signature, method);
+		}
+		for (Method method : OBJECT_METHODS) {
+			String signature = method.getName() + getParameterDescriptor(method.getParameterTypes());
+			if (!methodsBySignature.containsKey(signature)) {
+				methodsBySignature.put(signature, method);
+			}
+		}
+		return methodsBySignature.values().toArray(new Method[0]);
+	}
+
+	private static boolean isPublic(Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		if (type.isPrimitive()) {
+			return true;
+		}
+		for (Class<?> enclosingClass = type; enclosingClass != null; enclosingClass = enclosingClass.getDeclaringClass()) {
+			if (!Modifier.isPublic(enclosingClass.getModifiers())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] createClassFile(String internalClassName, Class<?> interfaceClass, Method[] methods) {
+		ConstantPool constantPool = new ConstantPool();
+		int thisClass = constantPool.addClass(internalClassName);
+		int superClass = constantPool.addClass(SUPER_CLASS_NAME);
+		int interfaceIndex = constantPool.addClass(getInternalName(interfaceClass));
+		int codeAttributeName = constantPool.addUtf8("Code");
+
+		ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+		DataOutputStream methodOut = new DataOutputStream(methodBytes);
+		try {
+			writeConstructor(methodOut, constantPool, codeAttributeName);
+			int referenceField = constantPool.addFieldRef(SUPER_CLASS_NAME, "reference", REFERENCE_DESCRIPTOR);
+			int getDelegateMethod = constantPool.addMethodRef(REFERENCE_CLASS_NAME, "get", "(I)Ljava/lang/Object;");
+			for (int i = 0; i < methods.length; i++) {
+				writeDelegatingMethod(methodOut, constantPool, codeAttributeName, interfaceClass, interfaceIndex,
+						referenceField, getDelegateMethod, methods[i], i);
+			}
+			methodOut.flush();
+
+			ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(classBytes);
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			//Java 6 class file format: generated code contains no branches, so no stack map frames are needed
+			out.writeShort(50);
+			constantPool.write(out);
+			out.writeShort(Modifier.PUBLIC | Modifier.FINAL | 0x0020 /*ACC_SUPER*/);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(1);
+			out.writeShort(interfaceIndex);
+			//fields
+			out.writeShort(0);
+			out.writeShort(methods.length + 1);
+			methodBytes.writeTo(out);
+			//class attributes
+			out.writeShort(0);
+			out.flush();
+			return classBytes.toByteArray();
+		} catch (IOException e) {
+			//can not occur when writing to a byte array
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void writeConstructor(DataOutputStream out, ConstantPool constantPool, int codeAttributeName) throws IOException {
+		int superConstructor = constantPool.addMethodRef(SUPER_CLASS_NAME, "<init>", "(" + REFERENCE_DESCRIPTOR + ")V");
+		out.writeShort(Modifier.PUBLIC);
+		out.writeShort(constantPool.addUtf8("<init>"));
+		out.writeShort(constantPool.addUtf8("(" + REFERENCE_DESCRIPTOR + ")V"));
+		out.writeShort(1);
+		out.writeShort(codeAttributeName);
+		byte[] code = new byte[]{
+				0x2A, //aload_0
+				0x2B, //aload_1
+				(byte) 0xB7, (byte) (superConstructor >> 8), (byte) superConstructor, //invokespecial
+				(byte) 0xB1 //return
+		};
+		writeCodeAttribute(out, code, 2, 2);
+	}
+
+	private static void writeDelegatingMethod(DataOutputStream out, ConstantPool constantPool, int codeAttributeName,
+											  Class<?> interfaceClass, int interfaceIndex, int referenceField,
+											  int getDelegateMethod, Method method, int methodIndex) throws IOException {
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		String descriptor = getParameterDescriptor(parameterTypes) + getDescriptor(method.getReturnType());
+		boolean objectMethod = method.getDeclaringClass() == Object.class;
+		int targetMethod = objectMethod ?
+				constantPool.addMethodRef("java/lang/Object", method.getName(), descriptor) :
+				constantPool.addInterfaceMethodRef(getInternalName(interfaceClass), method.getName(), descriptor);
+
+		ByteArrayOutputStream code = new ByteArrayOutputStream();
+		code.write(0x2A); //aload_0
+		code.write(0xB4); //getfield DelegatingProxy.reference
+		writeShort(code, referenceField);
+		if (methodIndex <= 5) {
+			code.write(0x03 + methodIndex); //iconst_<n>
+		} else if (methodIndex <= Byte.MAX_VALUE) {
+			code.write(0x10); //bipush
+			code.write(methodIndex);
+		} else {
+			code.write(0x11); //sipush
+			writeShort(code, methodIndex);
+		}
+		code.write(0xB6); //invokevirtual DelegateReference.get
+		writeShort(code, getDelegateMethod);
+		if (!objectMethod) {
+			code.write(0xC0); //checkcast
+			writeShort(code, interfaceIndex);
+		}
+
+		int slot = 1;
+		for (Class<?> parameterType : parameterTypes) {
+			code.write(getLoadOpcode(parameterType));
+			code.write(slot);
+			slot += getSlotSize(parameterType);
+		}
+		if (objectMethod) {
+			code.write(0xB6); //invokevirtual
+			writeShort(code, targetMethod);
+		} else {
+			code.write(0xB9); //invokeinterface
+			writeShort(code, targetMethod);
+			code.write(slot);
+			code.write(0);
+		}
+		code.write(getReturnOpcode(method.getReturnType()));
+
+		out.writeShort(Modifier.PUBLIC | Modifier.FINAL);
+		out.writeShort(constantPool.addUtf8(method.getName()));
+		out.writeShort(constantPool.addUtf8(descriptor));
+		out.writeShort(1);
+		out.writeShort(codeAttributeName);
+		writeCodeAttribute(out, code.toByteArray(), Math.max(slot, 2), slot);
+	}
+
+	private static void writeCodeAttribute(DataOutputStream out, byte[] code, int maxStack, int maxLocals) throws IOException {
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		//exception table
+		out.writeShort(0);
+		//attributes
+		out.writeShort(0);
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write(value >> 8);
+		out.write(value);
+	}
+
+	private static int getLoadOpcode(Class<?> type) {
+		if (type == long.class) {
+			return 0x16; //lload
+		}
+		if (type == float.class) {
+			return 0x17; //fload
+		}
+		if (type == double.class) {
+			return 0x18; //dload
+		}
+		if (type.isPrimitive()) {
+			return 0x15; //iload
+		}
+		return 0x19; //aload
+	}
+
+	private static int getReturnOpcode(Class<?> type) {
+		if (type == void.class) {
+			return 0xB1; //return
+		}
+		if (type == long.class) {
+			return 0xAD; //lreturn
+		}
+		if (type == float.class) {
+			return 0xAE; //freturn
+		}
+		if (type == double.class) {
+			return 0xAF; //dreturn
+		}
+		if (type.isPrimitive()) {
+			return 0xAC; //ireturn
+		}
+		return 0xB0; //areturn
+	}
+
+	private static int getSlotSize(Class<?> type) {
+		return type == long.class || type == double.class ? 2 : 1;
+	}
+
+	private static String getInternalName(Class<?> clasz) {
+		return getInternalName(clasz.getName());
+	}
+
+	private static String getInternalName(String className) {
+		return className.replace('.', '/');
+	}
+
+	private static String getParameterDescriptor(Class<?>[] parameterTypes) {
+		StringBuilder descriptor = new StringBuilder("(");
+		for (Class<?> parameterType : parameterTypes) {
+			descriptor.append(getDescriptor(parameterType));
+		}
+		return descriptor.append(')').toString();
+	}
+
+	private static String getDescriptor(Class<?> type) {
+		if (type.isArray()) {
+			return getInternalName(type);
+		}
+		if (type == void.class) {
+			return "V";
+		}
+		if (type == boolean.class) {
+			return "Z";
+		}
+		if (type == byte.class) {
+			return "B";
+		}
+		if (type == char.class) {
+			return "C";
+		}
+		if (type == short.class) {
+			return "S";
+		}
+		if (type == int.class) {
+			return "I";
+		}
+		if (type == long.class) {
+			return "J";
+		}
+		if (type == float.class) {
+			return "F";
+		}
+		if (type == double.class) {
+			return "D";
+		}
+		return "L" + getInternalName(type) + ";";
+	}
+
+	/**
+	 * Constant pool of a class file under construction.
+	 */
+	private static class ConstantPool {
+
+		private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private DataOutputStream out = new DataOutputStream(bytes);
+		private Map<String, Integer> indexesByEntry = new HashMap<String, Integer>();
+		private int size = 1;
+
+		int addUtf8(String value) {
+			String key = "U" + value;
+			Integer index = indexesByEntry.get(key);
+			if (index == null) {
+				try {
+					out.writeByte(1);
+					out.writeUTF(value);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				index = register(key);
+			}
+			return index;
+		}
+
+		int addClass(String internalName) {
+			return addReference(7, "C" + internalName, addUtf8(internalName));
+		}
+
+		int addFieldRef(String owner, String name, String descriptor) {
+			return addMemberRef(9, owner, name, descriptor);
+		}
+
+		int addMethodRef(String owner, String name, String descriptor) {
+			return addMemberRef(10, owner, name, descriptor);
+		}
+
+		int addInterfaceMethodRef(String owner, String name, String descriptor) {
+			return addMemberRef(11, owner, name, descriptor);
+		}
+
+		private int addMemberRef(int tag, String owner, String name, String descriptor) {
+			int ownerIndex = addClass(owner);
+			int nameAndTypeIndex = addReference(12, "N" + name + " " + descriptor, addUtf8(name), addUtf8(descriptor));
+			return addReference(tag, tag + owner + "." + name + " " + descriptor, ownerIndex, nameAndTypeIndex);
+		}
+
+		private int addReference(int tag, String key, int... indexes) {
+			Integer index = indexesByEntry.get(key);
+			if (index == null) {
+				try {
+					out.writeByte(tag);
+					for (int referencedIndex : indexes) {
+						out.writeShort(referencedIndex);
+					}
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				index = register(key);
+			}
+			return index;
+		}
+
+		private int register(String key) {
+			int index = size++;
+			indexesByEntry.put(key, index);
+			return index;
+		}
+
+		void write(DataOutputStream classOut) throws IOException {
+			out.flush();
+			classOut.writeShort(size);
+			bytes.writeTo(classOut);
+		}
+	}
+
+	/**
+	 * Defines a generated class; classes are looked up through the class loader of the
+	 * proxied interface first and then through the class loader of Iglu.
+	 */
+	private static class ProxyClassLoader extends ClassLoader {
+
+		ProxyClassLoader(ClassLoader interfaceClassLoader) {
+			super(interfaceClassLoader);
+		}
+
+		Class<?> defineProxyClass(String className, byte[] classFile) {
+			defineClass(className, classFile, 0, classFile.length);
+			try {
+				//links and verifies the class right away
+				return Class.forName(className, true, this);
+			} catch (ClassNotFoundException e) {
+				throw new NoClassDefFoundError(className);
+			}
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			return ProxyClassGenerator.class.getClassLoader().loadClass(name);
+		}
+	}
+}
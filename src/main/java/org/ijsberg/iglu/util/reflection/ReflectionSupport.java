@@ -20,12 +20,15 @@ package org.ijsberg.iglu.util.reflection;
 
 import org.ijsberg.iglu.configuration.ConfigurationException;
 import org.ijsberg.iglu.util.types.Converter;
+import org.ijsberg.iglu.util.types.ConverterRegistry;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
@@ -34,17 +37,29 @@ import java.util.*;
  */
 public class ReflectionSupport {
 
+	private static final ClassValue<ClassMetadata> CLASS_METADATA = new ClassValue<ClassMetadata>() {
+		@Override
+		protected ClassMetadata computeValue(Class<?> type) {
+			return new ClassMetadata(type);
+		}
+	};
+
+	/**
+	 * Metadata is computed once per class and is released along with the class.
+	 *
+	 * @param clasz
+	 * @return a model of the public methods, superclasses and interfaces of the class
+	 */
+	public static ClassMetadata getClassMetadata(Class<?> clasz) {
+		return CLASS_METADATA.get(clasz);
+	}
+
 	/**
 	 * @param clasz
 	 * @return a list of all classes the given class extends
 	 */
 	public static ArrayList<Class<?>> getAllSuperClassesFromClass(Class<?> clasz) {
-		ArrayList<Class<?>> result = new ArrayList<Class<?>>();
-		while (clasz.getSuperclass() != null) {
-			result.add(clasz.getSuperclass());
-			clasz = clasz.getSuperclass();
-		}
-		return result;
+		return new ArrayList<Class<?>>(getClassMetadata(clasz).getSuperClasses());
 	}
 
 	/**
@@ -65,20 +80,7 @@ public class ReflectionSupport {
 	 * @return all interfaces the given class implements directly or implicitly
 	 */
 	public static ArrayList<Class<?>> getInterfacesForClass(Class<? extends Object> clasz) {
-		ArrayList<Class<?>> result = new ArrayList<Class<?>>();
-
-		ArrayList<Class<? extends Object>> superClasses = getAllSuperClassesFromClass(clasz);
-		superClasses.add(clasz);
-
-		for (Class<?> superClass : superClasses) {
-			Class<?>[] interfaces = superClass.getInterfaces();
-			for (int j = 0; j < interfaces.length; j++) {
-				if (!result.contains(interfaces[j])) {
-					result.add(interfaces[j]);
-				}
-			}
-		}
-		return result;
+		return new ArrayList<Class<?>>(getClassMetadata(clasz).getInterfaces());
 	}
 
 
@@ -160,11 +162,27 @@ public class ReflectionSupport {
 	}
 
 
-	private static HashMap<Class<?>, Constructor<?>> lastUsedConstructors = new HashMap<Class<?>, Constructor<?>>();
+	private static final ConstructorCacheStatistics CONSTRUCTOR_CACHE_STATISTICS = new ConstructorCacheStatistics();
+
+	//constructors by argument types, released along with the class
+	private static final ClassValue<ConcurrentMap<ArgumentTypes, CachedConstructors>> CONSTRUCTOR_CACHE = new ClassValue<ConcurrentMap<ArgumentTypes, CachedConstructors>>() {
+		@Override
+		protected ConcurrentMap<ArgumentTypes, CachedConstructors> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<ArgumentTypes, CachedConstructors>();
+		}
+	};
 
+	/**
+	 * @return counters of the cache of constructors used by instantiateClass
+	 */
+	public static ConstructorCacheStatistics getConstructorCacheStatistics() {
+		return CONSTRUCTOR_CACHE_STATISTICS;
+	}
 
 	/**
 	 * Instantiates a class by invoking a constructor with the given init parameters.
+	 * The constructors that are found for a combination of class and argument types are cached,
+	 * as is the absence of any constructor that may accept arguments of these types.
 	 *
 	 * @param clasz
 	 * @param initArgs
@@ -174,72 +192,230 @@ public class ReflectionSupport {
 	public static <T> T instantiateClass(Class<T> clasz, Object... initArgs)
 			throws InstantiationException {
 
-		Exception lastException = null;
-		Constructor<?> constructor = lastUsedConstructors.get(clasz);
-		if(constructor != null) {
-			try {
-				return (T)instantiateClass(clasz, constructor, initArgs);
-			} catch (Exception e) {
-				//TODO keep statistics
-				lastException = new ConfigurationException("cannot instantiate class using " +
-						getInstantiationDetails(clasz, initArgs), e);
+		if (initArgs == null) {
+			initArgs = new Object[0];
+		}
+		Class<?>[] initArgTypes = getTypesForArgs(initArgs);
+		ArgumentTypes key = new ArgumentTypes(initArgTypes);
+		ConcurrentMap<ArgumentTypes, CachedConstructors> constructors = CONSTRUCTOR_CACHE.get(clasz);
+
+		CachedConstructors cachedConstructors = constructors.get(key);
+		boolean cached = cachedConstructors != null && cachedConstructors.isCurrent();
+		if (cached) {
+			CONSTRUCTOR_CACHE_STATISTICS.recordHit();
+		} else {
+			CONSTRUCTOR_CACHE_STATISTICS.recordMiss();
+			cachedConstructors = getConstructors(clasz, initArgTypes);
+			removeStaleArgumentTypes(constructors);
+			constructors.put(key.toCachedArgumentTypes(), cachedConstructors);
+			if (cachedConstructors.convertArguments) {
+				CONSTRUCTOR_CACHE_STATISTICS.recordFallback();
 			}
 		}
+		if (!cachedConstructors.convertArguments) {
+			return clasz.cast(instantiateClass(clasz, cachedConstructors.constructors[0], initArgs));
+		}
+		return getInstanceForTranslatedArgs(clasz, initArgTypes, cachedConstructors, cached, initArgs);
+	}
 
+	/**
+	 * @return a public constructor of which the parameters accept arguments of the given types without conversion,
+	 * preferring one that declares exactly these types, or else the public constructors
+	 * to which the arguments may be converted, which may be none
+	 */
+	private static CachedConstructors getConstructors(Class<?> clasz, Class<?>[] initArgTypes) {
+		long converterVersion = ConverterRegistry.getVersion();
+		Constructor<?> assignableConstructor = null;
+		for (Constructor<?> constructor : getClassMetadata(clasz).getConstructors()) {
+			Class<?>[] parameterTypes = constructor.getParameterTypes();
+			if (Arrays.equals(parameterTypes, initArgTypes)) {
+				return new CachedConstructors(new Constructor<?>[]{constructor}, false, converterVersion);
+			}
+			if (assignableConstructor == null && isAssignable(parameterTypes, initArgTypes)) {
+				assignableConstructor = constructor;
+			}
+		}
+		if (assignableConstructor != null) {
+			return new CachedConstructors(new Constructor<?>[]{assignableConstructor}, false, converterVersion);
+		}
+		List<Constructor<?>> convertibleConstructors = new ArrayList<Constructor<?>>();
+		for (Constructor<?> constructor : getClassMetadata(clasz).getConstructors()) {
+			if (isConvertible(constructor.getParameterTypes(), initArgTypes)) {
+				convertibleConstructors.add(constructor);
+			}
+		}
+		return new CachedConstructors(convertibleConstructors.toArray(new Constructor<?>[0]), true, converterVersion);
+	}
 
-		if (initArgs == null) {
-			initArgs = new Object[0];
+	private static boolean isAssignable(Class<?>[] parameterTypes, Class<?>[] argTypes) {
+		if (parameterTypes.length != argTypes.length) {
+			return false;
 		}
-		Class<?>[] initArgTypes = getTypesForArgs(initArgs);
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (argTypes[i] == null ? parameterTypes[i].isPrimitive() : !parameterTypes[i].isAssignableFrom(argTypes[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
 
+	private static boolean isConvertible(Class<?>[] parameterTypes, Class<?>[] argTypes) {
+		if (parameterTypes.length != argTypes.length) {
+			return false;
+		}
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (argTypes[i] == null ? parameterTypes[i].isPrimitive() : !ConverterRegistry.canConvert(argTypes[i], parameterTypes[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
 
-		try {
-			//expensive call
-			constructor = clasz.getConstructor(initArgTypes);
-			lastUsedConstructors.put(clasz, constructor);
-			return (T)instantiateClass(clasz, constructor, initArgs);
-		} catch (NoSuchMethodException e) {
-			lastException = new ConfigurationException("cannot instantiate class using " +
-					getInstantiationDetails(clasz, initArgs), e);
+	private static void removeStaleArgumentTypes(ConcurrentMap<ArgumentTypes, CachedConstructors> constructors) {
+		for (Iterator<ArgumentTypes> i = constructors.keySet().iterator(); i.hasNext();) {
+			if (i.next().isStale()) {
+				i.remove();
+			}
 		}
-		return getInstanceForTranslatedArgs(clasz, initArgTypes, lastException, initArgs);
 	}
 
 	private static String getInstantiationDetails(Class clasz, Object[] initargs) {
 		return clasz.getName() + " with arguments: " + Arrays.asList(initargs);
 	}
 
-	private static <T> T getInstanceForTranslatedArgs(Class<T> clasz, Class<?>[] initArgTypes, Exception lastException, Object[] initArgs) throws InstantiationException {
-		Constructor<?>[] constructors = clasz.getConstructors();
-		for (int i = 0; i < constructors.length; i++) {
-			if (Modifier.isPublic(constructors[i].getModifiers())) {
-				Class<?>[] inputTypes = constructors[i].getParameterTypes();
-				if (inputTypes.length == initArgs.length) {
-					try {
-						Object[] alternativeInitArgs = Converter.convertToMatchingTypes(initArgs, inputTypes);
-						if (alternativeInitArgs != null) {
-							lastUsedConstructors.put(clasz, constructors[i]);
-							return (T)instantiateClass(clasz, constructors[i], alternativeInitArgs);
-						}
-					} catch (IllegalArgumentException e) {
-						//maybe another one fits
-						lastException = new ConfigurationException("cannot instantiate class using " +
-								getInstantiationDetails(clasz, initArgs), e);
-					}
+	/**
+	 * Tries the constructors to which the argument types may be converted, in order,
+	 * until one accepts the converted values.
+	 *
+	 * @param cached true if the constructors were cached by an earlier instantiation
+	 */
+	private static <T> T getInstanceForTranslatedArgs(Class<T> clasz, Class<?>[] initArgTypes,
+			CachedConstructors cachedConstructors, boolean cached, Object[] initArgs) throws InstantiationException {
+		Exception lastException = null;
+		for (int i = 0; i < cachedConstructors.constructors.length; i++) {
+			Constructor<?> constructor = cachedConstructors.constructors[i];
+			try {
+				Object[] alternativeInitArgs = Converter.convertToMatchingTypes(initArgs, constructor.getParameterTypes());
+				return clasz.cast(instantiateClass(clasz, constructor, alternativeInitArgs));
+			} catch (IllegalArgumentException e) {
+				//maybe another one fits
+				if (i == 0 && cached) {
+					CONSTRUCTOR_CACHE_STATISTICS.recordFallback();
 				}
+				lastException = new ConfigurationException("cannot instantiate class using " +
+						getInstantiationDetails(clasz, initArgs), e);
 			}
 		}
 		throw new IgluInstantiationException("can not instantiate class " + clasz.getName() + ": no matching public constructor for init args " + Arrays.asList(initArgTypes), lastException);
 	}
 
-	private static Class<? extends Object>[] getTypesForArgs(Object[] initArgs) {
-		Class<? extends Object>[] result = new Class[initArgs.length];
+	private static Class<?>[] getTypesForArgs(Object[] initArgs) {
+		Class<?>[] result = new Class<?>[initArgs.length];
 		for(int i = 0; i < initArgs.length; i++) {
-			result[i] = initArgs[i].getClass();
+			//null matches any reference type
+			result[i] = initArgs[i] != null ? initArgs[i].getClass() : null;
 		}
 		return result;
 	}
 
+	/**
+	 * Types of the arguments of an instantiation.
+	 * Types in cached keys are referenced weakly, so that a cache that lives as long as
+	 * the instantiated class does not keep classes of other class loaders alive.
+	 * A cached key of which a type is collected is stale and equals no other key.
+	 */
+	private static final class ArgumentTypes {
+
+		//a type or a weak reference to a type; null for null arguments
+		private final Object[] types;
+		private final int hashCode;
+
+		private ArgumentTypes(Class<?>[] types) {
+			this.types = types;
+			this.hashCode = Arrays.hashCode(types);
+		}
+
+		private ArgumentTypes(Object[] types, int hashCode) {
+			this.types = types;
+			this.hashCode = hashCode;
+		}
+
+		/**
+		 * @return a key that references the same types weakly
+		 */
+		private ArgumentTypes toCachedArgumentTypes() {
+			Object[] weakTypes = new Object[types.length];
+			for (int i = 0; i < types.length; i++) {
+				weakTypes[i] = types[i] != null ? new WeakReference<Object>(types[i]) : null;
+			}
+			return new ArgumentTypes(weakTypes, hashCode);
+		}
+
+		private Object getType(int index) {
+			Object type = types[index];
+			return type instanceof WeakReference ? ((WeakReference<?>) type).get() : type;
+		}
+
+		private boolean isStale() {
+			for (int i = 0; i < types.length; i++) {
+				if (types[i] != null && getType(i) == null) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public boolean equals(Object other) {
+			if (other == this) {
+				return true;
+			}
+			if (!(other instanceof ArgumentTypes)) {
+				return false;
+			}
+			ArgumentTypes otherTypes = (ArgumentTypes) other;
+			if (otherTypes.hashCode != hashCode || otherTypes.types.length != types.length) {
+				return false;
+			}
+			for (int i = 0; i < types.length; i++) {
+				if ((types[i] == null) != (otherTypes.types[i] == null)) {
+					return false;
+				}
+				Object type = getType(i);
+				if (types[i] != null && (type == null || type != otherTypes.getType(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+	/**
+	 * Constructors found for certain argument types.
+	 */
+	private static final class CachedConstructors {
+
+		//a single constructor that accepts the arguments as they are,
+		//or the constructors to which the arguments may be converted
+		private final Constructor<?>[] constructors;
+		private final boolean convertArguments;
+		//which arguments may be converted depends on the registered converters
+		private final long converterVersion;
+
+		private CachedConstructors(Constructor<?>[] constructors, boolean convertArguments, long converterVersion) {
+			this.constructors = constructors;
+			this.convertArguments = convertArguments;
+			this.converterVersion = converterVersion;
+		}
+
+		private boolean isCurrent() {
+			return !convertArguments || converterVersion == ConverterRegistry.getVersion();
+		}
+	}
+
 
 	/**
 	 * Instantiates a class by invoking a constructor with certain init parameters.
@@ -278,17 +454,9 @@ public class ReflectionSupport {
 	 * @param clasz
 	 * @param methodName
 	 * @param requiredNrofParameters
-	 * @return a set of methods with the given name and number of parameters
+	 * @return an unmodifiable set of methods with the given name and number of parameters
 	 */
 	public static Set<Method> getMethodsByName(Class<?> clasz, String methodName, int requiredNrofParameters) {
-		Set<Method> retval = new HashSet<Method>();
-		Method[] methods = clasz.getMethods();
-		for (int i = 0; i < methods.length; i++) {
-			Method method = methods[i];
-			if (methodName.equals(method.getName()) && method.getParameterTypes().length == requiredNrofParameters) {
-				retval.add(method);
-			}
-		}
-		return retval;
+		return getClassMetadata(clasz).getMethodsByName(methodName, requiredNrofParameters);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.tracing;
+
+import org.ijsberg.iglu.util.execution.ExecutorSupport;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes spans as complete events in the Chrome trace-event format,
+ * which can be loaded in chrome://tracing or Perfetto.
+ * Events are grouped by trace ID as process ID and by thread.
+ * The file is valid JSON once the exporter is closed.
+ * <p>
+ * Exported spans are queued and written by a background thread, so that the threads
+ * that end spans never wait for the file. Spans that do not fit in the bounded queue are dropped.
+ */
+public class ChromeTraceFileExporter implements SpanExporter, Closeable {
+
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	//queued to make the writing thread complete the file
+	private static final Object END = new Object();
+
+	private final Writer writer;
+	private final long originNanos = System.nanoTime();
+	private final BlockingQueue<Object> queue;
+	private final Thread writingThread;
+	private final LongAdder droppedSpans = new LongAdder();
+
+	private boolean empty = true;
+	private volatile boolean closed;
+	private volatile IOException failure;
+
+	/**
+	 * @param path file to write, which is replaced if it exists
+	 * @throws IOException if the file can not be created
+	 */
+	public ChromeTraceFileExporter(Path path) throws IOException {
+		this(Files.newBufferedWriter(path, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param writer
+	 * @throws IOException if writing fails
+	 */
+	public ChromeTraceFileExporter(Writer writer) throws IOException {
+		this(writer, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param writer
+	 * @param capacity maximum number of spans waiting to be written
+	 * @throws IOException if writing fails
+	 */
+	public ChromeTraceFileExporter(Writer writer, int capacity) throws IOException {
+		this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+		this.writer.write("[");
+		this.queue = new ArrayBlockingQueue<Object>(capacity);
+		this.writingThread = ExecutorSupport.createDaemonThreadFactory("chrome-trace-exporter").newThread(new Runnable() {
+			public void run() {
+				writeQueuedEvents();
+			}
+		});
+		writingThread.start();
+	}
+
+	/**
+	 * Queues the span to be written. Spans exported after the exporter is closed are ignored,
+	 * as are spans that do not fit in the queue, which are counted as dropped.
+	 *
+	 * @param span
+	 */
+	@Override
+	public void export(Span span) {
+		if (closed) {
+			return;
+		}
+		if (!queue.offer(span)) {
+			droppedSpans.increment();
+		}
+	}
+
+	/**
+	 * @return number of spans that were not written because the queue was full
+	 */
+	public long getDroppedSpanCount() {
+		return droppedSpans.sum();
+	}
+
+	private void writeQueuedEvents() {
+		try {
+			while (true) {
+				Object element;
+				try {
+					element = queue.take();
+				} catch (InterruptedException e) {
+					//only closing the exporter ends the writing thread
+					continue;
+				}
+				if (element == END) {
+					break;
+				}
+				if (element instanceof CountDownLatch) {
+					flushWriter();
+					((CountDownLatch) element).countDown();
+				} else if (failure == null) {
+					writeEvent((Span) element);
+				}
+			}
+			if (failure == null) {
+				writer.write("\n]\n");
+			}
+		} catch (IOException e) {
+			failure = e;
+		}
+		try {
+			writer.close();
+		} catch (IOException e) {
+			if (failure == null) {
+				failure = e;
+			}
+		}
+	}
+
+	private void writeEvent(Span span) {
+		StringBuilder event = new StringBuilder(256);
+		event.append(empty ? "\n" : ",\n");
+		event.append("{\"name\":");
+		appendString(event, span.getMethod().getDeclaringClass().getSimpleName() + "." + span.getMethod().getName());
+		event.append(",\"cat\":");
+		appendString(event, span.getComponentId());
+		event.append(",\"ph\":\"X\",\"ts\":").append((span.getStartNanos() - originNanos) / 1000.0);
+		event.append(",\"dur\":").append(span.getDurationNanos() / 1000.0);
+		event.append(",\"pid\":").append(span.getTraceId());
+		event.append(",\"tid\":").append(span.getThreadId());
+		event.append(",\"args\":{\"spanId\":").append(span.getSpanId());
+		if (span.getParent() != null) {
+			event.append(",\"parentSpanId\":").append(span.getParent().getSpanId());
+		}
+		event.append(",\"interface\":");
+		appendString(event, span.getMethod().getDeclaringClass().getName());
+		event.append("}}");
+		try {
+			writer.write(event.toString());
+			empty = false;
+		} catch (IOException e) {
+			//later spans are discarded, the failure is reported by flush and close
+			failure = e;
+		}
+	}
+
+	private void flushWriter() {
+		if (failure == null) {
+			try {
+				writer.flush();
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+	}
+
+	private static void appendString(StringBuilder json, String value) {
+		if (value == null) {
+			json.append("null");
+			return;
+		}
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+
+	/**
+	 * Writes the events queued so far to the file.
+	 *
+	 * @throws IOException if writing failed
+	 */
+	public synchronized void flush() throws IOException {
+		if (!closed) {
+			CountDownLatch flushed = new CountDownLatch(1);
+			try {
+				queue.put(flushed);
+				flushed.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted while flushing trace events");
+			}
+		}
+		throwFailure();
+	}
+
+	/**
+	 * Writes the events queued so far, then completes and closes the file.
+	 *
+	 * @throws IOException if writing failed
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			try {
+				queue.put(END);
+				writingThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted while closing trace file");
+			}
+		}
+		throwFailure();
+	}
+
+	private void throwFailure() throws IOException {
+		IOException failure = this.failure;
+		if (failure != null) {
+			throw new IOException("can not write trace events", failure);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.tracing;
+
+import java.lang.reflect.Method;
+
+/**
+ * Invocation of a component's method through a proxy, as part of a trace.
+ */
+public class Span {
+
+	private final long traceId;
+	private final long spanId;
+	private final Span parent;
+	private final String componentId;
+	private final Method method;
+	private final long threadId;
+	private final long startNanos;
+	private volatile long endNanos;
+
+	Span(long traceId, long spanId, Span parent, String componentId, Method method) {
+		this.traceId = traceId;
+		this.spanId = spanId;
+		this.parent = parent;
+		this.componentId = componentId;
+		this.method = method;
+		this.threadId = Thread.currentThread().getId();
+		this.startNanos = System.nanoTime();
+	}
+
+	void end() {
+		endNanos = System.nanoTime();
+	}
+
+	/**
+	 * @return ID of the span that started the trace
+	 */
+	public long getTraceId() {
+		return traceId;
+	}
+
+	public long getSpanId() {
+		return spanId;
+	}
+
+	/**
+	 * @return the span in which this span started, or null if it started the trace
+	 */
+	public Span getParent() {
+		return parent;
+	}
+
+	/**
+	 * @return ID of the invoked component
+	 */
+	public String getComponentId() {
+		return componentId;
+	}
+
+	/**
+	 * @return the invoked interface method
+	 */
+	public Method getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return ID of the thread that invoked the method
+	 */
+	public long getThreadId() {
+		return threadId;
+	}
+
+	/**
+	 * @return value of System.nanoTime when the invocation started
+	 */
+	public long getStartNanos() {
+		return startNanos;
+	}
+
+	/**
+	 * @return duration in nanoseconds, or -1 if the invocation has not ended
+	 */
+	public long getDurationNanos() {
+		long endNanos = this.endNanos;
+		return endNanos == 0 ? -1 : endNanos - startNanos;
+	}
+
+	public String toString() {
+		return componentId + ": " + method.getDeclaringClass().getSimpleName() + "." + method.getName() +
+				" (trace " + traceId + ", span " + spanId + (parent != null ? ", parent " + parent.spanId : "") + ")";
+	}
+}
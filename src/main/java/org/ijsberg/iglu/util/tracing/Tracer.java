@@ -0,0 +1,152 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.tracing;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Creates spans for invocations of components through proxies.
+ * The span of the invocation in progress is kept per thread, so that spans started
+ * while it is in progress become its children. Runnables wrapped by the tracer
+ * carry the span in progress to the thread that runs them.
+ * Whether a trace is recorded is decided once, when its first span starts,
+ * so a trace is either recorded completely or not at all.
+ * Spans that the exporter fails to export are counted and dropped,
+ * so that tracing never changes the outcome of a traced invocation.
+ */
+public class Tracer {
+
+	/**
+	 * Marks a thread as running a trace that is not sampled.
+	 */
+	private static final Span NOT_SAMPLED = new Span(0, 0, null, null, null);
+
+	private final double samplingRate;
+	private final SpanExporter exporter;
+	private final AtomicLong lastSpanId = new AtomicLong();
+	private final ThreadLocal<Span> currentSpan = new ThreadLocal<Span>();
+	private final LongAdder nrofExportFailures = new LongAdder();
+
+	/**
+	 * @param samplingRate fraction of traces to record, between 0 and 1
+	 * @param exporter receives spans of recorded traces
+	 */
+	public Tracer(double samplingRate, SpanExporter exporter) {
+		if (samplingRate < 0 || samplingRate > 1) {
+			throw new IllegalArgumentException("sampling rate " + samplingRate + " is not between 0 and 1");
+		}
+		if (exporter == null) {
+			throw new NullPointerException("exporter can not be null");
+		}
+		this.samplingRate = samplingRate;
+		this.exporter = exporter;
+	}
+
+	public double getSamplingRate() {
+		return samplingRate;
+	}
+
+	/**
+	 * @param componentId
+	 * @param method
+	 * @return a span to pass to end, or null if the invocation is part of a trace that is not recorded
+	 */
+	public Span start(String componentId, Method method) {
+		Span parent = currentSpan.get();
+		if (parent == NOT_SAMPLED) {
+			return null;
+		}
+		if (parent == null && (samplingRate == 0 || (samplingRate < 1 && ThreadLocalRandom.current().nextDouble() >= samplingRate))) {
+			currentSpan.set(NOT_SAMPLED);
+			return NOT_SAMPLED;
+		}
+		long spanId = lastSpanId.incrementAndGet();
+		Span span = new Span(parent != null ? parent.getTraceId() : spanId, spanId, parent, componentId, method);
+		currentSpan.set(span);
+		return span;
+	}
+
+	/**
+	 * Ends a span, which must be the span in progress in the current thread, and exports it.
+	 *
+	 * @param span span returned by start
+	 */
+	public void end(Span span) {
+		if (span == NOT_SAMPLED) {
+			currentSpan.remove();
+			return;
+		}
+		span.end();
+		if (span.getParent() != null) {
+			currentSpan.set(span.getParent());
+		} else {
+			currentSpan.remove();
+		}
+		try {
+			exporter.export(span);
+		} catch (RuntimeException e) {
+			nrofExportFailures.increment();
+		}
+	}
+
+	/**
+	 * @return number of spans that could not be exported
+	 */
+	public long getNrofExportFailures() {
+		return nrofExportFailures.sum();
+	}
+
+	/**
+	 * @return the span in progress in the current thread, or null
+	 */
+	public Span getCurrentSpan() {
+		Span span = currentSpan.get();
+		return span == NOT_SAMPLED ? null : span;
+	}
+
+	/**
+	 * @param task
+	 * @return a runnable that runs the task as part of the span that is in progress now
+	 */
+	public Runnable wrap(final Runnable task) {
+		final Span span = currentSpan.get();
+		if (span == null) {
+			return task;
+		}
+		return new Runnable() {
+			public void run() {
+				Span previousSpan = currentSpan.get();
+				currentSpan.set(span);
+				try {
+					task.run();
+				} finally {
+					if (previousSpan != null) {
+						currentSpan.set(previousSpan);
+					} else {
+						currentSpan.remove();
+					}
+				}
+			}
+		};
+	}
+}
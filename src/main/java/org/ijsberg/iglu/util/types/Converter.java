@@ -19,8 +19,6 @@
 
 package org.ijsberg.iglu.util.types;
 
-import org.ijsberg.iglu.util.reflection.ReflectionSupport;
-
 import java.util.Arrays;
 
 /**
@@ -48,12 +46,12 @@ public abstract class Converter {
 		}
 
 		if (input instanceof Number) {
-			return new Integer(((Number) input).intValue());
+			return Integer.valueOf(((Number) input).intValue());
 		}
 		if (input instanceof Character) {
-			return new Integer(((Character) input));
+			return Integer.valueOf(((Character) input));
 		}
-		return new Integer(input.toString());
+		return Integer.valueOf(input.toString());
 	}
 
 	/**
@@ -65,12 +63,12 @@ public abstract class Converter {
 			return (Long) input;
 		}
 		if (input instanceof Number) {
-			return new Long(((Number) input).longValue());
+			return Long.valueOf(((Number) input).longValue());
 		}
 		if (input instanceof Character) {
-			return new Long(((Character) input));
+			return Long.valueOf(((Character) input));
 		}
-		return new Long(input.toString());
+		return Long.valueOf(input.toString());
 	}
 
 	/**
@@ -82,12 +80,12 @@ public abstract class Converter {
 			return (Short) input;
 		}
 		if (input instanceof Number) {
-			return new Short(((Number) input).shortValue());
+			return Short.valueOf(((Number) input).shortValue());
 		}
 		if (input instanceof Character) {
 			return (short) ((Character) input).charValue();
 		}
-		return new Short(input.toString());
+		return Short.valueOf(input.toString());
 	}
 
 	/**
@@ -99,12 +97,12 @@ public abstract class Converter {
 			return (Byte) input;
 		}
 		if (input instanceof Number) {
-			return new Byte(((Number) input).byteValue());
+			return Byte.valueOf(((Number) input).byteValue());
 		}
 		if (input instanceof Character) {
 			return (byte) ((Character) input).charValue();
 		}
-		return new Byte(input.toString());
+		return Byte.valueOf(input.toString());
 	}
 
 	/**
@@ -116,9 +114,9 @@ public abstract class Converter {
 			return (Float) input;
 		}
 		if (input instanceof Number) {
-			return new Float(((Number) input).floatValue());
+			return Float.valueOf(((Number) input).floatValue());
 		}
-		return new Float(input.toString());
+		return Float.valueOf(input.toString());
 	}
 
 	/**
@@ -130,9 +128,9 @@ public abstract class Converter {
 			return (Double) input;
 		}
 		if (input instanceof Number) {
-			return new Double(((Number) input).doubleValue());
+			return Double.valueOf(((Number) input).doubleValue());
 		}
-		return new Double(input.toString());
+		return Double.valueOf(input.toString());
 	}
 
 	/**
@@ -159,41 +157,20 @@ public abstract class Converter {
 		}
 		if (input instanceof Number) {
 			//a bit of a long shot
-			return new Character((char) (Integer.parseInt(input.toString())));
+			return Character.valueOf((char) (Integer.parseInt(input.toString())));
 		}
 		String s = input.toString();
 		if (s.length() > 0) {
-			return new Character(s.charAt(0));
+			return Character.valueOf(s.charAt(0));
 		}
-		return new Character('\0');
+		return Character.valueOf('\0');
 	}
 
 	protected static Object convertToPrimitive(Object source, Class<?> type) {
-		if ("byte".equals(type.getName())) {
-			return convertToByte(source);
-		}
-		if ("char".equals(type.getName())) {
-			return convertToCharacter(source);
-		}
-		if ("double".equals(type.getName())) {
-			return convertToDouble(source);
-		}
-		if ("float".equals(type.getName())) {
-			return convertToFloat(source);
-		}
-		if ("int".equals(type.getName())) {
-			return convertToInteger(source);
-		}
-		if ("long".equals(type.getName())) {
-			return convertToLong(source);
-		}
-		if ("short".equals(type.getName())) {
-			return convertToShort(source);
+		if (!type.isPrimitive() || type == void.class) {
+			throw new IllegalArgumentException("can not convert '" + source + "' (" + type.getName() + ") to primitive");
 		}
-		if ("boolean".equals(type.getName())) {
-			return convertToBoolean(source);
-		}
-		throw new IllegalArgumentException("can not convert '" + source + "' (" + type.getName() + ") to primitive");
+		return ConverterRegistry.getConverter(source.getClass(), type).convert(source);
 	}
 
 
@@ -202,29 +179,13 @@ public abstract class Converter {
 	 * @param type   desired type
 	 * @return converted source object
 	 * @throws IllegalArgumentException in case the object can not be converted to the desired type
+	 * @see ConverterRegistry
 	 */
 	public static Object convertToObject(Object source, Class<?> type) {
 		if (source == null) {
 			return null;
 		}
-		if (type.isAssignableFrom(source.getClass())) {
-			return source;
-		}
-		if (type.isPrimitive()) {
-			return convertToPrimitive(source, type);
-		}
-		if ((source instanceof String || source instanceof Number) && (Number.class.isAssignableFrom(type) || Boolean.class.isAssignableFrom(type))) {
-			try {
-				Object retval = ReflectionSupport.instantiateClass(type, new Object[]{source});
-				return retval;
-			} catch (InstantiationException e) {
-				throw new IllegalArgumentException("can not convert '" + source + "' to type " + type + " with message: " + e.getMessage());
-			}
-		}
-		if (type == String.class) {
-			return source.toString();
-		}
-		throw new IllegalArgumentException("can not convert '" + source + "' (" + source.getClass() + ") to type " + type);
+		return ConverterRegistry.getConverter(source.getClass(), type).convert(source);
 	}
 
 	/**
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.types;
+
+import org.ijsberg.iglu.util.reflection.ClassMetadata;
+import org.ijsberg.iglu.util.reflection.ReflectionSupport;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of converters by source and target type.
+ * The converter for a pair of types is resolved once and cached along with the source type.
+ * <p>
+ * A converter is resolved in this order:
+ * <ol>
+ * <li>the source is passed as is if it is assignable to the target type</li>
+ * <li>a converter registered for the source type, one of its superclasses or one of its interfaces</li>
+ * <li>built-in conversion to primitives and their wrappers, parsing strings directly</li>
+ * <li>instantiation of other types of Number from strings and numbers</li>
+ * <li>conversion to String by toString()</li>
+ * </ol>
+ */
+public final class ConverterRegistry {
+
+	private static final TypeConverter<Object, Object> IDENTITY = new TypeConverter<Object, Object>() {
+		public Object convert(Object source) {
+			return source;
+		}
+	};
+
+	private static final TypeConverter<Object, Object> TO_STRING = new TypeConverter<Object, Object>() {
+		public Object convert(Object source) {
+			return source.toString();
+		}
+	};
+
+	private static final Map<Class<?>, TypeConverter<Object, ?>> CONVERTERS_BY_PRIMITIVE_TYPE = createConvertersByPrimitiveType();
+	private static final Map<Class<?>, TypeConverter<String, ?>> PARSERS_BY_PRIMITIVE_TYPE = createParsersByPrimitiveType();
+	private static final Map<Class<?>, Class<?>> PRIMITIVE_TYPES_BY_WRAPPER = createPrimitiveTypesByWrapper();
+
+	//replaced as a whole on registration, so that cached resolutions can be checked against it
+	private static volatile Map<ConversionKey, TypeConverter<?, ?>> registeredConverters = Collections.emptyMap();
+	private static volatile long version;
+
+	private static final ClassValue<ConcurrentMap<Class<?>, ResolvedConverter>> RESOLVED_CONVERTERS_BY_SOURCE_TYPE = new ClassValue<ConcurrentMap<Class<?>, ResolvedConverter>>() {
+		@Override
+		protected ConcurrentMap<Class<?>, ResolvedConverter> computeValue(Class<?> sourceType) {
+			return new ConcurrentHashMap<Class<?>, ResolvedConverter>();
+		}
+	};
+
+	private ConverterRegistry() {
+	}
+
+	/**
+	 * Registers a converter for a pair of types.
+	 * The converter also applies to subtypes of the source type.
+	 *
+	 * @param sourceType
+	 * @param targetType
+	 * @param converter
+	 */
+	public static synchronized <S, T> void register(Class<S> sourceType, Class<T> targetType, TypeConverter<? super S, ? extends T> converter) {
+		Map<ConversionKey, TypeConverter<?, ?>> converters = new HashMap<ConversionKey, TypeConverter<?, ?>>(registeredConverters);
+		converters.put(new ConversionKey(sourceType, targetType), converter);
+		registeredConverters = Collections.unmodifiableMap(converters);
+		version++;
+	}
+
+	/**
+	 * Removes a previously registered converter.
+	 *
+	 * @param sourceType
+	 * @param targetType
+	 */
+	public static synchronized void unregister(Class<?> sourceType, Class<?> targetType) {
+		Map<ConversionKey, TypeConverter<?, ?>> converters = new HashMap<ConversionKey, TypeConverter<?, ?>>(registeredConverters);
+		if (converters.remove(new ConversionKey(sourceType, targetType)) != null) {
+			registeredConverters = Collections.unmodifiableMap(converters);
+			version++;
+		}
+	}
+
+	/**
+	 * Converters obtained earlier may be outdated if the version has changed.
+	 *
+	 * @return number of times the set of registered converters has changed
+	 */
+	public static long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @param sourceType
+	 * @param targetType
+	 * @return a converter for objects of exactly the source type;
+	 * the converter throws IllegalArgumentException if no conversion is possible
+	 */
+	public static TypeConverter<Object, Object> getConverter(Class<?> sourceType, Class<?> targetType) {
+		Map<ConversionKey, TypeConverter<?, ?>> registeredConverters = ConverterRegistry.registeredConverters;
+		ConcurrentMap<Class<?>, ResolvedConverter> resolvedConverters = RESOLVED_CONVERTERS_BY_SOURCE_TYPE.get(sourceType);
+		ResolvedConverter resolvedConverter = resolvedConverters.get(targetType);
+		if (resolvedConverter == null || resolvedConverter.registeredConverters != registeredConverters) {
+			resolvedConverter = new ResolvedConverter(registeredConverters, resolve(sourceType, targetType, registeredConverters));
+			resolvedConverters.put(targetType, resolvedConverter);
+		}
+		return resolvedConverter.converter;
+	}
+
+	/**
+	 * Conversion may still fail for certain values, for instance a string that does not denote a number.
+	 *
+	 * @param sourceType
+	 * @param targetType
+	 * @return false if objects of exactly the source type can never be converted to the target type
+	 */
+	public static boolean canConvert(Class<?> sourceType, Class<?> targetType) {
+		return !(getConverter(sourceType, targetType) instanceof UnsupportedConversion);
+	}
+
+	private static TypeConverter<Object, Object> resolve(Class<?> sourceType, final Class<?> targetType,
+			Map<ConversionKey, TypeConverter<?, ?>> registeredConverters) {
+		if (targetType.isAssignableFrom(sourceType)) {
+			return IDENTITY;
+		}
+		TypeConverter<Object, Object> registeredConverter = getRegisteredConverter(sourceType, targetType, registeredConverters);
+		if (registeredConverter != null) {
+			return registeredConverter;
+		}
+		Class<?> primitiveType = targetType.isPrimitive() ? targetType : PRIMITIVE_TYPES_BY_WRAPPER.get(targetType);
+		if (primitiveType != null && CONVERTERS_BY_PRIMITIVE_TYPE.containsKey(primitiveType)) {
+			if (sourceType == String.class) {
+				return asObjectConverter(PARSERS_BY_PRIMITIVE_TYPE.get(primitiveType));
+			}
+			if (targetType.isPrimitive() || String.class.isAssignableFrom(sourceType) || Number.class.isAssignableFrom(sourceType)) {
+				return asObjectConverter(CONVERTERS_BY_PRIMITIVE_TYPE.get(primitiveType));
+			}
+		}
+		if ((sourceType == String.class || Number.class.isAssignableFrom(sourceType)) && Number.class.isAssignableFrom(targetType)) {
+			return new TypeConverter<Object, Object>() {
+				public Object convert(Object source) {
+					try {
+						return ReflectionSupport.instantiateClass(targetType, new Object[]{source});
+					} catch (InstantiationException e) {
+						throw new IllegalArgumentException("can not convert '" + source + "' to type " + targetType + " with message: " + e.getMessage());
+					}
+				}
+			};
+		}
+		if (targetType == String.class) {
+			return TO_STRING;
+		}
+		return new UnsupportedConversion(targetType);
+	}
+
+	private static TypeConverter<Object, Object> getRegisteredConverter(Class<?> sourceType, Class<?> targetType,
+			Map<ConversionKey, TypeConverter<?, ?>> registeredConverters) {
+		if (registeredConverters.isEmpty()) {
+			return null;
+		}
+		TypeConverter<?, ?> converter = registeredConverters.get(new ConversionKey(sourceType, targetType));
+		if (converter == null) {
+			ClassMetadata metadata = ReflectionSupport.getClassMetadata(sourceType);
+			for (Class<?> superType : metadata.getSuperClasses()) {
+				if ((converter = registeredConverters.get(new ConversionKey(superType, targetType))) != null) {
+					break;
+				}
+			}
+			if (converter == null) {
+				for (Class<?> superType : metadata.getInterfaceClosure()) {
+					if ((converter = registeredConverters.get(new ConversionKey(superType, targetType))) != null) {
+						break;
+					}
+				}
+			}
+		}
+		return converter != null ? asObjectConverter(converter) : null;
+	}
+
+	/**
+	 * Converters are only applied to objects of their source type, which makes this cast safe.
+	 */
+	@SuppressWarnings("unchecked")
+	private static TypeConverter<Object, Object> asObjectConverter(TypeConverter<?, ?> converter) {
+		return (TypeConverter<Object, Object>) converter;
+	}
+
+	private static Map<Class<?>, TypeConverter<Object, ?>> createConvertersByPrimitiveType() {
+		Map<Class<?>, TypeConverter<Object, ?>> converters = new HashMap<Class<?>, TypeConverter<Object, ?>>();
+		converters.put(byte.class, new TypeConverter<Object, Byte>() {
+			public Byte convert(Object source) {
+				return Converter.convertToByte(source);
+			}
+		});
+		converters.put(char.class, new TypeConverter<Object, Character>() {
+			public Character convert(Object source) {
+				return Converter.convertToCharacter(source);
+			}
+		});
+		converters.put(double.class, new TypeConverter<Object, Double>() {
+			public Double convert(Object source) {
+				return Converter.convertToDouble(source);
+			}
+		});
+		converters.put(float.class, new TypeConverter<Object, Float>() {
+			public Float convert(Object source) {
+				return Converter.convertToFloat(source);
+			}
+		});
+		converters.put(int.class, new TypeConverter<Object, Integer>() {
+			public Integer convert(Object source) {
+				return Converter.convertToInteger(source);
+			}
+		});
+		converters.put(long.class, new TypeConverter<Object, Long>() {
+			public Long convert(Object source) {
+				return Converter.convertToLong(source);
+			}
+		});
+		converters.put(short.class, new TypeConverter<Object, Short>() {
+			public Short convert(Object source) {
+				return Converter.convertToShort(source);
+			}
+		});
+		converters.put(boolean.class, new TypeConverter<Object, Boolean>() {
+			public Boolean convert(Object source) {
+				return Converter.convertToBoolean(source);
+			}
+		});
+		return Collections.unmodifiableMap(converters);
+	}
+
+	/**
+	 * Parsers that convert strings without intermediate objects, boxing through the caches of valueOf.
+	 */
+	private static Map<Class<?>, TypeConverter<String, ?>> createParsersByPrimitiveType() {
+		Map<Class<?>, TypeConverter<String, ?>> parsers = new HashMap<Class<?>, TypeConverter<String, ?>>();
+		parsers.put(byte.class, new TypeConverter<String, Byte>() {
+			public Byte convert(String source) {
+				return Byte.valueOf(Byte.parseByte(source));
+			}
+		});
+		parsers.put(char.class, new TypeConverter<String, Character>() {
+			public Character convert(String source) {
+				return Character.valueOf(source.length() > 0 ? source.charAt(0) : '\0');
+			}
+		});
+		parsers.put(double.class, new TypeConverter<String, Double>() {
+			public Double convert(String source) {
+				return Double.valueOf(Double.parseDouble(source));
+			}
+		});
+		parsers.put(float.class, new TypeConverter<String, Float>() {
+			public Float convert(String source) {
+				return Float.valueOf(Float.parseFloat(source));
+			}
+		});
+		parsers.put(int.class, new TypeConverter<String, Integer>() {
+			public Integer convert(String source) {
+				return Integer.valueOf(Integer.parseInt(source));
+			}
+		});
+		parsers.put(long.class, new TypeConverter<String, Long>() {
+			public Long convert(String source) {
+				return Long.valueOf(Long.parseLong(source));
+			}
+		});
+		parsers.put(short.class, new TypeConverter<String, Short>() {
+			public Short convert(String source) {
+				return Short.valueOf(Short.parseShort(source));
+			}
+		});
+		parsers.put(boolean.class, new TypeConverter<String, Boolean>() {
+			public Boolean convert(String source) {
+				return Boolean.valueOf(Boolean.parseBoolean(source));
+			}
+		});
+		return Collections.unmodifiableMap(parsers);
+	}
+
+	private static Map<Class<?>, Class<?>> createPrimitiveTypesByWrapper() {
+		Map<Class<?>, Class<?>> primitiveTypes = new HashMap<Class<?>, Class<?>>();
+		primitiveTypes.put(Byte.class, byte.class);
+		primitiveTypes.put(Character.class, char.class);
+		primitiveTypes.put(Double.class, double.class);
+		primitiveTypes.put(Float.class, float.class);
+		primitiveTypes.put(Integer.class, int.class);
+		primitiveTypes.put(Long.class, long.class);
+		primitiveTypes.put(Short.class, short.class);
+		primitiveTypes.put(Boolean.class, boolean.class);
+		return Collections.unmodifiableMap(primitiveTypes);
+	}
+
+	/**
+	 * Converter resolved against a particular set of registered converters.
+	 */
+	private static class ResolvedConverter {
+
+		private final Map<ConversionKey, TypeConverter<?, ?>> registeredConverters;
+		private final TypeConverter<Object, Object> converter;
+
+		ResolvedConverter(Map<ConversionKey, TypeConverter<?, ?>> registeredConverters, TypeConverter<Object, Object> converter) {
+			this.registeredConverters = registeredConverters;
+			this.converter = converter;
+		}
+	}
+
+	/**
+	 * Converter for pairs of types between which no conversion exists.
+	 */
+	private static class UnsupportedConversion implements TypeConverter<Object, Object> {
+
+		private final Class<?> targetType;
+
+		UnsupportedConversion(Class<?> targetType) {
+			this.targetType = targetType;
+		}
+
+		public Object convert(Object source) {
+			throw new IllegalArgumentException("can not convert '" + source + "' (" + source.getClass() + ") to type " + targetType);
+		}
+	}
+
+	private static class ConversionKey {
+
+		private final Class<?> sourceType;
+		private final Class<?> targetType;
+
+		ConversionKey(Class<?> sourceType, Class<?> targetType) {
+			this.sourceType = sourceType;
+			this.targetType = targetType;
+		}
+
+		public boolean equals(Object other) {
+			return other instanceof ConversionKey && sourceType == ((ConversionKey) other).sourceType &&
+					targetType == ((ConversionKey) other).targetType;
+		}
+
+		public int hashCode() {
+			return 31 * sourceType.hashCode() + targetType.hashCode();
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2011-2013 Jeroen Meetsma - IJsberg
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import org.ijsberg.iglu.configuration.ConfigurationException;
+import org.ijsberg.iglu.sample.configuration.Apple;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class ClusterConfigurationLoaderTest {
+
+	private static final int NROF_COMPONENTS = 50;
+
+	private StandardCluster cluster;
+	private Apple[] apples;
+
+	@Before
+	public void setUp() throws Exception {
+		cluster = new StandardCluster();
+		apples = new Apple[NROF_COMPONENTS];
+		for (int i = 0; i < NROF_COMPONENTS; i++) {
+			apples[i] = new Apple();
+			cluster.connect("apple" + i, new StandardComponent(apples[i]));
+		}
+	}
+
+	@Test
+	public void testRead() throws Exception {
+		cluster.connect("apple.core", new StandardComponent(new Apple()));
+		ClusterConfigurationLoader loader = new ClusterConfigurationLoader(cluster);
+		Map<String, Properties> propertiesByComponentId = loader.read(new StringReader(
+				"apple1.message=hello\n" +
+				"apple1.someInt=1\n" +
+				"apple2.message=hello.world\n" +
+				"apple.core.someInt=3\n" +
+				"pear.message=skipped\n" +
+				"message=skipped\n"));
+
+		assertEquals(3, propertiesByComponentId.size());
+		assertEquals(2, propertiesByComponentId.get("apple1").size());
+		assertEquals("hello.world", propertiesByComponentId.get("apple2").getProperty("message"));
+		assertEquals("3", propertiesByComponentId.get("apple.core").getProperty("someInt"));
+		assertEquals(0, apples[1].getSomeInt());
+	}
+
+	@Test
+	public void testConfigure() throws Exception {
+		StringBuilder config = new StringBuilder();
+		for (int i = 0; i < NROF_COMPONENTS; i++) {
+			config.append("apple").append(i).append(".message=hello ").append(i).append('\n');
+			config.append("apple").append(i).append(".someInt=").append(i).append('\n');
+		}
+		Path file = Files.createTempFile("cluster", ".properties");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Files.write(file, config.toString().getBytes("ISO-8859-1"));
+			Map<String, Properties> propertiesByComponentId = new ClusterConfigurationLoader(cluster, executor).configure(file);
+			assertEquals(NROF_COMPONENTS, propertiesByComponentId.size());
+		} finally {
+			executor.shutdown();
+			Files.delete(file);
+		}
+		for (int i = 0; i < NROF_COMPONENTS; i++) {
+			assertEquals("hello " + i, apples[i].getMessage());
+			assertEquals(i, apples[i].getSomeInt());
+			assertEquals("" + i, cluster.getInternalComponents().get("apple" + i).getProperties().getProperty("someInt"));
+		}
+	}
+
+	@Test
+	public void testConfigureComponentWithSeveralIds() throws Exception {
+		cluster.connect("fruit", cluster.getInternalComponents().get("apple1"));
+		ClusterConfigurationLoader loader = new ClusterConfigurationLoader(cluster);
+		loader.configure(loader.read(new StringReader(
+				"apple1.message=hello\n" +
+				"fruit.someInt=27\n")));
+		//properties given under either ID are set at once
+		assertEquals("hello", apples[1].getMessage());
+		assertEquals(27, apples[1].getSomeInt());
+		Properties properties = cluster.getInternalComponents().get("fruit").getProperties();
+		assertEquals("hello", properties.getProperty("message"));
+		assertEquals("27", properties.getProperty("someInt"));
+
+		try {
+			loader.configure(loader.read(new StringReader(
+					"apple1.someInt=1\n" +
+					"fruit.someInt=2\n")));
+			fail("ConfigurationException expected");
+		} catch (ConfigurationException expected) {
+		}
+		assertEquals(27, apples[1].getSomeInt());
+	}
+
+	@Test
+	public void testConfigureFailure() throws Exception {
+		ClusterConfigurationLoader loader = new ClusterConfigurationLoader(cluster);
+		Map<String, Properties> propertiesByComponentId = loader.read(new StringReader(
+				"apple1.someInt=1\n" +
+				"apple2.someInt=two\n" +
+				"apple3.someInt=three\n"));
+		try {
+			loader.configure(propertiesByComponentId);
+			fail("ConfigurationException expected");
+		} catch (ConfigurationException expected) {
+			assertEquals(1, expected.getSuppressed().length);
+		}
+		assertEquals(1, apples[1].getSomeInt());
+	}
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2011-2013 Jeroen Meetsma - IJsberg
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import org.ijsberg.iglu.configuration.ConfigurationException;
+import org.ijsberg.iglu.sample.configuration.*;
+import org.ijsberg.iglu.util.reflection.DelegatingProxy;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class LazyComponentTest {
+
+	@Test
+	public void testInstantiationOnFirstInvocation() throws Exception {
+		final AtomicInteger nrofInstantiations = new AtomicInteger();
+		final AtomicReference<Apple> appleReference = new AtomicReference<Apple>();
+		LazyComponent appleComponent = new LazyComponent(Apple.class, new Supplier<Apple>() {
+			public Apple get() {
+				nrofInstantiations.incrementAndGet();
+				appleReference.set(new Apple());
+				return appleReference.get();
+			}
+		});
+		StandardCluster cluster = new StandardCluster();
+		Banana banana = new Banana(27);
+		cluster.connect("banana", new StandardComponent(banana));
+		cluster.connect("apple", appleComponent, AppleInterface.class);
+
+		Properties properties = new Properties();
+		properties.setProperty("message", "hello");
+		appleComponent.setProperties(properties);
+		appleComponent.setInvocationIntercepter(AppleInterface.class, new GetMessageInterceptor("Bingo"));
+
+		assertFalse(appleComponent.isInstantiated());
+		assertEquals(0, nrofInstantiations.get());
+		assertSame(properties, appleComponent.getProperties());
+		assertTrue(appleComponent.getReferenceKeys().contains("Banana"));
+		assertTrue(appleComponent.implementsInterface(AppleInterface.class));
+
+		//banana holds a proxy of the lazy component
+		assertEquals("helloBingo", banana.getMessageFromApple());
+		assertTrue(appleComponent.isInstantiated());
+		assertEquals(1, nrofInstantiations.get());
+		assertNotNull(appleReference.get().getBanana());
+		assertEquals(27, appleReference.get().getIntFromBanana());
+
+		AppleInterface appleProxy = (AppleInterface) cluster.getFacade().getProxy("apple", AppleInterface.class);
+		assertEquals("helloBingo", appleProxy.getMessage());
+		assertEquals("helloBingo", banana.getMessageFromApple());
+		assertEquals(1, nrofInstantiations.get());
+	}
+
+	@Test
+	public void testInstantiationByClassName() throws Exception {
+		LazyComponent appleComponent = new LazyComponent(Apple.class.getName());
+		Properties properties = new Properties();
+		properties.setProperty("someInt", "5");
+		appleComponent.setProperties(properties);
+		assertTrue(appleComponent.updateProperties((Properties) properties.clone()).isEmpty());
+
+		AppleInterface appleProxy = appleComponent.getProxy(AppleInterface.class);
+		assertSame(appleProxy, appleComponent.getProxy(AppleInterface.class));
+		assertFalse(appleComponent.isInstantiated());
+		assertEquals(5, appleProxy.getSomeInt());
+		assertTrue(appleComponent.isInstantiated());
+
+		assertEquals(5, appleComponent.invoke("getSomeInt"));
+
+		try {
+			new LazyComponent("org.ijsberg.iglu.sample.configuration.Pear");
+			fail("ConfigurationException expected");
+		} catch (ConfigurationException expected) {
+		}
+	}
+
+	@Test
+	public void testAsyncInvocation() throws Exception {
+		LazyComponent bananaComponent = new LazyComponent(Banana.class, 27);
+		assertEquals(27, bananaComponent.invokeAsync("returnAnInt").get());
+		assertTrue(bananaComponent.isInstantiated());
+
+		LazyComponent appleComponent = new LazyComponent(Apple.class);
+		AppleAsyncInterface asyncProxy = appleComponent.createAsyncProxy(AppleAsyncInterface.class);
+		assertFalse(appleComponent.isInstantiated());
+		assertEquals("hi", asyncProxy.returnInput("hi").get());
+		assertTrue(appleComponent.isInstantiated());
+	}
+
+	@Test
+	public void testFailingInstantiation() throws Exception {
+		LazyComponent bananaComponent = new LazyComponent(Banana.class, "not a number");
+		BananaInterface bananaProxy = bananaComponent.getProxy(BananaInterface.class);
+		try {
+			bananaProxy.returnAnInt();
+			fail("ConfigurationException expected");
+		} catch (ConfigurationException expected) {
+		}
+		assertFalse(bananaComponent.isInstantiated());
+	}
+
+	@Test
+	public void testProxiesRetargetedOnInstantiation() throws Exception {
+		final AtomicInteger nrofDispatches = new AtomicInteger();
+		LazyComponent appleComponent = new LazyComponent(Apple.class) {
+			public Object dispatch(Class<?> interfaceClass, Method method, Object[] parameters) throws Throwable {
+				nrofDispatches.incrementAndGet();
+				return super.dispatch(interfaceClass, method, parameters);
+			}
+		};
+		AppleInterface appleProxy = appleComponent.getProxy(AppleInterface.class);
+		AppleInterface directProxy = appleComponent.createDirectProxy(AppleInterface.class);
+		assertTrue(appleProxy instanceof DelegatingProxy);
+		int hashCode = appleProxy.hashCode();
+		assertTrue(appleProxy.equals(appleProxy));
+		assertFalse(appleProxy.equals(directProxy));
+		assertFalse(appleComponent.isInstantiated());
+
+		assertEquals("hi", appleProxy.returnInput("hi"));
+		assertTrue(appleComponent.isInstantiated());
+		assertEquals(1, nrofDispatches.get());
+
+		//invocations no longer pass the lazy component
+		assertEquals("hi", appleProxy.returnInput("hi"));
+		assertEquals("hi", directProxy.returnInput("hi"));
+		assertEquals(1, nrofDispatches.get());
+		assertEquals(hashCode, appleProxy.hashCode());
+		assertTrue(appleProxy.equals(appleProxy));
+
+		appleComponent.setInvocationIntercepter(AppleInterface.class, new GetMessageInterceptor("Bingo"));
+		assertEquals("nullBingo", appleProxy.getMessage());
+		assertEquals(1, nrofDispatches.get());
+	}
+
+	@Test
+	public void testPendingOperationsCollapsed() throws Exception {
+		StandardCluster cluster = new StandardCluster();
+		cluster.connect("banana", new StandardComponent(new Banana(27)), BananaInterface.class);
+		final Apple apple = new Apple();
+		LazyComponent appleComponent = new LazyComponent(Apple.class, new Supplier<Apple>() {
+			public Apple get() {
+				return apple;
+			}
+		});
+
+		Properties properties = null;
+		for (int i = 0; i < 100; i++) {
+			properties = new Properties();
+			properties.setProperty("message", "message " + i);
+			if (i == 0) {
+				properties.setProperty("someInt", "5");
+			}
+			appleComponent.updateProperties(properties);
+			appleComponent.setReference(cluster.getFacade(), "banana", BananaInterface.class);
+			appleComponent.setMetricsEnabled(i % 2 == 0);
+			appleComponent.setInvocationIntercepter(AppleInterface.class, new GetMessageInterceptor(" " + i));
+		}
+		assertEquals(4, appleComponent.getNrofPendingOperations());
+		appleComponent.setReference(cluster.getFacade(), "pear", BananaInterface.class);
+		assertEquals(5, appleComponent.getNrofPendingOperations());
+		appleComponent.removeDependency("pear");
+		assertEquals(4, appleComponent.getNrofPendingOperations());
+
+		AppleInterface appleProxy = appleComponent.getProxy(AppleInterface.class);
+		assertEquals("message 99 99", appleProxy.getMessage());
+		assertEquals(0, appleComponent.getNrofPendingOperations());
+		//removed from the properties, but injected before
+		assertEquals(5, appleProxy.getSomeInt());
+		assertSame(properties, appleComponent.getProperties());
+		assertEquals(27, apple.getIntFromBanana());
+		assertFalse(appleComponent.isMetricsEnabled());
+	}
+
+	@Test
+	public void testConfigurationDuringInstantiation() throws Exception {
+		final CountDownLatch supplying = new CountDownLatch(1);
+		final CountDownLatch configured = new CountDownLatch(1);
+		final LazyComponent appleComponent = new LazyComponent(Apple.class, new Supplier<Apple>() {
+			public Apple get() {
+				supplying.countDown();
+				await(configured);
+				return new Apple();
+			}
+		});
+		Thread instantiation = new Thread() {
+			public void run() {
+				appleComponent.instantiate();
+			}
+		};
+		instantiation.start();
+		assertTrue(supplying.await(5, TimeUnit.SECONDS));
+
+		//not blocked by the instantiation in progress
+		Properties properties = new Properties();
+		properties.setProperty("message", "hello");
+		appleComponent.setProperties(properties);
+		appleComponent.start();
+		assertFalse(appleComponent.isInstantiated());
+		configured.countDown();
+
+		assertEquals("hello", appleComponent.getProxy(AppleInterface.class).getMessage());
+		assertTrue(appleComponent.isStarted());
+		instantiation.join(5000);
+		assertFalse(instantiation.isAlive());
+	}
+
+	@Test
+	public void testInstantiationCycleAcrossThreads() throws Exception {
+		final CountDownLatch supplying = new CountDownLatch(2);
+		final AtomicReference<LazyComponent> bananaComponent = new AtomicReference<LazyComponent>();
+		final LazyComponent appleComponent = new LazyComponent(Apple.class, new Supplier<Apple>() {
+			public Apple get() {
+				supplying.countDown();
+				await(supplying);
+				bananaComponent.get().getProxy(BananaInterface.class).returnAnInt();
+				return new Apple();
+			}
+		});
+		bananaComponent.set(new LazyComponent(Banana.class, new Supplier<Banana>() {
+			public Banana get() {
+				supplying.countDown();
+				await(supplying);
+				appleComponent.getProxy(AppleInterface.class).getMessage();
+				return new Banana(27);
+			}
+		}));
+
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread appleInstantiation = instantiateInBackground(appleComponent, failures);
+		Thread bananaInstantiation = instantiateInBackground(bananaComponent.get(), failures);
+		appleInstantiation.join(5000);
+		bananaInstantiation.join(5000);
+		assertFalse(appleInstantiation.isAlive());
+		assertFalse(bananaInstantiation.isAlive());
+		assertEquals(2, failures.size());
+		for (Throwable failure : failures) {
+			assertTrue(failure instanceof ConfigurationException);
+		}
+
+		assertFalse(appleComponent.isInstantiated());
+	}
+
+	@Test
+	public void testConfigurationKeptAfterFailedInstantiation() throws Exception {
+		final AtomicInteger nrofAttempts = new AtomicInteger();
+		LazyComponent appleComponent = new LazyComponent(Apple.class, new Supplier<Apple>() {
+			public Apple get() {
+				if (nrofAttempts.incrementAndGet() == 1) {
+					throw new ConfigurationException("not yet");
+				}
+				return new Apple();
+			}
+		});
+		Properties properties = new Properties();
+		properties.setProperty("message", "hello");
+		appleComponent.setProperties(properties);
+		appleComponent.setInvocationIntercepter(AppleInterface.class, new GetMessageInterceptor("Bingo"));
+		try {
+			appleComponent.instantiate();
+			fail("ConfigurationException expected");
+		} catch (ConfigurationException expected) {
+		}
+		assertFalse(appleComponent.isInstantiated());
+		assertEquals(2, appleComponent.getNrofPendingOperations());
+
+		assertEquals("helloBingo", appleComponent.getProxy(AppleInterface.class).getMessage());
+		assertEquals(2, nrofAttempts.get());
+	}
+
+	private static Thread instantiateInBackground(final LazyComponent component, final List<Throwable> failures) {
+		Thread thread = new Thread() {
+			public void run() {
+				try {
+					component.instantiate();
+				} catch (Throwable t) {
+					failures.add(t);
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			if (!latch.await(5, TimeUnit.SECONDS)) {
+				throw new IllegalStateException("timed out");
+			}
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011-2013 Jeroen Meetsma - IJsberg
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class PersistentMapTest {
+
+	@Test
+	public void testPlusAndMinus() throws Exception {
+		PersistentMap<Integer, String> map = PersistentMap.empty();
+		Map<Integer, String> expected = new HashMap<Integer, String>();
+		for (int i = 0; i < 2000; i++) {
+			//spread keys over all levels of the trie
+			int key = i * 0x9E3779B9;
+			map = map.plus(key, "value " + i);
+			expected.put(key, "value " + i);
+		}
+		PersistentMap<Integer, String> fullMap = map;
+		assertEquals(expected, fullMap);
+
+		for (int i = 0; i < 2000; i += 2) {
+			int key = i * 0x9E3779B9;
+			map = map.minus(key);
+			expected.remove(key);
+		}
+		assertEquals(expected, map);
+		assertEquals(1000, map.size());
+		assertEquals(2000, fullMap.size());
+		assertEquals("value 0", fullMap.get(0));
+		assertNull(map.get(0));
+		assertFalse(map.containsKey(0));
+	}
+
+	@Test
+	public void testUnchangedMapIsReturned() throws Exception {
+		PersistentMap<String, String> map = PersistentMap.<String, String>empty().plus("key", "value");
+		assertSame(map, map.plus("key", "value"));
+		assertSame(map, map.minus("other key"));
+		assertNotSame(map, map.plus("key", "other value"));
+		assertEquals("other value", map.plus("key", "other value").get("key"));
+		assertEquals("value", map.get("key"));
+	}
+
+	@Test
+	public void testCollidingKeys() throws Exception {
+		//"Aa" and "BB" have equal hash codes
+		PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("Aa", 1).plus("BB", 2).plus("C", 3);
+		assertEquals(3, map.size());
+		assertEquals(Integer.valueOf(1), map.get("Aa"));
+		assertEquals(Integer.valueOf(2), map.get("BB"));
+
+		map = map.minus("Aa");
+		assertEquals(2, map.size());
+		assertNull(map.get("Aa"));
+		assertEquals(Integer.valueOf(2), map.get("BB"));
+
+		map = map.minus("BB").minus("C");
+		assertTrue(map.isEmpty());
+		assertFalse(map.entrySet().iterator().hasNext());
+	}
+
+	@Test
+	public void testIdentity() throws Exception {
+		String key = "key";
+		String equalKey = new String(key);
+		PersistentMap<String, Integer> map = PersistentMap.<String, Integer>emptyByIdentity().plus(key, 1).plus(equalKey, 2);
+		assertEquals(2, map.size());
+		assertEquals(Integer.valueOf(1), map.get(key));
+		assertEquals(Integer.valueOf(2), map.get(equalKey));
+		assertNull(map.get(new String(key)));
+
+		PersistentSet<String> set = PersistentSet.<String>emptyByIdentity().plus(key);
+		assertTrue(set.contains(key));
+		assertFalse(set.contains(equalKey));
+		assertSame(set, set.plus(key));
+		assertTrue(set.minus(key).isEmpty());
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011-2013 Jeroen Meetsma - IJsberg
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import org.ijsberg.iglu.sample.configuration.Apple;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class PropertiesFileWatcherTest {
+
+	private Path directory;
+	private Path file;
+	private PropertiesFileWatcher watcher;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("iglu");
+		file = directory.resolve("apple.properties");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (watcher != null) {
+			watcher.stop();
+		}
+		Files.deleteIfExists(file);
+		Files.deleteIfExists(directory.resolve("apple.properties.tmp"));
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testWatchComponent() throws Exception {
+		Apple apple = new Apple();
+		StandardComponent appleComponent = new StandardComponent(apple);
+		writeProperties(file, "message", "hello", "someInt", "5");
+
+		watcher = new PropertiesFileWatcher(file, 50, appleComponent);
+		watcher.start();
+		assertTrue(watcher.isWatching());
+		assertEquals("hello", apple.getMessage());
+		assertEquals(5, apple.getSomeInt());
+
+		apple.setMessage("changed directly");
+		writeProperties(file, "message", "hello", "someInt", "6");
+		//atomic replacement, as done by many editors
+		Path tmpFile = directory.resolve("apple.properties.tmp");
+		writeProperties(tmpFile, "message", "hello", "someInt", "7");
+		Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		waitFor(apple, 7);
+		//unchanged property not injected again
+		assertEquals("changed directly", apple.getMessage());
+
+		watcher.stop();
+		assertFalse(watcher.isWatching());
+		writeProperties(file, "message", "hello", "someInt", "8");
+		Thread.sleep(300);
+		assertEquals(7, apple.getSomeInt());
+	}
+
+	@Test
+	public void testWatchCluster() throws Exception {
+		Apple apple = new Apple();
+		StandardCluster cluster = new StandardCluster();
+		cluster.connect("apple", new StandardComponent(apple));
+		writeProperties(file, "apple.someInt", "5");
+
+		watcher = new PropertiesFileWatcher(file, 50, cluster);
+		watcher.start();
+		assertEquals(5, apple.getSomeInt());
+
+		writeProperties(file, "apple.someInt", "6");
+		waitFor(apple, 6);
+	}
+
+	private static void waitFor(Apple apple, int someInt) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (apple.getSomeInt() != someInt && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(someInt, apple.getSomeInt());
+	}
+
+	private static void writeProperties(Path file, String... keysAndValues) throws Exception {
+		Properties properties = new Properties();
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			properties.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+		}
+		OutputStream output = Files.newOutputStream(file);
+		try {
+			properties.store(output, null);
+		} finally {
+			output.close();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2011-2013 Jeroen Meetsma - IJsberg
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.configuration.module;
+
+import org.ijsberg.iglu.configuration.ConfigurationException;
+import org.ijsberg.iglu.sample.configuration.Apple;
+import org.ijsberg.iglu.util.types.ConverterRegistry;
+import org.ijsberg.iglu.util.types.TypeConverter;
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class PropertyInjectionPlanTest {
+
+	@Test
+	public void testGetSetter() throws Exception {
+		PropertyInjectionPlan plan = PropertyInjectionPlan.getPlan(Apple.class);
+		assertSame(plan, PropertyInjectionPlan.getPlan(Apple.class));
+
+		PropertyInjectionPlan.PropertySetter setter = plan.getSetter("someInt");
+		assertNotNull(setter);
+		assertSame(setter, plan.getSetter("someInt"));
+		assertNotNull(plan.getSetter("SomeInt"));
+		assertNull(plan.getSetter("foo"));
+
+		Apple apple = new Apple();
+		setter.inject(apple, "27");
+		assertEquals(27, apple.getSomeInt());
+		setter.inject(apple, 28L);
+		assertEquals(28, apple.getSomeInt());
+
+		ConfigurationException ambiguity = null;
+		for (int i = 0; i < 2; i++) {
+			try {
+				plan.getSetter("banana");
+				fail("ConfigurationException expected");
+			} catch (ConfigurationException expected) {
+				//not shared, since a thrown exception gets the stack trace of the thrower
+				assertNotSame(ambiguity, expected);
+				ambiguity = expected;
+			}
+		}
+	}
+
+	@Test
+	public void testErrorPassedUnchanged() throws Exception {
+		PropertyInjectionPlan.PropertySetter setter = PropertyInjectionPlan.getPlan(FailingSetters.class).getSetter("error");
+		try {
+			setter.inject(new FailingSetters(), "value");
+			fail("OutOfMemoryError expected");
+		} catch (OutOfMemoryError expected) {
+			assertEquals("thrown by setter", expected.getMessage());
+		}
+		setter = PropertyInjectionPlan.getPlan(FailingSetters.class).getSetter("runtimeException");
+		try {
+			setter.inject(new FailingSetters(), "value");
+			fail("IllegalStateException expected");
+		} catch (IllegalStateException expected) {
+		}
+	}
+
+	public static class FailingSetters {
+
+		public void setError(String value) {
+			throw new OutOfMemoryError("thrown by setter");
+		}
+
+		public void setRuntimeException(String value) {
+			throw new IllegalStateException("thrown by setter");
+		}
+	}
+
+	@Test
+	public void testPlanReplacedAfterConverterRegistration() throws Exception {
+		PropertyInjectionPlan plan = PropertyInjectionPlan.getPlan(Apple.class);
+		ConverterRegistry.register(StringBuilder.class, String.class, new TypeConverter<StringBuilder, String>() {
+			public String convert(StringBuilder source) {
+				return source.reverse().toString();
+			}
+		});
+		try {
+			assertNotSame(plan, PropertyInjectionPlan.getPlan(Apple.class));
+
+			Apple apple = new Apple();
+			PropertyInjectionPlan.getPlan(Apple.class).getSetter("message").inject(apple, new StringBuilder("olleh"));
+			assertEquals("hello", apple.getMessage());
+		} finally {
+			ConverterRegistry.unregister(StringBuilder.class, String.class);
+		}
+	}
+
+	@Test
+	public void testInjectionByManyComponents() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("message", "hello");
+		properties.setProperty("someInt", "5");
+		properties.setProperty("foo", "bar");
+		for (int i = 0; i < 100; i++) {
+			Apple apple = new Apple();
+			StandardComponent component = new StandardComponent(apple);
+			component.setProperties(properties);
+			assertEquals("hello", apple.getMessage());
+			assertEquals(5, apple.getSomeInt());
+			assertEquals(2, component.getSetterInjectedProperties().size());
+		}
+	}
+}
@@ -23,10 +23,39 @@ import org.ijsberg.iglu.configuration.Cluster;
 import org.ijsberg.iglu.configuration.Component;
 import org.ijsberg.iglu.configuration.ConfigurationException;
 import org.ijsberg.iglu.configuration.Facade;
+import org.ijsberg.iglu.configuration.jfr.InterceptionEvent;
+import org.ijsberg.iglu.configuration.jfr.InvocationEvent;
+import org.ijsberg.iglu.configuration.jfr.PropertiesEvent;
+import org.ijsberg.iglu.configuration.jfr.TopologyEvent;
 import org.ijsberg.iglu.sample.configuration.*;
+import org.ijsberg.iglu.util.metrics.InvocationMetrics;
+import org.ijsberg.iglu.util.tracing.Span;
+import org.ijsberg.iglu.util.tracing.SpanExporter;
+import org.ijsberg.iglu.util.tracing.Tracer;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.*;
 
 public class StandardClusterTest {
@@ -631,4 +660,639 @@ public class StandardClusterTest {
 		} catch (ConfigurationException expected) {
 		}
 	}
+
+	@Test
+	public void testDirectWiring() throws Exception {
+		fruit.setDirectWiring(true);
+		fruit.connect("banana", bananaComponent);
+		fruit.connect("apple", appleComponent);
+
+		BananaInterface banana = appleCore.getBanana();
+		assertFalse(Proxy.isProxyClass(banana.getClass()));
+		assertEquals(27, appleCore.getIntFromBanana());
+
+		//falls back to regular invocation handling
+		bananaComponent.setInvocationIntercepter(BananaInterface.class, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] parameters) throws Throwable {
+				return 28;
+			}
+		});
+		assertSame(banana, appleCore.getBanana());
+		assertEquals(28, appleCore.getIntFromBanana());
+
+		bananaComponent.setInvocationIntercepter(BananaInterface.class, null);
+		assertEquals(27, appleCore.getIntFromBanana());
+	}
+
+	@Test
+	public void testDirectWiringDisconnect() throws Exception {
+		fruit.setDirectWiring(true);
+		fruit.connect("banana", bananaComponent, BananaInterface.class);
+		fruit.getFacade().connect(appleComponent);
+
+		assertFalse(Proxy.isProxyClass(appleCore.getBanana().getClass()));
+		assertEquals(27, appleCore.getIntFromBanana());
+
+		fruit.disconnect(bananaComponent);
+		//still invokes banana, but by regular invocation handling
+		assertEquals(27, appleCore.getIntFromBanana());
+	}
+
+	@Test
+	public void testFacadeAndProxiesReused() throws Exception {
+		assertSame(fruit.getFacade(), fruit.getFacade());
+
+		fruit.connect("elstar", elstarComponent, AppleInterface.class);
+		Object proxy = fruit.getFacade().getProxy("elstar", AppleInterface.class);
+		assertSame(proxy, fruit.getFacade().getProxy("elstar", AppleInterface.class));
+		assertSame(proxy, fruit.getProxy("elstar", AppleInterface.class));
+
+		fruit.disconnect(elstarComponent);
+		Component otherElstarComponent = new StandardComponent(new Elstar());
+		fruit.connect("elstar", otherElstarComponent, AppleInterface.class);
+		assertNotSame(proxy, fruit.getFacade().getProxy("elstar", AppleInterface.class));
+	}
+
+	@Test
+	public void testTransaction() throws Exception {
+		StandardCluster.Transaction transaction = fruit.begin()
+				.connect("apple", appleComponent)
+				.connect("banana", bananaComponent, BananaInterface.class)
+				.connect(elstarComponent);
+
+		//not visible before commit
+		assertEquals(0, fruit.getInternalComponents().size());
+		assertNull(appleCore.getBanana());
+
+		transaction.commit();
+		assertEquals(2, fruit.getInternalComponents().size());
+		assertEquals(1, fruit.getExternalComponents().size());
+		assertEquals(27, appleCore.getIntFromBanana());
+		//external component
+		assertEquals(27, elstar.getIntFromBanana());
+		//BananaInterface and Serializable
+		assertEquals(2, appleComponent.getInjectedInterfaces("banana").size());
+
+		fruit.begin().disconnect(bananaComponent).disconnect(elstarComponent).commit();
+		assertEquals(1, fruit.getInternalComponents().size());
+		assertEquals(0, fruit.getExternalComponents().size());
+		assertTrue(appleComponent.getInjectedInterfaces("banana").isEmpty());
+		assertTrue(fruit.getExposedComponentIds().isEmpty());
+
+		try {
+			transaction.commit();
+			fail("IllegalStateException expected");
+		} catch (IllegalStateException expected) {
+		}
+	}
+
+	@Test
+	public void testTransactionConnectAndDisconnect() throws Exception {
+		fruit.connect("apple", appleComponent);
+		fruit.begin()
+				.connect("banana", bananaComponent)
+				.disconnect(bananaComponent)
+				.commit();
+		//never wired
+		assertNull(appleCore.getBanana());
+		assertEquals(1, fruit.getInternalComponents().size());
+	}
+
+	@Test
+	public void testTransactionExpose() throws Exception {
+		fruit.connect("banana", bananaComponent);
+		fruit.getFacade().connect(appleComponent);
+		assertNull(appleCore.getBanana());
+
+		fruit.begin().expose("banana", BananaInterface.class).commit();
+		assertEquals(27, appleCore.getIntFromBanana());
+
+		fruit.begin().expose("banana").commit();
+		assertTrue(appleComponent.getInjectedInterfaces("banana").isEmpty());
+	}
+
+	@Test
+	public void testTransactionValidation() throws Exception {
+		StandardCluster.Transaction transaction = fruit.begin().connect("apple", appleComponent);
+		try {
+			transaction.connect("apple", elstarComponent);
+			fail("ConfigurationException expected");
+		} catch (ConfigurationException expected) {
+		}
+		try {
+			fruit.begin().expose("apple", AppleInterface.class);
+			fail("ConfigurationException expected");
+		} catch (ConfigurationException expected) {
+		}
+
+		//validated again on commit
+		transaction.connect("banana", bananaComponent);
+		fruit.connect("apple", elstarComponent);
+		try {
+			transaction.commit();
+			fail("ConfigurationException expected");
+		} catch (ConfigurationException expected) {
+		}
+		assertEquals(1, fruit.getInternalComponents().size());
+		assertNull(appleCore.getBanana());
+	}
+
+	@Test
+	public void testTransactionStagingLeavesClusterUnchanged() throws Exception {
+		fruit.connect("banana", bananaComponent, BananaInterface.class);
+		Set<String> exposedComponentIds = fruit.getExposedComponentIds();
+
+		StandardCluster.Transaction transaction = fruit.begin()
+				.connect("apple", appleComponent)
+				.expose("banana")
+				.disconnect(bananaComponent)
+				.connect("banana", bananaComponent);
+		try {
+			transaction.connect("apple", elstarComponent);
+			fail("ConfigurationException expected");
+		} catch (ConfigurationException expected) {
+		}
+		assertEquals(1, fruit.getInternalComponents().size());
+		assertEquals(1, exposedComponentIds.size());
+		assertTrue(fruit.isExposed("banana"));
+		assertFalse(fruit.getInternalComponents().containsKey("apple"));
+
+		//a failed operation leaves preceding operations in place
+		transaction.commit();
+		assertEquals(2, fruit.getInternalComponents().size());
+		assertFalse(fruit.isExposed("banana"));
+		assertEquals(1, exposedComponentIds.size());
+		assertEquals(27, appleCore.getIntFromBanana());
+
+		fruit.begin().disconnect(appleComponent).commit();
+		assertEquals(1, fruit.getInternalComponents().size());
+		assertSame(bananaComponent, fruit.getInternalComponents().get("banana"));
+	}
+
+	@Test
+	public void testTransactionConnectAndDisconnectUnderSeveralIds() throws Exception {
+		fruit.connect("apple", elstarComponent, AppleInterface.class);
+
+		fruit.begin()
+				.connect("elstar", elstarComponent, ElstarInterface.class)
+				.connect("banana", bananaComponent)
+				.connect("yellow banana", bananaComponent)
+				.disconnect(bananaComponent)
+				.commit();
+		Map<String, Component> internalComponents = fruit.getInternalComponents();
+		assertEquals(2, internalComponents.size());
+		assertSame(elstarComponent, internalComponents.get("elstar"));
+		assertFalse(fruit.isConnected(bananaComponent));
+
+		//connected component embedding the same object
+		fruit.begin().disconnect(new StandardComponent(elstar)).commit();
+		assertEquals(0, fruit.getInternalComponents().size());
+		assertFalse(fruit.isConnected(elstarComponent));
+	}
+
+	@Test
+	public void testWiringOnlyTouchesRelatedComponents() throws Exception {
+		final AtomicInteger nrofUnrelatedWirings = new AtomicInteger();
+		for (int i = 0; i < 20; i++) {
+			fruit.connect("listener" + i, new StandardComponent(new Listener("listener " + i)) {
+				public void setReference(Facade facade, String componentId, Class<?>... interfaces) {
+					nrofUnrelatedWirings.incrementAndGet();
+					super.setReference(facade, componentId, interfaces);
+				}
+
+				public void register(Component component) {
+					nrofUnrelatedWirings.incrementAndGet();
+					super.register(component);
+				}
+			});
+		}
+		fruit.connect("apple", appleComponent);
+		fruit.connect("banana", bananaComponent);
+		assertEquals(27, appleCore.getIntFromBanana());
+		assertEquals(0, nrofUnrelatedWirings.get());
+
+		//listener registries are wired with every component
+		fruit.connect("notifier", notifierComponent);
+		assertEquals(0, nrofUnrelatedWirings.get());
+		assertEquals(20, notifier.getNrofRegisteredListeners());
+		fruit.disconnect(notifierComponent);
+		assertEquals(0, notifier.getNrofRegisteredListeners());
+	}
+
+	@Test
+	public void testComponentImplementingOnlyOriginalMethods() throws Exception {
+		StandardCluster cluster = new StandardCluster();
+		Apple apple = new Apple();
+		Banana banana = new Banana(27);
+		cluster.connect("apple", new BasicComponent(new StandardComponent(apple)));
+		cluster.connect("banana", new StandardComponent(banana));
+		//the apple does not tell which references it accepts, so it is offered all
+		assertEquals(27, apple.getIntFromBanana());
+
+		cluster.start();
+		cluster.setMetricsEnabled(true);
+		Properties properties = new Properties();
+		properties.setProperty("apple.message", "hello");
+		assertTrue(cluster.updateProperties(properties).get("apple").contains("message"));
+		assertEquals("hello", banana.getMessageFromApple());
+		cluster.stop();
+	}
+
+	/**
+	 * Implements only the methods Component had before methods with default implementations were added.
+	 */
+	private static class BasicComponent implements Component {
+
+		private final Component component;
+
+		BasicComponent(Component component) {
+			this.component = component;
+		}
+
+		public void setProperties(Properties properties) {
+			component.setProperties(properties);
+		}
+
+		public Properties getProperties() {
+			return component.getProperties();
+		}
+
+		public Class<?>[] getInterfaces() {
+			return component.getInterfaces();
+		}
+
+		public <T> T createProxy(Class<T> interfaceClass) {
+			return component.createProxy(interfaceClass);
+		}
+
+		public <T> T getProxy(Class<T> interfaceClass) {
+			return component.getProxy(interfaceClass);
+		}
+
+		public void setReference(Facade facade, String componentId, Class<?>... interfaces) {
+			component.setReference(facade, componentId, interfaces);
+		}
+
+		public void removeDependency(String componentId) {
+			component.removeDependency(componentId);
+		}
+
+		public void register(Component listener) {
+			component.register(listener);
+		}
+
+		public void unregister(Component listener) {
+			component.unregister(listener);
+		}
+
+		public Set<Class<?>> getInjectedInterfaces(String componentId) {
+			return component.getInjectedInterfaces(componentId);
+		}
+
+		public void setInvocationIntercepter(Class<?> interfaceClass, InvocationHandler interceptor) {
+			component.setInvocationIntercepter(interfaceClass, interceptor);
+		}
+
+		public Object invoke(String methodName, Object... parameters) throws InvocationTargetException, NoSuchMethodException {
+			return component.invoke(methodName, parameters);
+		}
+
+		public boolean implementsInterface(Class<?> interfaceClass) {
+			return component.implementsInterface(interfaceClass);
+		}
+	}
+
+	@Test
+	public void testUpdateProperties() throws Exception {
+		fruit.connect("apple", appleComponent);
+		fruit.connect("elstar", elstarComponent);
+
+		Properties properties = new Properties();
+		properties.setProperty("apple.message", "hello");
+		properties.setProperty("apple.someInt", "5");
+		properties.setProperty("pear.message", "no such component");
+		Map<String, Set<String>> changedKeysByComponentId = fruit.updateProperties(properties);
+		assertEquals(1, changedKeysByComponentId.size());
+		assertEquals(2, changedKeysByComponentId.get("apple").size());
+		assertEquals("hello", appleCore.getMessage());
+		assertEquals(5, appleCore.getSomeInt());
+		//components without keys are updated with empty properties
+		assertTrue(elstarComponent.getProperties().isEmpty());
+
+		properties.setProperty("apple.someInt", "6");
+		properties.setProperty("elstar.message", "hi");
+		changedKeysByComponentId = fruit.updateProperties(properties);
+		assertEquals(2, changedKeysByComponentId.size());
+		assertEquals(1, changedKeysByComponentId.get("apple").size());
+		assertTrue(changedKeysByComponentId.get("apple").contains("someInt"));
+		assertEquals("hi", elstar.getMessage());
+
+		assertTrue(fruit.updateProperties(properties).isEmpty());
+
+		properties.remove("elstar.message");
+		changedKeysByComponentId = fruit.updateProperties(properties);
+		assertEquals(1, changedKeysByComponentId.size());
+		assertTrue(changedKeysByComponentId.get("elstar").contains("message"));
+		assertTrue(elstarComponent.getProperties().isEmpty());
+	}
+
+	@Test
+	public void testUpdatePropertiesOfComponentWithSeveralIds() throws Exception {
+		fruit.connect("apple", appleComponent);
+		fruit.connect("core", appleComponent);
+
+		Properties properties = new Properties();
+		properties.setProperty("apple.message", "hello");
+		properties.setProperty("core.someInt", "5");
+		Map<String, Set<String>> changedKeysByComponentId = fruit.updateProperties(properties);
+		assertEquals(2, changedKeysByComponentId.size());
+		assertEquals(2, changedKeysByComponentId.get("apple").size());
+		assertEquals(changedKeysByComponentId.get("apple"), changedKeysByComponentId.get("core"));
+		assertEquals("hello", appleCore.getMessage());
+		assertEquals(5, appleCore.getSomeInt());
+		assertEquals(2, appleComponent.getProperties().size());
+
+		//keys given under one ID are not removed by the absence of keys under the other
+		assertTrue(fruit.updateProperties(properties).isEmpty());
+
+		properties.setProperty("core.message", "hi");
+		try {
+			fruit.updateProperties(properties);
+			fail("ConfigurationException expected");
+		} catch (ConfigurationException expected) {
+		}
+	}
+
+	@Test
+	public void testStartAndStopInDependencyOrder() throws Exception {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		fruit.connect("car", new StandardComponent(new Car("car", log)));
+		fruit.connect("truck", new StandardComponent(new Car("truck", log)));
+		Component engineComponent = new StandardComponent(new Engine("engine", log));
+		fruit.connect("engine", engineComponent);
+
+		fruit.start();
+		assertTrue(engineComponent.isStarted());
+		assertEquals(3, log.size());
+		assertEquals("start engine", log.get(0));
+		assertTrue(log.containsAll(Arrays.asList("start car", "start truck")));
+
+		log.clear();
+		fruit.stop();
+		assertFalse(engineComponent.isStarted());
+		assertEquals(3, log.size());
+		assertEquals("stop engine", log.get(2));
+	}
+
+	@Test
+	public void testStartCycle() throws Exception {
+		//apple and banana depend on each other
+		fruit.connect("apple", appleComponent);
+		fruit.connect("banana", bananaComponent);
+
+		fruit.start();
+		assertTrue(appleComponent.isStarted());
+		assertTrue(bananaComponent.isStarted());
+		fruit.stop();
+		assertFalse(appleComponent.isStarted());
+	}
+
+	@Test
+	public void testStartRollsBack() throws Exception {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		Car car = new Car("car", log);
+		car.setFailOnStart(true);
+		Component carComponent = new StandardComponent(car);
+		fruit.connect("car", carComponent);
+		Component engineComponent = new StandardComponent(new Engine("engine", log));
+		fruit.connect("engine", engineComponent);
+
+		try {
+			fruit.start();
+			fail("ConfigurationException expected");
+		} catch (ConfigurationException expected) {
+			assertTrue(expected.getMessage().contains("'car'"));
+		}
+		assertFalse(carComponent.isStarted());
+		assertFalse(engineComponent.isStarted());
+		assertEquals(Arrays.asList("start engine", "stop engine"), log);
+	}
+
+	@Test
+	public void testReplaceImplementation() throws Exception {
+		fruit.connect("apple", appleComponent);
+		fruit.connect("banana", bananaComponent, BananaInterface.class);
+		Properties properties = new Properties();
+		properties.setProperty("message", "hello");
+		appleComponent.setProperties(properties);
+		BananaInterface bananaProxy = (BananaInterface) fruit.getFacade().getProxy("banana", BananaInterface.class);
+
+		Banana newBanana = new Banana(42);
+		assertSame(bananaCore, fruit.replaceImplementation("banana", newBanana));
+		assertEquals(42, appleCore.getIntFromBanana());
+		assertEquals(42, bananaProxy.returnAnInt());
+		assertEquals("hello", newBanana.getMessageFromApple());
+
+		Apple newApple = new Apple();
+		fruit.replaceImplementation("apple", newApple);
+		assertEquals("hello", newBanana.getMessageFromApple());
+		assertEquals(42, newApple.getIntFromBanana());
+		assertTrue(fruit.isConnectedInternally(appleComponent));
+
+		try {
+			fruit.replaceImplementation("banana", new Apple());
+			fail("ConfigurationException expected");
+		} catch (ConfigurationException expected) {
+		}
+		assertEquals(42, bananaProxy.returnAnInt());
+	}
+
+	@Test
+	public void testReplaceImplementationKeepsListeners() throws Exception {
+		cluster.connect("notifier", notifierComponent);
+		cluster.getFacade().connect(listenerComponent1);
+		cluster.getFacade().connect(listenerComponent2);
+
+		Notifier newNotifier = new Notifier();
+		cluster.replaceImplementation("notifier", newNotifier);
+		assertEquals(2, newNotifier.getNrofRegisteredListeners());
+		cluster.getFacade().disconnect(listenerComponent1);
+		assertEquals(1, newNotifier.getNrofRegisteredListeners());
+	}
+
+	@Test
+	public void testMembershipDoesNotInvokeImplementation() throws Exception {
+		Apple hostileApple = new Apple() {
+			public boolean equals(Object other) {
+				throw new UnsupportedOperationException();
+			}
+
+			public int hashCode() {
+				throw new UnsupportedOperationException();
+			}
+
+			public String toString() {
+				return "hostile apple";
+			}
+		};
+		Component hostileComponent = new StandardComponent(hostileApple);
+		fruit.connect("apple", hostileComponent);
+		fruit.connect("banana", bananaComponent);
+		fruit.connect(elstarComponent);
+		assertTrue(fruit.isConnectedInternally(hostileComponent));
+		assertFalse(fruit.isConnectedExternally(hostileComponent));
+		assertTrue(fruit.isConnectedExternally(elstarComponent));
+
+		//another component embedding the same object
+		Component sameAppleComponent = new StandardComponent(hostileApple);
+		assertTrue(fruit.isConnectedInternally(sameAppleComponent));
+		try {
+			fruit.connect(sameAppleComponent);
+			fail("ConfigurationException expected");
+		} catch (ConfigurationException expected) {
+		}
+		fruit.disconnect(sameAppleComponent);
+		assertFalse(fruit.isConnected(hostileComponent));
+		assertTrue(fruit.getInternalComponents().containsKey("banana"));
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		fruit.connect("apple", appleComponent);
+		fruit.connect("banana", bananaComponent, BananaInterface.class);
+		fruit.connect(elstarComponent);
+		fruit.setMetricsEnabled(true);
+
+		appleCore.getIntFromBanana();
+		appleCore.getIntFromBanana();
+		Map<Component, Map<Method, InvocationMetrics.Snapshot>> metrics = fruit.getMetrics();
+		assertFalse(metrics.containsKey(elstarComponent));
+		assertEquals(2, metrics.get(bananaComponent).get(BananaInterface.class.getMethod("returnAnInt")).getInvocationCount());
+		assertFalse(appleComponent.getMetrics().containsKey(BananaInterface.class.getMethod("returnAnInt")));
+	}
+
+	@Test
+	public void testTracing() throws Exception {
+		final List<Span> spans = Collections.synchronizedList(new ArrayList<Span>());
+		Tracer tracer = new Tracer(1, new SpanExporter() {
+			public void export(Span span) {
+				spans.add(span);
+			}
+		});
+		fruit.connect("apple", appleComponent, AppleInterface.class);
+		fruit.connect("banana", bananaComponent, BananaInterface.class);
+		fruit.setTracer(tracer);
+
+		BananaInterface banana = (BananaInterface) fruit.getFacade().getProxy("banana", BananaInterface.class);
+		banana.getMessageFromApple();
+		assertEquals(2, spans.size());
+		Span appleSpan = spans.get(0);
+		Span bananaSpan = spans.get(1);
+		assertEquals("apple", appleSpan.getComponentId());
+		assertEquals("getMessage", appleSpan.getMethod().getName());
+		assertEquals("banana", bananaSpan.getComponentId());
+		assertSame(bananaSpan, appleSpan.getParent());
+
+		//asynchronous invocations continue the trace
+		Span root = tracer.start("client", BananaInterface.class.getMethod("returnAnInt"));
+		appleComponent.createAsyncProxy(AppleAsyncInterface.class).getMessage().get();
+		tracer.end(root);
+		assertEquals(4, spans.size());
+		assertSame(root, spans.get(2).getParent());
+		assertEquals("apple", spans.get(2).getComponentId());
+
+		fruit.setTracer(null);
+		banana.getMessageFromApple();
+		assertEquals(4, spans.size());
+	}
+
+	@Test
+	public void testFlightRecording() throws Exception {
+		BananaInterface banana = bananaComponent.getProxy(BananaInterface.class);
+		Path file = Files.createTempFile("iglu", ".jfr");
+		Recording recording = new Recording();
+		try {
+			recording.enable(InvocationEvent.class).withThreshold(Duration.ZERO);
+			recording.enable(InterceptionEvent.class).withThreshold(Duration.ZERO);
+			recording.enable(TopologyEvent.class);
+			recording.enable(PropertiesEvent.class);
+			recording.start();
+
+			fruit.connect("apple", appleComponent, AppleInterface.class);
+			fruit.connect("banana", bananaComponent);
+			Properties properties = new Properties();
+			properties.setProperty("message", "hello");
+			appleComponent.setProperties(properties);
+			appleComponent.setInvocationIntercepter(AppleInterface.class, new GetMessageInterceptor(" intercepted"));
+			//generated proxy created before the recording started
+			assertEquals("hello intercepted", banana.getMessageFromApple());
+
+			recording.stop();
+			recording.dump(file);
+		} finally {
+			recording.close();
+		}
+		List<String> recorded = new ArrayList<String>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+			String name = event.getEventType().getName();
+			if (name.equals(InvocationEvent.NAME) || name.equals(InterceptionEvent.NAME)) {
+				recorded.add(name + ":" + event.getString("componentId") + "." + event.getString("methodName"));
+			} else if (name.equals(TopologyEvent.NAME)) {
+				recorded.add(name + ":" + event.getString("operation") + " " + event.getString("componentId") + " " + event.getString("interfaceNames"));
+			} else if (name.equals(PropertiesEvent.NAME)) {
+				recorded.add(name + ":" + event.getString("componentId") + "." + event.getString("methodName"));
+			}
+		}
+		Files.delete(file);
+
+		assertTrue(recorded.contains(TopologyEvent.NAME + ":connect apple " + AppleInterface.class.getName()));
+		assertTrue(recorded.contains(TopologyEvent.NAME + ":connect banana "));
+		assertTrue(recorded.contains(PropertiesEvent.NAME + ":apple.setProperties"));
+		assertTrue(recorded.contains(InvocationEvent.NAME + ":banana.getMessageFromApple"));
+		assertTrue(recorded.contains(InvocationEvent.NAME + ":apple.getMessage"));
+		assertTrue(recorded.contains(InterceptionEvent.NAME + ":apple.getMessage"));
+		assertEquals("hello intercepted", banana.getMessageFromApple());
+	}
+
+	@Test
+	public void testFlightRecordingOfInvocationsIsOptIn() throws Exception {
+		Recording recording = new Recording(Configuration.getConfiguration("default"));
+		try {
+			recording.start();
+			assertFalse(FlightRecording.isRecordingInvocations());
+		} finally {
+			recording.close();
+		}
+	}
+
+	@Test
+	public void testFlightRecordingOfComponentsEmbeddingSameObject() throws Exception {
+		StandardComponent first = new StandardComponent(appleCore);
+		StandardComponent second = new StandardComponent(appleCore);
+		first.setComponentId("first");
+		second.setComponentId("second");
+		AppleInterface firstProxy = first.createProxy(AppleInterface.class);
+		AppleInterface secondProxy = second.createProxy(AppleInterface.class);
+
+		Path file = Files.createTempFile("iglu", ".jfr");
+		Recording recording = new Recording();
+		try {
+			recording.enable(InvocationEvent.class).withThreshold(Duration.ZERO);
+			recording.start();
+			firstProxy.getMessage();
+			secondProxy.getMessage();
+			recording.stop();
+			recording.dump(file);
+		} finally {
+			recording.close();
+		}
+		Set<String> componentIds = new HashSet<String>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+			if (event.getEventType().getName().equals(InvocationEvent.NAME)) {
+				componentIds.add(event.getString("componentId"));
+			}
+		}
+		Files.delete(file);
+		assertEquals(new HashSet<String>(Arrays.asList("first", "second")), componentIds);
+	}
 }
@@ -19,15 +19,36 @@
 
 package org.ijsberg.iglu.configuration.module;
 
+import org.ijsberg.iglu.Startable;
 import org.ijsberg.iglu.configuration.Cluster;
 import org.ijsberg.iglu.configuration.Component;
 import org.ijsberg.iglu.configuration.ConfigurationException;
+import org.ijsberg.iglu.configuration.MethodSelector;
 import org.ijsberg.iglu.sample.configuration.*;
+import org.ijsberg.iglu.sample.configuration.shop.ProductInquiryCounter;
+import org.ijsberg.iglu.sample.configuration.shop.Shop;
+import org.ijsberg.iglu.sample.configuration.shop.ShopImpl;
+import org.ijsberg.iglu.util.AllocationAssert;
+import org.ijsberg.iglu.util.execution.ExecutorSupport;
+import org.ijsberg.iglu.util.metrics.InvocationMetrics;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -198,6 +219,41 @@ public class StandardComponentTest {
 
 	}
 
+	@Test
+	public void testUpdateProperties() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("message", "hello");
+		properties.setProperty("someInt", "5");
+		assertEquals(2, appleComponent.updateProperties(properties).size());
+		assertEquals("hello", apple.getMessage());
+		assertEquals(5, apple.getSomeInt());
+
+		//unchanged properties are not injected again
+		apple.setMessage("changed directly");
+		properties = new Properties();
+		properties.setProperty("message", "hello");
+		properties.setProperty("someInt", "6");
+		Set<String> changedKeys = appleComponent.updateProperties(properties);
+		assertEquals(1, changedKeys.size());
+		assertTrue(changedKeys.contains("someInt"));
+		assertEquals("changed directly", apple.getMessage());
+		assertEquals(6, apple.getSomeInt());
+		assertSame(properties, appleComponent.getProperties());
+
+		properties = new Properties();
+		properties.setProperty("message", "hello");
+		properties.setProperty("foo", "bar");
+		changedKeys = appleComponent.updateProperties(properties);
+		assertEquals(2, changedKeys.size());
+		assertTrue(changedKeys.contains("someInt"));
+		assertTrue(changedKeys.contains("foo"));
+		assertEquals(6, apple.getSomeInt());
+		assertFalse(appleComponent.getSetterInjectedProperties().containsKey("someInt"));
+		assertEquals("hello", appleComponent.getSetterInjectedProperties().get("message"));
+
+		assertEquals(0, appleComponent.updateProperties((Properties) properties.clone()).size());
+	}
+
 	@Test
 	public void testGetInjectedProperties() throws Exception {
 
@@ -489,4 +545,516 @@ public class StandardComponentTest {
 	}
 
 
+	@Test
+	public void testInvokeMethodOfSecondInterface() throws Exception {
+		Component engineComponent = new StandardComponent(new Engine("engine", new ArrayList<String>()));
+		final List<String> engineInterceptions = new ArrayList<String>();
+		final List<String> startableInterceptions = new ArrayList<String>();
+		engineComponent.setInvocationIntercepter(EngineInterface.class, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] parameters) throws Throwable {
+				engineInterceptions.add(method.getName());
+				return method.invoke(proxy, parameters);
+			}
+		});
+		engineComponent.setInvocationIntercepter(Startable.class, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] parameters) throws Throwable {
+				startableInterceptions.add(method.getName());
+				return method.invoke(proxy, parameters);
+			}
+		});
+
+		assertEquals(false, engineComponent.invoke("isStarted"));
+		engineComponent.invoke("start");
+		assertEquals(true, engineComponent.invoke("isStarted"));
+		assertEquals(false, engineComponent.invoke("isRunning"));
+
+		assertEquals(Arrays.asList("isRunning"), engineInterceptions);
+		assertEquals(Arrays.asList("isStarted", "start", "isStarted"), startableInterceptions);
+	}
+
+	@Test
+	public void testGeneratedProxy() throws Exception {
+		appleComponent.setGenerateProxyClasses(true);
+		apple.setMessage("Hello");
+
+		AppleInterface proxy = appleComponent.createProxy(AppleInterface.class);
+		assertFalse(Proxy.isProxyClass(proxy.getClass()));
+		assertEquals("Hello", proxy.getMessage());
+		assertEquals("true-23", proxy.returnInput(true, '-', 23));
+		assertSame(appleComponent.getProxy(AppleInterface.class), appleComponent.getProxy(AppleInterface.class));
+	}
+
+	@Test
+	public void testGeneratedProxyIntercepted() throws Exception {
+		elstarComponent = new StandardComponent(elstar);
+		((StandardComponent) elstarComponent).setGenerateProxyClasses(true);
+		elstar.setMessage("Hello");
+
+		ElstarInterface proxy = elstarComponent.createProxy(ElstarInterface.class);
+		AppleInterface proxy2 = elstarComponent.createProxy(AppleInterface.class);
+		assertEquals("Hello", proxy.getMessage());
+
+		//interceptor set after creation of proxy
+		elstarComponent.setInvocationIntercepter(AppleInterface.class, new GetMessageInterceptor(" world"));
+		assertEquals("Hello world", proxy.getMessage());
+		assertEquals("Hello world", proxy2.getMessage());
+		assertEquals("not intercepted", proxy.returnInput("not intercepted"));
+
+		elstarComponent.setInvocationIntercepter(ElstarInterface.class, new GetMessageInterceptor(" baby"));
+		assertEquals("Hello baby", proxy.getMessage());
+		assertEquals("Hello world", proxy2.getMessage());
+	}
+
+	@Test
+	public void testProxyDispatch() throws Exception {
+		StandardComponent bananaComponent = new StandardComponent(new Banana(27));
+		bananaComponent.setGenerateProxyClasses(false);
+		BananaInterface proxy = bananaComponent.createProxy(BananaInterface.class);
+		assertEquals(27, proxy.returnAnInt());
+		try {
+			proxy.getMessageFromApple();
+			fail("NullPointerException expected");
+		} catch (NullPointerException expected) {
+			//thrown by implementation, not wrapped
+		}
+		assertEquals(bananaComponent.toString(), "component with impl: " + proxy.toString());
+
+		bananaComponent.setInvocationIntercepter(BananaInterface.class, new GetMessageInterceptor("!"));
+		try {
+			proxy.getMessageFromApple();
+			fail("NullPointerException expected");
+		} catch (NullPointerException expected) {
+			//unwrapped from InvocationTargetException
+		}
+		assertEquals(27, proxy.returnAnInt());
+	}
+
+	@Test
+	public void testInterceptorChain() throws Exception {
+		apple.setMessage("Hello");
+		AppleInterface proxy = appleComponent.createProxy(AppleInterface.class);
+
+		final List<String> invokedMethods = new ArrayList<String>();
+		InvocationHandler recorder = new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] parameters) throws Throwable {
+				invokedMethods.add(method.getName());
+				return method.invoke(proxy, parameters);
+			}
+		};
+		appleComponent.addInvocationIntercepter(AppleInterface.class, MethodSelector.byName("getMessage"), new GetMessageInterceptor(" world"));
+		appleComponent.addInvocationIntercepter(AppleInterface.class, MethodSelector.byPrefix("return"), recorder);
+		appleComponent.addInvocationIntercepter(AppleInterface.class, MethodSelector.ALL_METHODS, new GetMessageInterceptor("!"));
+
+		//first interceptor added is invoked first
+		assertEquals("Hello! world", proxy.getMessage());
+		assertEquals("input", proxy.returnInput("input"));
+		assertEquals("true-1", proxy.returnInput(true, '-', 1));
+		assertEquals(0, proxy.getSomeInt());
+		assertEquals(Arrays.asList("returnInput", "returnInput"), invokedMethods);
+
+		appleComponent.setInvocationIntercepter(AppleInterface.class, null);
+		assertEquals("Hello", proxy.getMessage());
+	}
+
+	@Test
+	public void testInterceptorChainByMethod() throws Exception {
+		appleComponent.setGenerateProxyClasses(true);
+		apple.setMessage("Hello");
+		AppleInterface proxy = appleComponent.createProxy(AppleInterface.class);
+
+		Method getMessage = AppleInterface.class.getMethod("getMessage");
+		appleComponent.addInvocationIntercepter(AppleInterface.class, MethodSelector.byMethod(getMessage), new GetMessageInterceptor(" world"));
+		appleComponent.addInvocationIntercepter(AppleInterface.class, MethodSelector.byMethod(getMessage), new GetMessageInterceptor(" baby"));
+
+		assertEquals("Hello baby world", proxy.getMessage());
+		assertEquals("not intercepted", proxy.returnInput("not intercepted"));
+	}
+
+	@Test
+	public void testAllocationFreeInvocation() throws Exception {
+		Component shopComponent = new StandardComponent(new ShopImpl("The Drugstore"));
+		final Shop shop = shopComponent.createProxy(Shop.class);
+		//values outside the range cached by boxing
+		final BananaInterface banana = new StandardComponent(new Banana(1000)).createProxy(BananaInterface.class);
+
+		AllocationAssert.assertNoAllocation("primitive argument", new Runnable() {
+			public void run() {
+				shop.findProductById(1000L);
+			}
+		});
+		AllocationAssert.assertNoAllocation("primitive return value", new Runnable() {
+			public void run() {
+				banana.returnAnInt();
+			}
+		});
+
+		//methods that are not intercepted remain allocation-free
+		shopComponent.addInvocationIntercepter(Shop.class, MethodSelector.byName("getName"), new ProductInquiryCounter());
+		AllocationAssert.assertNoAllocation("not intercepted", new Runnable() {
+			public void run() {
+				shop.findProductById(1000L);
+			}
+		});
+	}
+
+	@Test
+	public void testInvokeAsync() throws Exception {
+		apple.setMessage("Hello");
+		ExecutorService executor = ExecutorSupport.createVirtualThreadPerCallExecutor("apple");
+		appleComponent.setExecutor(executor);
+		try {
+			assertEquals("Hello", appleComponent.invokeAsync("getMessage").get(5, TimeUnit.SECONDS));
+			assertEquals("true-1", appleComponent.invokeAsync("returnInput", true, '-', 1).get(5, TimeUnit.SECONDS));
+
+			CompletableFuture<Object> future = appleComponent.invokeAsync("getNonExistingMethod");
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail("ExecutionException expected");
+			} catch (ExecutionException expected) {
+				assertTrue(expected.getCause() instanceof NoSuchMethodException);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testAsyncProxy() throws Exception {
+		apple.setMessage("Hello");
+		ForkJoinPool pool = ExecutorSupport.createBoundedForkJoinPool(2, 4);
+		appleComponent.setExecutor(pool);
+		try {
+			AppleAsyncInterface proxy = appleComponent.createAsyncProxy(AppleAsyncInterface.class);
+			assertEquals("Hello", proxy.getMessage().get(5, TimeUnit.SECONDS));
+			assertEquals("input", proxy.returnInput("input").get(5, TimeUnit.SECONDS));
+
+			//interceptors apply to asynchronous invocations
+			appleComponent.setInvocationIntercepter(AppleInterface.class, new GetMessageInterceptor(" world"));
+			assertEquals("Hello world", proxy.getMessage().get(5, TimeUnit.SECONDS));
+			assertFalse(proxy.equals(appleComponent.createAsyncProxy(AppleAsyncInterface.class)));
+		} finally {
+			pool.shutdown();
+		}
+
+		StandardComponent bananaComponent = new StandardComponent(new Banana(27));
+		try {
+			bananaComponent.createAsyncProxy(AppleAsyncInterface.class);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	@Test
+	public void testAsyncProxyExceptions() throws Exception {
+		StandardComponent bananaComponent = new StandardComponent(new Banana(27));
+		BananaAsyncInterface proxy = bananaComponent.createAsyncProxy(BananaAsyncInterface.class);
+		try {
+			proxy.getMessageFromApple().get(5, TimeUnit.SECONDS);
+			fail("ExecutionException expected");
+		} catch (ExecutionException expected) {
+			//thrown by implementation, not wrapped
+			assertTrue(expected.getCause() instanceof NullPointerException);
+		}
+
+		bananaComponent.setExecutor(new Executor() {
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException("shut down");
+			}
+		});
+		assertTrue(proxy.returnAnInt().isCompletedExceptionally());
+	}
+
+	public interface BananaAsyncInterface {
+
+		CompletableFuture<Integer> returnAnInt();
+
+		Future<String> getMessageFromApple();
+	}
+
+	@Test
+	public void testMailboxMode() throws Exception {
+		StandardComponent listenerComponent = new StandardComponent(listener1);
+		final ListenerInterface proxy = listenerComponent.createProxy(ListenerInterface.class);
+		ExecutorService callers = Executors.newFixedThreadPool(4);
+		//callers that wait must not occupy the threads that drain the mailbox
+		listenerComponent.setExecutor(ExecutorSupport.createBoundedForkJoinPool(1, 2));
+		listenerComponent.setMailboxMode(true);
+		assertTrue(listenerComponent.isInMailboxMode());
+
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger maxActive = new AtomicInteger();
+		listenerComponent.setInvocationIntercepter(ListenerInterface.class, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] parameters) throws Throwable {
+				maxActive.set(Math.max(maxActive.get(), active.incrementAndGet()));
+				try {
+					return method.invoke(proxy, parameters);
+				} finally {
+					active.decrementAndGet();
+				}
+			}
+		});
+
+		try {
+			List<Future<String>> lastMessages = new ArrayList<Future<String>>();
+			for (int i = 0; i < 4; i++) {
+				final String message = "message from caller " + i;
+				lastMessages.add(callers.submit(new Callable<String>() {
+					public String call() {
+						for (int j = 0; j < 500; j++) {
+							//returns without waiting
+							proxy.notify(message);
+						}
+						return proxy.getLastMessage();
+					}
+				}));
+			}
+			for (Future<String> lastMessage : lastMessages) {
+				assertTrue(lastMessage.get(5, TimeUnit.SECONDS).startsWith("message from caller"));
+			}
+			//proxies created in mailbox mode
+			assertEquals("listener 1", listenerComponent.createProxy(ListenerInterface.class).getId());
+			assertEquals("listener 1", listenerComponent.invokeAsync("getId").get(5, TimeUnit.SECONDS));
+			assertEquals(1, maxActive.get());
+
+			listenerComponent.setMailboxMode(false);
+			proxy.notify("direct");
+			assertEquals("direct", listener1.getLastMessage());
+		} finally {
+			callers.shutdown();
+		}
+	}
+
+	@Test
+	public void testReconfigurationDuringInvocation() throws Exception {
+		apple.setMessage("Hello");
+		final AppleInterface proxy = appleComponent.getProxy(AppleInterface.class);
+		final AtomicInteger invocations = new AtomicInteger();
+		ExecutorService callers = Executors.newFixedThreadPool(4);
+		final CountDownLatch started = new CountDownLatch(4);
+		final AtomicBoolean stopped = new AtomicBoolean();
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		try {
+			for (int i = 0; i < 4; i++) {
+				results.add(callers.submit(new Callable<String>() {
+					public String call() {
+						started.countDown();
+						while (!stopped.get() || invocations.get() == 0) {
+							String message = proxy.getMessage();
+							if (!"Hello".equals(message) && !"Hello world".equals(message)) {
+								return message;
+							}
+							invocations.incrementAndGet();
+						}
+						return null;
+					}
+				}));
+			}
+			started.await(5, TimeUnit.SECONDS);
+			for (int i = 0; i < 200; i++) {
+				appleComponent.setInvocationIntercepter(AppleInterface.class, i % 2 == 0 ? new GetMessageInterceptor(" world") : null);
+				assertSame(proxy, appleComponent.getProxy(AppleInterface.class));
+			}
+			stopped.set(true);
+			for (Future<String> result : results) {
+				assertNull(result.get(5, TimeUnit.SECONDS));
+			}
+		} finally {
+			stopped.set(true);
+			callers.shutdown();
+		}
+	}
+
+	@Test
+	public void testReferenceKeys() throws Exception {
+		//setBanana(BananaInterface), setBanana(Serializable)
+		assertEquals(1, appleComponent.getReferenceKeys().size());
+		assertTrue(appleComponent.getReferenceKeys().contains("Banana"));
+		assertEquals("Banana", StandardComponent.getReferenceKey("banana"));
+		assertFalse(appleComponent.acceptsListeners());
+		assertTrue(notifierComponent.acceptsListeners());
+		assertTrue(listenerComponent1.getReferenceKeys().isEmpty());
+	}
+
+	@Test
+	public void testStopDrainsInvocations() throws Exception {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		Component component = new StandardComponent(new Engine("engine", log));
+		component.start();
+		component.start();
+		assertTrue(component.isStarted());
+		assertEquals(1, log.size());
+
+		CompletableFuture<Object> invocation = component.invokeAsync("runFor", 200L);
+		component.stop();
+		assertTrue(invocation.isDone());
+		assertFalse(component.isStarted());
+		assertEquals("stop engine", log.get(1));
+
+		//components can be restarted
+		component.start();
+		assertTrue(component.isStarted());
+	}
+
+	@Test
+	public void testStopDrainsGeneratedProxyInvocations() throws Exception {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		Engine engine = new Engine("engine", log);
+		StandardComponent component = new StandardComponent(engine);
+		EngineInterface proxy = component.createProxy(EngineInterface.class);
+		assertFalse(Proxy.isProxyClass(proxy.getClass()));
+		component.start();
+
+		Thread invocation = runInBackground(proxy, 300);
+		while (!engine.isRunning()) {
+			Thread.sleep(1);
+		}
+		component.stop();
+		assertFalse(invocation.isAlive());
+		assertEquals(Arrays.asList("start engine", "stop engine"), log);
+	}
+
+	@Test
+	public void testGeneratedProxyInvokesDirectlyAfterDraining() throws Exception {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		StandardComponent component = new StandardComponent(new Engine("engine 1", log));
+		EngineInterface proxy = component.createProxy(EngineInterface.class);
+		component.start();
+		Engine engine = new Engine("engine 2", log);
+		component.replaceImplementation(engine);
+
+		Thread invocation = runInBackground(proxy, 300);
+		while (!engine.isRunning()) {
+			Thread.sleep(1);
+		}
+		//not counted, but found by inspecting the invoking thread
+		assertEquals(0, component.getNrofInvocationsInProgress());
+		Set<Class<?>> proxyClasses = Collections.<Class<?>>singleton(proxy.getClass());
+		assertEquals(1, new DirectInvocations(proxyClasses, engine).getCount());
+		assertEquals(0, new DirectInvocations(proxyClasses, new Apple()).getCount());
+		invocation.join();
+		assertEquals(0, new DirectInvocations(proxyClasses, engine).getCount());
+	}
+
+	@Test
+	public void testReplaceImplementationDrainsInvocations() throws Exception {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		StandardComponent component = new StandardComponent(new Engine("engine 1", log));
+		EngineInterface proxy = component.createProxy(EngineInterface.class);
+		EngineInterface directProxy = component.createDirectProxy(EngineInterface.class);
+		component.start();
+
+		Set<Component> components = new HashSet<Component>(Collections.singleton(component));
+		CompletableFuture<Object> invocation = component.invokeAsync("runFor", 200L);
+		Engine newEngine = new Engine("engine 2", log);
+		component.replaceImplementation(newEngine);
+		assertTrue(invocation.isDone());
+		//equality does not depend on the embedded object
+		assertTrue(components.contains(component));
+		assertFalse(component.equals(newEngine));
+		assertEquals(Arrays.asList("start engine 1", "start engine 2", "stop engine 1"), log);
+		assertTrue(component.isStarted());
+		assertTrue(newEngine.isStarted());
+
+		component.invokeAsync("runFor", 500L);
+		Thread.sleep(50);
+		assertTrue(proxy.isRunning());
+		assertTrue(directProxy.isRunning());
+		assertTrue(newEngine.isRunning());
+
+		try {
+			component.replaceImplementation(new Apple());
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	@Test
+	public void testReplaceImplementationDrainsGeneratedProxyInvocations() throws Exception {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		Engine engine = new Engine("engine 1", log);
+		StandardComponent component = new StandardComponent(engine);
+		final EngineInterface proxy = component.getProxy(EngineInterface.class);
+		final EngineInterface directProxy = component.createDirectProxy(EngineInterface.class);
+		assertFalse(Proxy.isProxyClass(proxy.getClass()));
+		component.start();
+
+		Thread invocation = runInBackground(proxy, 300);
+		while (!engine.isRunning()) {
+			Thread.sleep(1);
+		}
+		component.replaceImplementation(new Engine("engine 2", log));
+		assertFalse(invocation.isAlive());
+		assertEquals(Arrays.asList("start engine 1", "start engine 2", "stop engine 1"), log);
+
+		Engine engine2 = (Engine) component.getImplementation();
+		invocation = runInBackground(directProxy, 300);
+		while (!engine2.isRunning()) {
+			Thread.sleep(1);
+		}
+		component.replaceImplementation(new Engine("engine 3", log));
+		assertFalse(invocation.isAlive());
+		assertEquals("stop engine 2", log.get(log.size() - 1));
+	}
+
+	private static Thread runInBackground(final EngineInterface proxy, final long millis) {
+		Thread thread = new Thread() {
+			public void run() {
+				try {
+					proxy.runFor(millis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		final StandardComponent component = new StandardComponent(new Apple());
+		final AppleInterface proxy = component.createProxy(AppleInterface.class);
+		proxy.getMessage();
+		assertTrue(component.getMetrics().isEmpty());
+
+		component.setMetricsEnabled(true);
+		assertTrue(component.isMetricsEnabled());
+		ExecutorService executorService = Executors.newFixedThreadPool(4);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < 4; i++) {
+			futures.add(executorService.submit(new Runnable() {
+				public void run() {
+					for (int i = 0; i < 1000; i++) {
+						proxy.getMessage();
+					}
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executorService.shutdown();
+		StandardComponent bananaComponent = new StandardComponent(new Banana(27));
+		bananaComponent.setMetricsEnabled(true);
+		try {
+			//banana has no apple
+			bananaComponent.createProxy(BananaInterface.class).getMessageFromApple();
+			fail("NullPointerException expected");
+		} catch (NullPointerException expected) {
+		}
+
+		Map<Method, InvocationMetrics.Snapshot> metrics = component.getMetrics();
+		InvocationMetrics.Snapshot getMessageMetrics = metrics.get(AppleInterface.class.getMethod("getMessage"));
+		assertEquals(4000, getMessageMetrics.getInvocationCount());
+		assertEquals(0, getMessageMetrics.getErrorCount());
+		assertEquals(0, getMessageMetrics.getInFlightCount());
+		assertEquals(4000, getMessageMetrics.getLatencies().getCount());
+		InvocationMetrics.Snapshot failedMetrics = bananaComponent.getMetrics().get(BananaInterface.class.getMethod("getMessageFromApple"));
+		assertEquals(1, failedMetrics.getInvocationCount());
+		assertEquals(1, failedMetrics.getErrorCount());
+
+		component.setMetricsEnabled(false);
+		proxy.getMessage();
+		assertEquals(4000, component.getMetrics().get(AppleInterface.class.getMethod("getMessage")).getInvocationCount());
+	}
 }
@@ -48,6 +48,10 @@ public class Apple implements AppleInterface {
 	public void setBanana(Serializable banana) {
 	}
 
+	public BananaInterface getBanana() {
+		return banana;
+	}
+
 	public int getIntFromBanana() {
 		return banana.returnAnInt();
 	}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011-2013 Jeroen Meetsma - IJsberg
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.sample.configuration;
+
+import java.util.List;
+
+/**
+ * Depends on an engine.
+ */
+public class Car extends Engine {
+
+	private EngineInterface engine;
+
+	public Car(String name, List<String> log) {
+		super(name, log);
+	}
+
+	public void setEngine(EngineInterface engine) {
+		this.engine = engine;
+	}
+
+	public void start() {
+		if (engine == null) {
+			throw new IllegalStateException("no engine");
+		}
+		super.start();
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2011-2013 Jeroen Meetsma - IJsberg
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.sample.configuration;
+
+import org.ijsberg.iglu.Startable;
+
+import java.util.List;
+
+/**
+ * Records starting and stopping in a shared log.
+ */
+public class Engine implements EngineInterface, Startable {
+
+	private final String name;
+	private final List<String> log;
+	private boolean failOnStart;
+	private volatile boolean started;
+	private volatile boolean running;
+
+	public Engine(String name, List<String> log) {
+		this.name = name;
+		this.log = log;
+	}
+
+	public void setFailOnStart(boolean failOnStart) {
+		this.failOnStart = failOnStart;
+	}
+
+	public void start() {
+		if (failOnStart) {
+			throw new IllegalStateException(name + " fails to start");
+		}
+		log.add("start " + name);
+		started = true;
+	}
+
+	public boolean isStarted() {
+		return started;
+	}
+
+	public void stop() {
+		log.add("stop " + name + (running ? " while running" : ""));
+		started = false;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public void runFor(long millis) throws InterruptedException {
+		running = true;
+		try {
+			Thread.sleep(millis);
+		} finally {
+			running = false;
+		}
+	}
+}
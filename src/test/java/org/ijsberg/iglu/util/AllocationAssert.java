@@ -0,0 +1,86 @@
+/*
+ * Copyright 2011-2013 Jeroen Meetsma - IJsberg
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures heap allocation of invocations on the current thread by
+ * means of com.sun.management.ThreadMXBean.getThreadAllocatedBytes.
+ * Tests are skipped on JVMs that do not support allocation measurement.
+ */
+public class AllocationAssert {
+
+	public static final int DEFAULT_NROF_WARM_UP_INVOCATIONS = 20000;
+	public static final int DEFAULT_NROF_MEASURED_INVOCATIONS = 100000;
+
+	/**
+	 * Asserts that an invocation does not allocate heap memory,
+	 * after it has been invoked often enough to be compiled.
+	 *
+	 * @param message
+	 * @param invocation
+	 */
+	public static void assertNoAllocation(String message, Runnable invocation) {
+		assertEquals(message, 0, getAllocatedBytesPerInvocation(invocation,
+				DEFAULT_NROF_WARM_UP_INVOCATIONS, DEFAULT_NROF_MEASURED_INVOCATIONS));
+	}
+
+	/**
+	 * @param invocation
+	 * @param nrofWarmUpInvocations
+	 * @param nrofMeasuredInvocations
+	 * @return average number of bytes allocated per measured invocation, rounded down
+	 */
+	public static long getAllocatedBytesPerInvocation(Runnable invocation, int nrofWarmUpInvocations, int nrofMeasuredInvocations) {
+		com.sun.management.ThreadMXBean threadMXBean = getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		repeat(invocation, nrofWarmUpInvocations);
+		//measurement itself may allocate
+		long overhead = -threadMXBean.getThreadAllocatedBytes(threadId);
+		overhead += threadMXBean.getThreadAllocatedBytes(threadId);
+
+		long allocatedBytes = -threadMXBean.getThreadAllocatedBytes(threadId);
+		repeat(invocation, nrofMeasuredInvocations);
+		allocatedBytes += threadMXBean.getThreadAllocatedBytes(threadId);
+
+		return Math.max(0, allocatedBytes - overhead) / nrofMeasuredInvocations;
+	}
+
+	private static void repeat(Runnable invocation, int nrofInvocations) {
+		for (int i = 0; i < nrofInvocations; i++) {
+			invocation.run();
+		}
+	}
+
+	private static com.sun.management.ThreadMXBean getThreadMXBean() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+		if (!threadMXBean.isThreadAllocatedMemoryEnabled()) {
+			threadMXBean.setThreadAllocatedMemoryEnabled(true);
+		}
+		return threadMXBean;
+	}
+}
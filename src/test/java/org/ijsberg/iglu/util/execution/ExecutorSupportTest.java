@@ -0,0 +1,84 @@
+/*
+ * Copyright 2011-2013 Jeroen Meetsma - IJsberg
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class ExecutorSupportTest {
+
+	@Test
+	public void testCreateVirtualThreadPerCallExecutor() throws Exception {
+		ExecutorService executor = ExecutorSupport.createVirtualThreadPerCallExecutor("test");
+		try {
+			Future<Boolean> daemon = executor.submit(new Callable<Boolean>() {
+				public Boolean call() {
+					return Thread.currentThread().isDaemon();
+				}
+			});
+			//virtual threads are daemon threads as well
+			assertTrue(daemon.get(5, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testCreateBoundedForkJoinPool() throws Exception {
+		ForkJoinPool pool = ExecutorSupport.createBoundedForkJoinPool(2, 3);
+		try {
+			assertEquals(2, pool.getParallelism());
+			assertTrue(pool.getAsyncMode());
+			assertEquals("done", pool.submit(new Callable<String>() {
+				public String call() {
+					return "done";
+				}
+			}).get(5, TimeUnit.SECONDS));
+
+			//tasks beyond the maximum number of threads are queued
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < 100; i++) {
+				final int result = i;
+				results.add(pool.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						Thread.sleep(1);
+						return result;
+					}
+				}));
+			}
+			for (int i = 0; i < 100; i++) {
+				assertEquals(Integer.valueOf(i), results.get(i).get(5, TimeUnit.SECONDS));
+			}
+			assertTrue(pool.getPoolSize() <= 3);
+		} finally {
+			pool.shutdown();
+		}
+		try {
+			ExecutorSupport.createBoundedForkJoinPool(2, 1);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2011-2013 Jeroen Meetsma - IJsberg
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MailboxTest {
+
+	@Test
+	public void testTasksRunInOrderOneAtATime() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		final Mailbox mailbox = new Mailbox(executor, 10);
+		final List<Integer> results = new ArrayList<Integer>();
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger maxActive = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(1000);
+		try {
+			for (int i = 0; i < 1000; i++) {
+				final int value = i;
+				mailbox.execute(new Runnable() {
+					public void run() {
+						maxActive.set(Math.max(maxActive.get(), active.incrementAndGet()));
+						assertTrue(mailbox.isDrainingThread());
+						//plain list, confined to the mailbox
+						results.add(value);
+						active.decrementAndGet();
+						done.countDown();
+					}
+				});
+			}
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertEquals(1, maxActive.get());
+			assertEquals(1000, results.size());
+			for (int i = 0; i < 1000; i++) {
+				assertEquals(i, (int) results.get(i));
+			}
+			assertFalse(mailbox.isDrainingThread());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testConcurrentProducers() throws Exception {
+		ExecutorService producers = Executors.newFixedThreadPool(4);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		final Mailbox mailbox = new Mailbox(executor, 3);
+		final int[] counter = new int[1];
+		final CountDownLatch done = new CountDownLatch(4000);
+		try {
+			for (int i = 0; i < 4; i++) {
+				producers.execute(new Runnable() {
+					public void run() {
+						for (int j = 0; j < 1000; j++) {
+							mailbox.execute(new Runnable() {
+								public void run() {
+									counter[0]++;
+									done.countDown();
+								}
+							});
+						}
+					}
+				});
+			}
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertEquals(4000, counter[0]);
+		} finally {
+			producers.shutdown();
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testExceptionDoesNotStopDraining() throws Exception {
+		final List<Throwable> uncaught = Collections.synchronizedList(new ArrayList<Throwable>());
+		ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable);
+				thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+					public void uncaughtException(Thread thread, Throwable throwable) {
+						uncaught.add(throwable);
+					}
+				});
+				return thread;
+			}
+		});
+		Mailbox mailbox = new Mailbox(executor);
+		final CountDownLatch done = new CountDownLatch(1);
+		try {
+			mailbox.execute(new Runnable() {
+				public void run() {
+					throw new IllegalStateException("failed");
+				}
+			});
+			mailbox.execute(new Runnable() {
+				public void run() {
+					done.countDown();
+				}
+			});
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertEquals(1, uncaught.size());
+			assertTrue(uncaught.get(0) instanceof IllegalStateException);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testRejectedDraining() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		executor.shutdown();
+		Mailbox mailbox = new Mailbox(executor);
+		try {
+			mailbox.execute(new Runnable() {
+				public void run() {
+				}
+			});
+			fail("RejectedExecutionException expected");
+		} catch (RejectedExecutionException expected) {
+		}
+		assertFalse(mailbox.isIdle());
+
+		ExecutorService otherExecutor = Executors.newSingleThreadExecutor();
+		mailbox.setExecutor(otherExecutor);
+		final CountDownLatch done = new CountDownLatch(1);
+		try {
+			mailbox.execute(new Runnable() {
+				public void run() {
+					done.countDown();
+				}
+			});
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+		} finally {
+			otherExecutor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2011-2013 Jeroen Meetsma - IJsberg
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LogLinearHistogramTest {
+
+	@Test
+	public void testBuckets() throws Exception {
+		for (long value = 0; value < 100000; value++) {
+			int bucketIndex = LogLinearHistogram.getBucketIndex(value);
+			assertTrue(value >= LogLinearHistogram.getLowerBound(bucketIndex));
+			assertTrue(value <= LogLinearHistogram.getUpperBound(bucketIndex));
+		}
+		assertEquals(0, LogLinearHistogram.getBucketIndex(-1));
+		assertEquals(LogLinearHistogram.NROF_BUCKETS - 1, LogLinearHistogram.getBucketIndex(Long.MAX_VALUE));
+		//relative error stays within 25%
+		int bucketIndex = LogLinearHistogram.getBucketIndex(1000000000L);
+		assertTrue(LogLinearHistogram.getUpperBound(bucketIndex) - LogLinearHistogram.getLowerBound(bucketIndex) < 250000000L);
+	}
+
+	@Test
+	public void testPercentiles() throws Exception {
+		LogLinearHistogram histogram = new LogLinearHistogram();
+		assertEquals(0, histogram.snapshot().getValueAtPercentile(99));
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i * 1000);
+		}
+		LogLinearHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(100, snapshot.getCount());
+		long median = snapshot.getValueAtPercentile(50);
+		assertTrue(median >= 50000 && median < 50000 * 1.25);
+		long max = snapshot.getMax();
+		assertTrue(max >= 100000 && max < 100000 * 1.25);
+		assertTrue(snapshot.getMean() > 40000 && snapshot.getMean() < 60000);
+		try {
+			snapshot.getValueAtPercentile(101);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+}
@@ -30,6 +30,8 @@ import java.lang.reflect.Method;
 
 import static junit.framework.Assert.fail;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertNull;
 
 /**
@@ -124,4 +126,53 @@ public class MethodInvocationTest {
 		}
 
 	}
+
+	@Test
+	public void testCallSiteCache() throws Exception {
+		Apple apple = new Apple();
+		final int[] nrofLookups = new int[1];
+		CallSiteCache callSiteCache = new CallSiteCache() {
+			@Override
+			protected Method[] getCandidateMethods(Class<?> targetClass, String methodName, int nrofParameters) {
+				nrofLookups[0]++;
+				return ReflectionSupport.getMethodsByName(AppleInterface.class, methodName, nrofParameters).toArray(new Method[0]);
+			}
+		};
+		StandardComponent appleComponent = new StandardComponent(apple);
+
+		assertEquals("truex27", new MethodInvocation(appleComponent, apple, "returnInput", callSiteCache, "true", "x", "27").invoke());
+		assertEquals("falsey28", new MethodInvocation(appleComponent, apple, "returnInput", callSiteCache, "false", "y", "28").invoke());
+		assertEquals(1, nrofLookups[0]);
+		assertEquals(1, callSiteCache.size(Apple.class));
+
+		CallSite callSite = callSiteCache.get(Apple.class, "returnInput", new Object[]{"false", "y", "28"});
+		assertEquals(3, callSite.getMethod().getParameterTypes().length);
+		assertTrue(callSite.isConversionNeeded());
+
+		//other argument types resolve to another call site
+		assertEquals("truez29", new MethodInvocation(appleComponent, apple, "returnInput", callSiteCache, true, 'z', 29).invoke());
+		assertEquals(2, nrofLookups[0]);
+		assertEquals(2, callSiteCache.size(Apple.class));
+
+		//values that can not be converted
+		try {
+			new MethodInvocation(appleComponent, apple, "returnInput", callSiteCache, "true", "x", "many").invoke();
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException expected) {
+		}
+		assertEquals(3, nrofLookups[0]);
+
+		Object input = new Object();
+		assertEquals(input, new MethodInvocation(appleComponent, apple, "returnInput", callSiteCache, input).invoke());
+		assertEquals(input, new MethodInvocation(appleComponent, apple, "returnInput", callSiteCache, input).invoke());
+		assertEquals(4, nrofLookups[0]);
+		assertFalse(callSiteCache.get(Apple.class, "returnInput", new Object[]{input}).isConversionNeeded());
+
+		try {
+			new MethodInvocation(appleComponent, apple, "absentMethod", callSiteCache).invoke();
+			fail("NoSuchMethodException expected");
+		} catch (NoSuchMethodException expected) {
+		}
+		assertEquals(3, callSiteCache.size(Apple.class));
+	}
 }
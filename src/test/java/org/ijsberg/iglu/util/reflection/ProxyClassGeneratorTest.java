@@ -0,0 +1,136 @@
+/*
+ * Copyright 2011-2013 Jeroen Meetsma - IJsberg
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.reflection;
+
+import org.ijsberg.iglu.sample.configuration.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class ProxyClassGeneratorTest {
+
+	public interface Calculator {
+		double add(long first, double second, int[] others);
+
+		void fail(String message) throws IOException;
+	}
+
+	public static class CalculatorImpl implements Calculator {
+		public double add(long first, double second, int[] others) {
+			double result = first + second;
+			for (int other : others) {
+				result += other;
+			}
+			return result;
+		}
+
+		public void fail(String message) throws IOException {
+			throw new IOException(message);
+		}
+	}
+
+	interface HiddenInterface {
+		void touch();
+	}
+
+	@Test
+	public void testCreateProxy() throws Exception {
+		Apple apple = new Apple();
+		apple.setMessage("hello");
+		DelegateReference reference = new DelegateReference(apple);
+		AppleInterface proxy = ProxyClassGenerator.createProxy(AppleInterface.class, Apple.class, reference);
+
+		assertNotNull(proxy);
+		assertFalse(Proxy.isProxyClass(proxy.getClass()));
+		assertTrue(proxy instanceof DelegatingProxy);
+		assertEquals("hello", proxy.getMessage());
+		assertEquals("true-23", proxy.returnInput(true, '-', 23));
+		assertEquals(apple.hashCode(), proxy.hashCode());
+		assertEquals(apple.toString(), proxy.toString());
+	}
+
+	@Test
+	public void testPrimitivesAndExceptions() throws Exception {
+		Calculator proxy = ProxyClassGenerator.createProxy(Calculator.class, CalculatorImpl.class,
+				new DelegateReference(new CalculatorImpl()));
+
+		assertEquals(6.5, proxy.add(2L, 1.5, new int[]{1, 2}), 0);
+		try {
+			proxy.fail("checked");
+			fail("IOException expected");
+		} catch (IOException expected) {
+			assertEquals("checked", expected.getMessage());
+		}
+	}
+
+	@Test
+	public void testRetargetReference() throws Exception {
+		Apple apple = new Apple();
+		apple.setMessage("apple");
+		Elstar elstar = new Elstar();
+		elstar.setMessage("elstar");
+
+		DelegateReference reference = new DelegateReference(apple);
+		AppleInterface proxy = ProxyClassGenerator.createProxy(AppleInterface.class, Apple.class, reference);
+		assertEquals("apple", proxy.getMessage());
+
+		reference.set(elstar);
+		assertEquals("elstar", proxy.getMessage());
+	}
+
+	@Test
+	public void testProxyClassPerImplementationClass() throws Exception {
+		Class<?> appleProxyClass = ProxyClassGenerator.getProxyClass(AppleInterface.class, Apple.class);
+		assertSame(appleProxyClass, ProxyClassGenerator.getProxyClass(AppleInterface.class, Apple.class));
+		assertNotSame(appleProxyClass, ProxyClassGenerator.getProxyClass(AppleInterface.class, Elstar.class));
+		//interface from bootstrap class loader
+		assertNotNull(ProxyClassGenerator.getProxyClass(Serializable.class, Banana.class));
+	}
+
+	@Test
+	public void testNonPublicInterface() throws Exception {
+		HiddenInterface hidden = new HiddenInterface() {
+			public void touch() {
+			}
+		};
+		assertFalse(ProxyClassGenerator.canGenerateProxyClass(HiddenInterface.class, hidden.getClass()));
+		assertNull(ProxyClassGenerator.createProxy(HiddenInterface.class, hidden.getClass(), new DelegateReference(hidden)));
+	}
+
+	@Test
+	public void testInvalidArguments() throws Exception {
+		try {
+			ProxyClassGenerator.getProxyClass(Apple.class, Apple.class);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException expected) {
+		}
+		try {
+			ProxyClassGenerator.getProxyClass(BananaInterface.class, Apple.class);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+}
@@ -23,6 +23,8 @@ package org.ijsberg.iglu.util.reflection;
 import org.ijsberg.iglu.sample.configuration.*;
 import org.junit.Test;
 
+import java.io.Serializable;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 
 import static org.junit.Assert.*;
@@ -51,6 +53,34 @@ public class ReflectionSupportTest {
 		assertEquals(ElstarInterface.class, interfaces.get(1));
 	}
 
+	@Test
+	public void testGetClassMetadata() throws Exception {
+		ClassMetadata metadata = ReflectionSupport.getClassMetadata(Elstar.class);
+		assertSame(metadata, ReflectionSupport.getClassMetadata(Elstar.class));
+		assertEquals(Elstar.class, metadata.getType());
+		assertEquals(ReflectionSupport.getAllSuperClassesFromClass(Elstar.class), metadata.getSuperClasses());
+		assertEquals(ReflectionSupport.getInterfacesForClass(Elstar.class), metadata.getInterfaces());
+		//ElstarInterface extends AppleInterface
+		assertEquals(2, ReflectionSupport.getClassMetadata(ElstarInterface.class).getInterfaceClosure().size());
+
+		assertEquals(2, metadata.getSettersByPropertyKey("banana").size());
+		assertEquals(metadata.getSettersByPropertyKey("banana"), metadata.getSettersByPropertyKey("Banana"));
+		assertTrue(metadata.getSetterPropertyKeys().contains("Message"));
+		assertTrue(metadata.getSettersByPropertyKey("pear").isEmpty());
+
+		assertEquals(1, ReflectionSupport.getMethodsByName(Elstar.class, "returnInput", 1).size());
+		assertEquals(1, ReflectionSupport.getMethodsByName(Elstar.class, "returnInput", 3).size());
+		assertTrue(ReflectionSupport.getMethodsByName(Elstar.class, "returnInput", 2).isEmpty());
+		assertTrue(ReflectionSupport.getMethodsByName(Elstar.class, "eat", 0).isEmpty());
+		Method setBanana = Apple.class.getMethod("setBanana", Serializable.class);
+		assertTrue(metadata.getMethodsByName("setBanana", 1).contains(setBanana));
+		try {
+			metadata.getMethodsByName("setBanana", 1).clear();
+			fail("UnsupportedOperationException expected");
+		} catch (UnsupportedOperationException expected) {
+		}
+	}
+
 	@Test
 	public void testInstantiate() throws Exception {
 		Object instance = ReflectionSupport.instantiateClass("java.lang.String");
@@ -78,6 +108,55 @@ public class ReflectionSupportTest {
 		assertEquals("8", instance);
 	}
 
+	@Test
+	public void testConstructorCache() throws Exception {
+		ConstructorCacheStatistics statistics = ReflectionSupport.getConstructorCacheStatistics();
+		statistics.reset();
+
+		Banana banana = ReflectionSupport.instantiateClass(Banana.class, 27);
+		assertEquals(27, banana.returnAnInt());
+		//Integer converted to int
+		assertEquals(1, statistics.getMisses());
+		assertEquals(1, statistics.getFallbacks());
+
+		banana = ReflectionSupport.instantiateClass(Banana.class, 28);
+		assertEquals(28, banana.returnAnInt());
+		assertEquals(1, statistics.getHits());
+		assertEquals(1, statistics.getFallbacks());
+
+		banana = ReflectionSupport.instantiateClass(Banana.class, "29");
+		assertEquals(29, banana.returnAnInt());
+		banana = ReflectionSupport.instantiateClass(Banana.class, "30");
+		assertEquals(30, banana.returnAnInt());
+		assertEquals(2, statistics.getHits());
+		assertEquals(2, statistics.getMisses());
+
+		try {
+			ReflectionSupport.instantiateClass(Banana.class, "twentyseven");
+			fail("IgluInstantiationException expected");
+		} catch (IgluInstantiationException expected) {
+		}
+		//cached constructor could not accept the argument
+		assertEquals(3, statistics.getHits());
+		assertEquals(3, statistics.getFallbacks());
+
+		Object instance = ReflectionSupport.instantiateClass(StringBuilder.class, "hoppa");
+		assertEquals("hoppa", instance.toString());
+		assertEquals(3, statistics.getMisses());
+		assertEquals(3, statistics.getFallbacks());
+
+		//no constructor accepts a Thread, which is remembered
+		for (int i = 0; i < 2; i++) {
+			try {
+				ReflectionSupport.instantiateClass(Banana.class, Thread.currentThread());
+				fail("IgluInstantiationException expected");
+			} catch (IgluInstantiationException expected) {
+			}
+		}
+		assertEquals(4, statistics.getMisses());
+		assertEquals(4, statistics.getHits());
+	}
+
 	@Test
 	public void invokeMethodTest() throws Exception {
 
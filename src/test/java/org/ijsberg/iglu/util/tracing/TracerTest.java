@@ -0,0 +1,204 @@
+/*
+ * Copyright 2011-2013 Jeroen Meetsma - IJsberg
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.tracing;
+
+import org.ijsberg.iglu.sample.configuration.AppleInterface;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class TracerTest {
+
+	private final List<Span> spans = Collections.synchronizedList(new ArrayList<Span>());
+	private final SpanExporter exporter = new SpanExporter() {
+		public void export(Span span) {
+			spans.add(span);
+		}
+	};
+
+	@Test
+	public void testNesting() throws Exception {
+		Tracer tracer = new Tracer(1, exporter);
+		Method method = AppleInterface.class.getMethod("getMessage");
+		Span root = tracer.start("apple", method);
+		Span child = tracer.start("banana", method);
+		assertSame(child, tracer.getCurrentSpan());
+		tracer.end(child);
+		assertSame(root, tracer.getCurrentSpan());
+		tracer.end(root);
+		assertNull(tracer.getCurrentSpan());
+
+		assertEquals(2, spans.size());
+		assertSame(root, child.getParent());
+		assertEquals(root.getSpanId(), child.getTraceId());
+		assertTrue(child.getDurationNanos() >= 0);
+		assertTrue(root.getDurationNanos() >= child.getDurationNanos());
+	}
+
+	@Test
+	public void testSampling() throws Exception {
+		Tracer tracer = new Tracer(0, exporter);
+		Method method = AppleInterface.class.getMethod("getMessage");
+		Span root = tracer.start("apple", method);
+		assertNull(tracer.start("banana", method));
+		assertNull(tracer.getCurrentSpan());
+		tracer.end(root);
+		assertTrue(spans.isEmpty());
+
+		try {
+			new Tracer(2, exporter);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	@Test
+	public void testWrap() throws Exception {
+		final Tracer tracer = new Tracer(1, exporter);
+		final Method method = AppleInterface.class.getMethod("getMessage");
+		Span root = tracer.start("apple", method);
+		Thread thread = new Thread(tracer.wrap(new Runnable() {
+			public void run() {
+				tracer.end(tracer.start("banana", method));
+			}
+		}));
+		tracer.end(root);
+		thread.start();
+		thread.join();
+
+		assertEquals(2, spans.size());
+		assertSame(root, spans.get(1).getParent());
+		assertFalse(root.getThreadId() == spans.get(1).getThreadId());
+	}
+
+	@Test
+	public void testChromeTraceFormat() throws Exception {
+		StringWriter writer = new StringWriter();
+		ChromeTraceFileExporter chromeTraceExporter = new ChromeTraceFileExporter(writer);
+		Tracer tracer = new Tracer(1, chromeTraceExporter);
+		Method method = AppleInterface.class.getMethod("getMessage");
+		Span root = tracer.start("apple \"core\"", method);
+		tracer.end(tracer.start("banana", method));
+		tracer.end(root);
+		chromeTraceExporter.close();
+		tracer.end(tracer.start("banana", method));
+
+		String json = writer.toString().trim();
+		assertTrue(json.startsWith("[\n{\"name\":\"AppleInterface.getMessage\",\"cat\":\"banana\",\"ph\":\"X\""));
+		assertTrue(json.endsWith("}}\n]"));
+		assertTrue(json.contains("\"cat\":\"apple \\\"core\\\"\""));
+		assertTrue(json.contains("\"parentSpanId\":" + root.getSpanId()));
+		assertEquals(2, json.split("\"ph\":\"X\"").length - 1);
+	}
+
+	@Test
+	public void testConcurrentChromeTraceExports() throws Exception {
+		StringWriter writer = new StringWriter();
+		final ChromeTraceFileExporter chromeTraceExporter = new ChromeTraceFileExporter(writer);
+		final Tracer tracer = new Tracer(1, chromeTraceExporter);
+		final Method method = AppleInterface.class.getMethod("getMessage");
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			threads.add(new Thread() {
+				public void run() {
+					for (int i = 0; i < 100; i++) {
+						tracer.end(tracer.start("apple", method));
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		chromeTraceExporter.close();
+
+		String json = writer.toString();
+		assertEquals(800, json.split("\\},\n\\{").length);
+		assertFalse(json.contains("}\n{"));
+	}
+
+	@Test
+	public void testChromeTraceExportsDroppedWhenQueueIsFull() throws Exception {
+		final StringWriter output = new StringWriter();
+		final CountDownLatch writable = new CountDownLatch(1);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		Writer blockingWriter = new Writer() {
+			public void write(char[] chars, int offset, int length) throws InterruptedIOException {
+				output.write(chars, offset, length);
+				if (output.getBuffer().length() > 1) {
+					blocked.countDown();
+					try {
+						writable.await();
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException();
+					}
+				}
+			}
+
+			public void flush() {
+			}
+
+			public void close() {
+			}
+		};
+		//capacity of one span, the writer blocks on the first event
+		ChromeTraceFileExporter chromeTraceExporter = new ChromeTraceFileExporter(new BufferedWriter(blockingWriter, 1), 1);
+		Tracer tracer = new Tracer(1, chromeTraceExporter);
+		Method method = AppleInterface.class.getMethod("getMessage");
+		tracer.end(tracer.start("apple", method));
+		blocked.await();
+		for (int i = 0; i < 9; i++) {
+			tracer.end(tracer.start("apple", method));
+		}
+		assertEquals(8, chromeTraceExporter.getDroppedSpanCount());
+		assertEquals(0, tracer.getNrofExportFailures());
+
+		writable.countDown();
+		chromeTraceExporter.close();
+		assertEquals(2, output.toString().split("\"ph\":\"X\"").length - 1);
+		assertTrue(output.toString().endsWith("}}\n]\n"));
+	}
+
+	@Test
+	public void testExportFailure() throws Exception {
+		Tracer tracer = new Tracer(1, new SpanExporter() {
+			public void export(Span span) {
+				throw new IllegalStateException("exporter closed");
+			}
+		});
+		Method method = AppleInterface.class.getMethod("getMessage");
+		tracer.end(tracer.start("apple", method));
+		assertNull(tracer.getCurrentSpan());
+		assertEquals(1, tracer.getNrofExportFailures());
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2011-2013 Jeroen Meetsma - IJsberg
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.types;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.math.BigDecimal;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class ConverterRegistryTest {
+
+	@Test
+	public void testGetConverter() {
+		TypeConverter<Object, Object> converter = ConverterRegistry.getConverter(String.class, int.class);
+		assertSame(converter, ConverterRegistry.getConverter(String.class, int.class));
+		assertSame(converter, ConverterRegistry.getConverter(String.class, Integer.class));
+		assertEquals(27, converter.convert("27"));
+		assertSame(converter.convert("27"), converter.convert("27"));
+
+		assertEquals(27L, ConverterRegistry.getConverter(Integer.class, long.class).convert(27));
+		assertEquals(true, ConverterRegistry.getConverter(Double.class, Boolean.class).convert(0.1));
+		assertEquals('A', ConverterRegistry.getConverter(String.class, char.class).convert("Aap"));
+		assertEquals(new BigDecimal("2.5"), ConverterRegistry.getConverter(String.class, BigDecimal.class).convert("2.5"));
+		assertEquals("27", ConverterRegistry.getConverter(Integer.class, String.class).convert(27));
+
+		Object object = new Object();
+		assertSame(object, ConverterRegistry.getConverter(Object.class, Object.class).convert(object));
+
+		try {
+			converter.convert("word");
+			fail("NumberFormatException expected");
+		} catch (NumberFormatException expected) {
+		}
+		try {
+			ConverterRegistry.getConverter(Object.class, File.class).convert(object);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	@Test
+	public void testRegister() {
+		TypeConverter<Object, Object> converter = ConverterRegistry.getConverter(StringBuilder.class, File.class);
+		try {
+			converter.convert(new StringBuilder("/tmp"));
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException expected) {
+		}
+
+		//applies to implementations of CharSequence
+		ConverterRegistry.register(CharSequence.class, File.class, new TypeConverter<CharSequence, File>() {
+			public File convert(CharSequence source) {
+				return new File(source.toString());
+			}
+		});
+		try {
+			assertEquals(new File("/tmp"), ConverterRegistry.getConverter(StringBuilder.class, File.class).convert(new StringBuilder("/tmp")));
+			assertEquals(new File("/tmp"), Converter.convertToObject("/tmp", File.class));
+		} finally {
+			ConverterRegistry.unregister(CharSequence.class, File.class);
+		}
+		try {
+			Converter.convertToObject("/tmp", File.class);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+}